@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Times the {@link GnuCashXMLParser.Backend}s parsing the same generated GnuCash book through the content handler
+ * and its state handlers, no jGnash database is created. The JAXP SAX and StAX parsers are also timed on their own,
+ * with handlers that do nothing, to show how much of a full parse is the tokenizer.
+ * <p>
+ * Not part of the plugin, compile it together with the sources under src and run it with the jGnash jars on
+ * the class path:
+ * <pre>
+ * java gnucashjgnash.imports.ParserBenchmark [transactions [rounds [file]]]
+ * </pre>
+ * transactions is the number of transactions in the generated book (default 200000), rounds the number of timed
+ * parses per backend after one untimed warm up parse (default 5). If file is given it's parsed instead of a
+ * generated book.
+ * @author albert
+ *
+ */
+public class ParserBenchmark {
+	static final int DEFAULT_TRANSACTION_COUNT = 200000;
+	static final int DEFAULT_ROUNDS = 5;
+
+	public static void main(String [] args) throws Exception {
+		int transactionCount = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_TRANSACTION_COUNT;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+
+		// The warnings and ignored element counts would otherwise swamp the output.
+		Logger.getLogger("gnucashjgnash").setLevel(Level.WARNING);
+
+		File file;
+		boolean isGenerated = (args.length < 3);
+		if (isGenerated) {
+			file = File.createTempFile("ParserBenchmark", ".gnucash");
+			file.deleteOnExit();
+			generateBook(file, transactionCount, 1);
+		}
+		else {
+			file = new File(args[2]);
+		}
+
+		try {
+			double megabytes = file.length() / (1024.0 * 1024.0);
+			System.out.printf("%s: %.1f MB%n", file.getName(), megabytes);
+
+			for (GnuCashXMLParser.Backend backend : GnuCashXMLParser.Backend.values()) {
+				printResult(backend.name(), megabytes, timeRounds(rounds, () -> timeParse(file, backend)));
+			}
+
+			printResult("SAX raw", megabytes, timeRounds(rounds, () -> timeRawSAX(file)));
+			printResult("StAX raw", megabytes, timeRounds(rounds, () -> timeRawStAX(file)));
+		}
+		finally {
+			if (isGenerated) {
+				file.delete();
+			}
+		}
+	}
+
+
+	interface TimedRun {
+		long run() throws Exception;
+	}
+
+	static List<Long> timeRounds(int rounds, TimedRun timedRun) throws Exception {
+		List<Long> nanos = new ArrayList<>();
+		// The first round warms up the JIT and the file cache and isn't counted.
+		for (int round = 0; round <= rounds; ++round) {
+			long elapsedNanos = timedRun.run();
+			if (round > 0) {
+				nanos.add(elapsedNanos);
+			}
+		}
+		return nanos;
+	}
+
+
+	static long timeParse(File file, GnuCashXMLParser.Backend backend) throws Exception {
+		GnuCashXMLParser parser = backend.createParser();
+		GnuCashToJGnashContentHandler contentHandler = new GnuCashToJGnashContentHandler(null, null);
+
+		long startNanos = System.nanoTime();
+		try (InputStream inputStream = new GnuCashFileInput(file.getPath()).openXMLInputStream()) {
+			parser.parse(inputStream, contentHandler);
+		}
+		return System.nanoTime() - startNanos;
+	}
+
+
+	static long timeRawSAX(File file) throws Exception {
+		SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+		parserFactory.setNamespaceAware(true);
+		XMLReader xmlReader = parserFactory.newSAXParser().getXMLReader();
+		xmlReader.setContentHandler(new DefaultHandler());
+
+		long startNanos = System.nanoTime();
+		try (InputStream inputStream = new GnuCashFileInput(file.getPath()).openXMLInputStream()) {
+			xmlReader.parse(new InputSource(inputStream));
+		}
+		return System.nanoTime() - startNanos;
+	}
+
+
+	static long timeRawStAX(File file) throws Exception {
+		XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+
+		long startNanos = System.nanoTime();
+		try (InputStream inputStream = new GnuCashFileInput(file.getPath()).openXMLInputStream()) {
+			XMLStreamReader reader = inputFactory.createXMLStreamReader(inputStream);
+			while (reader.hasNext()) {
+				reader.next();
+			}
+			reader.close();
+		}
+		return System.nanoTime() - startNanos;
+	}
+
+
+	static void printResult(String title, double megabytes, List<Long> nanos) {
+		Collections.sort(nanos);
+		double bestSeconds = nanos.get(0) / 1e9;
+		double medianSeconds = nanos.get(nanos.size() / 2) / 1e9;
+		System.out.printf("%-10s best %6.2fs %7.1f MB/s   median %6.2fs %7.1f MB/s%n", title,
+				bestSeconds, megabytes / bestSeconds, medianSeconds, megabytes / medianSeconds);
+	}
+
+
+	/**
+	 * Writes an uncompressed GnuCash book with a handful of accounts and commodities, some prices and
+	 * the given number of transactions of two or three splits, laid out the way GnuCash writes them.
+	 * @param file	The file to write.
+	 * @param transactionCount	The number of transactions.
+	 * @param seed	The random seed, the same seed gives the same book.
+	 * @throws IOException
+	 */
+	static void generateBook(File file, int transactionCount, long seed) throws IOException {
+		Random random = new Random(seed);
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8), 1 << 16)) {
+			writer.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n<gnc-v2\n");
+			for (String prefix : Arrays.asList("gnc", "act", "book", "cd", "cmdty", "price", "slot", "split", "trn", "ts")) {
+				writer.write("     xmlns:" + prefix + "=\"http://www.gnucash.org/XML/" + prefix + "\"\n");
+			}
+			writer.write(">\n<gnc:count-data cd:type=\"book\">1</gnc:count-data>\n<gnc:book version=\"2.0.0\">\n");
+			writer.write("<book:id type=\"guid\">" + guid(random) + "</book:id>\n");
+			writer.write("<gnc:count-data cd:type=\"commodity\">1</gnc:count-data>\n");
+			writer.write("<gnc:count-data cd:type=\"account\">6</gnc:count-data>\n");
+			writer.write("<gnc:count-data cd:type=\"transaction\">" + transactionCount + "</gnc:count-data>\n");
+
+			writer.write("<gnc:commodity version=\"2.0.0\">\n  <cmdty:space>NASDAQ</cmdty:space>\n  <cmdty:id>AAPL</cmdty:id>\n"
+					+ "  <cmdty:name>Apple</cmdty:name>\n  <cmdty:fraction>10000</cmdty:fraction>\n</gnc:commodity>\n");
+
+			LocalDate firstDate = LocalDate.of(2010, 1, 1);
+			writer.write("<gnc:pricedb version=\"1\">\n");
+			for (int i = 0; i < 100; ++i) {
+				writer.write("  <price>\n    <price:id type=\"guid\">" + guid(random) + "</price:id>\n"
+						+ "    <price:commodity>\n      <cmdty:space>NASDAQ</cmdty:space>\n      <cmdty:id>AAPL</cmdty:id>\n    </price:commodity>\n"
+						+ "    <price:currency>\n      <cmdty:space>ISO4217</cmdty:space>\n      <cmdty:id>USD</cmdty:id>\n    </price:currency>\n"
+						+ "    <price:time>\n      <ts:date>" + firstDate.plusDays(i * 30) + " 10:59:00 -0500</ts:date>\n    </price:time>\n"
+						+ "    <price:source>Finance::Quote</price:source>\n    <price:type>last</price:type>\n"
+						+ "    <price:value>" + (10000 + random.nextInt(40000)) + "/100</price:value>\n  </price>\n");
+			}
+			writer.write("</gnc:pricedb>\n");
+
+			String rootId = guid(random);
+			writeAccount(writer, "Root Account", rootId, "ROOT", null);
+			String [] accountIds = new String [5];
+			String [] accountTypes = { "BANK", "CREDIT", "EXPENSE", "EXPENSE", "INCOME" };
+			String [] accountNames = { "Checking", "Card", "Groceries", "Fuel", "Salary" };
+			for (int i = 0; i < accountIds.length; ++i) {
+				accountIds[i] = guid(random);
+				writeAccount(writer, accountNames[i], accountIds[i], accountTypes[i], rootId);
+			}
+
+			String [] payees = { "Safeway", "Costco", "Trader Joe's", "Shell", "Amazon", "Employer &amp; Co" };
+			String [] memos = { null, "food", "weekly shopping", "gas" };
+			for (int i = 0; i < transactionCount; ++i) {
+				LocalDate date = firstDate.plusDays(random.nextInt(3650));
+				writer.write("<gnc:transaction version=\"2.0.0\">\n  <trn:id type=\"guid\">" + guid(random) + "</trn:id>\n"
+						+ "  <trn:currency>\n    <cmdty:space>ISO4217</cmdty:space>\n    <cmdty:id>USD</cmdty:id>\n  </trn:currency>\n");
+				if (random.nextInt(5) == 0) {
+					writer.write("  <trn:num>" + i + "</trn:num>\n");
+				}
+				writer.write("  <trn:date-posted>\n    <ts:date>" + date + " 00:00:00 +0000</ts:date>\n  </trn:date-posted>\n"
+						+ "  <trn:date-entered>\n    <ts:date>" + date + " 13:10:24 -0500</ts:date>\n  </trn:date-entered>\n"
+						+ "  <trn:description>" + payees[random.nextInt(payees.length)] + "</trn:description>\n"
+						+ "  <trn:slots>\n    <slot>\n      <slot:key>date-posted</slot:key>\n      <slot:value type=\"gdate\">\n"
+						+ "        <gdate>" + date + "</gdate>\n      </slot:value>\n    </slot>\n  </trn:slots>\n  <trn:splits>\n");
+
+				int amount = 1 + random.nextInt(100000);
+				int fromAccount = random.nextInt(2);
+				if (random.nextInt(4) == 0) {
+					int part = 1 + random.nextInt(amount);
+					writeSplit(writer, random, accountIds[fromAccount], -amount, memos[random.nextInt(memos.length)]);
+					writeSplit(writer, random, accountIds[2], part, memos[random.nextInt(memos.length)]);
+					writeSplit(writer, random, accountIds[3], amount - part, null);
+				}
+				else {
+					writeSplit(writer, random, accountIds[fromAccount], -amount, null);
+					writeSplit(writer, random, accountIds[2 + random.nextInt(3)], amount, memos[random.nextInt(memos.length)]);
+				}
+				writer.write("  </trn:splits>\n</gnc:transaction>\n");
+			}
+
+			writer.write("</gnc:book>\n</gnc-v2>\n");
+		}
+	}
+
+	private static void writeAccount(Writer writer, String name, String id, String type, String parentId) throws IOException {
+		writer.write("<gnc:account version=\"2.0.0\">\n  <act:name>" + name + "</act:name>\n  <act:id type=\"guid\">" + id + "</act:id>\n"
+				+ "  <act:type>" + type + "</act:type>\n  <act:commodity>\n    <cmdty:space>ISO4217</cmdty:space>\n"
+				+ "    <cmdty:id>USD</cmdty:id>\n  </act:commodity>\n  <act:commodity-scu>100</act:commodity-scu>\n");
+		if (parentId != null) {
+			writer.write("  <act:parent type=\"guid\">" + parentId + "</act:parent>\n");
+		}
+		writer.write("</gnc:account>\n");
+	}
+
+	private static void writeSplit(Writer writer, Random random, String accountId, int amount, String memo) throws IOException {
+		writer.write("    <trn:split>\n      <split:id type=\"guid\">" + guid(random) + "</split:id>\n");
+		if (memo != null) {
+			writer.write("      <split:memo>" + memo + "</split:memo>\n");
+		}
+		writer.write("      <split:reconciled-state>" + "nyc".charAt(random.nextInt(3)) + "</split:reconciled-state>\n"
+				+ "      <split:value>" + amount + "/100</split:value>\n      <split:quantity>" + amount + "/100</split:quantity>\n"
+				+ "      <split:account type=\"guid\">" + accountId + "</split:account>\n    </trn:split>\n");
+	}
+
+	private static String guid(Random random) {
+		return String.format("%016x%016x", random.nextLong(), random.nextLong());
+	}
+
+}
@@ -39,17 +39,29 @@ import jgnash.util.ResourceUtils;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Locale;
 import java.util.ResourceBundle;
 import java.util.prefs.Preferences;
 
 import gnucashjgnash.GnuCashConvertUtil;
 import gnucashjgnash.NoticeTree;
 import gnucashjgnash.imports.GnuCashImport;
+import gnucashjgnash.imports.GnuCashXMLParser;
 import gnucashjgnash.imports.ParsedEntry;
 
 public class ImportGnuCashAction {
 
     private static final String LAST_DIR = "importDir";
+
+    // The import options, there's no UI for these, they're set in the preferences of this class' package.
+    private static final String PARSER_BACKEND = "parserBackend";
+    private static final String PARSE_THREAD_COUNT = "parseThreadCount";
+    private static final String CONVERSION_THREAD_COUNT = "conversionThreadCount";
+    private static final String STREAMING_CONVERSION = "streamingConversion";
+    private static final String PIPELINED_CONVERSION = "pipelinedConversion";
+    private static final String COLUMNAR_TRANSACTION_STORE = "columnarTransactionStore";
+    private static final String TRANSACTION_SPILL_MEMORY_BUDGET = "transactionSpillMemoryBudget";
+    private static final String READ_AHEAD_DECOMPRESSION = "readAheadDecompression";
     private String gnuCashFileName;
     private String jGnashFileName;
     private Stage progressStage;
@@ -133,6 +145,32 @@ public class ImportGnuCashAction {
         return fileChooser;
     }
 
+    /**
+     * Sets up the importer from the import options in the preferences, options that aren't set keep the
+     * importer's defaults.
+     * @param importer	The importer.
+     */
+    private static void applyImportPreferences(final GnuCashImport importer) {
+        final Preferences pref = Preferences.userNodeForPackage(ImportGnuCashAction.class);
+
+        String parserBackend = pref.get(PARSER_BACKEND, null);
+        if (parserBackend != null) {
+            try {
+                importer.setParserBackend(GnuCashXMLParser.Backend.valueOf(parserBackend.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Unknown GnuCash parser backend '" + parserBackend + "', using " + importer.getParserBackend() + ".");
+            }
+        }
+
+        importer.setParseThreadCount(pref.getInt(PARSE_THREAD_COUNT, importer.getParseThreadCount()));
+        importer.setConversionThreadCount(pref.getInt(CONVERSION_THREAD_COUNT, importer.getConversionThreadCount()));
+        importer.setStreamingConversion(pref.getBoolean(STREAMING_CONVERSION, importer.isStreamingConversion()));
+        importer.setPipelinedConversion(pref.getBoolean(PIPELINED_CONVERSION, importer.isPipelinedConversion()));
+        importer.setColumnarTransactionStore(pref.getBoolean(COLUMNAR_TRANSACTION_STORE, importer.isColumnarTransactionStore()));
+        importer.setTransactionSpillMemoryBudget(pref.getLong(TRANSACTION_SPILL_MEMORY_BUDGET, importer.getTransactionSpillMemoryBudget()));
+        importer.setReadAheadDecompression(pref.getBoolean(READ_AHEAD_DECOMPRESSION, importer.isReadAheadDecompression()));
+    }
+
     private class ImportTask extends Task<Void> {
 
         private final String gnuCashFileName;
@@ -157,6 +195,7 @@ public class ImportGnuCashAction {
             updateProgress(-1, Long.MAX_VALUE);
 
             final GnuCashImport importer = new GnuCashImport();
+            applyImportPreferences(importer);
             boolean result = importer.convertGnuCashToJGnash(this.gnuCashFileName, this.jGnashFileName, this.dataStoreType,
                     new GnuCashImport.StatusCallback() {
                 @Override
@@ -48,7 +48,7 @@ public class AccountImportEntry extends ParsedEntry {
     String code;
     String description;
     IdEntry parentId = new IdEntry(this);
-    Map<String, SlotEntry> slots = new HashMap<>();
+    SlotMap slots = new SlotMap(this);
 
     Map<String, AccountImportEntry> childAccountEntries = new HashMap<>();
     
@@ -57,6 +57,7 @@ public class AccountImportEntry extends ParsedEntry {
     
     public AccountImportEntry(GnuCashToJGnashContentHandler contentHandler) {
     	super(contentHandler);
+    	captureLocation(contentHandler);
     }
     
 
@@ -65,8 +66,8 @@ public class AccountImportEntry extends ParsedEntry {
 	 */
 	@Override
 	public Source getParentSource() {
-		if (this.parentId.id != null) {
-			return this.contentHandler.accountImportEntries.get(this.parentId.id);
+		if (this.parentId.hasId()) {
+			return this.contentHandler.accountImportEntries.get(this.parentId);
 		}
 		return null;
 	}
@@ -86,7 +87,7 @@ public class AccountImportEntry extends ParsedEntry {
 	 */
 	@Override
 	public String getUniqueId() {
-		return GnuCashConvertUtil.getString("Message.ParsedEntry.AccountImportEntryId", this.id.id);
+		return GnuCashConvertUtil.getString("Message.ParsedEntry.AccountImportEntryId", this.id.getId());
 	}
 
 
@@ -117,12 +118,12 @@ public class AccountImportEntry extends ParsedEntry {
         }
 
         /* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-            switch (qName) {
-            case "act:name" :
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            switch (element) {
+            case ACT_NAME :
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setAccountEntryField(AccountImportEntry accountEntry, String value) {
@@ -130,10 +131,10 @@ public class AccountImportEntry extends ParsedEntry {
                         }
                     });
 
-            case "act:id" :
+            case ACT_ID :
                 return new IdEntry.IdStateHandler(this.accountEntry.id, this.contentHandler, this, qName);
 
-            case "act:type" :
+            case ACT_TYPE :
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setAccountEntryField(AccountImportEntry accountEntry, String value) {
@@ -141,7 +142,7 @@ public class AccountImportEntry extends ParsedEntry {
                         }
                     });
 
-            case "act:description" :
+            case ACT_DESCRIPTION :
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setAccountEntryField(AccountImportEntry accountEntry, String value) {
@@ -149,7 +150,7 @@ public class AccountImportEntry extends ParsedEntry {
                         }
                     });
 
-            case "act:code" :
+            case ACT_CODE :
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setAccountEntryField(AccountImportEntry accountEntry, String value) {
@@ -157,28 +158,28 @@ public class AccountImportEntry extends ParsedEntry {
                         }
                     });
                 
-            case "act:slots" :
+            case ACT_SLOTS :
                 return new SlotEntry.SlotsStateHandler(this.accountEntry.slots, this.accountEntry, this.contentHandler, this, qName);
                 
-            case "act:parent" :
+            case ACT_PARENT :
                 return new IdEntry.IdStateHandler(this.accountEntry.parentId, this.contentHandler, this, qName);
                 
-            case "act:commodity" :
+            case ACT_COMMODITY :
                 return new CommodityEntry.CommodityRefStateHandler(this.accountEntry.commodityRef, this.contentHandler, this, qName);
                 
-            case "act:commodity-scu" :
+            case ACT_COMMODITY_SCU :
             	return new IntEntry.IntEntryStateHandler(this.accountEntry.commoditySCU, this.contentHandler, this, qName);
                 
-            case "act:non-standard-scu" :
+            case ACT_NON_STANDARD_SCU :
             	recordWarning("Message.Parse.XMLNonStandardSCUUnsupported");
             	break;
             
-            case "act:lots" :
+            case ACT_LOTS :
             	recordWarning("Message.Parse.XMLAccountLotsUnsupported");
             	break;
             }
 
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
 
         @Override
@@ -226,7 +227,7 @@ public class AccountImportEntry extends ParsedEntry {
         for (Iterator<Map.Entry<String, AccountImportEntry>> iterator = accountEntries.entrySet().iterator(); iterator.hasNext(); ) {
             Map.Entry<String, AccountImportEntry> entry = iterator.next();
             AccountImportEntry accountEntry = entry.getValue();
-            if ((accountEntry.parentId.id != null) && accountEntry.parentId.equals(this.id)) {
+            if (accountEntry.parentId.hasId() && accountEntry.parentId.equals(this.id)) {
                 this.childAccountEntries.put(entry.getKey(), accountEntry);
                 iterator.remove();
             }
@@ -247,14 +248,14 @@ public class AccountImportEntry extends ParsedEntry {
      * @return	<code>false</code> if this failed.
      */
     public boolean createJGnashAccounts(GnuCashToJGnashContentHandler contentHandler, Engine engine,
-                                 Map<String, Account> jGnashAccountEntries, Set<String> accountIdsToIgnore) {
+                                 GuidMap<Account> jGnashAccountEntries, Set<String> accountIdsToIgnore) {
         // Can we generate the account?
         AccountType accountType = null;
         boolean hasSecurities = false;
 
         switch (this.type) {
             case "NONE" :
-                accountIdsToIgnore.add(this.id.id);
+                accountIdsToIgnore.add(this.id.getId());
                 return true;
 
             case "BANK" :
@@ -304,12 +305,12 @@ public class AccountImportEntry extends ParsedEntry {
 
             case "RECEIVABLE":
                 contentHandler.recordWarning(this, "Message.Warning.UnsupportedAccountType", this.type);
-                accountIdsToIgnore.add(this.id.id);
+                accountIdsToIgnore.add(this.id.getId());
                 return true;
 
             case "PAYABLE":
                 contentHandler.recordWarning(this, "Message.Warning.UnsupportedAccountType", this.type);
-                accountIdsToIgnore.add(this.id.id);
+                accountIdsToIgnore.add(this.id.getId());
                 return true;
 
             case "ROOT":
@@ -318,7 +319,7 @@ public class AccountImportEntry extends ParsedEntry {
 
             case "TRADING":
                 contentHandler.recordWarning(this, "Message.Warning.UnsupportedAccountType", this.type);
-                accountIdsToIgnore.add(this.id.id);
+                accountIdsToIgnore.add(this.id.getId());
                 return true;
 
             case "CHECKING":
@@ -341,12 +342,12 @@ public class AccountImportEntry extends ParsedEntry {
         }
 
         if (accountType == AccountType.ROOT) {
-            jGnashAccountEntries.put(this.id.id, engine.getRootAccount());
+            jGnashAccountEntries.put(this.id, engine.getRootAccount());
         }
         else {
             Account parentAccount = null;
-            if (this.parentId.id != null) {
-                parentAccount = jGnashAccountEntries.get(this.parentId.id);
+            if (this.parentId.hasId()) {
+                parentAccount = jGnashAccountEntries.get(this.parentId);
             }
 
             CurrencyNode currencyNode = getCurrencyNode(engine);
@@ -381,9 +382,12 @@ public class AccountImportEntry extends ParsedEntry {
                 }
             }
 
-            engine.addAccount(parentAccount, newAccount);
+            if (!engine.addAccount(parentAccount, newAccount)) {
+                contentHandler.recordError("Message.Error.EngineWriteError", "account '" + newAccount.getName() + "'");
+                return false;
+            }
 
-            jGnashAccountEntries.put(this.id.id, newAccount);
+            jGnashAccountEntries.put(this.id, newAccount);
         }
 
         for (Map.Entry<String, AccountImportEntry> entry : this.childAccountEntries.entrySet()) {
@@ -409,7 +413,7 @@ public class AccountImportEntry extends ParsedEntry {
             }
         }
         
-        contentHandler.jGnashSecuritiesByStockAccountId.put(this.id.id, securityNode);
+        contentHandler.jGnashSecuritiesByStockAccountId.put(this.id, securityNode);
         
         account.addSecurity(securityNode);
         return true;
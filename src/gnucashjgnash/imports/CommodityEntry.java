@@ -18,9 +18,6 @@ package gnucashjgnash.imports;
 
 import jgnash.engine.*;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import gnucashjgnash.GnuCashConvertUtil;
 import gnucashjgnash.NoticeTree.Source;
 import gnucashjgnash.imports.GnuCashToJGnashContentHandler.SimpleDataStateHandler;
@@ -48,11 +45,12 @@ public class CommodityEntry extends ParsedEntry {
 
     public static final String CURRENCY_SPACE = "ISO4217";
 
-    Map<String, SlotEntry> slots = new HashMap<>();
+    SlotMap slots = new SlotMap(this);
 
     
     public CommodityEntry(GnuCashToJGnashContentHandler contentHandler) {
     	super(contentHandler);
+    	captureLocation(contentHandler);
     }
     
     
@@ -119,12 +117,12 @@ public class CommodityEntry extends ParsedEntry {
         }
 
         /* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-            switch (qName) {
-            case "cmdty:space" :
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            switch (element) {
+            case CMDTY_SPACE :
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setCommodityEntryField(CommodityEntry commodityEntry, String value) {
@@ -132,7 +130,7 @@ public class CommodityEntry extends ParsedEntry {
                         }
                     });
 
-            case "cmdty:id" :
+            case CMDTY_ID :
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setCommodityEntryField(CommodityEntry commodityEntry, String value) {
@@ -140,7 +138,7 @@ public class CommodityEntry extends ParsedEntry {
                         }
                     });
 
-            case "cmdty:name" :
+            case CMDTY_NAME :
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setCommodityEntryField(CommodityEntry commodityEntry, String value) {
@@ -148,7 +146,7 @@ public class CommodityEntry extends ParsedEntry {
                         }
                     });
     
-            case "cmdty:xcode" :
+            case CMDTY_XCODE :
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setCommodityEntryField(CommodityEntry commodityEntry, String value) {
@@ -156,7 +154,7 @@ public class CommodityEntry extends ParsedEntry {
                         }
                     });
 
-            case "cmdty:fraction" : 
+            case CMDTY_FRACTION : 
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setCommodityEntryField(CommodityEntry commodityEntry, String value) {
@@ -164,7 +162,7 @@ public class CommodityEntry extends ParsedEntry {
                         }
                     });
 
-            case "cmdty:get_quotes" : 
+            case CMDTY_GET_QUOTES : 
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setCommodityEntryField(CommodityEntry commodityEntry, String value) {
@@ -172,7 +170,7 @@ public class CommodityEntry extends ParsedEntry {
                         }
                     });
 
-            case "cmdty:quote_source" :
+            case CMDTY_QUOTE_SOURCE :
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setCommodityEntryField(CommodityEntry commodityEntry, String value) {
@@ -180,7 +178,7 @@ public class CommodityEntry extends ParsedEntry {
                         }
                     });
 
-            case "cmdty:quote_tz" :
+            case CMDTY_QUOTE_TZ :
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setCommodityEntryField(CommodityEntry commodityEntry, String value) {
@@ -188,11 +186,11 @@ public class CommodityEntry extends ParsedEntry {
                         }
                     });
 
-            case "cmdty:slots" : 
+            case CMDTY_SLOTS : 
                 return new SlotEntry.SlotsStateHandler(this.commodityEntry.slots, this.commodityEntry, this.contentHandler, this, qName);
 
             }
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
 
         @Override
@@ -273,12 +271,32 @@ public class CommodityEntry extends ParsedEntry {
 
 
     public static class CommodityRefStateHandler extends GnuCashToJGnashContentHandler.AbstractStateHandler {
-        final CommodityRef commodityRef;
+        CommodityRef commodityRef;
         CommodityRefStateHandler(final CommodityRef commodityRef, GnuCashToJGnashContentHandler contentHandler,
                                  GnuCashToJGnashContentHandler.StateHandler parentStateHandler, String elementName) {
             super(contentHandler, parentStateHandler, elementName);
             this.commodityRef = commodityRef;
         }
+
+        /**
+         * Retrieves a {@link CommodityRefStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @param parentStateHandler
+         * @param element
+         * @param commodityRef
+         * @param elementName
+         * @return	The state handler.
+         */
+        static CommodityRefStateHandler obtain(GnuCashToJGnashContentHandler.AbstractStateHandler parentStateHandler, GnuCashElement element,
+                CommodityRef commodityRef, String elementName) {
+            CommodityRefStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, CommodityRefStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new CommodityRefStateHandler(commodityRef, parentStateHandler.contentHandler, parentStateHandler, elementName));
+            }
+            stateHandler.resetState(elementName);
+            stateHandler.commodityRef = commodityRef;
+            return stateHandler;
+        }
         
         
 		/* (non-Javadoc)
@@ -291,29 +309,19 @@ public class CommodityEntry extends ParsedEntry {
         }
 
         /* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-            switch (qName) {
-            case "cmdty:space" : 
-                return new SimpleDataStateHandler(this.contentHandler, this, qName, new RefSimpleDataSetterImpl() {
-                        @Override
-                        protected void setCommodityRefField(CommodityRef commodityRef, String value) {
-                            commodityRef.space = value;
-                        }
-                    });
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            switch (element) {
+            case CMDTY_SPACE : 
+                return SimpleDataStateHandler.obtain(this, element, qName, REF_SPACE_SETTER);
 
-            case "cmdty:id" : 
-                return new SimpleDataStateHandler(this.contentHandler, this, qName, new RefSimpleDataSetterImpl() {
-                        @Override
-                        protected void setCommodityRefField(CommodityRef commodityRef, String value) {
-                            commodityRef.id = value;
-                        }
-                    });
+            case CMDTY_ID : 
+                return SimpleDataStateHandler.obtain(this, element, qName, REF_ID_SETTER);
                 
             }
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
     }
 
@@ -323,6 +331,26 @@ public class CommodityEntry extends ParsedEntry {
                                 GnuCashToJGnashContentHandler.StateHandler parentStateHandler, String elementName) {
             super(currencyRef, contentHandler, parentStateHandler, elementName);
         }
+
+        /**
+         * Retrieves a {@link CurrencyRefStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @param parentStateHandler
+         * @param element
+         * @param currencyRef
+         * @param elementName
+         * @return	The state handler.
+         */
+        static CurrencyRefStateHandler obtain(GnuCashToJGnashContentHandler.AbstractStateHandler parentStateHandler, GnuCashElement element,
+                CurrencyRef currencyRef, String elementName) {
+            CurrencyRefStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, CurrencyRefStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new CurrencyRefStateHandler(currencyRef, parentStateHandler.contentHandler, parentStateHandler, elementName));
+            }
+            stateHandler.resetState(elementName);
+            stateHandler.commodityRef = currencyRef;
+            return stateHandler;
+        }
     }
 
     static abstract class RefSimpleDataSetterImpl extends GnuCashToJGnashContentHandler.AbstractSimpleDataSetter {
@@ -332,8 +360,28 @@ public class CommodityEntry extends ParsedEntry {
             setCommodityRefField(parentStateHandler.commodityRef, characters);
         }
 
+        @Override
+        public boolean isTextPooled() {
+            // Every transaction and price refers to a commodity.
+            return true;
+        }
+
         protected abstract void setCommodityRefField(CommodityRef commodityRef, String value);
     }
+    
+    static final RefSimpleDataSetterImpl REF_SPACE_SETTER = new RefSimpleDataSetterImpl() {
+        @Override
+        protected void setCommodityRefField(CommodityRef commodityRef, String value) {
+            commodityRef.space = value;
+        }
+    };
+    
+    static final RefSimpleDataSetterImpl REF_ID_SETTER = new RefSimpleDataSetterImpl() {
+        @Override
+        protected void setCommodityRefField(CommodityRef commodityRef, String value) {
+            commodityRef.id = value;
+        }
+    };
 
     
     /**
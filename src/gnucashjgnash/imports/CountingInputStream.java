@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * {@link FilterInputStream} that keeps track of the number of bytes read from the underlying stream,
+ * optionally passing the running count to a listener after each read. The count may be read from
+ * any thread.
+ * @author albert
+ *
+ */
+public class CountingInputStream extends FilterInputStream {
+	private final LongConsumer countListener;
+	private volatile long count;
+	private long markCount;
+
+	/**
+	 * Constructor.
+	 * @param in	The stream to count.
+	 * @param countListener	If not <code>null</code>, called with the total number of bytes read after each read.
+	 * This is called from the thread doing the reading.
+	 */
+	public CountingInputStream(InputStream in, LongConsumer countListener) {
+		super(in);
+		this.countListener = countListener;
+	}
+
+	public CountingInputStream(InputStream in) {
+		this(in, null);
+	}
+
+
+	/**
+	 * @return	The number of bytes read or skipped so far.
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+
+	private void addCount(long toAdd) {
+		if (toAdd > 0) {
+			long newCount = this.count + toAdd;
+			this.count = newCount;
+			if (this.countListener != null) {
+				this.countListener.accept(newCount);
+			}
+		}
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.FilterInputStream#read()
+	 */
+	@Override
+	public int read() throws IOException {
+		int value = this.in.read();
+		if (value >= 0) {
+			addCount(1);
+		}
+		return value;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.FilterInputStream#read(byte[], int, int)
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int result = this.in.read(b, off, len);
+		addCount(result);
+		return result;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.FilterInputStream#skip(long)
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		long result = this.in.skip(n);
+		addCount(result);
+		return result;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.FilterInputStream#mark(int)
+	 */
+	@Override
+	public synchronized void mark(int readlimit) {
+		this.in.mark(readlimit);
+		this.markCount = this.count;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.FilterInputStream#reset()
+	 */
+	@Override
+	public synchronized void reset() throws IOException {
+		this.in.reset();
+		this.count = this.markCount;
+	}
+
+}
@@ -83,7 +83,7 @@ public class DeferredInstanceEntry extends ParsedEntry {
 				String elementName) {
 			super(contentHandler, parentStateHandler, elementName);
 			this.deferredInstanceEntry = deferredInstanceEntry;
-			deferredInstanceEntry.updateLocatorInfo(contentHandler);
+			deferredInstanceEntry.captureLocation(contentHandler);
 		}
 
         
@@ -97,22 +97,22 @@ public class DeferredInstanceEntry extends ParsedEntry {
         
 
         /* (non-Javadoc)
-		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
 		 */
 		@Override
-		protected StateHandler getStateHandlerForElement(String qName) {
-			switch (qName) {
-			case "sx:last":
+		protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+			switch (element) {
+			case SX_LAST:
 				return new GDateEntry.GDateStateHandler(this.deferredInstanceEntry.last, this.contentHandler, this, qName);
 			
-			case "sx:rem-occur":
+			case SX_REM_OCCUR:
 				return new IntEntry.IntEntryStateHandler(this.deferredInstanceEntry.remOccur, this.contentHandler, this, qName);
 				
-			case "sx:instanceCount":
+			case SX_INSTANCE_COUNT:
 				return new IntEntry.IntEntryStateHandler(this.deferredInstanceEntry.instanceCount, this.contentHandler, this, qName);
 			}
 
-			return super.getStateHandlerForElement(qName);
+			return super.getStateHandlerForElement(element, qName);
 		}
 	}
 	
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts occurrences of elements by their path from the document element, kept as a tree with one
+ * {@link Node} per distinct path. State handlers hold on to their node, so counting an occurrence is just
+ * an increment, the path is only turned into text when the counts are reported.
+ * <p>
+ * This is not thread safe, each parse should use its own instance.
+ * @author albert
+ *
+ */
+public class ElementPathCounts {
+
+	public static class Node {
+		final Node parent;
+		final String name;
+		int count;
+		private Map<String, Node> children;
+
+		Node(Node parent, String name) {
+			this.parent = parent;
+			this.name = name;
+		}
+
+		/**
+		 * Retrieves the node for a child element, creating it if necessary.
+		 * @param name	The child element's name.
+		 * @return	The node.
+		 */
+		public Node getChild(String name) {
+			if (this.children == null) {
+				this.children = new HashMap<>();
+			}
+			Node child = this.children.get(name);
+			if (child == null) {
+				child = new Node(this, name);
+				this.children.put(name, child);
+			}
+			return child;
+		}
+
+		public int getCount() {
+			return this.count;
+		}
+
+		/**
+		 * @return	The element names from the document element down to this one, separated by '&gt;'.
+		 */
+		public String getPath() {
+			if ((this.parent == null) || (this.parent.name == null)) {
+				return this.name;
+			}
+			return this.parent.getPath() + ">" + this.name;
+		}
+
+		void addCounts(Node node) {
+			this.count += node.count;
+			if (node.children != null) {
+				for (Node child : node.children.values()) {
+					getChild(child.name).addCounts(child);
+				}
+			}
+		}
+
+		void gatherCountedNodes(List<Node> nodes) {
+			if (this.count > 0) {
+				nodes.add(this);
+			}
+			if (this.children != null) {
+				for (Node child : this.children.values()) {
+					child.gatherCountedNodes(nodes);
+				}
+			}
+		}
+	}
+
+
+	final Node root = new Node(null, null);
+
+
+	/**
+	 * @return	The node for the empty path, the document element's node is its child.
+	 */
+	public Node getRoot() {
+		return this.root;
+	}
+
+
+	/**
+	 * @return	The nodes that have been counted at least once, sorted by path.
+	 */
+	public List<Node> getCountedNodes() {
+		List<Node> nodes = new ArrayList<>();
+		this.root.gatherCountedNodes(nodes);
+		nodes.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+		return nodes;
+	}
+
+
+	/**
+	 * Adds the counts of another instance to this one's.
+	 * @param counts	The counts to add.
+	 */
+	public void addCounts(ElementPathCounts counts) {
+		this.root.addCounts(counts.root);
+	}
+
+
+	public void clear() {
+		this.root.children = null;
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+/**
+ * Converts element names to {@link GnuCashElement}s. The XML parsers hand out the same {@link String} instance
+ * every time they see a given element name, so the names are looked up by identity in a small open addressed
+ * table, only names not yet in the table are hashed. Names that don't come from a parser's symbol table still
+ * work, once the table is full they're just hashed every time.
+ * <p>
+ * This is not thread safe, each parse should use its own table.
+ * @author albert
+ *
+ */
+public class ElementSymbolTable {
+	// Must be a power of 2.
+	static final int TABLE_SIZE = 1024;
+
+	// Keep the table at most half full so the probe runs stay short.
+	static final int MAX_ENTRIES = TABLE_SIZE / 2;
+
+	private final String [] names = new String[TABLE_SIZE];
+	private final GnuCashElement [] elements = new GnuCashElement[TABLE_SIZE];
+	private int entryCount;
+
+
+	/**
+	 * Retrieves the element for an element name.
+	 * @param qName	The qualified element name.
+	 * @return	The element, {@link GnuCashElement#UNKNOWN} if the name is not one of ours.
+	 */
+	public GnuCashElement lookup(String qName) {
+		int index = System.identityHashCode(qName) & (TABLE_SIZE - 1);
+		String name;
+		while ((name = this.names[index]) != null) {
+			if (name == qName) {
+				return this.elements[index];
+			}
+			index = (index + 1) & (TABLE_SIZE - 1);
+		}
+
+		GnuCashElement element = GnuCashElement.fromQName(qName);
+		if (this.entryCount < MAX_ENTRIES) {
+			this.names[index] = qName;
+			this.elements[index] = element;
+			++this.entryCount;
+		}
+		return element;
+	}
+
+}
@@ -55,6 +55,21 @@ public class GDateEntry extends ParsedEntry {
     	return this.isParsed;
     }
     
+    /**
+     * Parses a date in the ISO format, sets {@link #parseError} if the date is not valid.
+     * @param text	The date text.
+     */
+    void parse(String text) {
+        try {
+            this.parseError = null;
+            this.localDate = LocalDate.parse(text);
+            this.isParsed = true;
+        }
+        catch (DateTimeParseException e) {
+            this.parseError = e.getLocalizedMessage();
+        }
+    }
+    
     public boolean validateParse(StateHandler stateHandler, String qName) {
     	if (this.parseError != null) {
             stateHandler.recordWarning("Message.Parse.XMLGDateParseError", qName, this.parseError);
@@ -72,7 +87,6 @@ public class GDateEntry extends ParsedEntry {
                 String elementName) {
             super(contentHandler, parentStateHandler, elementName);
             this.gDateEntry = gDateEntry;
-            gDateEntry.updateLocatorInfo(contentHandler);
         }
         
         
@@ -83,15 +97,24 @@ public class GDateEntry extends ParsedEntry {
         public ParsedEntry getParsedEntry() {
         	return this.gDateEntry;
         }
+
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#isTextNeeded()
+         */
+        @Override
+        public boolean isTextNeeded() {
+            // The date may be the text of the element instead of a gdate child element.
+            return true;
+        }
         
 
         /* (non-Javadoc)
-		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
 		 */
 		@Override
-		protected StateHandler getStateHandlerForElement(String qName) {
-			switch (qName) {
-			case "gdate" :
+		protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+			switch (element) {
+			case GDATE :
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                     @Override
                     protected void setGDateEntryField(GDateEntry timeEntry, String value,
@@ -101,7 +124,7 @@ public class GDateEntry extends ParsedEntry {
                 });
 			}
 			
-			return super.getStateHandlerForElement(qName);
+			return super.getStateHandlerForElement(element, qName);
 		}
 
 
@@ -112,15 +135,7 @@ public class GDateEntry extends ParsedEntry {
         protected void endState() {
             super.endState();
             
-            try {
-                this.gDateEntry.parseError = null;
-                String valueStr = (this.gDateValueStr == null) ? this.characters : this.gDateValueStr;
-                this.gDateEntry.localDate = LocalDate.parse(valueStr);
-                this.gDateEntry.isParsed = true;
-            }
-            catch (DateTimeParseException e) {
-                this.gDateEntry.parseError = e.getLocalizedMessage();
-            }
+            this.gDateEntry.parse((this.gDateValueStr == null) ? this.characters : this.gDateValueStr);
         }
         
     }
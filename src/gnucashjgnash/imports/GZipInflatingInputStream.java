@@ -0,0 +1,324 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Buffered gzip decoder, replaces {@link java.util.zip.GZIPInputStream} so we can read the compressed
+ * data in large blocks, hand the parser large blocks of uncompressed data, and reuse the {@link Inflater}
+ * between files. Multi-member gzip files are supported, the CRC and size of each member are verified.
+ * @author albert
+ *
+ */
+public class GZipInflatingInputStream extends InputStream {
+	private static final int FHCRC = 0x02;
+	private static final int FEXTRA = 0x04;
+	private static final int FNAME = 0x08;
+	private static final int FCOMMENT = 0x10;
+
+	private static final int MAX_POOLED_INFLATERS = 4;
+	private static final ArrayDeque<Inflater> inflaterPool = new ArrayDeque<>();
+
+	private InputStream compressedStream;
+	private Inflater inflater;
+	private final CRC32 crc = new CRC32();
+	private long memberSize;
+
+	private final byte [] inputBuffer;
+	private int inputPos;
+	private int inputLimit;
+
+	private final byte [] outputBuffer;
+	private int outputPos;
+	private int outputLimit;
+
+	private boolean isEOF;
+	private final byte [] singleByte = new byte [1];
+
+
+	/**
+	 * Constructor.
+	 * @param compressedStream	The stream with the gzip data, this is read in blocks of bufferSize bytes so it
+	 * doesn't need to be buffered.
+	 * @param bufferSize	The size of the compressed and uncompressed buffers.
+	 * @throws IOException
+	 */
+	public GZipInflatingInputStream(InputStream compressedStream, int bufferSize) throws IOException {
+		this.compressedStream = compressedStream;
+		this.inputBuffer = new byte [bufferSize];
+		this.outputBuffer = new byte [bufferSize];
+		this.inflater = acquireInflater();
+
+		try {
+			if (!readMemberHeader()) {
+				throw new ZipException("Not in GZIP format");
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+
+	static Inflater acquireInflater() {
+		synchronized (inflaterPool) {
+			Inflater inflater = inflaterPool.pollFirst();
+			if (inflater != null) {
+				return inflater;
+			}
+		}
+		return new Inflater(true);
+	}
+
+	static void releaseInflater(Inflater inflater) {
+		inflater.reset();
+		synchronized (inflaterPool) {
+			if (inflaterPool.size() < MAX_POOLED_INFLATERS) {
+				inflaterPool.addFirst(inflater);
+				return;
+			}
+		}
+		inflater.end();
+	}
+
+
+	private boolean fillInput() throws IOException {
+		this.inputPos = 0;
+		this.inputLimit = 0;
+		int count = this.compressedStream.read(this.inputBuffer, 0, this.inputBuffer.length);
+		if (count <= 0) {
+			return false;
+		}
+		this.inputLimit = count;
+		return true;
+	}
+
+	private int readInputByte() throws IOException {
+		if (this.inputPos >= this.inputLimit) {
+			if (!fillInput()) {
+				throw new EOFException("Unexpected end of GZIP data");
+			}
+		}
+		return this.inputBuffer[this.inputPos++] & 0xff;
+	}
+
+	private int readInputShort() throws IOException {
+		int low = readInputByte();
+		return (readInputByte() << 8) | low;
+	}
+
+	private long readInputInt() throws IOException {
+		long low = readInputShort();
+		return ((long)readInputShort() << 16) | low;
+	}
+
+	private void skipInputBytes(int count) throws IOException {
+		while (count-- > 0) {
+			readInputByte();
+		}
+	}
+
+	private void skipInputString() throws IOException {
+		while (readInputByte() != 0) {
+		}
+	}
+
+
+	/**
+	 * Reads the header of the next gzip member.
+	 * @return	<code>false</code> if we're at the end of the data or the remaining data isn't a gzip member.
+	 * @throws IOException
+	 */
+	private boolean readMemberHeader() throws IOException {
+		if (this.inputPos >= this.inputLimit) {
+			if (!fillInput()) {
+				return false;
+			}
+		}
+		if (readInputByte() != 0x1f) {
+			return false;
+		}
+		if (this.inputPos >= this.inputLimit) {
+			if (!fillInput()) {
+				return false;
+			}
+		}
+		if (readInputByte() != 0x8b) {
+			return false;
+		}
+		if (readInputByte() != Deflater.DEFLATED) {
+			throw new ZipException("Unsupported GZIP compression method");
+		}
+
+		int flags = readInputByte();
+		// MTIME, XFL, OS
+		skipInputBytes(6);
+
+		if ((flags & FEXTRA) != 0) {
+			skipInputBytes(readInputShort());
+		}
+		if ((flags & FNAME) != 0) {
+			skipInputString();
+		}
+		if ((flags & FCOMMENT) != 0) {
+			skipInputString();
+		}
+		if ((flags & FHCRC) != 0) {
+			skipInputBytes(2);
+		}
+
+		this.inflater.reset();
+		this.crc.reset();
+		this.memberSize = 0;
+		return true;
+	}
+
+
+	private void readMemberTrailer() throws IOException {
+		// The inflater may not have used all the input we gave it.
+		this.inputPos = this.inputLimit - this.inflater.getRemaining();
+
+		long expectedCRC = readInputInt();
+		long expectedSize = readInputInt();
+		if (expectedCRC != this.crc.getValue()) {
+			throw new ZipException("Corrupt GZIP trailer, CRC mismatch");
+		}
+		if (expectedSize != (this.memberSize & 0xffffffffL)) {
+			throw new ZipException("Corrupt GZIP trailer, size mismatch");
+		}
+	}
+
+
+	/**
+	 * Inflates into the buffer.
+	 * @return	The number of bytes inflated, -1 if at the end of the data.
+	 * @throws IOException
+	 */
+	private int inflate(byte [] buffer, int offset, int length) throws IOException {
+		while (!this.isEOF) {
+			int count;
+			try {
+				count = this.inflater.inflate(buffer, offset, length);
+			} catch (DataFormatException e) {
+				String msg = e.getMessage();
+				throw new ZipException((msg != null) ? msg : "Invalid GZIP data format");
+			}
+
+			if (count > 0) {
+				this.crc.update(buffer, offset, count);
+				this.memberSize += count;
+				return count;
+			}
+
+			if (this.inflater.finished()) {
+				readMemberTrailer();
+				if (!readMemberHeader()) {
+					this.isEOF = true;
+				}
+			}
+			else if (this.inflater.needsDictionary()) {
+				throw new ZipException("GZIP preset dictionaries are not supported");
+			}
+			else if (this.inflater.needsInput()) {
+				if ((this.inputPos >= this.inputLimit) && !fillInput()) {
+					throw new EOFException("Unexpected end of GZIP data");
+				}
+				this.inflater.setInput(this.inputBuffer, this.inputPos, this.inputLimit - this.inputPos);
+				this.inputPos = this.inputLimit;
+			}
+		}
+		return -1;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#read()
+	 */
+	@Override
+	public int read() throws IOException {
+		return (read(this.singleByte, 0, 1) < 0) ? -1 : (this.singleByte[0] & 0xff);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (this.inflater == null) {
+			throw new IOException("Stream closed");
+		}
+		if (len == 0) {
+			return 0;
+		}
+
+		if (this.outputPos >= this.outputLimit) {
+			if (len >= this.outputBuffer.length) {
+				// Large read, no point in copying through our buffer.
+				return inflate(b, off, len);
+			}
+
+			this.outputPos = 0;
+			this.outputLimit = 0;
+			int count = inflate(this.outputBuffer, 0, this.outputBuffer.length);
+			if (count < 0) {
+				return -1;
+			}
+			this.outputLimit = count;
+		}
+
+		int count = Math.min(len, this.outputLimit - this.outputPos);
+		System.arraycopy(this.outputBuffer, this.outputPos, b, off, count);
+		this.outputPos += count;
+		return count;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#available()
+	 */
+	@Override
+	public int available() throws IOException {
+		return this.outputLimit - this.outputPos;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.inflater != null) {
+			releaseInflater(this.inflater);
+			this.inflater = null;
+		}
+		if (this.compressedStream != null) {
+			this.compressedStream.close();
+			this.compressedStream = null;
+		}
+	}
+
+}
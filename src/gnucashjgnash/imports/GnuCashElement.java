@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The XML elements the state handlers know about. The state handlers dispatch on these instead of on the
+ * element names, the element names are converted to these once per element via an {@link ElementSymbolTable}.
+ * @author albert
+ *
+ */
+public enum GnuCashElement {
+	/**
+	 * Any element without an entry of its own.
+	 */
+	UNKNOWN(null),
+
+	GNC_V2("gnc-v2"),
+	GNC_COUNT_DATA("gnc:count-data"),
+	GNC_BOOK("gnc:book"),
+	GNC_TRANSACTION("gnc:transaction"),
+	GNC_ACCOUNT("gnc:account"),
+	GNC_COMMODITY("gnc:commodity"),
+	GNC_PRICEDB("gnc:pricedb"),
+	GNC_SCHEDXACTION("gnc:schedxaction"),
+	GNC_TEMPLATE_TRANSACTIONS("gnc:template-transactions"),
+	GNC_BUDGET("gnc:budget"),
+	GNC_RECURRENCE("gnc:recurrence"),
+
+	BOOK_ID("book:id"),
+	BOOK_SLOTS("book:slots"),
+
+	ACT_NAME("act:name"),
+	ACT_ID("act:id"),
+	ACT_TYPE("act:type"),
+	ACT_DESCRIPTION("act:description"),
+	ACT_CODE("act:code"),
+	ACT_SLOTS("act:slots"),
+	ACT_PARENT("act:parent"),
+	ACT_COMMODITY("act:commodity"),
+	ACT_COMMODITY_SCU("act:commodity-scu"),
+	ACT_NON_STANDARD_SCU("act:non-standard-scu"),
+	ACT_LOTS("act:lots"),
+
+	CMDTY_SPACE("cmdty:space"),
+	CMDTY_ID("cmdty:id"),
+	CMDTY_NAME("cmdty:name"),
+	CMDTY_XCODE("cmdty:xcode"),
+	CMDTY_FRACTION("cmdty:fraction"),
+	CMDTY_GET_QUOTES("cmdty:get_quotes"),
+	CMDTY_QUOTE_SOURCE("cmdty:quote_source"),
+	CMDTY_QUOTE_TZ("cmdty:quote_tz"),
+	CMDTY_SLOTS("cmdty:slots"),
+
+	PRICE("price"),
+	PRICE_ID("price:id"),
+	PRICE_COMMODITY("price:commodity"),
+	PRICE_CURRENCY("price:currency"),
+	PRICE_TIME("price:time"),
+	PRICE_VALUE("price:value"),
+	PRICE_SOURCE("price:source"),
+	PRICE_TYPE("price:type"),
+
+	TRN_ID("trn:id"),
+	TRN_CURRENCY("trn:currency"),
+	TRN_NUM("trn:num"),
+	TRN_DATE_POSTED("trn:date-posted"),
+	TRN_DATE_ENTERED("trn:date-entered"),
+	TRN_DESCRIPTION("trn:description"),
+	TRN_SLOTS("trn:slots"),
+	TRN_SPLITS("trn:splits"),
+	TRN_SPLIT("trn:split"),
+
+	SPLIT_ID("split:id"),
+	SPLIT_MEMO("split:memo"),
+	SPLIT_ACTION("split:action"),
+	SPLIT_RECONCILED_STATE("split:reconciled-state"),
+	SPLIT_RECONCILE_DATE("split:reconcile-date"),
+	SPLIT_VALUE("split:value"),
+	SPLIT_QUANTITY("split:quantity"),
+	SPLIT_ACCOUNT("split:account"),
+	SPLIT_LOT("split:lot"),
+	SPLIT_SLOTS("split:slots"),
+
+	SLOT("slot"),
+	SLOT_KEY("slot:key"),
+	SLOT_VALUE("slot:value"),
+
+	TS_DATE("ts:date"),
+	GDATE("gdate"),
+
+	SX_ID("sx:id"),
+	SX_NAME("sx:name"),
+	SX_ENABLED("sx:enabled"),
+	SX_AUTO_CREATE("sx:autoCreate"),
+	SX_AUTO_CREATE_NOTIFY("sx:autoCreateNotify"),
+	SX_ADVANCE_CREATE_DAYS("sx:advanceCreateDays"),
+	SX_ADVANCE_REMIND_DAYS("sx:advanceRemindDays"),
+	SX_INSTANCE_COUNT("sx:instanceCount"),
+	SX_START("sx:start"),
+	SX_LAST("sx:last"),
+	SX_END("sx:end"),
+	SX_NUM_OCCUR("sx:num-occur"),
+	SX_REM_OCCUR("sx:rem-occur"),
+	SX_TEMPL_ACCT("sx:templ-acct"),
+	SX_SCHEDULE("sx:schedule"),
+	SX_DEFERRED_INSTANCE("sx:deferredInstance"),
+	SX_SLOTS("sx:slots"),
+
+	RECURRENCE_MULT("recurrence:mult"),
+	RECURRENCE_PERIOD_TYPE("recurrence:period_type"),
+	RECURRENCE_START("recurrence:start"),
+	RECURRENCE_WEEKEND_ADJ("recurrence:weekend_adj");
+
+
+	/**
+	 * The number of elements, for arrays indexed by {@link #ordinal()}.
+	 */
+	public static final int ELEMENT_COUNT = values().length;
+
+	private static final Map<String, GnuCashElement> elementsByQName = new HashMap<>();
+	static {
+		for (GnuCashElement element : values()) {
+			if (element.qName != null) {
+				elementsByQName.put(element.qName, element);
+			}
+		}
+	}
+
+	final String qName;
+
+	GnuCashElement(String qName) {
+		this.qName = qName;
+	}
+
+
+	/**
+	 * @return	The qualified name of the element, <code>null</code> for {@link #UNKNOWN}.
+	 */
+	public String getQName() {
+		return this.qName;
+	}
+
+
+	/**
+	 * Looks up the element for a qualified name. This hashes the name, {@link ElementSymbolTable#lookup(String)}
+	 * should be used while parsing.
+	 * @param qName	The qualified name.
+	 * @return	The element, {@link #UNKNOWN} if the name is not one of ours.
+	 */
+	public static GnuCashElement fromQName(String qName) {
+		GnuCashElement element = elementsByQName.get(qName);
+		return (element != null) ? element : UNKNOWN;
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+/**
+ * The file formats a GnuCash file may be stored in, identified by the leading bytes of the file.
+ * <p>
+ * The formats are tested in declaration order, {@link #XML} is the fall back, if the file isn't actually
+ * XML the parser will report the error. {@link #SQLITE} files are not XML, they're read via {@link GnuCashSQLiteReader}.
+ * @author albert
+ *
+ */
+public enum GnuCashFileFormat {
+	GZIP_XML(new byte [] { 0x1f, (byte)0x8b }),
+	SQLITE(new byte [] { 'S', 'Q', 'L', 'i', 't', 'e', ' ', 'f', 'o', 'r', 'm', 'a', 't', ' ', '3', 0 }),
+	XML(null);
+
+	/**
+	 * The number of bytes at the start of the file needed by {@link #detect(byte[], int)}.
+	 */
+	public static final int HEADER_SIZE = 16;
+
+	final byte [] magicBytes;
+
+	GnuCashFileFormat(byte [] magicBytes) {
+		this.magicBytes = magicBytes;
+	}
+
+
+	/**
+	 * @return	<code>true</code> if the file contents are compressed.
+	 */
+	public boolean isCompressed() {
+		return this == GZIP_XML;
+	}
+
+	/**
+	 * @return	<code>true</code> if the file is an XML file, possibly compressed.
+	 */
+	public boolean isXML() {
+		return this != SQLITE;
+	}
+
+
+	boolean matches(byte [] header, int length) {
+		if (this.magicBytes == null) {
+			return true;
+		}
+		if (length < this.magicBytes.length) {
+			return false;
+		}
+		for (int i = 0; i < this.magicBytes.length; ++i) {
+			if (header[i] != this.magicBytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Determines the file format from the leading bytes of a file.
+	 * @param header	The leading bytes of the file, normally {@link #HEADER_SIZE} bytes.
+	 * @param length	The number of valid bytes in header, may be less than {@link #HEADER_SIZE} for short files.
+	 * @return	The file format, never <code>null</code>.
+	 */
+	public static GnuCashFileFormat detect(byte [] header, int length) {
+		for (GnuCashFileFormat format : values()) {
+			if (format.matches(header, length)) {
+				return format;
+			}
+		}
+		return XML;
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Handles opening a GnuCash file, the file format is determined once from the header bytes of the file
+ * and the appropriate buffered stream is then supplied.
+ * @author albert
+ *
+ */
+public class GnuCashFileInput {
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+	public static final int MIN_BUFFER_SIZE = 4 * 1024;
+
+	private final String fileName;
+	private final GnuCashFileFormat fileFormat;
+	private final int bufferSize;
+	private boolean isMemoryMapped = true;
+	private boolean isReadAhead;
+	private LongConsumer progressListener;
+
+
+	/**
+	 * Constructor, reads the header of the file to determine the format.
+	 * @param fileName	The name of the file.
+	 * @param bufferSize	The size of the read buffers, values less than {@link #MIN_BUFFER_SIZE} are bumped up to
+	 * {@link #MIN_BUFFER_SIZE}.
+	 * @throws IOException
+	 */
+	public GnuCashFileInput(String fileName, int bufferSize) throws IOException {
+		this.fileName = fileName;
+		this.bufferSize = Math.max(bufferSize, MIN_BUFFER_SIZE);
+
+		byte [] header = new byte [GnuCashFileFormat.HEADER_SIZE];
+		int length = 0;
+		try (InputStream inputStream = new FileInputStream(fileName)) {
+			int count;
+			while ((length < header.length) && ((count = inputStream.read(header, length, header.length - length)) > 0)) {
+				length += count;
+			}
+		}
+
+		this.fileFormat = GnuCashFileFormat.detect(header, length);
+	}
+
+	public GnuCashFileInput(String fileName) throws IOException {
+		this(fileName, DEFAULT_BUFFER_SIZE);
+	}
+
+
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	public GnuCashFileFormat getFileFormat() {
+		return this.fileFormat;
+	}
+
+	/**
+	 * @return	The size of the file in bytes.
+	 */
+	public long getFileSize() {
+		return new File(this.fileName).length();
+	}
+
+	public int getBufferSize() {
+		return this.bufferSize;
+	}
+
+	public boolean isMemoryMapped() {
+		return this.isMemoryMapped;
+	}
+
+	/**
+	 * @param isMemoryMapped	If <code>true</code> uncompressed files are read via {@link MappedFileInputStream},
+	 * otherwise they are read via a buffered {@link FileInputStream}.
+	 */
+	public void setMemoryMapped(boolean isMemoryMapped) {
+		this.isMemoryMapped = isMemoryMapped;
+	}
+
+	public boolean isReadAhead() {
+		return this.isReadAhead;
+	}
+
+	/**
+	 * @param isReadAhead	If <code>true</code> compressed files are decompressed on a separate thread via
+	 * {@link ReadAheadInputStream}.
+	 */
+	public void setReadAhead(boolean isReadAhead) {
+		this.isReadAhead = isReadAhead;
+	}
+
+
+	public LongConsumer getProgressListener() {
+		return this.progressListener;
+	}
+
+	/**
+	 * @param progressListener	If not <code>null</code>, called with the number of bytes of the file read so far
+	 * as the streams from {@link #openXMLInputStream()} are read. For compressed files this is the number of
+	 * compressed bytes, so it can be compared against {@link #getFileSize()}. With read-ahead this is called
+	 * from the read-ahead thread.
+	 */
+	public void setProgressListener(LongConsumer progressListener) {
+		this.progressListener = progressListener;
+	}
+
+
+	private InputStream countStream(InputStream inputStream) {
+		return (this.progressListener != null) ? new CountingInputStream(inputStream, this.progressListener) : inputStream;
+	}
+
+
+	/**
+	 * Opens the file as an uncompressed XML stream.
+	 * @return	The input stream, the caller is responsible for closing it.
+	 * @throws IOException	If the file is not an XML file.
+	 */
+	public InputStream openXMLInputStream() throws IOException {
+		switch (this.fileFormat) {
+		case SQLITE :
+			throw new IOException("The file is a SQLite database, not an XML file.");
+
+		case GZIP_XML :
+			InputStream inputStream = new GZipInflatingInputStream(countStream(new FileInputStream(this.fileName)), this.bufferSize);
+			if (this.isReadAhead) {
+				inputStream = new ReadAheadInputStream(inputStream, this.bufferSize, ReadAheadInputStream.DEFAULT_CHUNK_COUNT);
+			}
+			return inputStream;
+
+		case XML :
+		default :
+			if (this.isMemoryMapped) {
+				return countStream(new MappedFileInputStream(this.fileName));
+			}
+			return countStream(new BufferedInputStream(new FileInputStream(this.fileName), this.bufferSize));
+		}
+	}
+
+
+	/**
+	 * Opens a byte range of an uncompressed file.
+	 * @param start	The offset of the first byte of the range.
+	 * @param end	The offset just past the last byte of the range.
+	 * @return	The input stream, the caller is responsible for closing it.
+	 * @throws IOException	If the file is compressed or is not an XML file.
+	 */
+	public MappedFileInputStream openRangeInputStream(long start, long end) throws IOException {
+		if (this.fileFormat.isCompressed() || !this.fileFormat.isXML()) {
+			throw new IOException("Byte ranges are only supported for uncompressed XML files.");
+		}
+		return new MappedFileInputStream(this.fileName, start, end, MappedFileInputStream.DEFAULT_WINDOW_SIZE);
+	}
+
+}
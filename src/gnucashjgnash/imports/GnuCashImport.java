@@ -20,36 +20,221 @@ import jgnash.engine.DataStoreType;
 import jgnash.engine.Engine;
 import jgnash.engine.EngineFactory;
 import jgnash.util.FileUtils;
-import org.xml.sax.*;
+import org.xml.sax.SAXException;
 
 import gnucashjgnash.GnuCashConvertUtil;
 import gnucashjgnash.NoticeTree;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.ZipException;
 
 public class GnuCashImport {
     private static final Logger LOG = Logger.getLogger(GnuCashImport.class.getName());
 
     private String errorMsg;
     private NoticeTree warningNoticeTree;
-    private static SAXParserFactory parserFactory;
+    private int inputBufferSize = GnuCashFileInput.DEFAULT_BUFFER_SIZE;
+    private boolean isMemoryMappedInput = true;
+    private boolean isReadAheadDecompression;
+    private int maxStatusUpdatesPerSecond = StatusDispatcher.DEFAULT_MAX_UPDATES_PER_SECOND;
+    private GnuCashXMLParser.Backend parserBackend = GnuCashXMLParser.Backend.SAX;
+    private int parseThreadCount = 1;
+    private int parseChunkSize = ParallelTransactionParser.DEFAULT_CHUNK_SIZE;
+    private ImportFilter importFilter;
+    private boolean isStreamingConversion;
+    private boolean isColumnarTransactionStore;
+    private long transactionSpillMemoryBudget;
+    private File transactionSpillDirectory;
+    private int conversionThreadCount = 1;
+    private boolean isPipelinedConversion;
 
     public GnuCashImport() {
 
     }
 
+    public int getInputBufferSize() {
+        return inputBufferSize;
+    }
+
+    /**
+     * Sets the size of the buffers used to read the GnuCash file. For compressed files this is used for both
+     * the compressed and the uncompressed buffers.
+     * @param inputBufferSize
+     */
+    public void setInputBufferSize(int inputBufferSize) {
+        this.inputBufferSize = inputBufferSize;
+    }
+
+    public boolean isMemoryMappedInput() {
+        return isMemoryMappedInput;
+    }
+
+    /**
+     * @param isMemoryMappedInput   If <code>true</code> uncompressed GnuCash files are read via memory mapping.
+     */
+    public void setMemoryMappedInput(boolean isMemoryMappedInput) {
+        this.isMemoryMappedInput = isMemoryMappedInput;
+    }
+
+    public boolean isReadAheadDecompression() {
+        return isReadAheadDecompression;
+    }
+
+    /**
+     * @param isReadAheadDecompression  If <code>true</code> compressed GnuCash files are decompressed on a separate
+     * thread so decompression and parsing can overlap.
+     */
+    public void setReadAheadDecompression(boolean isReadAheadDecompression) {
+        this.isReadAheadDecompression = isReadAheadDecompression;
+    }
+
+    public int getMaxStatusUpdatesPerSecond() {
+        return maxStatusUpdatesPerSecond;
+    }
+
+    /**
+     * @param maxStatusUpdatesPerSecond The maximum number of times per second the {@link StatusCallback} passed to
+     * {@link #convertGnuCashToJGnash(String, String, DataStoreType, StatusCallback)} is called, updates in between
+     * are coalesced.
+     */
+    public void setMaxStatusUpdatesPerSecond(int maxStatusUpdatesPerSecond) {
+        this.maxStatusUpdatesPerSecond = maxStatusUpdatesPerSecond;
+    }
+
+    public GnuCashXMLParser.Backend getParserBackend() {
+        return parserBackend;
+    }
+
+    /**
+     * @param parserBackend The XML parser used to parse GnuCash XML files.
+     */
+    public void setParserBackend(GnuCashXMLParser.Backend parserBackend) {
+        this.parserBackend = parserBackend;
+    }
+
+    public int getParseThreadCount() {
+        return parseThreadCount;
+    }
+
+    /**
+     * @param parseThreadCount  If greater than 1, the transactions of uncompressed GnuCash XML files are parsed by
+     * this many threads via {@link ParallelTransactionParser}.
+     */
+    public void setParseThreadCount(int parseThreadCount) {
+        this.parseThreadCount = parseThreadCount;
+    }
+
+    public int getParseChunkSize() {
+        return parseChunkSize;
+    }
+
+    /**
+     * @param parseChunkSize    The number of bytes of transactions handed to a thread at a time when the
+     * transactions are parsed in parallel, see {@link #setParseThreadCount(int)}.
+     */
+    public void setParseChunkSize(int parseChunkSize) {
+        this.parseChunkSize = parseChunkSize;
+    }
+
+    public ImportFilter getImportFilter() {
+        return importFilter;
+    }
+
+    /**
+     * @param importFilter  Selects what parts of the GnuCash file are imported, <code>null</code> to import everything.
+     */
+    public void setImportFilter(ImportFilter importFilter) {
+        this.importFilter = importFilter;
+    }
+
+    public boolean isStreamingConversion() {
+        return isStreamingConversion;
+    }
+
+    /**
+     * @param isStreamingConversion If <code>true</code> each transaction is converted and added to the jGnash
+     * database as soon as it has been read, instead of all the transactions being held until the whole file has been
+     * read. This keeps the memory use down for large files, but the transactions are added in file order instead
+     * of date order, and of transactions with duplicate ids the first one is kept instead of the last one.
+     */
+    public void setStreamingConversion(boolean isStreamingConversion) {
+        this.isStreamingConversion = isStreamingConversion;
+    }
+
+    public boolean isColumnarTransactionStore() {
+        return isColumnarTransactionStore;
+    }
+
+    /**
+     * @param isColumnarTransactionStore If <code>true</code> the transactions are held in a compact column form until
+     * they're converted instead of as the parsed entries, see {@link TransactionColumnStore}. This uses a fraction of
+     * the memory for large files. Has no effect if {@link #setStreamingConversion(boolean)} is set.
+     */
+    public void setColumnarTransactionStore(boolean isColumnarTransactionStore) {
+        this.isColumnarTransactionStore = isColumnarTransactionStore;
+    }
+
+    public long getTransactionSpillMemoryBudget() {
+        return transactionSpillMemoryBudget;
+    }
+
+    /**
+     * @param transactionSpillMemoryBudget If greater than 0 the transactions are sorted into date order with
+     * an external sort, once this many bytes of transactions have been read they're written to a temporary file, 
+     * see {@link TransactionSpillSorter}. This bounds the memory used for the transactions regardless of the size of
+     * the file. Budgets below 1MB are raised to 1MB, budgets above 1GB are capped at 1GB since the buffered
+     * transactions are held in a single byte array. Has no effect if {@link #setStreamingConversion(boolean)} is set, 
+     * takes the place of {@link #setColumnarTransactionStore(boolean)}.
+     */
+    public void setTransactionSpillMemoryBudget(long transactionSpillMemoryBudget) {
+        this.transactionSpillMemoryBudget = transactionSpillMemoryBudget;
+    }
+
+    public File getTransactionSpillDirectory() {
+        return transactionSpillDirectory;
+    }
+
+    /**
+     * @param transactionSpillDirectory The directory for the temporary files of {@link #setTransactionSpillMemoryBudget(long)},
+     * <code>null</code> for the default temporary file directory.
+     */
+    public void setTransactionSpillDirectory(File transactionSpillDirectory) {
+        this.transactionSpillDirectory = transactionSpillDirectory;
+    }
+
+    public int getConversionThreadCount() {
+        return conversionThreadCount;
+    }
+
+    /**
+     * @param conversionThreadCount If greater than 1, the transactions are converted to jGnash transactions on this many
+     * threads via {@link ParallelTransactionConverter}. The transactions are added to the jGnash database in the same
+     * order regardless. Has no effect if {@link #setStreamingConversion(boolean)} is set, with
+     * {@link #setPipelinedConversion(boolean)} this is the number of converter threads in the pipeline.
+     */
+    public void setConversionThreadCount(int conversionThreadCount) {
+        this.conversionThreadCount = conversionThreadCount;
+    }
+
+    public boolean isPipelinedConversion() {
+        return isPipelinedConversion;
+    }
+
+    /**
+     * @param isPipelinedConversion If <code>true</code> the transactions are streamed as with
+     * {@link #setStreamingConversion(boolean)}, but through a {@link TransactionPipeline}, so parsing, converting and
+     * adding to the jGnash database happen at the same time. The conversion uses {@link #getConversionThreadCount()} threads.
+     */
+    public void setPipelinedConversion(boolean isPipelinedConversion) {
+        this.isPipelinedConversion = isPipelinedConversion;
+    }
+
     public String getErrorMsg() {
         return errorMsg;
     }
@@ -77,12 +262,40 @@ public class GnuCashImport {
         errorMsg = null;
         String password = "";
 
-        InputStream gnuCashInputStream;
+        if (statusCallback != null) {
+            statusCallback = new StatusDispatcher(statusCallback, maxStatusUpdatesPerSecond);
+        }
+        final StatusDispatcher statusDispatcher = (StatusDispatcher)statusCallback;
+
+        GnuCashFileInput gnuCashFileInput;
+        InputStream gnuCashInputStream = null;
+        ParallelTransactionParser parallelTransactionParser = null;
         try {
-            gnuCashInputStream = getUncompressedInputStream(gnuCashFileName);
+            gnuCashFileInput = new GnuCashFileInput(gnuCashFileName, inputBufferSize);
+            gnuCashFileInput.setMemoryMapped(isMemoryMappedInput);
+            gnuCashFileInput.setReadAhead(isReadAheadDecompression);
+            if (statusDispatcher != null) {
+                // Parsing progress is the amount of the file read.
+                final long fileSize = gnuCashFileInput.getFileSize();
+                gnuCashFileInput.setProgressListener(bytesRead -> statusDispatcher.updateByteProgress(bytesRead, fileSize));
+            }
+            if (gnuCashFileInput.getFileFormat().isXML()) {
+                if (parseThreadCount > 1) {
+                    parallelTransactionParser = ParallelTransactionParser.scan(gnuCashFileInput, parseChunkSize);
+                }
+                gnuCashInputStream = (parallelTransactionParser != null) ? parallelTransactionParser.openMainInputStream() 
+                        : gnuCashFileInput.openXMLInputStream();
+            }
+            else if (!GnuCashSQLiteReader.isDriverAvailable()) {
+                // Before the existing jGnash file is touched.
+                errorMsg = GnuCashConvertUtil.getString("Message.Error.SQLiteDriverMissing", gnuCashFileName);
+                return false;
+            }
         }
         catch (IOException e) {
             errorMsg = GnuCashConvertUtil.getString("Message.Error.FileOpenError", gnuCashFileName, e.getLocalizedMessage());
+            // The parallel parser may have been set up before opening the main input stream failed.
+            closeGnuCashInput(gnuCashFileName, gnuCashInputStream, parallelTransactionParser);
             return false;
         }
 
@@ -106,6 +319,8 @@ public class GnuCashImport {
             }
         }
 
+        // importGnuCashXML() takes over closing the input, until then it's closed here.
+        boolean isInputHandedOff = false;
         try {
             Engine engine;
             try {
@@ -122,7 +337,13 @@ public class GnuCashImport {
                 return false;
             }
 
-            if (!importGnuCashXML(gnuCashInputStream, gnuCashFileName, jGnashFileName, engine, statusCallback)) {
+            if (gnuCashInputStream != null) {
+                isInputHandedOff = true;
+                if (!importGnuCashXML(gnuCashInputStream, parallelTransactionParser, gnuCashFileName, jGnashFileName, engine, statusCallback)) {
+                    return false;
+                }
+            }
+            else if (!importGnuCashSQLite(gnuCashFileName, jGnashFileName, engine, statusCallback)) {
                 return false;
             }
 
@@ -133,6 +354,10 @@ public class GnuCashImport {
                 LOG.severe("Uncaught Exception: " + e.getLocalizedMessage());
         }
         finally {
+            if (!isInputHandedOff && (gnuCashInputStream != null)) {
+                closeGnuCashInput(gnuCashFileName, gnuCashInputStream, parallelTransactionParser);
+            }
+
             if (!isSuccess) {
                     LOG.severe("Import failed, shtting down engine.");
                     
@@ -158,17 +383,28 @@ public class GnuCashImport {
         return true;
     }
 
-    public static InputStream getUncompressedInputStream(final String fileName) throws IOException {
-        try {
-            final FileInputStream inputStream = new FileInputStream(fileName);
-            InputStream gZipInputStream = new GZIPInputStream(inputStream);
-            return gZipInputStream;
-        } catch (ZipException e) {
-            // We need a new input stream because we need to reset the read position to the beginning.
-            return new FileInputStream(fileName);
+    private static void closeGnuCashInput(final String gnuCashFileName, final InputStream inputStream, 
+                                          final ParallelTransactionParser parallelTransactionParser) {
+        if (parallelTransactionParser != null) {
+            try {
+                parallelTransactionParser.close();
+            } catch (IOException e) {
+                LOG.warning("Closing '" + gnuCashFileName + "' failed: " + e.getLocalizedMessage());
+            }
+        }
+        if (inputStream != null) {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                LOG.warning("Closing '" + gnuCashFileName + "' failed: " + e.getLocalizedMessage());
+            }
         }
     }
 
+    public static InputStream getUncompressedInputStream(final String fileName) throws IOException {
+        return new GnuCashFileInput(fileName).openXMLInputStream();
+    }
+
     public static String makeUniqueBackupFileName(String fileName) {
         String extension = FileUtils.getFileExtension(fileName);
         if (extension.charAt(0) != '.') {
@@ -190,42 +426,103 @@ public class GnuCashImport {
         return newFileName;
     }
 
+    /**
+     * The jGnash loggers that are quieted down during the import, held here so their levels stick.
+     */
+    private static final Logger [] QUIETED_LOGGERS = {
+            Logger.getLogger("jgnash.engine.Engine"),
+            Logger.getLogger("jgnash.engine.TransactionFactory"),
+            Logger.getLogger("jgnash.engine.xstream.BinaryContainer"),
+    };
+
+    /**
+     * Sets the jGnash loggers in {@link #QUIETED_LOGGERS} to {@link Level#WARNING}.
+     * @return  The original logging levels, for {@link #restoreJGnashLoggers(Level[])}.
+     */
+    private static Level [] quietJGnashLoggers() {
+        Level [] savedLevels = new Level [QUIETED_LOGGERS.length];
+        for (int i = 0; i < QUIETED_LOGGERS.length; ++i) {
+            savedLevels[i] = QUIETED_LOGGERS[i].getLevel();
+            QUIETED_LOGGERS[i].setLevel(Level.WARNING);
+        }
+        return savedLevels;
+    }
+
+    private static void restoreJGnashLoggers(Level [] savedLevels) {
+        for (int i = 0; i < QUIETED_LOGGERS.length; ++i) {
+            QUIETED_LOGGERS[i].setLevel(savedLevels[i]);
+        }
+    }
+
+    /**
+     * Creates the content handler for an import, set up with the import options.
+     * @param engine
+     * @param statusCallback
+     * @return  The content handler.
+     */
+    private GnuCashToJGnashContentHandler createContentHandler(final Engine engine, final StatusCallback statusCallback) {
+        GnuCashToJGnashContentHandler contentHandler = new GnuCashToJGnashContentHandler(engine, statusCallback);
+        contentHandler.importFilter = importFilter;
+        contentHandler.conversionThreadCount = conversionThreadCount;
+        contentHandler.isStreamingConversion = isStreamingConversion || isPipelinedConversion;
+        contentHandler.isPipelinedConversion = isPipelinedConversion;
+        if (isColumnarTransactionStore) {
+            contentHandler.transactionColumnStore = new TransactionColumnStore(contentHandler);
+        }
+        if (transactionSpillMemoryBudget > 0) {
+            contentHandler.transactionSpillSorter = new TransactionSpillSorter(contentHandler, transactionSpillMemoryBudget, transactionSpillDirectory);
+        }
+        return contentHandler;
+    }
+
+    /**
+     * Stops anything the content handler may still have running and deletes its temporary files, for the end of
+     * an import whether it succeeded or not.
+     * @param contentHandler
+     */
+    private static void closeContentHandler(final GnuCashToJGnashContentHandler contentHandler) {
+        contentHandler.closeTransactionPipeline();
+        // Deletes the run files if the import stopped before they were merged.
+        if (contentHandler.transactionSpillSorter != null) {
+            contentHandler.transactionSpillSorter.close();
+        }
+    }
+
     protected boolean importGnuCashXML(final InputStream inputStream, final String gnuCashFileName, final String jGnashFileName,
                                        final Engine engine, final StatusCallback statusCallback) {
-        Logger jGnashEngineLogger = Logger.getLogger("jgnash.engine.Engine");
-        Level savedEngineLoggingLevel = (jGnashEngineLogger != null) ? jGnashEngineLogger.getLevel() : Level.ALL;
-
-        Logger jGnashTransactionFactoryLogger = Logger.getLogger("jgnash.engine.TransactionFactory");
-        Level savedTransactionFactoryLoggingLevel = (jGnashTransactionFactoryLogger != null) ? jGnashTransactionFactoryLogger.getLevel() : Level.ALL;
+        return importGnuCashXML(inputStream, null, gnuCashFileName, jGnashFileName, engine, statusCallback);
+    }
 
-        Logger jGnashBinaryContainerLogger = Logger.getLogger("jgnash.engine.xstream.BinaryContainer");
-        Level savedBinaryContainerLoggingLevel = (jGnashBinaryContainerLogger != null) ? jGnashBinaryContainerLogger.getLevel() : Level.ALL;
+    /**
+     * Imports a GnuCash XML file.
+     * @param inputStream   The uncompressed XML, from {@link ParallelTransactionParser#openMainInputStream()} if
+     * parallelTransactionParser is not <code>null</code>.
+     * @param parallelTransactionParser If not <code>null</code> the parser for the transactions, this is closed.
+     * @param gnuCashFileName
+     * @param jGnashFileName
+     * @param engine
+     * @param statusCallback
+     * @return  <code>false</code> if failed.
+     */
+    protected boolean importGnuCashXML(final InputStream inputStream, final ParallelTransactionParser parallelTransactionParser, 
+                                       final String gnuCashFileName, final String jGnashFileName,
+                                       final Engine engine, final StatusCallback statusCallback) {
+        Level [] savedLoggingLevels = quietJGnashLoggers();
+        GnuCashToJGnashContentHandler contentHandler = null;
         try {
-            // TEST!!!
-            if (jGnashEngineLogger != null) {
-                jGnashEngineLogger.setLevel(Level.WARNING);
-            }
-            if (jGnashTransactionFactoryLogger != null) {
-                jGnashTransactionFactoryLogger.setLevel(Level.WARNING);
-            }
-            if (jGnashBinaryContainerLogger != null) {
-            	jGnashBinaryContainerLogger.setLevel(Level.WARNING);
-            }
-            
             if (statusCallback != null) {
             		statusCallback.updateStatus(1, 100, GnuCashConvertUtil.getString("Message.Status.ParsingGnuCashFile", gnuCashFileName));
             }
             
-            if (parserFactory == null) {
-                parserFactory = SAXParserFactory.newInstance();
-                parserFactory.setNamespaceAware(true);
-            }
-    
-            SAXParser saxParser;
-            XMLReader xmlReader;
+            contentHandler = createContentHandler(engine, statusCallback);
+            this.warningNoticeTree = contentHandler.warningNoticeTree;
+
+            GnuCashXMLParser parser;
             try {
-                saxParser = parserFactory.newSAXParser();
-                xmlReader = saxParser.getXMLReader();
+                parser = parserBackend.createParser();
+                if (parallelTransactionParser != null) {
+                    parallelTransactionParser.start(contentHandler, parserBackend, parseThreadCount);
+                }
             } catch (ParserConfigurationException e) {
                 this.errorMsg = GnuCashConvertUtil.getString("Message.Error.ParserConfigurationException", gnuCashFileName, e.getLocalizedMessage());
                 return false;
@@ -234,12 +531,9 @@ public class GnuCashImport {
                 return false;
             }
     
-            GnuCashToJGnashContentHandler contentHandler = new GnuCashToJGnashContentHandler(engine, statusCallback);
-            this.warningNoticeTree = contentHandler.warningNoticeTree;
-            xmlReader.setContentHandler(contentHandler);
             try {
     
-                xmlReader.parse(new InputSource(inputStream));
+                parser.parse(inputStream, contentHandler);
                 LOG.info("Parsing of '" + gnuCashFileName + "' completed.");
     
                 if (!contentHandler.generateJGnashDatabase()) {
@@ -254,20 +548,64 @@ public class GnuCashImport {
                 this.errorMsg = GnuCashConvertUtil.getString("Message.Error.FileReadError", gnuCashFileName, e.getLocalizedMessage());
                 return false;
             } catch (SAXException e) {
-                this.errorMsg = GnuCashConvertUtil.getString("Message.Error.XMLFormatError", gnuCashFileName, e.getLocalizedMessage());
+                if (contentHandler.isTransactionPipelineFailed) {
+                    // The parse was stopped by the content handler, not by the file.
+                    this.errorMsg = contentHandler.getErrorMsg();
+                }
+                else {
+                    this.errorMsg = GnuCashConvertUtil.getString("Message.Error.XMLFormatError", gnuCashFileName, e.getLocalizedMessage());
+                }
                 return false;
             }
         
         } finally {
-            if (jGnashEngineLogger != null) {
-                jGnashEngineLogger.setLevel(savedEngineLoggingLevel);
+            if (contentHandler != null) {
+                closeContentHandler(contentHandler);
             }
-            if (jGnashTransactionFactoryLogger != null) {
-                jGnashTransactionFactoryLogger.setLevel(savedTransactionFactoryLoggingLevel);
+            closeGnuCashInput(gnuCashFileName, inputStream, parallelTransactionParser);
+
+            restoreJGnashLoggers(savedLoggingLevels);
+        }
+
+        return true;
+    }
+
+    /**
+     * Imports a GnuCash file stored with the SQLite backend. The SQLite JDBC driver must be available.
+     * @param gnuCashFileName
+     * @param jGnashFileName
+     * @param engine
+     * @param statusCallback
+     * @return	<code>false</code> if failed.
+     */
+    protected boolean importGnuCashSQLite(final String gnuCashFileName, final String jGnashFileName,
+                                          final Engine engine, final StatusCallback statusCallback) {
+        Level [] savedLoggingLevels = quietJGnashLoggers();
+        GnuCashToJGnashContentHandler contentHandler = null;
+        try {
+            contentHandler = createContentHandler(engine, statusCallback);
+            this.warningNoticeTree = contentHandler.warningNoticeTree;
+
+            GnuCashSQLiteReader reader = new GnuCashSQLiteReader(contentHandler, gnuCashFileName);
+            if (!reader.readDatabase()) {
+                this.errorMsg = contentHandler.getErrorMsg();
+                return false;
+            }
+            LOG.info("Reading of '" + gnuCashFileName + "' completed.");
+
+            if (!contentHandler.generateJGnashDatabase()) {
+                this.errorMsg = contentHandler.getErrorMsg();
+                return false;
+            }
+            else {
+                LOG.info("'" + gnuCashFileName + "' imported as '" + jGnashFileName);
             }
-            if (jGnashBinaryContainerLogger != null) {
-            	jGnashBinaryContainerLogger.setLevel(savedBinaryContainerLoggingLevel);
+
+        } finally {
+            if (contentHandler != null) {
+                closeContentHandler(contentHandler);
             }
+            restoreJGnashLoggers(savedLoggingLevels);
         }
 
         return true;
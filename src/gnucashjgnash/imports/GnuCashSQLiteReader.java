@@ -0,0 +1,1003 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import gnucashjgnash.GnuCashConvertUtil;
+
+/**
+ * Reads a GnuCash SQLite database into a {@link GnuCashToJGnashContentHandler}, filling in the same entry objects the
+ * XML state handlers fill in, so {@link GnuCashToJGnashContentHandler#generateJGnashDatabase()} can be used as is.
+ * <p>
+ * The tables are read in parallel, each on its own connection, and the rows are fetched in batches. Once all the
+ * tables have been read the entries are linked together and added to the content handler on the calling thread.
+ * <p>
+ * This requires the SQLite JDBC driver (org.xerial sqlite-jdbc) to be on the class path.
+ * @author albert
+ *
+ */
+public class GnuCashSQLiteReader {
+	private static final Logger LOG = Logger.getLogger(GnuCashSQLiteReader.class.getName());
+
+	public static final String DRIVER_CLASS_NAME = "org.sqlite.JDBC";
+	public static final int DEFAULT_FETCH_SIZE = 10000;
+
+	// The KvpValue types used in the slots table.
+	static final int SLOT_TYPE_INT64 = 1;
+	static final int SLOT_TYPE_DOUBLE = 2;
+	static final int SLOT_TYPE_NUMERIC = 3;
+	static final int SLOT_TYPE_STRING = 4;
+	static final int SLOT_TYPE_GUID = 5;
+	static final int SLOT_TYPE_TIMESPEC = 6;
+	static final int SLOT_TYPE_FRAME = 9;
+	static final int SLOT_TYPE_GDATE = 10;
+
+	static final DateTimeFormatter TIMESPEC_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+	static final DateTimeFormatter GDATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	final GnuCashToJGnashContentHandler contentHandler;
+	final String fileName;
+	int fetchSize = DEFAULT_FETCH_SIZE;
+	int threadCount = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	ZoneId zoneId = ZoneId.systemDefault();
+
+
+	static class BookRow {
+		String guid;
+		String rootAccountGuid;
+		String rootTemplateGuid;
+	}
+
+	static class CommodityRow {
+		String guid;
+		CommodityEntry entry;
+	}
+
+	static class AccountRow {
+		AccountImportEntry entry;
+		String commodityGuid;
+		boolean isHidden;
+		boolean isPlaceholder;
+	}
+
+	static class TransactionRow {
+		TransactionImportEntry entry;
+		String currencyGuid;
+	}
+
+	static class SplitRow {
+		SplitEntry entry;
+		String transactionGuid;
+	}
+
+	static class PriceRow {
+		PriceEntry entry;
+		String commodityGuid;
+		String currencyGuid;
+	}
+
+	static class RecurrenceRow {
+		RecurrenceEntry entry;
+		String objectGuid;
+	}
+
+	static class SlotRow {
+		SlotEntry entry;
+		String objectGuid;
+		String name;
+		String frameGuid;
+	}
+
+
+	/**
+	 * Wraps a result set so columns can be accessed by name, columns not in the table are treated as <code>null</code>.
+	 * The different GnuCash versions have slightly different schemas.
+	 */
+	static class TableRow {
+		final ResultSet resultSet;
+		final Map<String, Integer> columnIndices = new HashMap<>();
+
+		TableRow(ResultSet resultSet) throws SQLException {
+			this.resultSet = resultSet;
+			ResultSetMetaData metaData = resultSet.getMetaData();
+			for (int i = 1; i <= metaData.getColumnCount(); ++i) {
+				this.columnIndices.put(metaData.getColumnName(i).toLowerCase(Locale.ROOT), i);
+			}
+		}
+
+		boolean next() throws SQLException {
+			return this.resultSet.next();
+		}
+
+		String getString(String column) throws SQLException {
+			Integer index = this.columnIndices.get(column);
+			return (index != null) ? this.resultSet.getString(index) : null;
+		}
+
+		Long getLong(String column) throws SQLException {
+			Integer index = this.columnIndices.get(column);
+			if (index == null) {
+				return null;
+			}
+			long value = this.resultSet.getLong(index);
+			return this.resultSet.wasNull() ? null : value;
+		}
+
+		int getInt(String column, int defValue) throws SQLException {
+			Long value = getLong(column);
+			return (value != null) ? value.intValue() : defValue;
+		}
+
+		boolean getBoolean(String column) throws SQLException {
+			Long value = getLong(column);
+			return (value != null) && (value != 0);
+		}
+	}
+
+
+	/**
+	 * Reads one table on its own connection.
+	 */
+	abstract class TableReader<T> implements Callable<T> {
+		final String tableName;
+
+		TableReader(String tableName) {
+			this.tableName = tableName;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public T call() throws Exception {
+			try (Connection connection = openConnection();
+					Statement statement = connection.createStatement()) {
+				statement.setFetchSize(fetchSize);
+				try (ResultSet resultSet = statement.executeQuery("SELECT * FROM " + this.tableName)) {
+					return readRows(new TableRow(resultSet));
+				}
+			}
+		}
+
+		abstract T readRows(TableRow row) throws SQLException;
+	}
+
+
+	GnuCashSQLiteReader(GnuCashToJGnashContentHandler contentHandler, String fileName) {
+		this.contentHandler = contentHandler;
+		this.fileName = fileName;
+	}
+
+
+	/**
+	 * @param fetchSize	The number of rows fetched from the database at a time.
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * @param threadCount	The number of tables read at the same time.
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+
+	Connection openConnection() throws SQLException {
+		Properties properties = new Properties();
+		// SQLiteOpenMode.READONLY
+		properties.setProperty("open_mode", "1");
+		return DriverManager.getConnection("jdbc:sqlite:" + this.fileName, properties);
+	}
+
+
+	/**
+	 * @return	<code>true</code> if the SQLite JDBC driver can be loaded.
+	 */
+	public static boolean isDriverAvailable() {
+		try {
+			Class.forName(DRIVER_CLASS_NAME);
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			// LinkageError covers the driver's own dependencies missing.
+			return false;
+		}
+	}
+
+
+	/**
+	 * Reads the database, on failure the error is recorded in the content handler.
+	 * @return	<code>false</code> if failed.
+	 */
+	public boolean readDatabase() {
+		if (!isDriverAvailable()) {
+			this.contentHandler.recordError("Message.Error.SQLiteDriverMissing", this.fileName);
+			return false;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(this.threadCount);
+		try {
+			Future<BookRow> bookFuture = executor.submit(new TableReader<BookRow>("books") {
+				@Override
+				BookRow readRows(TableRow row) throws SQLException {
+					return readBook(row);
+				}
+			});
+			Future<List<CommodityRow>> commoditiesFuture = executor.submit(new TableReader<List<CommodityRow>>("commodities") {
+				@Override
+				List<CommodityRow> readRows(TableRow row) throws SQLException {
+					return readCommodities(row);
+				}
+			});
+			Future<List<AccountRow>> accountsFuture = executor.submit(new TableReader<List<AccountRow>>("accounts") {
+				@Override
+				List<AccountRow> readRows(TableRow row) throws SQLException {
+					return readAccounts(row);
+				}
+			});
+			Future<List<TransactionRow>> transactionsFuture = executor.submit(new TableReader<List<TransactionRow>>("transactions") {
+				@Override
+				List<TransactionRow> readRows(TableRow row) throws SQLException {
+					return readTransactions(row);
+				}
+			});
+			Future<List<SplitRow>> splitsFuture = executor.submit(new TableReader<List<SplitRow>>("splits") {
+				@Override
+				List<SplitRow> readRows(TableRow row) throws SQLException {
+					return readSplits(row);
+				}
+			});
+			Future<List<PriceRow>> pricesFuture = executor.submit(new TableReader<List<PriceRow>>("prices") {
+				@Override
+				List<PriceRow> readRows(TableRow row) throws SQLException {
+					return readPrices(row);
+				}
+			});
+			Future<List<ScheduledTransactionEntry>> scheduledTransactionsFuture
+					= executor.submit(new TableReader<List<ScheduledTransactionEntry>>("schedxactions") {
+				@Override
+				List<ScheduledTransactionEntry> readRows(TableRow row) throws SQLException {
+					return readScheduledTransactions(row);
+				}
+			});
+			Future<List<RecurrenceRow>> recurrencesFuture = executor.submit(new TableReader<List<RecurrenceRow>>("recurrences") {
+				@Override
+				List<RecurrenceRow> readRows(TableRow row) throws SQLException {
+					return readRecurrences(row);
+				}
+			});
+			Future<List<SlotRow>> slotsFuture = executor.submit(new TableReader<List<SlotRow>>("slots") {
+				@Override
+				List<SlotRow> readRows(TableRow row) throws SQLException {
+					return readSlots(row);
+				}
+			});
+
+			BookRow bookRow = getTableRows(bookFuture, "books");
+			List<CommodityRow> commodityRows = getTableRows(commoditiesFuture, "commodities");
+			List<AccountRow> accountRows = getTableRows(accountsFuture, "accounts");
+			List<TransactionRow> transactionRows = getTableRows(transactionsFuture, "transactions");
+			List<SplitRow> splitRows = getTableRows(splitsFuture, "splits");
+			List<PriceRow> priceRows = getTableRows(pricesFuture, "prices");
+			List<ScheduledTransactionEntry> scheduledTransactionEntries = getTableRows(scheduledTransactionsFuture, "schedxactions");
+			List<RecurrenceRow> recurrenceRows = getTableRows(recurrencesFuture, "recurrences");
+			List<SlotRow> slotRows = getTableRows(slotsFuture, "slots");
+
+			LOG.info("Read " + accountRows.size() + " accounts, " + transactionRows.size() + " transactions, "
+					+ splitRows.size() + " splits from '" + this.fileName + "'.");
+
+			Map<String, Map<String, SlotEntry>> slotsByObjectGuid = linkSlots(slotRows);
+			if (bookRow != null) {
+				this.contentHandler.bookId.setId(bookRow.guid);
+				this.contentHandler.bookId.type = "guid";
+				attachSlots(slotsByObjectGuid, bookRow.guid, this.contentHandler.bookSlots, null);
+			}
+
+			Map<String, CommodityEntry> commoditiesByGuid = addCommodities(commodityRows, slotsByObjectGuid);
+			Set<String> templateAccountGuids = addAccounts(accountRows, bookRow, commoditiesByGuid, slotsByObjectGuid);
+			// The prices before the transactions, like in the XML files, so the transactions can be streamed.
+			addPrices(priceRows, commoditiesByGuid);
+			if (!addTransactions(transactionRows, splitRows, templateAccountGuids, commoditiesByGuid, slotsByObjectGuid)) {
+				return false;
+			}
+			addScheduledTransactions(scheduledTransactionEntries, recurrenceRows, slotsByObjectGuid);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.contentHandler.recordError("Message.Error.SQLiteReadError", this.fileName, e.getLocalizedMessage());
+			return false;
+		} catch (ExecutionException e) {
+			Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+			this.contentHandler.recordError("Message.Error.SQLiteReadError", this.fileName, cause.getLocalizedMessage());
+			return false;
+		} finally {
+			this.contentHandler.transactionMode = GnuCashToJGnashContentHandler.TransactionMode.NORMAL;
+			executor.shutdownNow();
+		}
+
+		return true;
+	}
+
+
+	LocalDate parseTimespec(String text, TimeEntry timeEntry) {
+		if (text == null) {
+			return null;
+		}
+		try {
+			// GnuCash 2.6 uses YYYYMMDDHHMMSS, later versions YYYY-MM-DD HH:MM:SS, both in UTC.
+			LocalDateTime dateTime = LocalDateTime.parse(text.replaceAll("[^0-9]", ""), TIMESPEC_FORMATTER);
+			ZonedDateTime zonedDateTime = dateTime.atOffset(ZoneOffset.UTC).atZoneSameInstant(this.zoneId);
+			LocalDate localDate = zonedDateTime.toLocalDate();
+			if (timeEntry != null) {
+				timeEntry.setDateTime(localDate, zonedDateTime.toLocalTime(), zonedDateTime.getOffset());
+			}
+			return localDate;
+		} catch (DateTimeParseException e) {
+			if (timeEntry != null) {
+				timeEntry.parseError = e.getLocalizedMessage();
+			}
+			return null;
+		}
+	}
+
+	static void parseGDate(String text, GDateEntry gDateEntry) {
+		if (text == null) {
+			return;
+		}
+		try {
+			gDateEntry.localDate = LocalDate.parse(text.replaceAll("[^0-9]", ""), GDATE_FORMATTER);
+			gDateEntry.isParsed = true;
+			gDateEntry.parseError = null;
+		} catch (DateTimeParseException e) {
+			gDateEntry.parseError = e.getLocalizedMessage();
+		}
+	}
+
+	static void setNumeric(NumericEntry numericEntry, Long numerator, Long denominator) {
+		if ((numerator == null) || (denominator == null) || (denominator == 0)) {
+			return;
+		}
+		numericEntry.setValue(numerator, denominator);
+	}
+
+	static void setGUID(IdEntry idEntry, String guid) {
+		if (guid != null) {
+			idEntry.setId(guid);
+			idEntry.type = "guid";
+		}
+	}
+
+	static void setInt(IntEntry intEntry, Long value) {
+		if (value != null) {
+			intEntry.value = value.intValue();
+			intEntry.isParsed = true;
+		}
+	}
+
+	static void setYesNo(YesNoEntry yesNoEntry, Long value) {
+		if (value != null) {
+			yesNoEntry.value = (value != 0);
+			yesNoEntry.wasParsed = true;
+		}
+	}
+
+
+	BookRow readBook(TableRow row) throws SQLException {
+		BookRow bookRow = null;
+		if (row.next()) {
+			bookRow = new BookRow();
+			bookRow.guid = row.getString("guid");
+			bookRow.rootAccountGuid = row.getString("root_account_guid");
+			bookRow.rootTemplateGuid = row.getString("root_template_guid");
+		}
+		return bookRow;
+	}
+
+
+	List<CommodityRow> readCommodities(TableRow row) throws SQLException {
+		List<CommodityRow> rows = new ArrayList<>();
+		while (row.next()) {
+			CommodityRow commodityRow = new CommodityRow();
+			commodityRow.guid = row.getString("guid");
+
+			CommodityEntry entry = new CommodityEntry(this.contentHandler);
+			entry.space = row.getString("namespace");
+			entry.id = row.getString("mnemonic");
+			entry.name = row.getString("fullname");
+			entry.xCode = row.getString("cusip");
+			entry.fraction = row.getString("fraction");
+			entry.isGetQuotes = row.getBoolean("quote_flag");
+			entry.quoteSource = row.getString("quote_source");
+			entry.quoteTimeZone = row.getString("quote_tz");
+			commodityRow.entry = entry;
+
+			rows.add(commodityRow);
+		}
+		return rows;
+	}
+
+
+	List<AccountRow> readAccounts(TableRow row) throws SQLException {
+		List<AccountRow> rows = new ArrayList<>();
+		while (row.next()) {
+			AccountRow accountRow = new AccountRow();
+
+			AccountImportEntry entry = new AccountImportEntry(this.contentHandler);
+			setGUID(entry.id, row.getString("guid"));
+			entry.name = row.getString("name");
+			entry.type = row.getString("account_type");
+			setInt(entry.commoditySCU, row.getLong("commodity_scu"));
+			entry.code = row.getString("code");
+			entry.description = row.getString("description");
+			setGUID(entry.parentId, row.getString("parent_guid"));
+			accountRow.entry = entry;
+
+			accountRow.commodityGuid = row.getString("commodity_guid");
+			accountRow.isHidden = row.getBoolean("hidden");
+			accountRow.isPlaceholder = row.getBoolean("placeholder");
+
+			rows.add(accountRow);
+		}
+		return rows;
+	}
+
+
+	List<TransactionRow> readTransactions(TableRow row) throws SQLException {
+		// The tables are read on their own threads, so each gets its own pool.
+		StringPool stringPool = new StringPool();
+		List<TransactionRow> rows = new ArrayList<>();
+		while (row.next()) {
+			TransactionRow transactionRow = new TransactionRow();
+
+			TransactionImportEntry entry = new TransactionImportEntry(this.contentHandler);
+			setGUID(entry.id, row.getString("guid"));
+			entry.num = stringPool.get(row.getString("num"));
+			if ((entry.num != null) && entry.num.isEmpty()) {
+				entry.num = null;
+			}
+			parseTimespec(row.getString("post_date"), entry.datePosted);
+			parseTimespec(row.getString("enter_date"), entry.dateEntered);
+			entry.description = stringPool.get(row.getString("description"));
+			transactionRow.entry = entry;
+
+			transactionRow.currencyGuid = row.getString("currency_guid");
+
+			rows.add(transactionRow);
+		}
+		return rows;
+	}
+
+
+	List<SplitRow> readSplits(TableRow row) throws SQLException {
+		StringPool stringPool = new StringPool();
+		List<SplitRow> rows = new ArrayList<>();
+		while (row.next()) {
+			SplitRow splitRow = new SplitRow();
+
+			SplitEntry entry = new SplitEntry(this.contentHandler, null);
+			setGUID(entry.id, row.getString("guid"));
+			entry.memo = stringPool.get(row.getString("memo"));
+			if ((entry.memo != null) && entry.memo.isEmpty()) {
+				entry.memo = null;
+			}
+			entry.action = stringPool.get(row.getString("action"));
+			if ((entry.action != null) && entry.action.isEmpty()) {
+				entry.action = null;
+			}
+			entry.reconciledState = SplitEntry.toReconciledState(row.getString("reconcile_state"));
+			parseTimespec(row.getString("reconcile_date"), entry.reconcileDate);
+			setNumeric(entry.value, row.getLong("value_num"), row.getLong("value_denom"));
+			setNumeric(entry.quantity, row.getLong("quantity_num"), row.getLong("quantity_denom"));
+			setGUID(entry.account, row.getString("account_guid"));
+			setGUID(entry.lot, row.getString("lot_guid"));
+			splitRow.entry = entry;
+
+			splitRow.transactionGuid = row.getString("tx_guid");
+
+			rows.add(splitRow);
+		}
+		return rows;
+	}
+
+
+	List<PriceRow> readPrices(TableRow row) throws SQLException {
+		List<PriceRow> rows = new ArrayList<>();
+		while (row.next()) {
+			PriceRow priceRow = new PriceRow();
+
+			PriceEntry entry = new PriceEntry(this.contentHandler);
+			setGUID(entry.id, row.getString("guid"));
+			parseTimespec(row.getString("date"), entry.time);
+			entry.source = row.getString("source");
+			entry.type = row.getString("type");
+			setNumeric(entry.value, row.getLong("value_num"), row.getLong("value_denom"));
+			priceRow.entry = entry;
+
+			priceRow.commodityGuid = row.getString("commodity_guid");
+			priceRow.currencyGuid = row.getString("currency_guid");
+
+			rows.add(priceRow);
+		}
+		return rows;
+	}
+
+
+	List<ScheduledTransactionEntry> readScheduledTransactions(TableRow row) throws SQLException {
+		List<ScheduledTransactionEntry> entries = new ArrayList<>();
+		while (row.next()) {
+			ScheduledTransactionEntry entry = new ScheduledTransactionEntry(this.contentHandler);
+			setGUID(entry.id, row.getString("guid"));
+			entry.name = row.getString("name");
+			setYesNo(entry.enabled, row.getLong("enabled"));
+			setYesNo(entry.autoCreate, row.getLong("auto_create"));
+			setYesNo(entry.autoCreateNotify, row.getLong("auto_notify"));
+			setInt(entry.advanceCreateDays, row.getLong("adv_creation"));
+			setInt(entry.advanceRemindDays, row.getLong("adv_notify"));
+			setInt(entry.instanceCount, row.getLong("instance_count"));
+			parseGDate(row.getString("start_date"), entry.start);
+			parseGDate(row.getString("last_occur"), entry.last);
+			parseGDate(row.getString("end_date"), entry.end);
+			setInt(entry.numOccur, row.getLong("num_occur"));
+			setInt(entry.remOccur, row.getLong("rem_occur"));
+			setGUID(entry.templateAccount, row.getString("template_act_guid"));
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+
+	List<RecurrenceRow> readRecurrences(TableRow row) throws SQLException {
+		List<RecurrenceRow> rows = new ArrayList<>();
+		while (row.next()) {
+			RecurrenceRow recurrenceRow = new RecurrenceRow();
+
+			RecurrenceEntry entry = new RecurrenceEntry(this.contentHandler, null);
+			setInt(entry.mult, row.getLong("recurrence_mult"));
+			entry.periodType = row.getString("recurrence_period_type");
+			parseGDate(row.getString("recurrence_period_start"), entry.start);
+			entry.weekendAdj = row.getString("recurrence_weekend_adjust");
+			recurrenceRow.entry = entry;
+
+			recurrenceRow.objectGuid = row.getString("obj_guid");
+
+			rows.add(recurrenceRow);
+		}
+		return rows;
+	}
+
+
+	List<SlotRow> readSlots(TableRow row) throws SQLException {
+		List<SlotRow> rows = new ArrayList<>();
+		while (row.next()) {
+			SlotRow slotRow = new SlotRow();
+			slotRow.objectGuid = row.getString("obj_guid");
+			slotRow.name = row.getString("name");
+
+			SlotEntry entry = new SlotEntry(this.contentHandler, null);
+			if (slotRow.name != null) {
+				// Slots within frames have the full path as their name.
+				entry.key = slotRow.name.substring(slotRow.name.lastIndexOf('/') + 1);
+			}
+
+			switch (row.getInt("slot_type", 0)) {
+			case SLOT_TYPE_INT64 :
+				entry.valueType = "integer";
+				Long intValue = row.getLong("int64_val");
+				entry.value = (intValue != null) ? intValue.toString() : null;
+				break;
+
+			case SLOT_TYPE_DOUBLE :
+				entry.valueType = "double";
+				entry.value = row.getString("double_val");
+				break;
+
+			case SLOT_TYPE_NUMERIC :
+				entry.valueType = "numeric";
+				entry.numericValue = new NumericEntry(entry);
+				setNumeric(entry.numericValue, row.getLong("numeric_val_num"), row.getLong("numeric_val_denom"));
+				break;
+
+			case SLOT_TYPE_STRING :
+				entry.valueType = "string";
+				entry.value = row.getString("string_val");
+				break;
+
+			case SLOT_TYPE_GUID :
+				entry.valueType = "guid";
+				entry.value = row.getString("guid_val");
+				break;
+
+			case SLOT_TYPE_TIMESPEC :
+				entry.valueType = "timespec";
+				entry.timeEntryValue = new TimeEntry(entry);
+				parseTimespec(row.getString("timespec_val"), entry.timeEntryValue);
+				break;
+
+			case SLOT_TYPE_FRAME :
+				entry.valueType = "frame";
+				entry.frameSlotEntries = new SlotMap(entry);
+				slotRow.frameGuid = row.getString("guid_val");
+				break;
+
+			case SLOT_TYPE_GDATE :
+				entry.valueType = "gdate";
+				entry.gDateEntryValue = new GDateEntry(entry);
+				parseGDate(row.getString("gdate_val"), entry.gDateEntryValue);
+				break;
+
+			default :
+				// Lists and the like aren't supported.
+				continue;
+			}
+
+			slotRow.entry = entry;
+			rows.add(slotRow);
+		}
+		return rows;
+	}
+
+
+	/**
+	 * Groups the slots by the object they belong to and fills in the frames.
+	 * @param slotRows
+	 * @return	The slots of each object, keyed by the object's guid.
+	 */
+	Map<String, Map<String, SlotEntry>> linkSlots(List<SlotRow> slotRows) {
+		Map<String, Map<String, SlotEntry>> slotsByObjectGuid = new HashMap<>();
+		for (SlotRow slotRow : slotRows) {
+			if ((slotRow.objectGuid == null) || (slotRow.entry.key == null)) {
+				continue;
+			}
+			Map<String, SlotEntry> slots = slotsByObjectGuid.get(slotRow.objectGuid);
+			if (slots == null) {
+				slots = new HashMap<>();
+				slotsByObjectGuid.put(slotRow.objectGuid, slots);
+			}
+			slots.put(slotRow.entry.key, slotRow.entry);
+		}
+
+		for (SlotRow slotRow : slotRows) {
+			if (slotRow.frameGuid != null) {
+				attachSlots(slotsByObjectGuid, slotRow.frameGuid, slotRow.entry.frameSlotEntries, slotRow.entry);
+			}
+		}
+		return slotsByObjectGuid;
+	}
+
+	static void attachSlots(Map<String, Map<String, SlotEntry>> slotsByObjectGuid, String objectGuid,
+			SlotMap slots, ParsedEntry parentEntry) {
+		if (objectGuid == null) {
+			return;
+		}
+		Map<String, SlotEntry> objectSlots = slotsByObjectGuid.get(objectGuid);
+		if (objectSlots != null) {
+			for (SlotEntry slotEntry : objectSlots.values()) {
+				slotEntry.parentSource = parentEntry;
+				slots.put(slotEntry);
+			}
+		}
+	}
+
+
+	Map<String, CommodityEntry> addCommodities(List<CommodityRow> commodityRows, Map<String, Map<String, SlotEntry>> slotsByObjectGuid) {
+		Map<String, CommodityEntry> commoditiesByGuid = new HashMap<>();
+		for (CommodityRow commodityRow : commodityRows) {
+			CommodityEntry entry = commodityRow.entry;
+			commoditiesByGuid.put(commodityRow.guid, entry);
+
+			if ("template".equals(entry.space)) {
+				continue;
+			}
+			if (entry.space == null) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueMissing", "commodities", "namespace", commodityRow.guid);
+				continue;
+			}
+			if (entry.id == null) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueMissing", "commodities", "mnemonic", commodityRow.guid);
+				continue;
+			}
+
+			entry.isCurrency = entry.space.equals(CommodityEntry.CURRENCY_SPACE);
+			if (!entry.isCurrency && (entry.fraction == null)) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueMissing", "commodities", "fraction", commodityRow.guid);
+				continue;
+			}
+
+			attachSlots(slotsByObjectGuid, commodityRow.guid, entry.slots, entry);
+
+			if (this.contentHandler.commodityEntries.put(entry.id, entry) != null) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.XMLDuplicateCommodityId", entry.id);
+			}
+		}
+		return commoditiesByGuid;
+	}
+
+	static boolean setCommodityRef(CommodityEntry.CommodityRef commodityRef, String commodityGuid, Map<String, CommodityEntry> commoditiesByGuid) {
+		CommodityEntry commodityEntry = (commodityGuid != null) ? commoditiesByGuid.get(commodityGuid) : null;
+		if (commodityEntry == null) {
+			return false;
+		}
+		commodityRef.space = commodityEntry.space;
+		commodityRef.id = commodityEntry.id;
+		return commodityRef.isParsed();
+	}
+
+
+	/**
+	 * Adds the accounts, the accounts under the template root account are added as template accounts.
+	 * @return	The guids of the template accounts.
+	 */
+	Set<String> addAccounts(List<AccountRow> accountRows, BookRow bookRow, Map<String, CommodityEntry> commoditiesByGuid,
+			Map<String, Map<String, SlotEntry>> slotsByObjectGuid) {
+		Map<String, String> parentGuids = new HashMap<>();
+		for (AccountRow accountRow : accountRows) {
+			parentGuids.put(accountRow.entry.id.getId(), accountRow.entry.parentId.getId());
+		}
+
+		Set<String> templateAccountGuids = new HashSet<>();
+		String rootTemplateGuid = (bookRow != null) ? bookRow.rootTemplateGuid : null;
+		if (rootTemplateGuid != null) {
+			for (AccountRow accountRow : accountRows) {
+				String guid = accountRow.entry.id.getId();
+				int depth = 0;
+				while ((guid != null) && (depth++ < parentGuids.size())) {
+					if (guid.equals(rootTemplateGuid)) {
+						templateAccountGuids.add(accountRow.entry.id.getId());
+						break;
+					}
+					guid = parentGuids.get(guid);
+				}
+			}
+		}
+
+		for (AccountRow accountRow : accountRows) {
+			AccountImportEntry entry = accountRow.entry;
+			if (!entry.id.hasId()) {
+				continue;
+			}
+			if (entry.name == null) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueMissing", "accounts", "name", entry.id.getId());
+				continue;
+			}
+			if (entry.type == null) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueMissing", "accounts", "account_type", entry.id.getId());
+				continue;
+			}
+
+			setCommodityRef(entry.commodityRef, accountRow.commodityGuid, commoditiesByGuid);
+
+			attachSlots(slotsByObjectGuid, entry.id.getId(), entry.slots, entry);
+			// The placeholder and hidden flags are columns in the SQL backend, slots in the XML backend.
+			if (accountRow.isPlaceholder) {
+				addStringSlot(entry.slots, "placeholder", "true", entry);
+			}
+			if (accountRow.isHidden) {
+				addStringSlot(entry.slots, "hidden", "true", entry);
+			}
+
+			this.contentHandler.transactionMode = templateAccountGuids.contains(entry.id.getId())
+					? GnuCashToJGnashContentHandler.TransactionMode.TEMPLATE : GnuCashToJGnashContentHandler.TransactionMode.NORMAL;
+			this.contentHandler.addAccountEntry(entry);
+		}
+
+		this.contentHandler.transactionMode = GnuCashToJGnashContentHandler.TransactionMode.NORMAL;
+		return templateAccountGuids;
+	}
+
+	void addStringSlot(SlotMap slots, String key, String value, ParsedEntry parentEntry) {
+		if (!slots.containsKey(key)) {
+			SlotEntry slotEntry = new SlotEntry(this.contentHandler, parentEntry);
+			slotEntry.key = key;
+			slotEntry.valueType = "string";
+			slotEntry.value = value;
+			slots.put(slotEntry);
+		}
+	}
+
+
+	/**
+	 * Hands the transactions to the content handler.
+	 * @return	<code>false</code> if the content handler can't take any more transactions, the error has been recorded.
+	 */
+	boolean addTransactions(List<TransactionRow> transactionRows, List<SplitRow> splitRows, Set<String> templateAccountGuids,
+			Map<String, CommodityEntry> commoditiesByGuid, Map<String, Map<String, SlotEntry>> slotsByObjectGuid) {
+		Map<String, TransactionImportEntry> transactionsByGuid = new HashMap<>();
+		for (TransactionRow transactionRow : transactionRows) {
+			TransactionImportEntry entry = transactionRow.entry;
+			if (entry.id.hasId()) {
+				transactionsByGuid.put(entry.id.getId(), entry);
+			}
+		}
+
+		for (SplitRow splitRow : splitRows) {
+			SplitEntry splitEntry = splitRow.entry;
+			TransactionImportEntry transactionEntry = (splitRow.transactionGuid != null) ? transactionsByGuid.get(splitRow.transactionGuid) : null;
+			if ((transactionEntry == null) || !splitEntry.id.hasId()) {
+				continue;
+			}
+
+			splitEntry.parentSource = transactionEntry;
+			if (splitEntry.reconciledState == SplitEntry.RECONCILED_STATE_MISSING) {
+				this.contentHandler.recordWarning(transactionEntry, "Message.Parse.SQLiteValueMissing", "splits", "reconcile_state", splitEntry.id.getId());
+				continue;
+			}
+			if (!splitEntry.value.isParsed() || !splitEntry.quantity.isParsed()) {
+				continue;
+			}
+			if (!splitEntry.account.hasId()) {
+				this.contentHandler.recordWarning(transactionEntry, "Message.Parse.SQLiteValueMissing", "splits", "account_guid", splitEntry.id.getId());
+				continue;
+			}
+
+			attachSlots(slotsByObjectGuid, splitEntry.id.getId(), splitEntry.slots, splitEntry);
+
+			if (SplitEntry.containsSplitEntry(transactionEntry.originalSplitsList, splitEntry.id)) {
+				this.contentHandler.recordWarning(transactionEntry, "Message.Parse.XMLDuplicateSplitEntries", splitEntry.id.getId());
+			}
+			transactionEntry.originalSplitsList.add(splitEntry);
+		}
+
+		for (TransactionRow transactionRow : transactionRows) {
+			TransactionImportEntry entry = transactionRow.entry;
+			if (!entry.id.hasId()) {
+				continue;
+			}
+			if (!setCommodityRef(entry.currencyRef, transactionRow.currencyGuid, commoditiesByGuid)) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueMissing", "transactions", "currency_guid", entry.id.getId());
+				continue;
+			}
+			if (!entry.datePosted.isParsed()) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueInvalid", "transactions", "post_date", entry.id.getId(),
+						entry.datePosted.parseError);
+				continue;
+			}
+			if (!entry.dateEntered.isParsed()) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueInvalid", "transactions", "enter_date", entry.id.getId(),
+						entry.dateEntered.parseError);
+				continue;
+			}
+
+			attachSlots(slotsByObjectGuid, entry.id.getId(), entry.slots, entry);
+
+			boolean isTemplate = false;
+			for (SplitEntry splitEntry : entry.originalSplitsList) {
+				if (templateAccountGuids.contains(splitEntry.account.getId())) {
+					isTemplate = true;
+					break;
+				}
+			}
+
+			this.contentHandler.transactionMode = isTemplate
+					? GnuCashToJGnashContentHandler.TransactionMode.TEMPLATE : GnuCashToJGnashContentHandler.TransactionMode.NORMAL;
+			if (!this.contentHandler.addTransactionEntry(entry)) {
+				return false;
+			}
+		}
+
+		this.contentHandler.transactionMode = GnuCashToJGnashContentHandler.TransactionMode.NORMAL;
+		return true;
+	}
+
+
+	void addPrices(List<PriceRow> priceRows, Map<String, CommodityEntry> commoditiesByGuid) {
+		for (PriceRow priceRow : priceRows) {
+			PriceEntry entry = priceRow.entry;
+			if (!setCommodityRef(entry.commodityRef, priceRow.commodityGuid, commoditiesByGuid)) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueMissing", "prices", "commodity_guid", entry.id.getId());
+				continue;
+			}
+			if (!setCommodityRef(entry.currencyRef, priceRow.currencyGuid, commoditiesByGuid)) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueMissing", "prices", "currency_guid", entry.id.getId());
+				continue;
+			}
+			if (!entry.time.isParsed()) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueInvalid", "prices", "date", entry.id.getId(),
+						entry.time.parseError);
+				continue;
+			}
+			if (!entry.value.isParsed()) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueMissing", "prices", "value_num", entry.id.getId());
+				continue;
+			}
+
+			this.contentHandler.addPriceEntry(entry);
+		}
+	}
+
+
+	void addScheduledTransactions(List<ScheduledTransactionEntry> scheduledTransactionEntries, List<RecurrenceRow> recurrenceRows,
+			Map<String, Map<String, SlotEntry>> slotsByObjectGuid) {
+		Map<String, ScheduledTransactionEntry> entriesByGuid = new HashMap<>();
+		for (ScheduledTransactionEntry entry : scheduledTransactionEntries) {
+			if (entry.id.hasId()) {
+				entriesByGuid.put(entry.id.getId(), entry);
+			}
+		}
+
+		for (RecurrenceRow recurrenceRow : recurrenceRows) {
+			ScheduledTransactionEntry entry = (recurrenceRow.objectGuid != null) ? entriesByGuid.get(recurrenceRow.objectGuid) : null;
+			if (entry != null) {
+				recurrenceRow.entry.parentSource = entry;
+				entry.recurrances.add(recurrenceRow.entry);
+			}
+		}
+
+		for (ScheduledTransactionEntry entry : scheduledTransactionEntries) {
+			if (!entry.id.hasId()) {
+				continue;
+			}
+			if (!entry.start.isParsed()) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueInvalid", "schedxactions", "start_date", entry.id.getId(),
+						entry.start.parseError);
+				continue;
+			}
+			if (!entry.templateAccount.hasId()) {
+				this.contentHandler.recordWarning(entry, "Message.Parse.SQLiteValueMissing", "schedxactions", "template_act_guid", entry.id.getId());
+				continue;
+			}
+
+			attachSlots(slotsByObjectGuid, entry.id.getId(), entry.slots, entry);
+
+			this.contentHandler.addScheduledTransactionEntry(entry);
+		}
+	}
+
+
+	/**
+	 * Waits for a table to be read, updating the status.
+	 * @param future	The future of the table's {@link TableReader}.
+	 * @param tableName	The name of the table.
+	 * @return	The rows read.
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	<T> T getTableRows(Future<T> future, String tableName) throws InterruptedException, ExecutionException {
+		if (this.contentHandler.statusDispatcher != null) {
+			this.contentHandler.statusDispatcher.updateStatus(1, 100,
+					GnuCashConvertUtil.getString("Message.Status.ReadingGnuCashTable", tableName, this.fileName));
+		}
+		return future.get();
+	}
+}
@@ -20,6 +20,7 @@ import jgnash.engine.Account;
 import jgnash.engine.CurrencyNode;
 import jgnash.engine.Engine;
 import jgnash.engine.SecurityNode;
+import jgnash.engine.Transaction;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.Locator;
@@ -29,6 +30,7 @@ import gnucashjgnash.GnuCashConvertUtil;
 import gnucashjgnash.NoticeTree;
 import gnucashjgnash.NoticeTree.Source;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -50,19 +52,32 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
     private static final Logger LOG = Logger.getLogger(GnuCashToJGnashContentHandler.class.getName());
 
     final Engine engine;
-    final GnuCashImport.StatusCallback statusCallback;
+    final StatusDispatcher statusDispatcher;
     int statusProgressCount;
     int statusProgressTotalCount;
     
     Locator documentLocator;
+    // The thread the parser calls the content handler on, the locator may only be read on it.
+    volatile Thread parseThread;
     
-    final List<StateHandler> stateHandlers = new ArrayList<>();
+    // Only set on the threads converting transactions for the ParallelTransactionConverter and the TransactionPipeline.
+    final ThreadLocal<List<ParallelTransactionConverter.DeferredWarning>> deferredWarnings = new ThreadLocal<>();
+    
+    final ElementSymbolTable elementSymbols = new ElementSymbolTable();
+    StateHandler [] stateHandlers = new StateHandler[32];
+    int stateHandlerCount;
     StateHandler activeStateHandler;
+    
+    // The character data of the elements whose state handlers need it, see AbstractStateHandler.characters().
+    final StringBuilder textBuffer = new StringBuilder(256);
+    
+    // Dedups the text that repeats from transaction to transaction, only used while parsing.
+    final StringPool stringPool = new StringPool();
 
     final Map<String, Integer> countData = new HashMap<>();
     
     final IdEntry bookId = new IdEntry(null);
-    final Map<String, SlotEntry> bookSlots = new HashMap<>();
+    final SlotMap bookSlots = new SlotMap(null);
 
     final Map<String, CommodityEntry> commodityEntries = new HashMap<>();
     final Map<String, NoticeTree.Source> commoditySources = new HashMap<>();
@@ -151,19 +166,44 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
 
     
 	
-	final Map<String, AccountImportEntry> accountImportEntries = new HashMap<>();
+	final GuidMap<AccountImportEntry> accountImportEntries = new GuidMap<>();
 
     final Set<String> accountIdsToIgnore = new HashSet<>();
 
-    final Map<String, SecurityNode> jGnashSecuritiesByStockAccountId = new HashMap<>();
+    final GuidMap<SecurityNode> jGnashSecuritiesByStockAccountId = new GuidMap<>();
     
-    final Map<String, Account> jGnashAccounts = new HashMap<>();
-
-    //final Map<String, TransactionImportEntry> transactionEntries = new HashMap<>();
-    final SortedMap<LocalDate, Map<String, TransactionImportEntry>> transactionEntriesByDate = new TreeMap<>();
+    final GuidMap<Account> jGnashAccounts = new GuidMap<>();
+
+    // All the transactions by id, so duplicate ids are caught even when the dates differ.
+    final GuidMap<TransactionImportEntry> transactionEntries = new GuidMap<>();
+    final SortedMap<LocalDate, List<TransactionImportEntry>> transactionEntriesByDate = new TreeMap<>();
+    // If set the transactions are held here instead of in transactionEntries and transactionEntriesByDate.
+    TransactionColumnStore transactionColumnStore;
+    // If set the transactions are sorted by this instead, spilling to temporary files.
+    TransactionSpillSorter transactionSpillSorter;
+    boolean isTransactionSpillFailed;
     int totalTransactionEntryCount;
-
-    final Map<String, NoticeTree.Source> transactionAccountSources = new HashMap<>();
+    int processedTransactionEntryCount;
+    // The transactions of the date being processed, they're put into TransactionImportEntry.SAME_DATE_ORDER
+    // once the date is complete.
+    final List<TransactionImportEntry> sameDateTransactionEntries = new ArrayList<>();
+    // If greater than 1 the transactions are converted on this many threads.
+    int conversionThreadCount;
+    ParallelTransactionConverter parallelTransactionConverter;
+    
+    // Set to convert the transactions as they're parsed instead of holding them until generateJGnashDatabase().
+    boolean isStreamingConversion;
+    boolean isStreamingStarted;
+    boolean isStreamingSetupOK;
+    // When streaming only the ids of the transactions are kept, for catching duplicates.
+    final GuidMap<Boolean> streamedTransactionIds = new GuidMap<>();
+    // Set to run the streamed transactions through a TransactionPipeline.
+    boolean isPipelinedConversion;
+    TransactionPipeline transactionPipeline;
+    // Set once the pipeline has failed while parsing, the parse is then stopped.
+    boolean isTransactionPipelineFailed;
+
+    final GuidMap<NoticeTree.Source> transactionAccountSources = new GuidMap<>();
     final NoticeTree.Source transactionAccountSourcesRoot = new NoticeTree.Source() {
 
 		@Override
@@ -200,9 +240,9 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
 	};
     
     
-    final Map<String, AccountImportEntry> templateAccountImportEntries = new HashMap<>();
-    final Map<String, TransactionImportEntry> templateTransactionImportEntries = new HashMap<>();
-    final Map<String, ScheduledTransactionEntry> scheduledTransactionEntries = new HashMap<>();
+    final GuidMap<AccountImportEntry> templateAccountImportEntries = new GuidMap<>();
+    final GuidMap<TransactionImportEntry> templateTransactionImportEntries = new GuidMap<>();
+    final GuidMap<ScheduledTransactionEntry> scheduledTransactionEntries = new GuidMap<>();
     int totalScheduledTransactionEntryCount;
 
     final Map<String, NoticeTree.Source> scheduledTransactionAccountSources = new HashMap<>();
@@ -227,12 +267,41 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
 
 	final NoticeTree warningNoticeTree = new NoticeTree();
     
+    // The elements ignored by NOP_StateHandler and SkipStateHandler, reported at the end of the document.
+    final ElementPathCounts ignoredElementCounts = new ElementPathCounts();
+    final NoticeTree.Source ignoredElementSourcesRoot = new NoticeTree.Source() {
+
+		@Override
+		public Source getParentSource() {
+			return null;
+		}
+
+		@Override
+		public String getSourceTitle() {
+			return GnuCashConvertUtil.getString("Message.Notice.IgnoredElementsRoot");
+		}
+
+		@Override
+		public String getSourceDescription() {
+			return null;
+		}
+    };
+    
     final Set<String> recordedWarningMsgIds = new HashSet<>();
     final List<String> recordedWarnings = new ArrayList<>();
     String errorMsg;
     
     TransactionMode transactionMode = TransactionMode.NORMAL;
     
+    // Set when the transactions are being parsed by a ParallelTransactionParser, see processingInstruction().
+    ParallelTransactionParser parallelTransactionParser;
+    
+    // Selects what is imported, null if everything is.
+    ImportFilter importFilter;
+    // Whether the accounts are in the import filter's account subtrees, filled in as transactions are added.
+    final GuidMap<Boolean> importFilterAccountInclusions = new GuidMap<>();
+    int filteredTransactionEntryCount;
+    
     
     static enum TransactionMode {
     	NORMAL(""),
@@ -247,22 +316,32 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
 
     GnuCashToJGnashContentHandler(Engine engine, GnuCashImport.StatusCallback statusCallback) {
         this.engine = engine;
-        this.statusCallback = statusCallback;
+        this.statusDispatcher = StatusDispatcher.wrap(statusCallback);
+    }
+
+    /**
+     * @return	The content handler the {@link ParsedEntry}s created while parsing refer to, normally this.
+     */
+    GnuCashToJGnashContentHandler getEntryContentHandler() {
+        return this;
     }
 
     protected void pushStateHandler(StateHandler stateHandler) {
-        this.stateHandlers.add(stateHandler);
+        if (this.stateHandlerCount == this.stateHandlers.length) {
+            this.stateHandlers = Arrays.copyOf(this.stateHandlers, this.stateHandlers.length * 2);
+        }
+        this.stateHandlers[this.stateHandlerCount++] = stateHandler;
         this.activeStateHandler = stateHandler;
     }
 
     protected void popStateHandler() {
-        this.stateHandlers.remove(stateHandlers.size() -1);
-        this.activeStateHandler = stateHandlers.get(stateHandlers.size() - 1);
+        this.stateHandlers[--this.stateHandlerCount] = null;
+        this.activeStateHandler = this.stateHandlers[this.stateHandlerCount - 1];
         if (this.activeStateHandler != null) {
             this.activeStateHandler.stateHandlerReactivated();
         }
     }
-
+    
     @Override
     public void setDocumentLocator(Locator locator) {
     	this.documentLocator = locator;
@@ -270,19 +349,34 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
 
     @Override
     public void startDocument() throws SAXException {
+        this.parseThread = Thread.currentThread();
         this.errorMsg = null;
         this.recordedWarningMsgIds.clear();
         this.recordedWarnings.clear();
 
-        this.stateHandlers.clear();
+        Arrays.fill(this.stateHandlers, null);
+        this.stateHandlerCount = 0;
+        this.textBuffer.setLength(0);
+        this.ignoredElementCounts.clear();
         pushStateHandler(new OuterStateHandler(this));
     }
 
     @Override
     public void endDocument() throws SAXException {
-        if (this.stateHandlers.size() != 1) {
-            LOG.warning("The number of state handlers at endDocument() is not 1! this.stateHandlers.size()=" + this.stateHandlers.size());
+        if (this.stateHandlerCount != 1) {
+            LOG.warning("The number of state handlers at endDocument() is not 1! this.stateHandlerCount=" + this.stateHandlerCount);
         }
+        
+        for (ElementPathCounts.Node node : this.ignoredElementCounts.getCountedNodes()) {
+            String path = node.getPath();
+            LOG.info("Ignored element " + path + " " + node.getCount() + " times.");
+            recordWarning(this.ignoredElementSourcesRoot, "Message.Parse.XMLElementIgnored", path, node.getCount());
+        }
+        
+        // The locator's position is meaningless once the document is done.
+        this.documentLocator = null;
+        this.parseThread = null;
+        this.stringPool.clear();
     }
 
     @Override
@@ -302,6 +396,9 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException {
         activeStateHandler.endElement(uri, localName, qName);
+        if (this.isTransactionPipelineFailed) {
+            throw new SAXException(this.errorMsg);
+        }
     }
 
     @Override
@@ -316,7 +413,13 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
 
     @Override
     public void processingInstruction(String target, String data) throws SAXException {
-
+        if ((this.parallelTransactionParser != null) && ParallelTransactionParser.CHUNK_PI_TARGET.equals(target)) {
+            // The marker for a chunk of transactions parsed by one of the parallel parser's workers.
+            this.parallelTransactionParser.mergeChunk(data, this);
+            if (this.isTransactionPipelineFailed) {
+                throw new SAXException(this.errorMsg);
+            }
+        }
     }
 
     @Override
@@ -335,6 +438,26 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         void endElement(String uri, String localName, String qName) throws SAXException;
 
         void characters(char[] ch, int start, int length) throws SAXException;
+        
+        /**
+         * @return	<code>true</code> if the element only contains text, the text may then be passed in one piece
+         * via {@link #elementText(String)} instead of via {@link #characters(char[], int, int)}.
+         */
+        boolean isTextOnly();
+        
+        /**
+         * @return	<code>true</code> if the state handler uses the character data of its element, if not the
+         * character data (typically the indentation between child elements) is discarded.
+         */
+        boolean isTextNeeded();
+        
+        /**
+         * @return	<code>true</code> if the state handler ignores everything within its element, the parser may then
+         * skip the element's content and only call {@link #endElement(String, String, String)} for the element itself.
+         */
+        boolean isContentSkipped();
+        
+        void elementText(String text);
 
         void stateHandlerReactivated();
 
@@ -349,15 +472,24 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
     abstract static class AbstractStateHandler implements StateHandler {
         final GnuCashToJGnashContentHandler contentHandler;
         final StateHandler parentStateHandler;
-        final String elementName;
+        String elementName;
+        GnuCashElement element;
         String characters = "";
+        int textStart = -1;
         boolean ignoreChildElements = false;
+        AbstractStateHandler [] reusableStateHandlers;
+        ElementPathCounts.Node elementPathNode;
 
         AbstractStateHandler(final GnuCashToJGnashContentHandler contentHandler,
                              final StateHandler parentStateHandler, final String elementName) {
             this.contentHandler = contentHandler;
             this.parentStateHandler = parentStateHandler;
             this.elementName = elementName;
+            this.element = lookupElement(elementName);
+        }
+        
+        private GnuCashElement lookupElement(String elementName) {
+            return (elementName != null) ? this.contentHandler.elementSymbols.lookup(elementName) : GnuCashElement.UNKNOWN;
         }
         
         @Override
@@ -372,10 +504,11 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
 
         @Override
         public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
-            StateHandler stateHandler = getStateHandlerForElement(qName);
+            GnuCashElement element = this.contentHandler.elementSymbols.lookup(qName);
+            StateHandler stateHandler = getStateHandlerForElement(element, qName);
 
             if (stateHandler == null) {
-                stateHandler = new NOP_StateHandler(this.contentHandler, this, qName);
+                stateHandler = getNOPStateHandler(element, qName);
             }
 
             this.contentHandler.pushStateHandler(stateHandler);
@@ -384,34 +517,183 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
 
         @Override
         public void endElement(String uri, String localName, String qName) throws SAXException {
-            if (this.elementName.equals(qName)) {
+            // The parsers hand out the same String for a name every time, so the symbol table lookup is normally an
+            // identity check, only elements that aren't ours need their names compared.
+            GnuCashElement endedElement = this.contentHandler.elementSymbols.lookup(qName);
+            if ((endedElement == this.element) 
+                    && ((endedElement != GnuCashElement.UNKNOWN) || (this.elementName == qName) || this.elementName.equals(qName))) {
+                takeText();
                 this.endState();
                 this.contentHandler.popStateHandler();
             }
         }
 
+        /**
+         * The character data is appended to the content handler's text buffer, which is shared by all the state handlers.
+         * A state handler's text starts at {@link #textStart} and is only turned into a String when the element ends, 
+         * at which point it's removed from the buffer. If the state handler has children that need text, their text 
+         * is appended after the parent's and removed before the parent gets any more.
+         */
         @Override
         public void characters(char[] ch, int start, int length) throws SAXException {
-            this.characters += new String(ch, start, length);
+            if (isTextNeeded()) {
+                if (this.textStart < 0) {
+                    this.textStart = this.contentHandler.textBuffer.length();
+                }
+                this.contentHandler.textBuffer.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public boolean isTextOnly() {
+            return false;
+        }
+
+        @Override
+        public boolean isTextNeeded() {
+            return isTextOnly();
+        }
+
+        @Override
+        public boolean isContentSkipped() {
+            return false;
+        }
+
+        @Override
+        public void elementText(String text) {
+            if (this.textStart >= 0) {
+                this.contentHandler.textBuffer.append(text);
+            }
+            else {
+                handleText(text, 0, text.length());
+            }
+        }
+        
+        /**
+         * Hands any text in the text buffer for the element to {@link #handleText(CharSequence, int, int)} and
+         * removes it from the buffer.
+         */
+        void takeText() {
+            if (this.textStart >= 0) {
+                StringBuilder textBuffer = this.contentHandler.textBuffer;
+                int start = this.textStart;
+                this.textStart = -1;
+                handleText(textBuffer, start, textBuffer.length());
+                textBuffer.setLength(start);
+            }
+        }
+        
+        /**
+         * Called with the text of the element when the element ends, before {@link #endState()}. The text is only
+         * valid during the call. The default adds the text to {@link #characters}, state handlers that can parse
+         * the text in place override this to avoid creating the String.
+         * @param text	The text, the characters from start up to end.
+         * @param start	The index of the first character.
+         * @param end	The index after the last character.
+         */
+        protected void handleText(CharSequence text, int start, int end) {
+            String value = text.subSequence(start, end).toString();
+            this.characters = this.characters.isEmpty() ? value : this.characters + value;
         }
 
         @Override
         public void stateHandlerReactivated() {
         }
 
-        protected StateHandler getStateHandlerForElement(String qName) {
-            return new NOP_StateHandler(this.contentHandler, this, qName);
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            return getNOPStateHandler(element, qName);
+        }
+        
+        /**
+         * Retrieves a reusable {@link NOP_StateHandler} for an element whose content is ignored.
+         * @param element	The element.
+         * @param qName	The element name.
+         * @return	The state handler.
+         */
+        final NOP_StateHandler getNOPStateHandler(GnuCashElement element, String qName) {
+            NOP_StateHandler stateHandler = getReusableStateHandler(element, NOP_StateHandler.class);
+            if (stateHandler == null) {
+                return setReusableStateHandler(element, new NOP_StateHandler(this.contentHandler, this, qName));
+            }
+            stateHandler.resetState(qName);
+            return stateHandler;
+        }
+        
+        /**
+         * Retrieves the child state handler last used for an element, if it is of a given class. Child state handlers
+         * are only active one at a time, so they can be reused for the next child element instead of allocating a
+         * new state handler for every element.
+         * @param element	The element.
+         * @param stateHandlerClass	The class of the state handler.
+         * @return	The state handler, <code>null</code> if there isn't one to be reused.
+         */
+        <T extends AbstractStateHandler> T getReusableStateHandler(GnuCashElement element, Class<T> stateHandlerClass) {
+            if (this.reusableStateHandlers != null) {
+                AbstractStateHandler stateHandler = this.reusableStateHandlers[element.ordinal()];
+                if ((stateHandler != null) && (stateHandler.getClass() == stateHandlerClass)) {
+                    return stateHandlerClass.cast(stateHandler);
+                }
+            }
+            return null;
+        }
+        
+        /**
+         * Sets the child state handler to be reused for an element.
+         * @param element	The element.
+         * @param stateHandler	The state handler.
+         * @return	stateHandler.
+         */
+        <T extends AbstractStateHandler> T setReusableStateHandler(GnuCashElement element, T stateHandler) {
+            if (this.reusableStateHandlers == null) {
+                this.reusableStateHandlers = new AbstractStateHandler[GnuCashElement.ELEMENT_COUNT];
+            }
+            this.reusableStateHandlers[element.ordinal()] = stateHandler;
+            return stateHandler;
+        }
+        
+        /**
+         * Called when the state handler is being reused for another element, before it is pushed. Subclasses
+         * that are reused should reset their own state.
+         * @param elementName	The element name.
+         */
+        protected void resetState(String elementName) {
+            this.elementName = elementName;
+            this.element = lookupElement(elementName);
+            this.characters = "";
+            this.textStart = -1;
+            this.ignoreChildElements = false;
         }
         
         protected void endState() {
         }
+        
+        /**
+         * Retrieves the node for the path of the element in {@link GnuCashToJGnashContentHandler#ignoredElementCounts}.
+         * The node is kept, it's only looked up again if the element name or the parent's path has changed,
+         * which can happen when the state handler is reused.
+         * @return	The node.
+         */
+        ElementPathCounts.Node getElementPathNode() {
+            if (this.elementName == null) {
+                return this.contentHandler.ignoredElementCounts.getRoot();
+            }
+            
+            ElementPathCounts.Node parentNode = (this.parentStateHandler instanceof AbstractStateHandler) 
+                    ? ((AbstractStateHandler)this.parentStateHandler).getElementPathNode() : this.contentHandler.ignoredElementCounts.getRoot();
+            ElementPathCounts.Node node = this.elementPathNode;
+            if ((node == null) || (node.parent != parentNode) || (node.name != this.elementName)) {
+                node = parentNode.getChild(this.elementName);
+                this.elementPathNode = node;
+            }
+            return node;
+        }
 
         @Override
         public void recordWarning(String key, Object ... arguments) {
         	ParsedEntry parsedEntry = this.getParsedEntry();
         	if (parsedEntry == null) {
-        		for (int index = this.contentHandler.stateHandlers.size() - 1; index >= 0; --index) {
-        			StateHandler stateHandler = this.contentHandler.stateHandlers.get(index);
+        		for (int index = this.contentHandler.stateHandlerCount - 1; index >= 0; --index) {
+        			StateHandler stateHandler = this.contentHandler.stateHandlers[index];
         			parsedEntry = stateHandler.getParsedEntry();
         			if (parsedEntry != null) {
         				break;
@@ -431,7 +713,7 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
 
 
     /**
-     * The default state handler, this prints the element name to the console.
+     * The default state handler, this counts the element in the content handler's ignored elements.
      * @author albert
      *
      */
@@ -452,21 +734,15 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         @Override
         protected void endState() {
             super.endState();
-            String namePath = "";
-            String separator = "";
-            for (StateHandler stateHandler : this.contentHandler.stateHandlers) {
-                namePath += separator + stateHandler.getElementName();
-                separator = ">";
-            }
-            System.out.println("NOP_StateHandler.endState()..." + namePath);
+            ++getElementPathNode().count;
         }
 
     }
 
     
     /**
-     * State handler for skipping an element and all its children. The element name is printed
-     * to the console, all the child elements are ignored.
+     * State handler for skipping an element and all its children. The element is counted in the 
+     * content handler's ignored elements, all the child elements are ignored.
      * @author albert
      *
      */
@@ -492,20 +768,103 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
         }
 
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#isContentSkipped()
+         */
+        @Override
+        public boolean isContentSkipped() {
+            return true;
+        }
+
         /* (non-Javadoc)
          * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#endState()
          */
         @Override
         protected void endState() {
-            String namePath = "";
-            String separator = "";
-            for (StateHandler stateHandler : this.contentHandler.stateHandlers) {
-                namePath += separator + stateHandler.getElementName();
-                separator = ">";
+            ++getElementPathNode().count;
+        }
+        
+        
+    }
+
+    
+    /**
+     * State handler for an element left out by the {@link ImportFilter}. The element and all its children are
+     * skipped, unlike with {@link SkipStateHandler} they are not counted as ignored.
+     * @author albert
+     *
+     */
+    static class FilteredStateHandler extends AbstractStateHandler {
+        int childDepth;
+
+        FilteredStateHandler(GnuCashToJGnashContentHandler contentHandler, StateHandler parentStateHandler,
+                String elementName) {
+            super(contentHandler, parentStateHandler, elementName);
+        }
+        
+        /**
+         * Retrieves a {@link FilteredStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @param parentStateHandler
+         * @param element
+         * @param elementName
+         * @return	The state handler.
+         */
+        static FilteredStateHandler obtain(AbstractStateHandler parentStateHandler, GnuCashElement element, String elementName) {
+            FilteredStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, FilteredStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new FilteredStateHandler(parentStateHandler.contentHandler, parentStateHandler, elementName));
             }
-            System.out.println("SkipStateHandler.endState()..." + namePath);
+            stateHandler.resetState(elementName);
+            return stateHandler;
+        }
+
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#resetState(java.lang.String)
+         */
+        @Override
+        protected void resetState(String elementName) {
+            super.resetState(elementName);
+            this.childDepth = 0;
         }
         
+		/* (non-Javadoc)
+		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.StateHandler#getParsedEntry()
+		 */
+        @Override
+        public ParsedEntry getParsedEntry() {
+        	return null;
+        }
+
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#startElement(java.lang.String, java.lang.String, java.lang.String, org.xml.sax.Attributes)
+         */
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+            ++this.childDepth;
+        }
+
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#endElement(java.lang.String, java.lang.String, java.lang.String)
+         */
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            // Children with the same name as the element mustn't end it.
+            if (this.childDepth > 0) {
+                --this.childDepth;
+            }
+            else {
+                super.endElement(uri, localName, qName);
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#isContentSkipped()
+         */
+        @Override
+        public boolean isContentSkipped() {
+            return true;
+        }
         
     }
 
@@ -530,17 +889,17 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         }
 
         /* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-            switch (qName) {
-            case "gnc-v2":
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            switch (element) {
+            case GNC_V2:
                 return new GNC_V2_StateHandler(this.contentHandler, this, qName); 
 
             }
 
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
 
     }
@@ -561,24 +920,18 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         }
 
         /* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-            switch (qName) {
-            case "gnc:count-data":
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            switch (element) {
+            case GNC_COUNT_DATA:
                 return new CountDataStateHandler(this.contentHandler, this, qName);
 
-            case "gnc:book":
+            case GNC_BOOK:
                 return new BookStateHandler(this.contentHandler, this, qName);
             }
-            return super.getStateHandlerForElement(qName);
-        }
-
-        @Override
-        protected void endState() {
-            super.endState();
-            System.out.println("GNC_V2_StateHandler.endState()...");
+            return super.getStateHandlerForElement(element, qName);
         }
     }
 
@@ -607,6 +960,11 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
             this.cdType = atts.getValue("cd:type");
         }
 
+        @Override
+        public boolean isTextOnly() {
+            return true;
+        }
+
         @Override
         protected void endState() {
             super.endState();
@@ -658,6 +1016,12 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         protected boolean validateVersion(String version) {
             return true;
         }
+
+        @Override
+        protected void resetState(String elementName) {
+            super.resetState(elementName);
+            this.version = null;
+        }
     }
 
 
@@ -675,44 +1039,60 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         }
 
         /* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-            switch (qName) {
-            case "book:id" :
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            switch (element) {
+            case BOOK_ID :
                 return new IdEntry.IdStateHandler(this.contentHandler.bookId, this.contentHandler, this, qName);
                 
-            case "book:slots" :
+            case BOOK_SLOTS :
                 return new SlotEntry.SlotsStateHandler(this.contentHandler.bookSlots, null, this.contentHandler, this, qName);
                 
-            case "gnc:transaction" :
-                return new TransactionImportEntry.TransactionStateHandler(this.contentHandler, this, qName);
+            case GNC_TRANSACTION :
+                if (this.contentHandler.isCategoryExcluded(ImportFilter.Category.TRANSACTIONS)) {
+                    ++this.contentHandler.filteredTransactionEntryCount;
+                    return FilteredStateHandler.obtain(this, element, qName);
+                }
+                if (this.contentHandler.isStreamingConversion) {
+                    this.contentHandler.startStreamingConversion();
+                }
+                return TransactionImportEntry.TransactionStateHandler.obtain(this, element, qName);
                 
-            case "gnc:account":
+            case GNC_ACCOUNT:
                 return new AccountImportEntry.AccountStateHandler(this.contentHandler, this, qName);
                 
-            case "gnc:commodity":
+            case GNC_COMMODITY:
                 return new CommodityEntry.CommodityStateHandler(this.contentHandler, this, qName);
                 
-            case "gnc:pricedb" :
+            case GNC_PRICEDB :
+                if (this.contentHandler.isCategoryExcluded(ImportFilter.Category.PRICES)) {
+                    return FilteredStateHandler.obtain(this, element, qName);
+                }
                 return new PriceEntry.PriceDBStateHandler(this.contentHandler, this, qName);
 
-            case "gnc:count-data" :
+            case GNC_COUNT_DATA :
                 return new CountDataStateHandler(this.contentHandler, this, qName);
                 
-            case "gnc:schedxaction":
+            case GNC_SCHEDXACTION:
+                if (this.contentHandler.isCategoryExcluded(ImportFilter.Category.SCHEDULED_TRANSACTIONS)) {
+                    return FilteredStateHandler.obtain(this, element, qName);
+                }
                 return new ScheduledTransactionEntry.ScheduledTransactionStateHandler(this.contentHandler, this, qName);
                 
-            case "gnc:template-transactions":
+            case GNC_TEMPLATE_TRANSACTIONS:
+                if (this.contentHandler.isCategoryExcluded(ImportFilter.Category.SCHEDULED_TRANSACTIONS)) {
+                    return FilteredStateHandler.obtain(this, element, qName);
+                }
                 return new TemplateTransactionsStateHandler(this.contentHandler, this, qName);
 
-            case "gnc:budget":
+            case GNC_BUDGET:
                 return new SkipStateHandler(this.contentHandler, this, qName);
                 
             }
 
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
     }
     
@@ -738,19 +1118,19 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         }
 
         /* (non-Javadoc)
-		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
 		 */
 		@Override
-		protected StateHandler getStateHandlerForElement(String qName) {
-			switch (qName) {
-			case "gnc:account":
+		protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+			switch (element) {
+			case GNC_ACCOUNT:
                 return new AccountImportEntry.AccountStateHandler(this.contentHandler, this, qName);
 
-			case "gnc:transaction":
-                return new TransactionImportEntry.TransactionStateHandler(this.contentHandler, this, qName);
+			case GNC_TRANSACTION:
+                return TransactionImportEntry.TransactionStateHandler.obtain(this, element, qName);
 			}
 			
-			return super.getStateHandlerForElement(qName);
+			return super.getStateHandlerForElement(element, qName);
 		}
 
 		/* (non-Javadoc)
@@ -780,6 +1160,11 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
     public interface SimpleDataSetter {
         public void setAttributes(Attributes atts, SimpleDataStateHandler stateHandler);
         public void setData(String characters, SimpleDataStateHandler stateHandler);
+        /**
+         * @return	<code>true</code> if the text is likely to repeat, the text is then taken from the content handler's
+         * {@link StringPool}.
+         */
+        public boolean isTextPooled();
     }
 
     public static abstract class AbstractSimpleDataSetter implements SimpleDataSetter {
@@ -787,6 +1172,11 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         public void setAttributes(Attributes atts, SimpleDataStateHandler stateHandler) {
 
         }
+
+        @Override
+        public boolean isTextPooled() {
+            return false;
+        }
     }
 
     /**
@@ -796,12 +1186,32 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
      *
      */
     public static class SimpleDataStateHandler extends AbstractStateHandler {
-        final SimpleDataSetter dataSetter;
+        SimpleDataSetter dataSetter;
         SimpleDataStateHandler(GnuCashToJGnashContentHandler contentHandler, StateHandler parentStateHandler, String elementName, SimpleDataSetter dataSetter) {
             super(contentHandler, parentStateHandler, elementName);
             this.dataSetter = dataSetter;
         }
 
+        /**
+         * Retrieves a {@link SimpleDataStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @param parentStateHandler	The parent state handler.
+         * @param element	The child element.
+         * @param elementName	The child element's name.
+         * @param dataSetter	The data setter, since the state handler may be reused this should not be allocated per element.
+         * @return	The state handler.
+         */
+        static SimpleDataStateHandler obtain(AbstractStateHandler parentStateHandler, GnuCashElement element, String elementName, 
+                SimpleDataSetter dataSetter) {
+            SimpleDataStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, SimpleDataStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new SimpleDataStateHandler(parentStateHandler.contentHandler, parentStateHandler, elementName, dataSetter));
+            }
+            stateHandler.resetState(elementName);
+            stateHandler.dataSetter = dataSetter;
+            return stateHandler;
+        }
+
         
 		/* (non-Javadoc)
 		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.StateHandler#getParsedEntry()
@@ -817,6 +1227,24 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
             this.dataSetter.setAttributes(atts, this);
         }
 
+        @Override
+        public boolean isTextOnly() {
+            return true;
+        }
+
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#handleText(java.lang.CharSequence, int, int)
+         */
+        @Override
+        protected void handleText(CharSequence text, int start, int end) {
+            if (this.dataSetter.isTextPooled() && this.characters.isEmpty()) {
+                this.characters = this.contentHandler.stringPool.get(text, start, end);
+            }
+            else {
+                super.handleText(text, start, end);
+            }
+        }
+
         @Override
         protected void endState() {
             super.endState();
@@ -829,7 +1257,38 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         return errorMsg;
     }
 
-    void recordWarning(NoticeTree.Source source, String key, Object ...arguments) {
+    // Synchronized since the transactions may be converted on several threads.
+    synchronized void recordWarning(NoticeTree.Source source, String key, Object ...arguments) {
+        List<ParallelTransactionConverter.DeferredWarning> warnings = this.deferredWarnings.get();
+        if (warnings != null) {
+            // Converting a transaction on another thread, see convertTransactionEntry().
+            warnings.add(new ParallelTransactionConverter.DeferredWarning(source, key, arguments));
+            return;
+        }
+        
+        // The locator keeps moving while a transaction is converted on another thread, the entry then
+        // goes by the location of its transaction.
+        if ((source instanceof ParsedEntry) && !((ParsedEntry)source).isLocationCaptured()
+                && (Thread.currentThread() == this.parseThread)) {
+            ((ParsedEntry)source).captureLocation(this);
+        }
+        addWarningNotice(source, key, arguments);
+    }
+    
+    private synchronized void recordDeferredWarnings(List<ParallelTransactionConverter.DeferredWarning> warnings) {
+        // The entries were converted on another thread, the location the locator's at now isn't theirs.
+        for (ParallelTransactionConverter.DeferredWarning warning : warnings) {
+            addWarningNotice(warning.source, warning.key, warning.arguments);
+        }
+    }
+    
+    private void addWarningNotice(NoticeTree.Source source, String key, Object ...arguments) {
+        for (NoticeTree.Source parentSource = source; parentSource instanceof ParsedEntry; parentSource = ((ParsedEntry)parentSource).parentSource) {
+            if (parentSource instanceof TransactionImportEntry) {
+                ((TransactionImportEntry)parentSource).hasWarnings = true;
+                break;
+            }
+        }
         String msg = GnuCashConvertUtil.getString(key, arguments);
         this.warningNoticeTree.addNotice(source, msg, null);
     }
@@ -845,6 +1304,14 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
     
     
     boolean addPriceEntry(PriceEntry priceEntry) {
+        if (isCategoryExcluded(ImportFilter.Category.PRICES)) {
+            return true;
+        }
+        if (this.isStreamingStarted) {
+            recordWarning(priceEntry, "Message.Parse.XMLEntryAfterTransactions", "price", priceEntry.commodityRef.id);
+            return true;
+        }
+        
         String securityId = priceEntry.commodityRef.id;
         SortedMap<LocalDate, PriceEntry> priceEntriesForSecurity = this.sortedPriceEntries.get(securityId);
         if (priceEntriesForSecurity == null) {
@@ -852,7 +1319,7 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
             this.sortedPriceEntries.put(securityId, priceEntriesForSecurity);
         }
         
-        PriceEntry existingEntry = priceEntriesForSecurity.put(priceEntry.time.localDate, priceEntry);
+        PriceEntry existingEntry = priceEntriesForSecurity.put(priceEntry.time.getLocalDate(), priceEntry);
         if ((existingEntry != null) && !existingEntry.value.equals(priceEntry.value)) {
             recordWarning(priceEntry.getParentSource(), "Message.Parse.XMLDuplicatePriceEntry", securityId, priceEntry.time.toDateString());
         }
@@ -938,13 +1405,17 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
     boolean addAccountEntry(AccountImportEntry entry) {
     	switch (this.transactionMode) {
     	case NORMAL :
-            if (this.accountImportEntries.put(entry.id.id, entry) != null) {
+            if (this.isStreamingStarted) {
+                recordWarning(entry, "Message.Parse.XMLEntryAfterTransactions", "account", entry.id);
+                break;
+            }
+            if (this.accountImportEntries.put(entry.id, entry) != null) {
                 recordWarning(entry, "Message.Parse.XMLMultipleAccountEntries", entry.name, entry.id);
             }
     		break;
     		
     	case TEMPLATE :
-            if (this.templateAccountImportEntries.put(entry.id.id, entry) != null) {
+            if (this.templateAccountImportEntries.put(entry.id, entry) != null) {
                 recordWarning(entry, "Message.Parse.XMLMultipleTemplateAccountEntries", entry.name, entry.id);
             }
     		break;
@@ -953,24 +1424,96 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
     }
     
     
+    /**
+     * @param category	The category.
+     * @return	<code>true</code> if the import filter leaves out the category of elements.
+     */
+    boolean isCategoryExcluded(ImportFilter.Category category) {
+        return (this.importFilter != null) && this.importFilter.isCategoryExcluded(category);
+    }
+    
+    
+    /**
+     * Determines if a normal transaction passes the import filter, as far as the transaction has been parsed.
+     * @param entry	The transaction.
+     * @param isComplete	<code>true</code> if the transaction has been completely parsed, the account subtrees
+     * are only checked then since the accounts may not all have been parsed while the transaction is.
+     * @return	<code>false</code> if the transaction is to be left out.
+     */
+    boolean isTransactionEntryIncluded(TransactionImportEntry entry, boolean isComplete) {
+        ImportFilter filter = this.importFilter;
+        if (filter == null) {
+            return true;
+        }
+        if (filter.isCategoryExcluded(ImportFilter.Category.TRANSACTIONS)) {
+            return false;
+        }
+        if (entry.datePosted.isParsed && !filter.isDateIncluded(entry.datePosted)) {
+            return false;
+        }
+        if (entry.id.hasId() && !filter.isSampled(entry.id)) {
+            return false;
+        }
+        if (isComplete && filter.hasAccountSubtrees()) {
+            for (SplitEntry splitEntry : entry.originalSplitsList) {
+                if (splitEntry.account.hasId() 
+                 && filter.isAccountInSubtrees(splitEntry.account, this.accountImportEntries, this.importFilterAccountInclusions)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+    
+    
+    /**
+     * Adds a parsed transaction.
+     * @param entry	The transaction.
+     * @return	<code>false</code> if the streamed transactions can't be converted any more, the error message has
+     * then been recorded and the reading should stop.
+     */
     boolean addTransactionEntry(TransactionImportEntry entry) {
     	switch (this.transactionMode) {
     	case NORMAL :
-            Map<String, TransactionImportEntry> dateEntries = this.transactionEntriesByDate.get(entry.datePosted.localDate);
-            if (dateEntries == null) {
-                dateEntries = new HashMap<>();
-                this.transactionEntriesByDate.put(entry.datePosted.localDate, dateEntries);
+            if (!isTransactionEntryIncluded(entry, true)) {
+                ++this.filteredTransactionEntryCount;
+                break;
+            }
+            if (this.isStreamingConversion) {
+                return streamTransactionEntry(entry);
+            }
+            if (this.transactionSpillSorter != null) {
+                addSpillSorterTransactionEntry(entry);
+                break;
             }
-            if (dateEntries.put(entry.id.id, entry) != null) {
+            if (this.transactionColumnStore != null) {
+                addColumnStoreTransactionEntry(entry);
+                break;
+            }
+            
+            TransactionImportEntry previousEntry = this.transactionEntries.put(entry.id, entry);
+            if (previousEntry != null) {
                 recordWarning(entry, "Message.Parse.XMLDuplicateTransaction", entry.id, entry.datePosted.toDateString());
+                this.transactionEntriesByDate.get(previousEntry.datePosted.getLocalDate()).remove(previousEntry);
             }
             else {
                 ++this.totalTransactionEntryCount;
             }
+            
+            List<TransactionImportEntry> dateEntries = this.transactionEntriesByDate.get(entry.datePosted.getLocalDate());
+            if (dateEntries == null) {
+                dateEntries = new ArrayList<>();
+                this.transactionEntriesByDate.put(entry.datePosted.getLocalDate(), dateEntries);
+            }
+            dateEntries.add(entry);
             break;
             
     	case TEMPLATE :
-    		if (this.templateTransactionImportEntries.put(entry.id.id, entry) != null) {
+            if (isCategoryExcluded(ImportFilter.Category.SCHEDULED_TRANSACTIONS)) {
+                break;
+            }
+    		if (this.templateTransactionImportEntries.put(entry.id, entry) != null) {
                 recordWarning(entry, "Message.Parse.XMLDuplicateTemplateTransaction", entry.id, entry.datePosted.toDateString());
     		}
     		break;
@@ -980,11 +1523,141 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
     }
     
     
+    void addColumnStoreTransactionEntry(TransactionImportEntry entry) {
+        int previousIndex = this.transactionColumnStore.indexOf(entry.id);
+        if (previousIndex >= 0) {
+            // Before the entry is added, so the store keeps the entry with its warning.
+            recordWarning(entry, "Message.Parse.XMLDuplicateTransaction", entry.id, entry.datePosted.toDateString());
+            this.transactionColumnStore.remove(previousIndex);
+        }
+        else {
+            ++this.totalTransactionEntryCount;
+        }
+        this.transactionColumnStore.add(entry);
+    }
+    
+    
+    void addSpillSorterTransactionEntry(TransactionImportEntry entry) {
+        if (this.isTransactionSpillFailed) {
+            return;
+        }
+        if (this.transactionSpillSorter.containsId(entry.id)) {
+            recordWarning(entry, "Message.Parse.XMLDuplicateTransaction", entry.id, entry.datePosted.toDateString());
+        }
+        else {
+            ++this.totalTransactionEntryCount;
+        }
+        try {
+            this.transactionSpillSorter.add(entry);
+        } catch (IOException e) {
+            recordError("Message.Error.TransactionSpillError", e.getLocalizedMessage());
+            this.isTransactionSpillFailed = true;
+        }
+    }
+    
+    
+    /**
+     * Sets up the commodities, prices and accounts so the transactions can be converted as they are parsed, GnuCash
+     * writes all of them before the transactions. Only does anything the first time it's called.
+     * @return	<code>false</code> if the setup failed, the error message has then been recorded.
+     */
+    boolean startStreamingConversion() {
+        if (!this.isStreamingStarted) {
+            this.isStreamingStarted = true;
+            
+            // The transaction count isn't known yet, the count data is the best there is.
+            Integer expectedCount = this.countData.get("transaction");
+            startStatusProgress((expectedCount != null) ? expectedCount : 0);
+            this.isStreamingSetupOK = setupCommodities() && setupPrices() && setupAccounts();
+        }
+        return this.isStreamingSetupOK;
+    }
+    
+    
+    /**
+     * Converts a transaction and adds it to the engine right away, once the transaction is done with it can be
+     * garbage collected. Since the first transaction with a given id has already been added when a duplicate
+     * comes along, the duplicate is ignored.
+     * @param entry	The transaction.
+     * @return	<code>false</code> if the {@link TransactionPipeline} has failed, the error message has then been recorded.
+     */
+    boolean streamTransactionEntry(TransactionImportEntry entry) {
+        if (!startStreamingConversion()) {
+            return true;
+        }
+        
+        if (this.streamedTransactionIds.put(entry.id, Boolean.TRUE) != null) {
+            recordWarning(entry, "Message.Parse.XMLDuplicateStreamedTransaction", entry.id, entry.datePosted.toDateString());
+            return true;
+        }
+        ++this.totalTransactionEntryCount;
+        
+        if (this.isPipelinedConversion) {
+            if (this.transactionPipeline == null) {
+                this.transactionPipeline = new TransactionPipeline(this, this.conversionThreadCount);
+            }
+            if (!this.transactionPipeline.submit(entry)) {
+                // No point parsing the rest of the transactions.
+                recordTransactionPipelineError();
+                this.isTransactionPipelineFailed = true;
+                return false;
+            }
+            return true;
+        }
+        
+        boolean result = entry.generateJGnashTransaction(this, this.engine);
+        updateTransactionStatus(entry, result);
+        return true;
+    }
+    
+    
+    /**
+     * Waits for the transactions in the {@link TransactionPipeline} to be added to jGnash.
+     * @return	<code>false</code> if the pipeline failed.
+     */
+    boolean finishTransactionPipeline() {
+        if (this.transactionPipeline == null) {
+            return true;
+        }
+        
+        boolean result = this.transactionPipeline.finish();
+        if (!result) {
+            recordTransactionPipelineError();
+        }
+        
+        // The writer thread has been joined, its counts can be picked up.
+        this.processedTransactionEntryCount += this.transactionPipeline.getAddedCount();
+        updateStatusCallback(this.transactionPipeline.getWrittenCount(), null);
+        this.transactionPipeline = null;
+        return result;
+    }
+    
+    private void recordTransactionPipelineError() {
+        Throwable failure = this.transactionPipeline.getFailure();
+        String failureMsg = "";
+        if (failure != null) {
+            failureMsg = (failure.getLocalizedMessage() != null) ? failure.getLocalizedMessage() : failure.toString();
+        }
+        recordError("Message.Error.TransactionPipelineError", failureMsg);
+    }
+    
+    
+    /**
+     * Stops the {@link TransactionPipeline} if it's still running, for when the import fails.
+     */
+    void closeTransactionPipeline() {
+        if (this.transactionPipeline != null) {
+            this.transactionPipeline.close();
+            this.transactionPipeline = null;
+        }
+    }
+    
+    
     class TransactionAccountSource implements NoticeTree.Source {
-    	final String accountId;
+    	final IdEntry accountId;
     	AccountImportEntry accountImportEntry;
     	
-		TransactionAccountSource(String accountId) {
+		TransactionAccountSource(IdEntry accountId) {
 			this.accountId = accountId;
 		}
 
@@ -1015,7 +1688,7 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
 					title = this.accountImportEntry.description;
 				}
 				if ((title == null) || title.isEmpty()) {
-					title = this.accountImportEntry.id.id;
+					title = this.accountImportEntry.id.getId();
 				}
 			}
 			if (title == null) {
@@ -1038,7 +1711,7 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
     NoticeTree.Source getTransactionParentSource(TransactionImportEntry entry) {
     	NoticeTree.Source source = null;
 
-    	String accountId = entry.getAccountId();
+    	IdEntry accountId = entry.getParentAccountId();
     	if (accountId != null) {
     		source = this.transactionAccountSources.get(accountId);
     		if (source == null ) {
@@ -1055,7 +1728,10 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
     
     
     boolean addScheduledTransactionEntry(ScheduledTransactionEntry entry) {
-    	if (this.scheduledTransactionEntries.put(entry.id.id, entry) != null) {
+        if (isCategoryExcluded(ImportFilter.Category.SCHEDULED_TRANSACTIONS)) {
+            return true;
+        }
+    	if (this.scheduledTransactionEntries.put(entry.id, entry) != null) {
     		recordWarning(entry, "Message.Parse.XMLDuplicateScheduledTransaction", entry.id, entry.name);
     	}
     	++this.totalScheduledTransactionEntryCount;
@@ -1069,16 +1745,33 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
     
     
     /**
-     * Calls the installed StatusCallback, if any, with an updated progress/status.
+     * Calls the installed StatusCallback, if any, with an updated progress/status. While the transactions are
+     * streamed out of the XML parse this does nothing, the parse is reporting its progress in bytes then.
      * @param toAdd	The amount to increase the current progress by.
      * @param statusMsg	If not null, the status message to set.
      */
     void updateStatusCallback(long toAdd, String statusMsg) {
-        if (this.statusCallback != null) {
+        if ((this.statusDispatcher != null) && !isParseProgressReported()) {
             this.statusProgressCount += toAdd;
-            this.statusCallback.updateStatus(this.statusProgressCount,  this.statusProgressTotalCount, statusMsg);
+            this.statusDispatcher.updateStatus(this.statusProgressCount,  this.statusProgressTotalCount, statusMsg);
         }
     }
+    
+    /**
+     * @return	<code>true</code> if the next call to {@link #updateStatusCallback(long, String)} will make it to the
+     * installed StatusCallback, used to avoid building status messages that would be discarded.
+     */
+    boolean isStatusUpdateDue() {
+        return (this.statusDispatcher != null) && !isParseProgressReported() && this.statusDispatcher.isUpdateDue();
+    }
+    
+    /**
+     * @return	<code>true</code> if streaming conversion is running inside the XML parse, the byte progress of the parse
+     * and the item counts would otherwise keep restarting each other's phase in the {@link StatusDispatcher}.
+     */
+    boolean isParseProgressReported() {
+        return this.isStreamingStarted && (this.parseThread != null);
+    }
 
 
     /**
@@ -1086,25 +1779,31 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
      * @return	<code>false</code> if failed.
      */
     public boolean generateJGnashDatabase() {
-        this.errorMsg = null;
-        
-        this.statusProgressCount = 0;
-        this.statusProgressTotalCount = 0;
-        this.statusProgressTotalCount += this.commodityEntries.size();
-        this.statusProgressTotalCount += this.sortedPriceEntries.size();
-        this.statusProgressTotalCount += this.accountImportEntries.size();
-        this.statusProgressTotalCount += this.totalTransactionEntryCount;
-
-        if (!setupCommodities()) {
-            return false;
-        }
-
-        if (!setupPrices()) {
-            return false;
+        if (this.isStreamingStarted) {
+            // The setup was done and the transactions converted while parsing.
+            if (!this.isStreamingSetupOK) {
+                return false;
+            }
+            if (!finishTransactionPipeline()) {
+                return false;
+            }
         }
-
-        if (!setupAccounts()) {
-            return false;
+        else {
+            this.errorMsg = null;
+            
+            startStatusProgress(this.totalTransactionEntryCount);
+    
+            if (!setupCommodities()) {
+                return false;
+            }
+    
+            if (!setupPrices()) {
+                return false;
+            }
+    
+            if (!setupAccounts()) {
+                return false;
+            }
         }
         
         if (!processTransactions()) {
@@ -1114,11 +1813,29 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         if (!processScheduledTransactions()) {
         	return false;
         }
+        
+        if (this.statusDispatcher != null) {
+            this.statusDispatcher.flush();
+        }
 
         return true;
     }
 
 
+    /**
+     * Resets the status progress for converting the parsed entries.
+     * @param transactionCount	The number of transactions to be converted.
+     */
+    void startStatusProgress(int transactionCount) {
+        this.statusProgressCount = 0;
+        this.statusProgressTotalCount = 0;
+        this.statusProgressTotalCount += this.commodityEntries.size();
+        this.statusProgressTotalCount += this.sortedPriceEntries.size();
+        this.statusProgressTotalCount += this.accountImportEntries.size();
+        this.statusProgressTotalCount += transactionCount;
+    }
+
+
     protected boolean setupCommodities() {
         updateStatusCallback(0, GnuCashConvertUtil.getString("Message.Status.ImportingCommodities", this.commodityEntries.size()));
         
@@ -1225,16 +1942,16 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         // Create and add the accounts based on the account tree.
         Map<String, AccountImportEntry> workingAccountEntries = new HashMap<>();
         AccountImportEntry rootAccountEntry = null;
-        for (Map.Entry<String, AccountImportEntry> entry : this.accountImportEntries.entrySet()) {
-            if (entry.getValue().type.equals("ROOT")) {
+        for (AccountImportEntry accountEntry : this.accountImportEntries.values()) {
+            if (accountEntry.type.equals("ROOT")) {
                 if (rootAccountEntry != null) {
                     recordError("Message.Error.MultipleRootAccounts" + this.transactionMode.idSuffix);
                     return false;
                 }
-                rootAccountEntry = entry.getValue();
+                rootAccountEntry = accountEntry;
             }
             else {
-                workingAccountEntries.put(entry.getKey(), entry.getValue());
+                workingAccountEntries.put(accountEntry.id.getId(), accountEntry);
             }
         }
 
@@ -1265,38 +1982,177 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         
         Integer expectedCount = this.countData.get("transaction");
         if (expectedCount != null) {
-            if (expectedCount != this.totalTransactionEntryCount) {
-                recordWarning((ParsedEntry)null, "Message.Warning.TransactionCountMismatch", expectedCount, this.totalTransactionEntryCount);
+            // The count includes the transactions the import filter left out.
+            int parsedCount = this.totalTransactionEntryCount + this.filteredTransactionEntryCount;
+            if (expectedCount != parsedCount) {
+                recordWarning((ParsedEntry)null, "Message.Warning.TransactionCountMismatch", expectedCount, parsedCount);
             }
         }
         
-        int count = 0;
-        for (Map.Entry<LocalDate, Map<String, TransactionImportEntry>> dateEntry : this.transactionEntriesByDate.entrySet()) {
-            updateStatusCallback(0, GnuCashConvertUtil.getString("Message.Status.ProcessingTransactions", this.totalTransactionEntryCount, dateEntry.getKey().format(DateTimeFormatter.ISO_DATE)));
-            
-            Map<String, TransactionImportEntry> entriesForDate = dateEntry.getValue();
-            for (Map.Entry<String, TransactionImportEntry> entry : entriesForDate.entrySet()) {
-                TransactionImportEntry transactionEntry = entry.getValue();
-                boolean result = transactionEntry.generateJGnashTransaction(this, this.engine);
-                updateStatusCallback(1, null);
-                if (!result) {
-                    //return false;
-                    continue;
+        if (this.conversionThreadCount > 1) {
+            this.parallelTransactionConverter = new ParallelTransactionConverter(this, this.conversionThreadCount);
+        }
+        try {
+            if (this.transactionSpillSorter != null) {
+                if (!processSpillSorterTransactions()) {
+                    return false;
+                }
+            }
+            else if (this.transactionColumnStore != null) {
+                for (int index : this.transactionColumnStore.getIndicesByDate()) {
+                    queueTransactionEntry(this.transactionColumnStore.get(index));
+                }
+            }
+            else {
+                for (List<TransactionImportEntry> entriesForDate : this.transactionEntriesByDate.values()) {
+                    for (TransactionImportEntry transactionEntry : entriesForDate) {
+                        queueTransactionEntry(transactionEntry);
+                    }
                 }
-                ++count;
+            }
+            
+            processSameDateTransactionEntries();
+            if (this.parallelTransactionConverter != null) {
+                this.parallelTransactionConverter.finish();
+            }
+        }
+        finally {
+            if (this.parallelTransactionConverter != null) {
+                this.parallelTransactionConverter.close();
+                this.parallelTransactionConverter = null;
             }
         }
         
-        LOG.info("Processed " + count + " transactions.");
+        LOG.info("Processed " + this.processedTransactionEntryCount + " transactions.");
+        if (this.filteredTransactionEntryCount > 0) {
+            LOG.info("Left out " + this.filteredTransactionEntryCount + " transactions by the import filter.");
+        }
     
         return true;
     }
 
     
     
+    boolean processSpillSorterTransactions() {
+        if (this.isTransactionSpillFailed) {
+            this.transactionSpillSorter.close();
+            return false;
+        }
+        LOG.info("Merging " + this.totalTransactionEntryCount + " transactions from " + this.transactionSpillSorter.getRunCount() + " run files.");
+        try (TransactionSpillSorter.Merge merge = this.transactionSpillSorter.openMerge()) {
+            TransactionImportEntry transactionEntry;
+            while ((transactionEntry = merge.next()) != null) {
+                queueTransactionEntry(transactionEntry);
+            }
+        } catch (IOException e) {
+            recordError("Message.Error.TransactionSpillError", e.getLocalizedMessage());
+            return false;
+        } finally {
+            this.transactionSpillSorter.close();
+        }
+        return true;
+    }
+    
+    
+    /**
+     * Adds the next transaction in date posted order to be processed, the transactions are held until all the
+     * transactions of their date have been added so they can be processed in {@link TransactionImportEntry#SAME_DATE_ORDER}.
+     * @param transactionEntry	The transaction.
+     */
+    void queueTransactionEntry(TransactionImportEntry transactionEntry) {
+        if (!this.sameDateTransactionEntries.isEmpty() 
+                && (this.sameDateTransactionEntries.get(0).datePosted.epochDay != transactionEntry.datePosted.epochDay)) {
+            processSameDateTransactionEntries();
+        }
+        this.sameDateTransactionEntries.add(transactionEntry);
+    }
+    
+    
+    void processSameDateTransactionEntries() {
+        if (this.sameDateTransactionEntries.isEmpty()) {
+            return;
+        }
+        
+        this.sameDateTransactionEntries.sort(TransactionImportEntry.SAME_DATE_ORDER);
+        if (this.parallelTransactionConverter != null) {
+            this.parallelTransactionConverter.convert(new ArrayList<>(this.sameDateTransactionEntries));
+        }
+        else {
+            for (TransactionImportEntry transactionEntry : this.sameDateTransactionEntries) {
+                processTransactionEntry(transactionEntry);
+            }
+        }
+        this.sameDateTransactionEntries.clear();
+    }
+    
+    
+    void processTransactionEntry(TransactionImportEntry transactionEntry) {
+        boolean result = transactionEntry.generateJGnashTransaction(this, this.engine);
+        updateTransactionStatus(transactionEntry, result);
+    }
+    
+    
+    /**
+     * Converts a transaction on one of the threads of the {@link ParallelTransactionConverter} or the 
+     * {@link TransactionPipeline}. The warnings recorded during the conversion are collected in the result instead
+     * of going into the warning notice tree, {@link #writeTransactionEntry(TransactionImportEntry, ParallelTransactionConverter.ConvertedTransaction)}
+     * records them so they come out in the order the transactions are written.
+     * @param transactionEntry	The transaction.
+     * @return	The converted transaction.
+     */
+    ParallelTransactionConverter.ConvertedTransaction convertTransactionEntry(TransactionImportEntry transactionEntry) {
+        List<ParallelTransactionConverter.DeferredWarning> warnings = this.deferredWarnings.get();
+        if (warnings == null) {
+            warnings = new ArrayList<>();
+            this.deferredWarnings.set(warnings);
+        }
+        
+        List<Transaction> jGnashTransactions = new ArrayList<>(2);
+        try {
+            boolean isConverted = transactionEntry.generateJGnashTransaction(this, jGnashTransactions);
+            List<ParallelTransactionConverter.DeferredWarning> transactionWarnings = warnings.isEmpty() 
+                    ? Collections.emptyList() : new ArrayList<>(warnings);
+            return new ParallelTransactionConverter.ConvertedTransaction(isConverted, jGnashTransactions, transactionWarnings);
+        }
+        finally {
+            warnings.clear();
+        }
+    }
+    
+    
+    /**
+     * Adds a transaction converted by {@link #convertTransactionEntry(TransactionImportEntry)} to jGnash, after
+     * recording the warnings of its conversion. The status isn't updated, that's left to the caller so it only 
+     * happens on the importing thread.
+     * @param transactionEntry	The transaction.
+     * @param convertedTransaction	The converted transaction.
+     * @return	<code>true</code> if the transaction was added.
+     */
+    boolean writeTransactionEntry(TransactionImportEntry transactionEntry, ParallelTransactionConverter.ConvertedTransaction convertedTransaction) {
+        if (!convertedTransaction.warnings.isEmpty()) {
+            recordDeferredWarnings(convertedTransaction.warnings);
+        }
+        return convertedTransaction.isConverted 
+                && transactionEntry.addJGnashTransactions(this, this.engine, convertedTransaction.jGnashTransactions);
+    }
+    
+    
+    void updateTransactionStatus(TransactionImportEntry transactionEntry, boolean result) {
+        // Only build the status message if it's actually going to be used.
+        String statusMsg = null;
+        if (isStatusUpdateDue()) {
+            statusMsg = GnuCashConvertUtil.getString("Message.Status.ProcessingTransactions", this.totalTransactionEntryCount, transactionEntry.datePosted.getLocalDate().format(DateTimeFormatter.ISO_DATE));
+        }
+        updateStatusCallback(1, statusMsg);
+        if (result) {
+            ++this.processedTransactionEntryCount;
+        }
+    }
+    
+    
     protected boolean processScheduledTransactions() {
         Integer expectedCount = this.countData.get("schedxaction");
-        if (expectedCount != null) {
+        if ((expectedCount != null) && !isCategoryExcluded(ImportFilter.Category.SCHEDULED_TRANSACTIONS)) {
             if (expectedCount != this.totalScheduledTransactionEntryCount) {
                 recordWarning((ParsedEntry)null, "Message.Warning.ScheduledTransactionCountMismatch", expectedCount, this.totalScheduledTransactionEntryCount);
             }
@@ -1310,8 +2166,7 @@ public class GnuCashToJGnashContentHandler implements ContentHandler {
         updateStatusCallback(0, GnuCashConvertUtil.getString("Message.Status.ProcessingScheduledTransactions", this.totalScheduledTransactionEntryCount));
 
         int count = 0;
-        for (Map.Entry<String, ScheduledTransactionEntry> entry : this.scheduledTransactionEntries.entrySet()) {
-        	ScheduledTransactionEntry scheduledTransactionEntry = entry.getValue();
+        for (ScheduledTransactionEntry scheduledTransactionEntry : this.scheduledTransactionEntries.values()) {
         	if (!scheduledTransactionEntry.generateJGnashScheduledTransaction(this, this.engine)) {
         		return false;
         	}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Interface for the XML parser backends, a backend reads the XML and drives the {@link GnuCashToJGnashContentHandler}
+ * and its state handlers.
+ * @author albert
+ *
+ */
+public interface GnuCashXMLParser {
+
+	/**
+	 * The available backends.
+	 */
+	public enum Backend {
+		/**
+		 * The JAXP SAX parser, the content handler is pushed everything.
+		 */
+		SAX,
+
+		/**
+		 * The JAXP StAX parser, whichever {@link javax.xml.stream.XMLInputFactory} implementation is installed is used.
+		 * The text of text only elements is pulled in one piece.
+		 */
+		STAX,
+
+		/**
+		 * {@link UTF8GnuCashXMLParser}, tokenizes the UTF-8 bytes of the XML GnuCash writes itself, falls back to SAX for
+		 * documents it doesn't support.
+		 */
+		UTF8;
+
+		/**
+		 * Creates a parser for the backend.
+		 * @return	The parser.
+		 * @throws ParserConfigurationException	If the underlying parser could not be configured.
+		 * @throws SAXException	If the underlying parser could not be created.
+		 */
+		public GnuCashXMLParser createParser() throws ParserConfigurationException, SAXException {
+			switch (this) {
+			case STAX :
+				return new StAXGnuCashXMLParser();
+
+			case UTF8 :
+				return new UTF8GnuCashXMLParser();
+
+			case SAX :
+			default :
+				return new SAXGnuCashXMLParser();
+			}
+		}
+	}
+
+
+	/**
+	 * Parses a GnuCash XML stream.
+	 * @param inputStream	The uncompressed XML.
+	 * @param contentHandler	The content handler to be driven.
+	 * @throws IOException
+	 * @throws SAXException	If the XML is not valid.
+	 */
+	public void parse(InputStream inputStream, GnuCashToJGnashContentHandler contentHandler) throws IOException, SAXException;
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Map keyed by the id of an {@link IdEntry}. GUIDs are kept as their two longs in an open addressed table,
+ * so looking one up neither hashes a String nor compares characters. Ids that aren't GUIDs go into an ordinary
+ * {@link HashMap} keyed by their text.
+ * <p>
+ * Entries can't be removed, {@link #values()} returns the values in the order their keys were first added.
+ * @author albert
+ *
+ * @param <V>	The value type.
+ */
+public class GuidMap<V> {
+	static final int INITIAL_TABLE_SIZE = 64;
+
+	// The table, the size is always a power of 2. A slot is free if its valueIndex is -1.
+	private long [] guidHighs;
+	private long [] guidLows;
+	private int [] valueIndices;
+	private int guidCount;
+
+	private final Map<String, Integer> textValueIndices = new HashMap<>();
+
+	private final List<V> values = new ArrayList<>();
+
+
+	public GuidMap() {
+		allocateTable(INITIAL_TABLE_SIZE);
+	}
+
+
+	static int hashGUID(long guidHigh, long guidLow) {
+		// GUIDs are random, folding in all the bits is plenty.
+		long hash = guidHigh ^ guidLow;
+		return (int)(hash ^ (hash >>> 32));
+	}
+
+
+	private void allocateTable(int tableSize) {
+		this.guidHighs = new long[tableSize];
+		this.guidLows = new long[tableSize];
+		this.valueIndices = new int[tableSize];
+		Arrays.fill(this.valueIndices, -1);
+	}
+
+
+	// Returns the slot holding the GUID, or the free slot where it would go.
+	private int findSlot(long guidHigh, long guidLow) {
+		int mask = this.valueIndices.length - 1;
+		int slot = hashGUID(guidHigh, guidLow) & mask;
+		while (this.valueIndices[slot] >= 0) {
+			if ((this.guidLows[slot] == guidLow) && (this.guidHighs[slot] == guidHigh)) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+
+	private void growTable() {
+		long [] oldGuidHighs = this.guidHighs;
+		long [] oldGuidLows = this.guidLows;
+		int [] oldValueIndices = this.valueIndices;
+
+		allocateTable(oldValueIndices.length * 2);
+		for (int i = 0; i < oldValueIndices.length; ++i) {
+			if (oldValueIndices[i] >= 0) {
+				int slot = findSlot(oldGuidHighs[i], oldGuidLows[i]);
+				this.guidHighs[slot] = oldGuidHighs[i];
+				this.guidLows[slot] = oldGuidLows[i];
+				this.valueIndices[slot] = oldValueIndices[i];
+			}
+		}
+	}
+
+
+	/**
+	 * Retrieves the value for an id.
+	 * @param id	The id.
+	 * @return	The value, <code>null</code> if there is none.
+	 */
+	public V get(IdEntry id) {
+		int valueIndex;
+		if (id.isGUID) {
+			valueIndex = this.valueIndices[findSlot(id.guidHigh, id.guidLow)];
+		}
+		else {
+			Integer index = this.textValueIndices.get(id.text);
+			valueIndex = (index != null) ? index : -1;
+		}
+		return (valueIndex >= 0) ? this.values.get(valueIndex) : null;
+	}
+
+
+	public boolean containsKey(IdEntry id) {
+		return get(id) != null;
+	}
+
+
+	/**
+	 * @param id	The id.
+	 * @return	The position of the id in the order the ids were first added, -1 if the id hasn't been added.
+	 */
+	public int indexOf(IdEntry id) {
+		if (id.isGUID) {
+			return this.valueIndices[findSlot(id.guidHigh, id.guidLow)];
+		}
+		Integer index = this.textValueIndices.get(id.text);
+		return (index != null) ? index : -1;
+	}
+
+
+	/**
+	 * Sets the value for an id.
+	 * @param id	The id.
+	 * @param value	The value, should not be <code>null</code>.
+	 * @return	The value previously set for the id, <code>null</code> if there was none.
+	 */
+	public V put(IdEntry id, V value) {
+		if (id.isGUID) {
+			int slot = findSlot(id.guidHigh, id.guidLow);
+			int valueIndex = this.valueIndices[slot];
+			if (valueIndex >= 0) {
+				return this.values.set(valueIndex, value);
+			}
+
+			this.guidHighs[slot] = id.guidHigh;
+			this.guidLows[slot] = id.guidLow;
+			this.valueIndices[slot] = this.values.size();
+			this.values.add(value);
+
+			// Keep the table at most half full so the probe runs stay short.
+			if (++this.guidCount * 2 > this.valueIndices.length) {
+				growTable();
+			}
+			return null;
+		}
+
+		Integer valueIndex = this.textValueIndices.get(id.text);
+		if (valueIndex != null) {
+			return this.values.set(valueIndex, value);
+		}
+		this.textValueIndices.put(id.text, this.values.size());
+		this.values.add(value);
+		return null;
+	}
+
+
+	public int size() {
+		return this.values.size();
+	}
+
+
+	public boolean isEmpty() {
+		return this.values.isEmpty();
+	}
+
+
+	/**
+	 * @return	The values, in the order their ids were first added.
+	 */
+	public Collection<V> values() {
+		return Collections.unmodifiableList(this.values);
+	}
+
+}
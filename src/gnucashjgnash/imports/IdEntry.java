@@ -16,6 +16,8 @@
 */
 package gnucashjgnash.imports;
 
+import java.util.Objects;
+
 import org.xml.sax.Attributes;
 
 
@@ -26,7 +28,12 @@ import org.xml.sax.Attributes;
  */
 public class IdEntry extends ParsedEntry {
 	String type;
-    String id;
+	
+	// GUIDs (32 lower case hex digits) are held as two longs, which is all the GuidMaps need, anything else as text.
+	long guidHigh;
+	long guidLow;
+	boolean isGUID;
+	String text;
     
     /**
 	 * @param contentHandler
@@ -47,13 +54,32 @@ public class IdEntry extends ParsedEntry {
 
 
 	public static class IdStateHandler extends GnuCashToJGnashContentHandler.AbstractStateHandler {
-        final IdEntry idEntry;
+        IdEntry idEntry;
 
         IdStateHandler(final IdEntry idEntry, GnuCashToJGnashContentHandler contentHandler,
                        GnuCashToJGnashContentHandler.StateHandler parentStateHandler, String elementName) {
             super(contentHandler, parentStateHandler, elementName);
             this.idEntry = idEntry;
-            this.idEntry.updateLocatorInfo(contentHandler);
+        }
+
+        /**
+         * Retrieves an {@link IdStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @param parentStateHandler
+         * @param element
+         * @param idEntry
+         * @param elementName
+         * @return	The state handler.
+         */
+        static IdStateHandler obtain(GnuCashToJGnashContentHandler.AbstractStateHandler parentStateHandler, GnuCashElement element, 
+                IdEntry idEntry, String elementName) {
+            IdStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, IdStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new IdStateHandler(idEntry, parentStateHandler.contentHandler, parentStateHandler, elementName));
+            }
+            stateHandler.resetState(elementName);
+            stateHandler.idEntry = idEntry;
+            return stateHandler;
         }
 
         
@@ -65,10 +91,25 @@ public class IdEntry extends ParsedEntry {
         	return this.idEntry;
         }
 
+        @Override
+        public boolean isTextOnly() {
+            return true;
+        }
+
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#handleText(java.lang.CharSequence, int, int)
+         */
+        @Override
+        protected void handleText(CharSequence text, int start, int end) {
+            this.idEntry.setId(text, start, end);
+        }
+
         @Override
         protected void endState() {
             super.endState();
-            this.idEntry.id = this.characters;
+            if (!this.idEntry.hasId()) {
+                this.idEntry.setId("");
+            }
         }
 
         @Override
@@ -79,7 +120,130 @@ public class IdEntry extends ParsedEntry {
     }
     
     public boolean isParsed() {
-    	return (this.type != null) && (this.id != null);
+    	return (this.type != null) && hasId();
+    }
+    
+    public boolean hasId() {
+    	return this.isGUID || (this.text != null);
+    }
+    
+    /**
+     * @return	The id as it appeared in the file, <code>null</code> if there is none.
+     */
+    public String getId() {
+    	if (!this.isGUID) {
+    		return this.text;
+    	}
+    	
+    	char [] chars = new char[32];
+    	for (int i = 0; i < 16; ++i) {
+    		chars[i] = Character.forDigit((int)(this.guidHigh >>> (60 - i * 4)) & 0xF, 16);
+    		chars[i + 16] = Character.forDigit((int)(this.guidLow >>> (60 - i * 4)) & 0xF, 16);
+    	}
+    	return new String(chars);
+    }
+    
+    /**
+     * Sets the id to a GUID already in its two long form.
+     * @param guidHigh	The upper 64 bits of the GUID.
+     * @param guidLow	The lower 64 bits of the GUID.
+     */
+    void setGUID(long guidHigh, long guidLow) {
+    	this.guidHigh = guidHigh;
+    	this.guidLow = guidLow;
+    	this.isGUID = true;
+    	this.text = null;
+    }
+    
+    public void setId(String id) {
+    	if (id == null) {
+    		this.isGUID = false;
+    		this.text = null;
+    	}
+    	else {
+    		setId(id, 0, id.length());
+    	}
+    }
+    
+    /**
+     * Sets the id from text, parsing it into {@link #guidHigh} and {@link #guidLow} if it's a GUID.
+     * @param id	The text containing the id.
+     * @param start	The index of the first character of the id.
+     * @param end	The index after the last character of the id.
+     */
+    public void setId(CharSequence id, int start, int end) {
+    	if ((end - start) == 32) {
+    		long high = 0;
+    		long low = 0;
+    		int i = 0;
+    		for (; i < 32; ++i) {
+    			int digit = getHexDigit(id.charAt(start + i));
+    			if (digit < 0) {
+    				break;
+    			}
+    			if (i < 16) {
+    				high = (high << 4) | digit;
+    			}
+    			else {
+    				low = (low << 4) | digit;
+    			}
+    		}
+    		if (i == 32) {
+    			this.guidHigh = high;
+    			this.guidLow = low;
+    			this.isGUID = true;
+    			this.text = null;
+    			return;
+    		}
+    	}
+    	
+    	this.isGUID = false;
+    	this.text = id.subSequence(start, end).toString();
+    }
+    
+    // Only lower case, so getId() gives back exactly what was parsed.
+    static int getHexDigit(char value) {
+    	if ((value >= '0') && (value <= '9')) {
+    		return value - '0';
+    	}
+    	if ((value >= 'a') && (value <= 'f')) {
+    		return value - 'a' + 10;
+    	}
+    	return -1;
+    }
+    
+    /**
+     * @param other	The id to compare to.
+     * @return	<code>true</code> if both have the same id, the type is ignored.
+     */
+    public boolean isSameId(IdEntry other) {
+    	if (this.isGUID) {
+    		return other.isGUID && (this.guidHigh == other.guidHigh) && (this.guidLow == other.guidLow);
+    	}
+    	return !other.isGUID && Objects.equals(this.text, other.text);
+    }
+
+    /**
+     * Orders ids the way their text sorts, GUIDs before any other ids, the type is ignored.
+     * @param other	The id to compare to.
+     * @return	A negative value, 0, or a positive value if this id comes before, is the same as, or comes after other.
+     */
+    public int compareId(IdEntry other) {
+    	if (this.isGUID) {
+    		if (!other.isGUID) {
+    			return -1;
+    		}
+    		// Unsigned since the hex digits sort that way.
+    		int result = Long.compareUnsigned(this.guidHigh, other.guidHigh);
+    		return (result != 0) ? result : Long.compareUnsigned(this.guidLow, other.guidLow);
+    	}
+    	if (other.isGUID) {
+    		return 1;
+    	}
+    	if (this.text == null) {
+    		return (other.text == null) ? 0 : -1;
+    	}
+    	return (other.text == null) ? 1 : this.text.compareTo(other.text);
     }
 
     boolean validateGUIDParse(GnuCashToJGnashContentHandler.StateHandler stateHandler, String qName) {
@@ -104,22 +268,16 @@ public class IdEntry extends ParsedEntry {
         }
 
         IdEntry other = (IdEntry)obj;
-        if (this.id == null) {
-            if (other.id != null) {
-                return false;
-            }
-        }
-        if (this.type == null) {
-            if (other.type != null) {
-                return false;
-            }
-        }
+        return isSameId(other) && Objects.equals(this.type, other.type);
+    }
 
-        return this.id.equals(other.id) && this.type.equals(other.type);
+    @Override
+    public int hashCode() {
+        return this.isGUID ? GuidMap.hashGUID(this.guidHigh, this.guidLow) : Objects.hashCode(this.text);
     }
 
     @Override
     public String toString() {
-        return id;
+        return getId();
     }
 }
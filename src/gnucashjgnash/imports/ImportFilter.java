@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Selects what parts of a GnuCash file are imported, see {@link GnuCashImport#setImportFilter(ImportFilter)}.
+ * The filters are applied while parsing, excluded elements are skipped without building their entries, and a
+ * transaction is dropped as soon as the part of it a filter looks at has been parsed.
+ * <p>
+ * All the accounts and commodities are always imported, so the transactions that are kept still balance.
+ * @author albert
+ *
+ */
+public class ImportFilter {
+
+	/**
+	 * The categories of elements that can be excluded from the import altogether.
+	 */
+	public enum Category {
+		TRANSACTIONS,
+		PRICES,
+		/**
+		 * The scheduled transactions along with their template transactions.
+		 */
+		SCHEDULED_TRANSACTIONS,
+	}
+
+	private LocalDate startDate;
+	private LocalDate endDate;
+	private long startEpochDay = Long.MIN_VALUE;
+	private long endEpochDay = Long.MAX_VALUE;
+
+	private GuidMap<Boolean> accountSubtreeIds = new GuidMap<>();
+
+	private final Set<Category> excludedCategories = EnumSet.noneOf(Category.class);
+
+	private double sampleFraction = 1.0;
+	private long sampleSeed;
+
+
+	public ImportFilter() {
+	}
+
+
+	public LocalDate getStartDate() {
+		return startDate;
+	}
+
+	public LocalDate getEndDate() {
+		return endDate;
+	}
+
+	/**
+	 * Limits the transactions to those posted within a date range.
+	 * @param startDate	The first date included, <code>null</code> for no limit.
+	 * @param endDate	The last date included, <code>null</code> for no limit.
+	 */
+	public void setDateRange(LocalDate startDate, LocalDate endDate) {
+		this.startDate = startDate;
+		this.endDate = endDate;
+		this.startEpochDay = (startDate != null) ? startDate.toEpochDay() : Long.MIN_VALUE;
+		this.endEpochDay = (endDate != null) ? endDate.toEpochDay() : Long.MAX_VALUE;
+	}
+
+
+	/**
+	 * Limits the transactions to those with at least one split in one of a set of account subtrees.
+	 * @param accountIds	The GUIDs of the accounts at the top of the subtrees, an empty collection for no limit.
+	 */
+	public void setAccountSubtreeIds(Collection<String> accountIds) {
+		this.accountSubtreeIds = new GuidMap<>();
+		for (String accountId : accountIds) {
+			IdEntry idEntry = new IdEntry(null);
+			idEntry.setId(accountId);
+			this.accountSubtreeIds.put(idEntry, Boolean.TRUE);
+		}
+	}
+
+	public boolean hasAccountSubtrees() {
+		return !this.accountSubtreeIds.isEmpty();
+	}
+
+
+	public Set<Category> getExcludedCategories() {
+		return EnumSet.copyOf(this.excludedCategories);
+	}
+
+	/**
+	 * @param category	The category of elements to leave out of the import.
+	 */
+	public void excludeCategory(Category category) {
+		this.excludedCategories.add(category);
+	}
+
+	public boolean isCategoryExcluded(Category category) {
+		return this.excludedCategories.contains(category);
+	}
+
+
+	public double getSampleFraction() {
+		return sampleFraction;
+	}
+
+	public long getSampleSeed() {
+		return sampleSeed;
+	}
+
+	/**
+	 * Imports only a random sample of the transactions. Which transactions are picked only depends on their ids and
+	 * the seed, so the same file and seed always give the same sample.
+	 * @param sampleFraction	The fraction of the transactions to import, 1 for all of them.
+	 * @param sampleSeed	The seed.
+	 */
+	public void setSampling(double sampleFraction, long sampleSeed) {
+		this.sampleFraction = sampleFraction;
+		this.sampleSeed = sampleSeed;
+	}
+
+
+	/**
+	 * @param datePosted	The date a transaction was posted.
+	 * @return	<code>false</code> if the date is outside the date range.
+	 */
+	boolean isDateIncluded(TimeEntry datePosted) {
+		return (datePosted.epochDay >= this.startEpochDay) && (datePosted.epochDay <= this.endEpochDay);
+	}
+
+
+	/**
+	 * @param transactionId	The id of a transaction.
+	 * @return	<code>true</code> if the transaction is part of the sample.
+	 */
+	boolean isSampled(IdEntry transactionId) {
+		if (this.sampleFraction >= 1.0) {
+			return true;
+		}
+
+		long hash = transactionId.isGUID
+				? mix(transactionId.guidHigh ^ mix(transactionId.guidLow ^ this.sampleSeed))
+				: mix(transactionId.hashCode() ^ this.sampleSeed);
+		return (hash >>> 11) * 0x1.0p-53 < this.sampleFraction;
+	}
+
+	// The SplitMix64 finalizer.
+	private static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		return value ^ (value >>> 31);
+	}
+
+
+	/**
+	 * Determines if an account is in one of the account subtrees.
+	 * @param accountId	The id of the account.
+	 * @param accountImportEntries	The accounts, for looking up the parent accounts.
+	 * @param inclusionCache	The results of earlier calls, updated with the accounts looked at.
+	 * @return	<code>true</code> if the account is in one of the subtrees.
+	 */
+	boolean isAccountInSubtrees(IdEntry accountId, GuidMap<AccountImportEntry> accountImportEntries, GuidMap<Boolean> inclusionCache) {
+		Boolean isIncluded = inclusionCache.get(accountId);
+		if (isIncluded == null) {
+			if (this.accountSubtreeIds.containsKey(accountId)) {
+				isIncluded = Boolean.TRUE;
+			}
+			else {
+				AccountImportEntry accountEntry = accountImportEntries.get(accountId);
+				// Put in the cache first so a loop in the parent accounts ends.
+				inclusionCache.put(accountId, Boolean.FALSE);
+				isIncluded = ((accountEntry != null) && accountEntry.parentId.hasId())
+						? isAccountInSubtrees(accountEntry.parentId, accountImportEntries, inclusionCache) : Boolean.FALSE;
+			}
+			inclusionCache.put(accountId, isIncluded);
+		}
+		return isIncluded;
+	}
+
+}
@@ -64,7 +64,6 @@ public class IntEntry extends ParsedEntry {
 				String elementName) {
 			super(contentHandler, parentStateHandler, elementName);
 			this.intEntry = intEntry;
-			this.intEntry.updateLocatorInfo(contentHandler);
 		}
 
         
@@ -76,6 +75,11 @@ public class IntEntry extends ParsedEntry {
         	return this.intEntry;
         }
 
+        @Override
+        public boolean isTextOnly() {
+        	return true;
+        }
+
         
         /* (non-Javadoc)
 		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#endState()
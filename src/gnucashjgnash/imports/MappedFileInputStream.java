@@ -0,0 +1,263 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link InputStream} that reads a range of a file through memory mapped windows, the file is mapped
+ * a window at a time so files larger than 2GB are handled. The read position can be changed with
+ * {@link #seek(long)}, and {@link #slice(long, long)} provides independent streams over ranges of the file.
+ * @author albert
+ *
+ */
+public class MappedFileInputStream extends InputStream {
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+	public static final int MIN_WINDOW_SIZE = 1024 * 1024;
+
+	private FileChannel fileChannel;
+	private final boolean ownsChannel;
+	private final long startPosition;
+	private final long endPosition;
+	private final int windowSize;
+
+	private MappedByteBuffer window;
+	private long windowPosition;
+	private long position;
+	private long markPosition;
+
+
+	/**
+	 * Constructor, the stream covers the entire file.
+	 * @param fileName	The name of the file.
+	 * @param windowSize	The maximum number of bytes mapped at a time.
+	 * @throws IOException
+	 */
+	public MappedFileInputStream(String fileName, int windowSize) throws IOException {
+		this(FileChannel.open(Paths.get(fileName), StandardOpenOption.READ), true, 0, -1, windowSize);
+	}
+
+	public MappedFileInputStream(String fileName) throws IOException {
+		this(fileName, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Constructor, the stream covers a range of the file.
+	 * @param fileName	The name of the file.
+	 * @param startPosition	The offset of the first byte of the range.
+	 * @param endPosition	The offset just past the last byte of the range, -1 for the end of the file.
+	 * @param windowSize	The maximum number of bytes mapped at a time.
+	 * @throws IOException
+	 */
+	public MappedFileInputStream(String fileName, long startPosition, long endPosition, int windowSize) throws IOException {
+		this(FileChannel.open(Paths.get(fileName), StandardOpenOption.READ), true, startPosition, endPosition, windowSize);
+	}
+
+	protected MappedFileInputStream(FileChannel fileChannel, boolean ownsChannel, long startPosition, long endPosition,
+			int windowSize) throws IOException {
+		this.fileChannel = fileChannel;
+		this.ownsChannel = ownsChannel;
+		try {
+			long size = fileChannel.size();
+			this.endPosition = ((endPosition < 0) || (endPosition > size)) ? size : endPosition;
+		} catch (IOException e) {
+			if (ownsChannel) {
+				fileChannel.close();
+			}
+			throw e;
+		}
+		this.startPosition = Math.min(startPosition, this.endPosition);
+		this.windowSize = Math.max(windowSize, MIN_WINDOW_SIZE);
+		this.position = this.startPosition;
+		this.markPosition = this.startPosition;
+	}
+
+
+	/**
+	 * @return	The current read position, as an offset from the start of the file.
+	 */
+	public long getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * @return	The position just past the last byte of the stream, as an offset from the start of the file.
+	 */
+	public long getEndPosition() {
+		return this.endPosition;
+	}
+
+
+	/**
+	 * Moves the read position.
+	 * @param position	The new position, an offset from the start of the file. This is clamped to the range
+	 * covered by the stream.
+	 * @throws IOException
+	 */
+	public void seek(long position) throws IOException {
+		ensureOpen();
+		this.position = Math.max(this.startPosition, Math.min(position, this.endPosition));
+	}
+
+
+	/**
+	 * Creates a stream over a range of the file, the new stream shares the file channel but has its own
+	 * position. The new stream should be closed before this stream.
+	 * @param start	The offset from the start of the file of the first byte of the range.
+	 * @param end	The offset from the start of the file just past the last byte of the range.
+	 * @return	The stream.
+	 * @throws IOException
+	 */
+	public MappedFileInputStream slice(long start, long end) throws IOException {
+		ensureOpen();
+		return new MappedFileInputStream(this.fileChannel, false, Math.max(start, this.startPosition),
+				Math.min(end, this.endPosition), this.windowSize);
+	}
+
+
+	private void ensureOpen() throws IOException {
+		if (this.fileChannel == null) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+
+	/**
+	 * Makes sure {@link #window} covers {@link #position}.
+	 * @return	The number of bytes available in the window from the position, 0 if at the end.
+	 * @throws IOException
+	 */
+	private int prepareWindow() throws IOException {
+		ensureOpen();
+		if (this.position >= this.endPosition) {
+			return 0;
+		}
+
+		if ((this.window == null) || (this.position < this.windowPosition)
+				|| (this.position >= this.windowPosition + this.window.limit())) {
+			long size = Math.min(this.windowSize, this.endPosition - this.position);
+			this.window = this.fileChannel.map(FileChannel.MapMode.READ_ONLY, this.position, size);
+			this.windowPosition = this.position;
+		}
+
+		int offset = (int)(this.position - this.windowPosition);
+		this.window.position(offset);
+		return this.window.limit() - offset;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#read()
+	 */
+	@Override
+	public int read() throws IOException {
+		if (prepareWindow() <= 0) {
+			return -1;
+		}
+		++this.position;
+		return this.window.get() & 0xff;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		int available = prepareWindow();
+		if (available <= 0) {
+			return -1;
+		}
+
+		int count = Math.min(len, available);
+		this.window.get(b, off, count);
+		this.position += count;
+		return count;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#skip(long)
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		ensureOpen();
+		long oldPosition = this.position;
+		seek(this.position + Math.max(n, 0));
+		return this.position - oldPosition;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#available()
+	 */
+	@Override
+	public int available() throws IOException {
+		ensureOpen();
+		return (int)Math.min(Integer.MAX_VALUE, this.endPosition - this.position);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#markSupported()
+	 */
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#mark(int)
+	 */
+	@Override
+	public synchronized void mark(int readlimit) {
+		this.markPosition = this.position;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#reset()
+	 */
+	@Override
+	public synchronized void reset() throws IOException {
+		seek(this.markPosition);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		// There's no supported way to unmap the window in Java 8, we just drop it and let the GC take care of it.
+		this.window = null;
+		if (this.fileChannel != null) {
+			if (this.ownsChannel) {
+				this.fileChannel.close();
+			}
+			this.fileChannel = null;
+		}
+	}
+
+}
@@ -27,8 +27,16 @@ import java.util.Objects;
  *
  */
 public class NumericEntry extends ParsedEntry {
-	BigInteger numerator = null;
-    BigInteger denominator = null;
+	// The largest number of digits that always fit in a long.
+	static final int MAX_LONG_DIGITS = 18;
+	
+	// The value is numerator / denominator, bigNumerator and bigDenominator are only used when either doesn't fit in a long.
+	long numerator;
+	long denominator;
+	BigInteger bigNumerator;
+	BigInteger bigDenominator;
+	boolean isParsed;
+	boolean isDenominatorPowerOfTen;
     int scale;
     
     /**
@@ -42,8 +50,10 @@ public class NumericEntry extends ParsedEntry {
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 83 * hash + Objects.hashCode(this.numerator);
-        hash = 83 * hash + Objects.hashCode(this.denominator);
+        hash = 83 * hash + Long.hashCode(this.numerator);
+        hash = 83 * hash + Long.hashCode(this.denominator);
+        hash = 83 * hash + Objects.hashCode(this.bigNumerator);
+        hash = 83 * hash + Objects.hashCode(this.bigDenominator);
         hash = 83 * hash + this.scale;
         return hash;
     }
@@ -60,13 +70,19 @@ public class NumericEntry extends ParsedEntry {
             return false;
         }
         final NumericEntry other = (NumericEntry) obj;
+        if (this.isParsed != other.isParsed) {
+            return false;
+        }
         if (this.scale != other.scale) {
             return false;
         }
-        if (!Objects.equals(this.numerator, other.numerator)) {
+        if ((this.numerator != other.numerator) || (this.denominator != other.denominator)) {
+            return false;
+        }
+        if (!Objects.equals(this.bigNumerator, other.bigNumerator)) {
             return false;
         }
-        if (!Objects.equals(this.denominator, other.denominator)) {
+        if (!Objects.equals(this.bigDenominator, other.bigDenominator)) {
             return false;
         }
         return true;
@@ -84,20 +100,191 @@ public class NumericEntry extends ParsedEntry {
 
 
 
+	public boolean isParsed() {
+		return this.isParsed;
+	}
+	
+	
+	public void clear() {
+		this.numerator = 0;
+		this.denominator = 0;
+		this.bigNumerator = null;
+		this.bigDenominator = null;
+		this.isParsed = false;
+		this.isDenominatorPowerOfTen = false;
+		this.scale = 0;
+	}
+
+
+	public void setValue(long numerator, long denominator) {
+		this.numerator = numerator;
+		this.denominator = denominator;
+		this.bigNumerator = null;
+		this.bigDenominator = null;
+		this.isParsed = true;
+		
+		int exponent = getPowerOfTenExponent(denominator);
+		this.isDenominatorPowerOfTen = (exponent >= 0);
+		this.scale = (exponent >= 0) ? exponent : (int)Math.round(Math.log10(denominator));
+	}
+	
+	
+	public void setValue(BigInteger numerator, BigInteger denominator) {
+		if ((numerator.bitLength() < 64) && (denominator.bitLength() < 64)) {
+			setValue(numerator.longValue(), denominator.longValue());
+			return;
+		}
+		
+		this.numerator = 0;
+		this.denominator = 0;
+		this.bigNumerator = numerator;
+		this.bigDenominator = denominator;
+		this.isParsed = true;
+		
+		this.isDenominatorPowerOfTen = false;
+		if (denominator.signum() > 0) {
+			BigDecimal stripped = new BigDecimal(denominator).stripTrailingZeros();
+			if (stripped.unscaledValue().equals(BigInteger.ONE)) {
+				this.isDenominatorPowerOfTen = true;
+				this.scale = -stripped.scale();
+				return;
+			}
+		}
+		this.scale = (int)Math.round(Math.log10(denominator.doubleValue()));
+	}
+	
+	
+	public BigInteger getNumerator() {
+		return (this.bigNumerator != null) ? this.bigNumerator : BigInteger.valueOf(this.numerator);
+	}
+	
+	
+	public BigInteger getDenominator() {
+		return (this.bigDenominator != null) ? this.bigDenominator : BigInteger.valueOf(this.denominator);
+	}
+	
+	
+	public void negate() {
+		if ((this.bigNumerator == null) && (this.numerator != Long.MIN_VALUE)) {
+			this.numerator = -this.numerator;
+		}
+		else {
+			setValue(getNumerator().negate(), getDenominator());
+		}
+	}
+
+
 	public void fromRealString(String valueText, BigInteger denominator) {
     	float value = Float.parseFloat(valueText) * denominator.floatValue();
-    	this.numerator = BigInteger.valueOf(Math.round(value));
-    	this.denominator = denominator;
+    	setValue(BigInteger.valueOf(Math.round(value)), denominator);
     }
+	
+	
+	/**
+	 * Parses the numerator/denominator form used by the XML files, without creating any objects unless either
+	 * part doesn't fit in a long.
+	 * @param text	The text to parse.
+	 * @param start	The index of the first character of the value.
+	 * @param end	The index after the last character of the value.
+	 * @return	<code>false</code> if the '/' is missing.
+	 * @throws NumberFormatException	if the numerator or denominator is not a valid whole number.
+	 */
+	public boolean parse(CharSequence text, int start, int end) {
+		int dividerIndex = start;
+		while ((dividerIndex < end) && (text.charAt(dividerIndex) != '/')) {
+			++dividerIndex;
+		}
+		if (dividerIndex >= end) {
+			return false;
+		}
+		
+		if (isLongText(text, start, dividerIndex) && isLongText(text, dividerIndex + 1, end)) {
+			setValue(parseLong(text, start, dividerIndex), parseLong(text, dividerIndex + 1, end));
+		}
+		else {
+			setValue(new BigInteger(text.subSequence(start, dividerIndex).toString()), 
+					new BigInteger(text.subSequence(dividerIndex + 1, end).toString()));
+		}
+		return true;
+	}
+	
+	
+	// Returns true if the text has few enough digits that it can't overflow a long.
+	static boolean isLongText(CharSequence text, int start, int end) {
+		if ((start < end) && ((text.charAt(start) == '-') || (text.charAt(start) == '+'))) {
+			++start;
+		}
+		return (end - start) <= MAX_LONG_DIGITS;
+	}
+	
+	
+	// Parses a whole number the way BigInteger does, the text must pass isLongText().
+	static long parseLong(CharSequence text, int start, int end) {
+		boolean isNegative = false;
+		if ((start < end) && ((text.charAt(start) == '-') || (text.charAt(start) == '+'))) {
+			isNegative = (text.charAt(start) == '-');
+			++start;
+		}
+		if (start >= end) {
+			throw new NumberFormatException("Zero length number");
+		}
+		
+		long value = 0;
+		for (int i = start; i < end; ++i) {
+			int digit = Character.digit(text.charAt(i), 10);
+			if (digit < 0) {
+				throw new NumberFormatException("Illegal digit");
+			}
+			value = value * 10 + digit;
+		}
+		return isNegative ? -value : value;
+	}
+	
+	
+	// Returns n for values that are 10^n, -1 for everything else.
+	static int getPowerOfTenExponent(long value) {
+		if (value <= 0) {
+			return -1;
+		}
+		int exponent = 0;
+		while ((value % 10) == 0) {
+			value /= 10;
+			++exponent;
+		}
+		return (value == 1) ? exponent : -1;
+	}
     
 
     public static class NumericStateHandler extends GnuCashToJGnashContentHandler.AbstractStateHandler {
-        final NumericEntry numericEntry;
+        static final String DIVIDER_MISSING_MESSAGE_ID = "Message.Parse.XMLNumericDividerMissing";
+        static final String VALUE_INVALID_MESSAGE_ID = "Message.Parse.XMLNumericValueInvalid";
+        
+        NumericEntry numericEntry;
+        String parseMessageId = DIVIDER_MISSING_MESSAGE_ID;
         NumericStateHandler(final NumericEntry numericEntry, GnuCashToJGnashContentHandler contentHandler,
                           GnuCashToJGnashContentHandler.StateHandler parentStateHandler, String elementName) {
             super(contentHandler, parentStateHandler, elementName);
             this.numericEntry = numericEntry;
-            this.numericEntry.updateLocatorInfo(contentHandler);
+        }
+
+        /**
+         * Retrieves a {@link NumericStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @param parentStateHandler
+         * @param element
+         * @param numericEntry
+         * @param elementName
+         * @return	The state handler.
+         */
+        static NumericStateHandler obtain(GnuCashToJGnashContentHandler.AbstractStateHandler parentStateHandler, GnuCashElement element, 
+                NumericEntry numericEntry, String elementName) {
+            NumericStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, NumericStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new NumericStateHandler(numericEntry, parentStateHandler.contentHandler, parentStateHandler, elementName));
+            }
+            stateHandler.resetState(elementName);
+            stateHandler.numericEntry = numericEntry;
+            return stateHandler;
         }
 
         
@@ -110,45 +297,63 @@ public class NumericEntry extends ParsedEntry {
         }
 
         @Override
-        protected void endState() {
-            super.endState();
-
-            this.numericEntry.numerator = null;
-            this.numericEntry.denominator = null;
-
-            int dividerIndex = this.characters.indexOf('/');
-            if (dividerIndex < 0) {
-                this.contentHandler.recordWarning(this.numericEntry.parentSource, "Message.Parse.XMLNumericDividerMissing", this.elementName);
-                return;
-            }
+        public boolean isTextOnly() {
+            return true;
+        }
 
-            String numeratorText = this.characters.substring(0, dividerIndex);
-            String denominatorText = this.characters.substring(dividerIndex + 1);
+        @Override
+        protected void resetState(String elementName) {
+            super.resetState(elementName);
+            this.parseMessageId = DIVIDER_MISSING_MESSAGE_ID;
+        }
 
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#handleText(java.lang.CharSequence, int, int)
+         */
+        @Override
+        protected void handleText(CharSequence text, int start, int end) {
             try {
-                this.numericEntry.numerator = new BigInteger(numeratorText);
-                this.numericEntry.denominator = new BigInteger(denominatorText);
-                this.numericEntry.scale = (int)Math.round(Math.log10(this.numericEntry.denominator.intValue()));
+                this.parseMessageId = this.numericEntry.parse(text, start, end) ? null : DIVIDER_MISSING_MESSAGE_ID;
             }
             catch (NumberFormatException e) {
-            	this.contentHandler.recordWarning(this.numericEntry.parentSource, "Message.Parse.XMLNumericValueInvalid", this.elementName);
+                this.parseMessageId = VALUE_INVALID_MESSAGE_ID;
+            }
+        }
+
+        @Override
+        protected void endState() {
+            super.endState();
+
+            if (this.parseMessageId != null) {
+                this.numericEntry.clear();
+                this.contentHandler.recordWarning(this.numericEntry.parentSource, this.parseMessageId, this.elementName);
             }
         }
     }
 
     boolean validateParse(GnuCashToJGnashContentHandler.StateHandler stateHandler, String qName) {
-        return (this.numerator != null) && (this.denominator != null);
+        return this.isParsed;
     }
 
 
     public BigDecimal toBigDecimal() {
-        return new BigDecimal(this.numerator).divide(new BigDecimal(this.denominator));
+        if ((this.bigNumerator == null) && this.isDenominatorPowerOfTen) {
+            // Same value and scale as the division below, the trailing zeros are dropped but the scale doesn't go below 0.
+            long numerator = this.numerator;
+            int scale = this.scale;
+            while ((scale > 0) && ((numerator % 10) == 0)) {
+                numerator /= 10;
+                --scale;
+            }
+            return BigDecimal.valueOf(numerator, scale);
+        }
+        return new BigDecimal(getNumerator()).divide(new BigDecimal(getDenominator()));
     }
     
     public BigDecimal divide(NumericEntry divisor) {
     	int scale = this.scale + divisor.scale;
-        BigDecimal bdNumerator = new BigDecimal(this.numerator).multiply(new BigDecimal(divisor.denominator)).setScale(scale);
-        BigDecimal bdDenominator = new BigDecimal(this.denominator).multiply(new BigDecimal(divisor.numerator)).setScale(scale);
+        BigDecimal bdNumerator = new BigDecimal(getNumerator()).multiply(new BigDecimal(divisor.getDenominator())).setScale(scale);
+        BigDecimal bdDenominator = new BigDecimal(getDenominator()).multiply(new BigDecimal(divisor.getNumerator())).setScale(scale);
         return bdNumerator.divide(bdDenominator, RoundingMode.HALF_EVEN);
     }
 }
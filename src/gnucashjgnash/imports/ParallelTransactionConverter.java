@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import gnucashjgnash.NoticeTree;
+import jgnash.engine.Transaction;
+
+/**
+ * Converts the transactions to jGnash transactions on a {@link ForkJoinPool}, one task per date posted, while
+ * the converted transactions are written to the jGnash engine on the calling thread in the order the dates were
+ * handed in. A date with many transactions is split further among the threads.
+ * <p>
+ * The conversion only reads the accounts and securities set up before the transactions. The warnings it records
+ * are collected with each converted transaction and recorded on the calling thread as the transaction is written,
+ * so they come out in the same order no matter which thread converted what.
+ * <p>
+ * Only dates already converted or being converted are held, up to about {@link #MAX_PENDING_TRANSACTIONS_PER_THREAD}
+ * transactions per thread.
+ * @author albert
+ *
+ */
+public class ParallelTransactionConverter implements Closeable {
+	static final int MAX_PENDING_TRANSACTIONS_PER_THREAD = 512;
+
+	// Dates with more transactions than this are split among the threads.
+	static final int SPLIT_THRESHOLD = 32;
+
+	private final GnuCashToJGnashContentHandler contentHandler;
+	private final ForkJoinPool pool;
+	private final int maxPendingTransactions;
+	private final ArrayDeque<DateTask> pendingTasks = new ArrayDeque<>();
+	private int pendingTransactionCount;
+
+
+	/**
+	 * Constructor.
+	 * @param contentHandler	The content handler with the accounts and securities set up.
+	 * @param threadCount	The number of conversion threads.
+	 */
+	public ParallelTransactionConverter(GnuCashToJGnashContentHandler contentHandler, int threadCount) {
+		this.contentHandler = contentHandler;
+		threadCount = Math.max(1, threadCount);
+		this.pool = new ForkJoinPool(threadCount, (forkJoinPool) -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+			thread.setName("GnuCash Transaction Converter " + thread.getPoolIndex());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+		this.maxPendingTransactions = threadCount * MAX_PENDING_TRANSACTIONS_PER_THREAD;
+	}
+
+
+	/**
+	 * Starts the conversion of the transactions of a date, writing out the converted transactions of earlier dates
+	 * if too many are pending.
+	 * @param transactionEntries	The transactions posted on the date, in the order they're to be added. The list
+	 * is taken over by the converter.
+	 */
+	public void convert(List<TransactionImportEntry> transactionEntries) {
+		if (transactionEntries.isEmpty()) {
+			return;
+		}
+
+		DateTask task = new DateTask(transactionEntries, 0, transactionEntries.size(), new ConvertedTransaction[transactionEntries.size()]);
+		this.pool.execute(task);
+		this.pendingTasks.add(task);
+		this.pendingTransactionCount += transactionEntries.size();
+
+		while (this.pendingTransactionCount > this.maxPendingTransactions) {
+			writeOldestTask();
+		}
+	}
+
+
+	/**
+	 * Waits for all the pending dates to be converted and writes them out.
+	 */
+	public void finish() {
+		while (!this.pendingTasks.isEmpty()) {
+			writeOldestTask();
+		}
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		this.pendingTasks.clear();
+		this.pool.shutdownNow();
+	}
+
+
+	private void writeOldestTask() {
+		DateTask task = this.pendingTasks.poll();
+		// Rethrows anything the conversion threw.
+		task.join();
+
+		for (int i = 0; i < task.convertedTransactions.length; ++i) {
+			ConvertedTransaction convertedTransaction = task.convertedTransactions[i];
+			TransactionImportEntry transactionEntry = task.transactionEntries.get(i);
+			boolean result = this.contentHandler.writeTransactionEntry(transactionEntry, convertedTransaction);
+			this.contentHandler.updateTransactionStatus(transactionEntry, result);
+		}
+		this.pendingTransactionCount -= task.convertedTransactions.length;
+	}
+
+
+
+	static final class ConvertedTransaction {
+		final boolean isConverted;
+		final List<Transaction> jGnashTransactions;
+		final List<DeferredWarning> warnings;
+
+		ConvertedTransaction(boolean isConverted, List<Transaction> jGnashTransactions, List<DeferredWarning> warnings) {
+			this.isConverted = isConverted;
+			this.jGnashTransactions = jGnashTransactions;
+			this.warnings = warnings;
+		}
+	}
+
+
+	/**
+	 * A warning recorded while a transaction was converted, held until the transaction is written.
+	 */
+	static final class DeferredWarning {
+		final NoticeTree.Source source;
+		final String key;
+		final Object [] arguments;
+
+		DeferredWarning(NoticeTree.Source source, String key, Object [] arguments) {
+			this.source = source;
+			this.key = key;
+			this.arguments = arguments;
+		}
+	}
+
+
+	/**
+	 * Converts a range of the transactions of a date, the results go into the slots of the range in
+	 * {@link #convertedTransactions}, so the order of the results doesn't depend on which thread finishes first.
+	 */
+	final class DateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final List<TransactionImportEntry> transactionEntries;
+		final int start;
+		final int end;
+		final ConvertedTransaction [] convertedTransactions;
+
+		DateTask(List<TransactionImportEntry> transactionEntries, int start, int end, ConvertedTransaction [] convertedTransactions) {
+			this.transactionEntries = transactionEntries;
+			this.start = start;
+			this.end = end;
+			this.convertedTransactions = convertedTransactions;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		@Override
+		protected void compute() {
+			if (this.end - this.start > SPLIT_THRESHOLD) {
+				int middle = (this.start + this.end) >>> 1;
+				ForkJoinTask.invokeAll(new DateTask(this.transactionEntries, this.start, middle, this.convertedTransactions),
+						new DateTask(this.transactionEntries, middle, this.end, this.convertedTransactions));
+				return;
+			}
+
+			for (int i = this.start; i < this.end; ++i) {
+				this.convertedTransactions[i] = contentHandler.convertTransactionEntry(this.transactionEntries.get(i));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,701 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Parses the transactions of an uncompressed GnuCash XML file on a pool of worker threads.
+ * <p>
+ * {@link #scan(GnuCashFileInput, int)} runs through the bytes of the file looking for the runs of transaction elements
+ * directly under a book, these are divided into chunks. Each worker parses a chunk with its own
+ * {@link TransactionChunkContentHandler}, wrapping the chunk in copies of the document and book start tags. The main
+ * parse reads the stream from {@link #openMainInputStream()}, which is the file with each chunk replaced by a
+ * processing instruction. When the main content handler gets to the processing instruction it calls
+ * {@link #mergeChunk(String, GnuCashToJGnashContentHandler)}, which waits for the chunk's worker and merges the results,
+ * so the transactions and warnings are added in the same order as when the file is parsed by one thread.
+ * <p>
+ * The scan only handles files encoded in UTF-8 or ASCII without a DOCTYPE, for anything else it returns
+ * <code>null</code> and the file should be parsed normally.
+ * @author albert
+ *
+ */
+public class ParallelTransactionParser implements Closeable {
+	private static final Logger LOG = Logger.getLogger(ParallelTransactionParser.class.getName());
+
+	public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+	public static final int MIN_CHUNK_SIZE = 16 * 1024;
+
+	static final String CHUNK_PI_TARGET = "gnucashjgnash-transactions";
+
+	static final int SCAN_BUFFER_SIZE = 256 * 1024;
+
+	static final byte [] BOOK_ELEMENT_NAME = "gnc:book".getBytes(StandardCharsets.US_ASCII);
+	static final byte [] TRANSACTION_ELEMENT_NAME = "gnc:transaction".getBytes(StandardCharsets.US_ASCII);
+
+	private static final Pattern ENCODING_PATTERN = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']*)[\"']");
+	private static final Pattern VERSION_PATTERN = Pattern.compile("\\sversion\\s*=");
+
+
+	/**
+	 * The start tags of the document element and a book, the chunks of the book are parsed within them.
+	 */
+	static class BookTags {
+		final byte [] startTags;
+		final byte [] endTags;
+
+		BookTags(String documentStartTag, String documentElementName, String bookStartTag, String bookElementName) {
+			// The tags are put on one line so the chunk starts on the second line.
+			this.startTags = (documentStartTag + bookStartTag).replace('\n', ' ').replace('\r', ' ').getBytes(StandardCharsets.UTF_8);
+			this.endTags = ("\n</" + bookElementName + "></" + documentElementName + ">").getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+
+	/**
+	 * A run of transactions, parsed by a worker.
+	 */
+	static class Chunk {
+		final int index;
+		final BookTags bookTags;
+		final long start;
+		final long end;
+		// The line and column, both starting from 1, of the first byte of the chunk.
+		final int lineNumber;
+		final int columnNumber;
+		// The number of line breaks within the chunk.
+		final int lineBreakCount;
+
+		Future<TransactionChunkContentHandler> result;
+
+		Chunk(int index, BookTags bookTags, long start, long end, int lineNumber, int columnNumber, int lineBreakCount) {
+			this.index = index;
+			this.bookTags = bookTags;
+			this.start = start;
+			this.end = end;
+			this.lineNumber = lineNumber;
+			this.columnNumber = columnNumber;
+			this.lineBreakCount = lineBreakCount;
+		}
+
+		/**
+		 * @return	What replaces the chunk in the main parse, the processing instruction followed by the chunk's line
+		 * breaks so the line numbers after the chunk stay the same.
+		 */
+		byte [] getMarker() {
+			byte [] instruction = ("<?" + CHUNK_PI_TARGET + " " + this.index + "?>").getBytes(StandardCharsets.US_ASCII);
+			byte [] marker = Arrays.copyOf(instruction, instruction.length + this.lineBreakCount);
+			Arrays.fill(marker, instruction.length, marker.length, (byte)'\n');
+			return marker;
+		}
+
+		/**
+		 * @return	What goes in front of the chunk's bytes for the worker, the start tags and enough spaces to put the
+		 * chunk at its column in the file.
+		 */
+		byte [] getHeader() {
+			byte [] startTags = this.bookTags.startTags;
+			byte [] header = Arrays.copyOf(startTags, startTags.length + this.columnNumber);
+			header[startTags.length] = '\n';
+			Arrays.fill(header, startTags.length + 1, header.length, (byte)' ');
+			return header;
+		}
+	}
+
+
+	private final MappedFileInputStream fileStream;
+	private final List<Chunk> chunks;
+	private final LongConsumer progressListener;
+
+	private ExecutorService executorService;
+	private int mergedChunkCount;
+	private long mainPosition;
+
+
+	private ParallelTransactionParser(MappedFileInputStream fileStream, List<Chunk> chunks, LongConsumer progressListener) {
+		this.fileStream = fileStream;
+		this.chunks = chunks;
+		this.progressListener = progressListener;
+	}
+
+
+	/**
+	 * Scans a GnuCash file for the transactions to be parsed in parallel.
+	 * @param fileInput	The file.
+	 * @param chunkSize	The size in bytes a chunk of transactions is filled to, values less than {@link #MIN_CHUNK_SIZE}
+	 * are bumped up to {@link #MIN_CHUNK_SIZE}.
+	 * @return	The parser, <code>null</code> if the file is compressed, is not in a form the scan handles, or has no
+	 * transactions.
+	 * @throws IOException
+	 */
+	public static ParallelTransactionParser scan(GnuCashFileInput fileInput, int chunkSize) throws IOException {
+		if (fileInput.getFileFormat().isCompressed() || !fileInput.getFileFormat().isXML()) {
+			return null;
+		}
+
+		MappedFileInputStream fileStream = fileInput.openRangeInputStream(0, -1);
+		try {
+			List<Chunk> chunks = null;
+			if (isEncodingSupported(fileStream)) {
+				chunks = new ChunkScanner(fileStream, Math.max(chunkSize, MIN_CHUNK_SIZE)).scan();
+			}
+			if ((chunks == null) || chunks.isEmpty()) {
+				fileStream.close();
+				return null;
+			}
+
+			fileStream.seek(0);
+			return new ParallelTransactionParser(fileStream, chunks, fileInput.getProgressListener());
+
+		} catch (IOException | RuntimeException e) {
+			fileStream.close();
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Checks the byte order mark and XML declaration at the start of the file.
+	 * @param fileStream	The file stream, at the start of the file.
+	 * @return	<code>true</code> if the bytes are UTF-8 or ASCII.
+	 * @throws IOException
+	 */
+	static boolean isEncodingSupported(MappedFileInputStream fileStream) throws IOException {
+		byte [] prolog = new byte [256];
+		int length = 0;
+		int count;
+		while ((length < prolog.length) && ((count = fileStream.read(prolog, length, prolog.length - length)) > 0)) {
+			length += count;
+		}
+
+		if ((length >= 2) && (((prolog[0] & 0xff) == 0xfe) || ((prolog[0] & 0xff) == 0xff) || (prolog[0] == 0) || (prolog[1] == 0))) {
+			// UTF-16 or UTF-32.
+			return false;
+		}
+
+		String text = new String(prolog, 0, length, StandardCharsets.ISO_8859_1);
+		int declarationStart = text.indexOf("<?xml");
+		int declarationEnd = text.indexOf("?>");
+		if ((declarationStart < 0) || (declarationEnd < declarationStart)) {
+			return true;
+		}
+
+		Matcher matcher = ENCODING_PATTERN.matcher(text.substring(declarationStart, declarationEnd));
+		if (!matcher.find()) {
+			return true;
+		}
+		return UTF8GnuCashXMLParser.isSupportedEncoding(matcher.group(1));
+	}
+
+
+	/**
+	 * Tracks the element depth through the bytes of the file, only as much of the markup is looked at as is needed
+	 * to find the elements and where they start and end.
+	 */
+	static class ChunkScanner {
+		final MappedFileInputStream fileStream;
+		final int chunkSize;
+		final List<Chunk> chunks = new ArrayList<>();
+
+		final byte [] buffer = new byte [SCAN_BUFFER_SIZE];
+		int bufferLength;
+		int bufferPos;
+		long bufferPosition;
+
+		int lineNumber = 1;
+		long lineStart;
+
+		final byte [] name = new byte [64];
+		int nameLength;
+
+		int depth;
+		long documentStartTagStart = -1;
+		long documentStartTagEnd;
+		String documentElementName;
+		BookTags bookTags;
+
+		long chunkStart = -1;
+		int chunkLineNumber;
+		int chunkColumnNumber;
+		long chunkEnd;
+		int chunkEndLineNumber;
+
+		ChunkScanner(MappedFileInputStream fileStream, int chunkSize) {
+			this.fileStream = fileStream;
+			this.chunkSize = chunkSize;
+		}
+
+		long getPosition() {
+			return this.bufferPosition + this.bufferPos;
+		}
+
+		/**
+		 * @return	<code>false</code> if the end of the file has been reached.
+		 */
+		boolean fillBuffer() throws IOException {
+			this.bufferPosition += this.bufferLength;
+			this.bufferPos = 0;
+			int count = this.fileStream.read(this.buffer, 0, this.buffer.length);
+			this.bufferLength = Math.max(count, 0);
+			return count > 0;
+		}
+
+		int read() throws IOException {
+			if ((this.bufferPos >= this.bufferLength) && !fillBuffer()) {
+				return -1;
+			}
+
+			int value = this.buffer[this.bufferPos++];
+			if (value == '\n') {
+				++this.lineNumber;
+				this.lineStart = getPosition();
+			}
+			return value & 0xff;
+		}
+
+		/**
+		 * Reads up to and including the next occurrence of an ASCII character, this is where most of the
+		 * scan's time goes so it works directly on the buffer.
+		 * @param target	The character.
+		 * @return	<code>false</code> if the end of the file was reached first.
+		 */
+		boolean skipTo(int target) throws IOException {
+			do {
+				final byte [] buffer = this.buffer;
+				final int length = this.bufferLength;
+				int pos = this.bufferPos;
+				while (pos < length) {
+					int value = buffer[pos++];
+					if (value == target) {
+						this.bufferPos = pos;
+						if (value == '\n') {
+							++this.lineNumber;
+							this.lineStart = getPosition();
+						}
+						return true;
+					}
+					if (value == '\n') {
+						++this.lineNumber;
+						this.lineStart = this.bufferPosition + pos;
+					}
+				}
+				this.bufferPos = pos;
+			} while (fillBuffer());
+			return false;
+		}
+
+		/**
+		 * Reads up to and including a terminator of two or three characters.
+		 * @return	<code>false</code> if the end of the file was reached first.
+		 */
+		boolean skipPast(String terminator) throws IOException {
+			int length = terminator.length();
+			int last = terminator.charAt(length - 1);
+			int secondLast = terminator.charAt(length - 2);
+			int thirdLast = (length > 2) ? terminator.charAt(length - 3) : -1;
+			int previous = -1;
+			int beforePrevious = -1;
+			int value;
+			while ((value = read()) >= 0) {
+				if ((value == last) && (previous == secondLast) && ((thirdLast < 0) || (beforePrevious == thirdLast))) {
+					return true;
+				}
+				beforePrevious = previous;
+				previous = value;
+			}
+			return false;
+		}
+
+		boolean isName(byte [] elementName) {
+			if (this.nameLength != elementName.length) {
+				return false;
+			}
+			for (int i = 0; i < this.nameLength; ++i) {
+				if (this.name[i] != elementName[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		String readRange(long start, long end) throws IOException {
+			try (MappedFileInputStream inputStream = this.fileStream.slice(start, end)) {
+				byte [] bytes = new byte [(int)(end - start)];
+				int length = 0;
+				int count;
+				while ((length < bytes.length) && ((count = inputStream.read(bytes, length, bytes.length - length)) > 0)) {
+					length += count;
+				}
+				return new String(bytes, 0, length, StandardCharsets.UTF_8);
+			}
+		}
+
+		void endChunk() {
+			if (this.chunkStart >= 0) {
+				this.chunks.add(new Chunk(this.chunks.size(), this.bookTags, this.chunkStart, this.chunkEnd,
+						this.chunkLineNumber, this.chunkColumnNumber, this.chunkEndLineNumber - this.chunkLineNumber));
+				this.chunkStart = -1;
+			}
+		}
+
+		/**
+		 * @return	The chunks, <code>null</code> if the file has markup the scan doesn't handle.
+		 * @throws IOException
+		 */
+		List<Chunk> scan() throws IOException {
+			this.fileStream.seek(0);
+
+			long markupEnd = 0;
+			int value;
+			while (skipTo('<')) {
+				long tagStart = getPosition() - 1;
+				long tagLineStart = this.lineStart;
+				int tagLineNumber = this.lineNumber;
+
+				value = read();
+				if (value == '/') {
+					if (!skipTo('>')) {
+						break;
+					}
+					--this.depth;
+					if ((this.depth == 2) && (this.chunkStart >= 0)) {
+						// The end of a transaction, any other element at this depth has already ended the chunk.
+						this.chunkEnd = getPosition();
+						this.chunkEndLineNumber = this.lineNumber;
+						if (this.chunkEnd - this.chunkStart >= this.chunkSize) {
+							endChunk();
+						}
+					}
+					else if (this.depth == 1) {
+						endChunk();
+						this.bookTags = null;
+					}
+				}
+				else if (value == '?') {
+					if (!skipPast("?>")) {
+						break;
+					}
+				}
+				else if (value == '!') {
+					value = read();
+					if (value == '-') {
+						if (!skipPast("-->")) {
+							break;
+						}
+					}
+					else if (value == '[') {
+						if (!skipPast("]]>")) {
+							break;
+						}
+					}
+					else {
+						// A DOCTYPE, which could declare entities...
+						return null;
+					}
+				}
+				else {
+					// A start tag.
+					this.nameLength = 0;
+					while ((value > ' ') && (value != '/') && (value != '>')) {
+						if (this.nameLength < this.name.length) {
+							this.name[this.nameLength] = (byte)value;
+						}
+						++this.nameLength;
+						value = read();
+					}
+
+					boolean isEmpty = false;
+					while ((value >= 0) && (value != '>')) {
+						if ((value == '"') || (value == '\'')) {
+							int quote = value;
+							while (((value = read()) >= 0) && (value != quote)) {
+							}
+						}
+						isEmpty = (value == '/');
+						value = read();
+					}
+					if (value < 0) {
+						break;
+					}
+
+					if ((this.depth == 2) && (this.bookTags != null) && !isEmpty && isName(TRANSACTION_ELEMENT_NAME)) {
+						if (this.chunkStart < 0) {
+							// Start the chunk at the start of the line if we can, to keep the columns the same.
+							this.chunkStart = Math.max(tagLineStart, markupEnd);
+							this.chunkLineNumber = tagLineNumber;
+							this.chunkColumnNumber = (int)(this.chunkStart - tagLineStart) + 1;
+						}
+					}
+					else if (this.depth == 2) {
+						endChunk();
+					}
+					else if (this.depth == 1) {
+						if (isName(BOOK_ELEMENT_NAME) && !isEmpty) {
+							String bookStartTag = readRange(tagStart, getPosition());
+							// Without a version the book's state handler warns, which it shouldn't do for every chunk.
+							if (VERSION_PATTERN.matcher(bookStartTag).find()) {
+								this.bookTags = new BookTags(readRange(this.documentStartTagStart, this.documentStartTagEnd),
+										this.documentElementName, bookStartTag, new String(this.name, 0, this.nameLength, StandardCharsets.UTF_8));
+							}
+						}
+					}
+					else if (this.depth == 0) {
+						if (this.nameLength > this.name.length) {
+							return null;
+						}
+						this.documentStartTagStart = tagStart;
+						this.documentStartTagEnd = getPosition();
+						this.documentElementName = new String(this.name, 0, this.nameLength, StandardCharsets.UTF_8);
+					}
+
+					if (!isEmpty) {
+						++this.depth;
+					}
+				}
+
+				markupEnd = getPosition();
+			}
+
+			// Anything left open means the file is truncated, the main parse will report that.
+			return this.chunks;
+		}
+	}
+
+
+	/**
+	 * @return	The number of chunks the transactions were divided into.
+	 */
+	public int getChunkCount() {
+		return this.chunks.size();
+	}
+
+
+	/**
+	 * Starts parsing the chunks.
+	 * @param mainContentHandler	The content handler of the main parse, the chunks are merged into this.
+	 * @param backend	The parser backend the workers use.
+	 * @param threadCount	The number of worker threads.
+	 * @throws ParserConfigurationException	If a parser could not be configured.
+	 * @throws SAXException	If a parser could not be created.
+	 */
+	public void start(GnuCashToJGnashContentHandler mainContentHandler, GnuCashXMLParser.Backend backend, int threadCount)
+			throws ParserConfigurationException, SAXException {
+		threadCount = Math.max(1, Math.min(threadCount, this.chunks.size()));
+
+		// A parser per thread, the workers borrow them.
+		BlockingQueue<GnuCashXMLParser> parsers = new ArrayBlockingQueue<>(threadCount);
+		for (int i = 0; i < threadCount; ++i) {
+			parsers.add(backend.createParser());
+		}
+
+		this.executorService = Executors.newFixedThreadPool(threadCount, (runnable) -> {
+			Thread thread = new Thread(runnable, "GnuCash Transaction Parser");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		mainContentHandler.parallelTransactionParser = this;
+		for (Chunk chunk : this.chunks) {
+			chunk.result = this.executorService.submit(() -> parseChunk(chunk, mainContentHandler, parsers));
+		}
+	}
+
+
+	TransactionChunkContentHandler parseChunk(Chunk chunk, GnuCashToJGnashContentHandler mainContentHandler,
+			BlockingQueue<GnuCashXMLParser> parsers) throws IOException, SAXException, InterruptedException {
+		GnuCashXMLParser parser = parsers.take();
+		try (InputStream inputStream = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+				new ByteArrayInputStream(chunk.getHeader()),
+				this.fileStream.slice(chunk.start, chunk.end),
+				new ByteArrayInputStream(chunk.bookTags.endTags))))) {
+
+			// The chunk starts on the second line of the worker's document.
+			TransactionChunkContentHandler contentHandler = new TransactionChunkContentHandler(mainContentHandler, chunk.lineNumber - 2);
+			parser.parse(inputStream, contentHandler);
+			return contentHandler;
+
+		} catch (SAXParseException e) {
+			throw new SAXParseException(e.getMessage(), e.getPublicId(), e.getSystemId(),
+					(e.getLineNumber() >= 0) ? e.getLineNumber() + chunk.lineNumber - 2 : e.getLineNumber(), e.getColumnNumber(), e);
+		} finally {
+			parsers.put(parser);
+		}
+	}
+
+
+	/**
+	 * Called by the main content handler when it gets to a chunk's processing instruction, waits for the chunk
+	 * to be parsed and merges it.
+	 * @param data	The processing instruction's data, the index of the chunk.
+	 * @param mainContentHandler	The main content handler.
+	 * @throws SAXException	If parsing the chunk failed.
+	 */
+	void mergeChunk(String data, GnuCashToJGnashContentHandler mainContentHandler) throws SAXException {
+		int index;
+		try {
+			index = Integer.parseInt(data.trim());
+		} catch (NumberFormatException e) {
+			return;
+		}
+		if ((index != this.mergedChunkCount) || (index >= this.chunks.size())) {
+			return;
+		}
+
+		Chunk chunk = this.chunks.get(index);
+		TransactionChunkContentHandler chunkContentHandler;
+		try {
+			chunkContentHandler = chunk.result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SAXException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SAXException) {
+				throw (SAXException)cause;
+			}
+			throw new SAXException((cause instanceof Exception) ? (Exception)cause : e);
+		}
+		chunk.result = null;
+
+		chunkContentHandler.mergeIntoMainContentHandler();
+
+		++this.mergedChunkCount;
+		reportProgress();
+	}
+
+
+	private void reportProgress() {
+		if (this.progressListener != null) {
+			// The progress doesn't get past a chunk until the chunk has been merged.
+			long position = this.mainPosition;
+			if (this.mergedChunkCount < this.chunks.size()) {
+				position = Math.min(position, this.chunks.get(this.mergedChunkCount).start);
+			}
+			this.progressListener.accept(position);
+		}
+	}
+
+
+	/**
+	 * @return	The stream for the main parse, the file with the chunks replaced by processing instructions. Closing the
+	 * stream does not close the file, {@link #close()} does.
+	 */
+	public InputStream openMainInputStream() {
+		return new InputStream() {
+			int nextChunkIndex;
+			byte [] marker;
+			int markerPos;
+			final byte [] singleByte = new byte [1];
+
+			@Override
+			public int read() throws IOException {
+				return (read(this.singleByte, 0, 1) > 0) ? (this.singleByte[0] & 0xff) : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (len == 0) {
+					return 0;
+				}
+
+				if (this.marker != null) {
+					int count = Math.min(len, this.marker.length - this.markerPos);
+					System.arraycopy(this.marker, this.markerPos, b, off, count);
+					this.markerPos += count;
+					if (this.markerPos >= this.marker.length) {
+						this.marker = null;
+					}
+					return count;
+				}
+
+				MappedFileInputStream fileStream = ParallelTransactionParser.this.fileStream;
+				List<Chunk> chunks = ParallelTransactionParser.this.chunks;
+				if (this.nextChunkIndex < chunks.size()) {
+					Chunk chunk = chunks.get(this.nextChunkIndex);
+					long position = fileStream.getPosition();
+					if (position >= chunk.start) {
+						fileStream.seek(chunk.end);
+						this.marker = chunk.getMarker();
+						this.markerPos = 0;
+						++this.nextChunkIndex;
+						return read(b, off, len);
+					}
+					len = (int)Math.min(len, chunk.start - position);
+				}
+
+				int count = fileStream.read(b, off, len);
+				if (count > 0) {
+					ParallelTransactionParser.this.mainPosition = fileStream.getPosition();
+					reportProgress();
+				}
+				return count;
+			}
+		};
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.executorService != null) {
+			this.executorService.shutdownNow();
+			try {
+				// The workers share the file, it can't be closed under them.
+				if (!this.executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+					LOG.warning("The transaction parser threads did not stop.");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.executorService = null;
+
+			if (this.mergedChunkCount < this.chunks.size()) {
+				LOG.warning("Only " + this.mergedChunkCount + " of " + this.chunks.size() + " transaction chunks were merged.");
+			}
+		}
+
+		this.fileStream.close();
+	}
+
+}
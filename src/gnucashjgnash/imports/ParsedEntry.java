@@ -27,37 +27,66 @@ import gnucashjgnash.NoticeTree.Source;
 public abstract class ParsedEntry implements NoticeTree.Source {
 	final GnuCashToJGnashContentHandler contentHandler;
 	protected Source parentSource;
-	int lineNumber;
-	int columnNumber;
+	// The line number in the upper 32 bits, the column number in the lower 32 bits, NO_LOCATION if not captured.
+	long location = NO_LOCATION;
 	String title;
 	String description;
 	
+	static final long NO_LOCATION = -1;
+	
 	protected ParsedEntry(GnuCashToJGnashContentHandler contentHandler) {
-		this.contentHandler = contentHandler;
-		if ((contentHandler != null) && (contentHandler.documentLocator != null)) {
-			this.lineNumber = contentHandler.documentLocator.getLineNumber();
-			this.columnNumber = contentHandler.documentLocator.getColumnNumber();
-		}
-		else {
-			this.lineNumber = -1;
-			this.columnNumber = -1;
-		}
+		this.contentHandler = (contentHandler != null) ? contentHandler.getEntryContentHandler() : null;
 	}
 	
-	void updateLocatorInfo(GnuCashToJGnashContentHandler contentHandler) {
+	/**
+	 * Stores the current location of the document locator, if there is one. Only the top level entries do this when they're 
+	 * created, the location of any other entry is captured when a warning is recorded for it while parsing, see 
+	 * {@link GnuCashToJGnashContentHandler#recordWarning(Source, String, Object...)}.
+	 * @param contentHandler	The content handler.
+	 */
+	void captureLocation(GnuCashToJGnashContentHandler contentHandler) {
 		if ((contentHandler != null) && (contentHandler.documentLocator != null)) {
-			this.lineNumber = contentHandler.documentLocator.getLineNumber();
-			this.columnNumber = contentHandler.documentLocator.getColumnNumber();
-		}
-		else {
-			this.lineNumber = -1;
-			this.columnNumber = -1;
+			long lineNumber = contentHandler.documentLocator.getLineNumber();
+			long columnNumber = contentHandler.documentLocator.getColumnNumber();
+			if ((lineNumber >= 0) && (columnNumber >= 0)) {
+				this.location = (lineNumber << 32) | columnNumber;
+			}
 		}
 	}
 	
+	boolean isLocationCaptured() {
+		return this.location != NO_LOCATION;
+	}
 	
-	public final int getLineNumber() { return this.lineNumber; }
-	public final int getColumnNumber() { return this.columnNumber; }
+	
+	/**
+	 * @return	The line number of the entry, if the entry's location wasn't captured that of the closest parent entry whose 
+	 * location was, -1 if none.
+	 */
+	public final int getLineNumber() {
+		ParsedEntry entry = getLocatedEntry();
+		return (entry != null) ? (int)(entry.location >>> 32) : -1;
+	}
+	
+	/**
+	 * @return	The column number of the entry, if the entry's location wasn't captured that of the closest parent entry whose 
+	 * location was, -1 if none.
+	 */
+	public final int getColumnNumber() {
+		ParsedEntry entry = getLocatedEntry();
+		return (entry != null) ? (int)entry.location : -1;
+	}
+	
+	private ParsedEntry getLocatedEntry() {
+		ParsedEntry entry = this;
+		while (!entry.isLocationCaptured()) {
+			if (!(entry.parentSource instanceof ParsedEntry)) {
+				return null;
+			}
+			entry = (ParsedEntry)entry.parentSource;
+		}
+		return entry;
+	}
 	
 	/**
 	 * Retrieves the localized message text identifying the entry, what's displayed in the
@@ -47,6 +47,7 @@ public class PriceEntry extends ParsedEntry {
 	 */
 	protected PriceEntry(GnuCashToJGnashContentHandler contentHandler) {
 		super(contentHandler);
+		captureLocation(contentHandler);
 	}
 
 
@@ -78,7 +79,7 @@ public class PriceEntry extends ParsedEntry {
 	 */
 	@Override
 	public String getUniqueId() {
-		return GnuCashConvertUtil.getString("Message.ParsedEntry.PriceEntryId", this.id.id);
+		return GnuCashConvertUtil.getString("Message.ParsedEntry.PriceEntryId", this.id.getId());
 	}
 
 
@@ -110,18 +111,18 @@ public class PriceEntry extends ParsedEntry {
         }
 
         @Override
-        protected GnuCashToJGnashContentHandler.StateHandler getStateHandlerForElement(String qName) {
-            if (qName.equals("price")) {
-                return new PriceStateHandler(this.contentHandler, this, qName);
+        protected GnuCashToJGnashContentHandler.StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            if (element == GnuCashElement.PRICE) {
+                return PriceStateHandler.obtain(this, element, qName);
             }
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
     }
 
 
 
     public static class PriceStateHandler extends GnuCashToJGnashContentHandler.AbstractStateHandler {
-        final PriceEntry priceEntry;
+        PriceEntry priceEntry;
 
         PriceStateHandler(GnuCashToJGnashContentHandler contentHandler, GnuCashToJGnashContentHandler.StateHandler parentStateHandler,
                           String elementName) {
@@ -129,6 +130,22 @@ public class PriceEntry extends ParsedEntry {
             this.priceEntry = new PriceEntry(contentHandler);
         }
 
+        /**
+         * Retrieves a {@link PriceStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @return	The state handler, ready for a new price.
+         */
+        static PriceStateHandler obtain(GnuCashToJGnashContentHandler.AbstractStateHandler parentStateHandler, GnuCashElement element,
+                String elementName) {
+            PriceStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, PriceStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new PriceStateHandler(parentStateHandler.contentHandler, parentStateHandler, elementName));
+            }
+            stateHandler.resetState(elementName);
+            stateHandler.priceEntry = new PriceEntry(stateHandler.contentHandler);
+            return stateHandler;
+        }
+
         
 		/* (non-Javadoc)
 		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.StateHandler#getParsedEntry()
@@ -162,41 +179,31 @@ public class PriceEntry extends ParsedEntry {
         }
 
         @Override
-        protected GnuCashToJGnashContentHandler.StateHandler getStateHandlerForElement(String qName) {
-            switch (qName) {
-                case "price:id":
-                    return new IdEntry.IdStateHandler(this.priceEntry.id, this.contentHandler, this, qName);
+        protected GnuCashToJGnashContentHandler.StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            switch (element) {
+                case PRICE_ID:
+                    return IdEntry.IdStateHandler.obtain(this, element, this.priceEntry.id, qName);
 
-                case "price:commodity":
-                    return new CommodityEntry.CommodityRefStateHandler(this.priceEntry.commodityRef, this.contentHandler, this, qName);
+                case PRICE_COMMODITY:
+                    return CommodityEntry.CommodityRefStateHandler.obtain(this, element, this.priceEntry.commodityRef, qName);
 
-                case "price:currency":
-                    return new CommodityEntry.CurrencyRefStateHandler(this.priceEntry.currencyRef, this.contentHandler, this, qName);
+                case PRICE_CURRENCY:
+                    return CommodityEntry.CurrencyRefStateHandler.obtain(this, element, this.priceEntry.currencyRef, qName);
 
-                case "price:time":
-                    return new TimeEntry.TimeStateHandler(this.priceEntry.time, this.contentHandler, this, qName);
+                case PRICE_TIME:
+                    return TimeEntry.TimeStateHandler.obtain(this, element, this.priceEntry.time, qName);
 
-                case "price:value":
-                    return new NumericEntry.NumericStateHandler(this.priceEntry.value, this.contentHandler, this, qName);
+                case PRICE_VALUE:
+                    return NumericEntry.NumericStateHandler.obtain(this, element, this.priceEntry.value, qName);
                     
-                case "price:source":
-                    return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
-                            @Override
-                            protected void setPriceEntryField(PriceEntry priceEntry, String value) {
-                                priceEntry.source = value;
-                            }
-                        }); 
+                case PRICE_SOURCE:
+                    return SimpleDataStateHandler.obtain(this, element, qName, SOURCE_SETTER);
                     
-                case "price:type":
-                    return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
-                            @Override
-                            protected void setPriceEntryField(PriceEntry priceEntry, String value) {
-                                priceEntry.type = value;
-                            }
-                        }); 
+                case PRICE_TYPE:
+                    return SimpleDataStateHandler.obtain(this, element, qName, TYPE_SETTER);
             }
 
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
     }
 
@@ -209,9 +216,30 @@ public class PriceEntry extends ParsedEntry {
 
         protected abstract void setPriceEntryField(PriceEntry priceEntry, String value);
     }
+    
+    static final SimpleDataSetterImpl SOURCE_SETTER = new SimpleDataSetterImpl() {
+        @Override
+        protected void setPriceEntryField(PriceEntry priceEntry, String value) {
+            priceEntry.source = value;
+        }
+    };
+    
+    static final SimpleDataSetterImpl TYPE_SETTER = new SimpleDataSetterImpl() {
+        @Override
+        protected void setPriceEntryField(PriceEntry priceEntry, String value) {
+            priceEntry.type = value;
+        }
+    };
 
 
 
+    /**
+     * Generates the jGnash price and adds it to the jGnash engine.
+     * @param contentHandler
+     * @param engine
+     * @param securityNode	The security, if <code>null</code> the security is looked up from the commodity reference.
+     * @return	<code>false</code> if failed, the error message has then been recorded.
+     */
     public boolean generateJGnashSecurityHistoryNode(GnuCashToJGnashContentHandler contentHandler, Engine engine, SecurityNode securityNode) {
         if (securityNode == null) {
             securityNode = contentHandler.jGnashSecurities.get(this.commodityRef.id);
@@ -221,7 +249,7 @@ public class PriceEntry extends ParsedEntry {
             }
         }
 
-        LocalDate date = this.time.localDate;
+        LocalDate date = this.time.getLocalDate();
         BigDecimal price = null;
         try {
             price = this.value.toBigDecimal();
@@ -237,6 +265,7 @@ public class PriceEntry extends ParsedEntry {
         SecurityHistoryNode historyNode = new SecurityHistoryNode(date, price, volume, high, low);
 
         if (!engine.addSecurityHistory(securityNode, historyNode)) {
+            contentHandler.recordError("Message.Error.EngineWriteError", "price for " + securityNode.getSymbol() + " dated " + date);
             return false;
         }
 
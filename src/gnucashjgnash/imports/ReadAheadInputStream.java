@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * {@link InputStream} that reads another input stream on a separate thread into a fixed set of chunks,
+ * normally used so decompression can run ahead of the parser. The chunks are recycled, when all the
+ * chunks are full the reader thread waits for the consumer.
+ * <p>
+ * Any {@link IOException} thrown by the underlying stream is rethrown by {@link #read(byte[], int, int)} once
+ * all the data read before the exception has been consumed.
+ * @author albert
+ *
+ */
+public class ReadAheadInputStream extends InputStream {
+	private static final Logger LOG = Logger.getLogger(ReadAheadInputStream.class.getName());
+
+	public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+	public static final int DEFAULT_CHUNK_COUNT = 8;
+
+	// How long close() waits for the reader thread, it can't be interrupted while it's blocked reading the source.
+	static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+	private static class Chunk {
+		final byte [] data;
+		int length;
+
+		Chunk(int size) {
+			this.data = new byte [size];
+		}
+	}
+
+	private static final Chunk END_CHUNK = new Chunk(0);
+
+	private final InputStream sourceStream;
+	private final ArrayBlockingQueue<Chunk> freeChunks;
+	private final ArrayBlockingQueue<Chunk> filledChunks;
+	private final Thread readerThread;
+
+	private volatile IOException readException;
+	private volatile boolean isClosed;
+
+	private Chunk currentChunk;
+	private int currentPos;
+	private boolean isEOF;
+	private final byte [] singleByte = new byte [1];
+
+
+	/**
+	 * Constructor, the reader thread is started immediately.
+	 * @param sourceStream	The stream to be read, this is closed by the reader thread when it's done.
+	 * @param chunkSize	The size of each chunk.
+	 * @param chunkCount	The number of chunks, this is the maximum number of chunks that can be read ahead.
+	 */
+	public ReadAheadInputStream(InputStream sourceStream, int chunkSize, int chunkCount) {
+		this.sourceStream = sourceStream;
+
+		chunkCount = Math.max(chunkCount, 2);
+		this.freeChunks = new ArrayBlockingQueue<>(chunkCount);
+		// Room for the end marker too, so the reader thread never blocks posting it.
+		this.filledChunks = new ArrayBlockingQueue<>(chunkCount + 1);
+		for (int i = 0; i < chunkCount; ++i) {
+			this.freeChunks.add(new Chunk(chunkSize));
+		}
+
+		this.readerThread = new Thread(this::readerThreadMain, "GnuCash Read-Ahead");
+		this.readerThread.setDaemon(true);
+		this.readerThread.start();
+	}
+
+	public ReadAheadInputStream(InputStream sourceStream) {
+		this(sourceStream, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT);
+	}
+
+
+	private void readerThreadMain() {
+		try {
+			boolean isSourceEOF = false;
+			while (!isSourceEOF && !this.isClosed) {
+				Chunk chunk = this.freeChunks.take();
+
+				int length = 0;
+				try {
+					while (length < chunk.data.length) {
+						int count = this.sourceStream.read(chunk.data, length, chunk.data.length - length);
+						if (count < 0) {
+							isSourceEOF = true;
+							break;
+						}
+						length += count;
+					}
+				}
+				finally {
+					// If the source failed what was read before the failure still goes ahead of the end marker.
+					if (length > 0) {
+						chunk.length = length;
+						// There's room in filledChunks for all the chunks, this never fails.
+						this.filledChunks.offer(chunk);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// We've been closed...
+		} catch (IOException e) {
+			this.readException = e;
+		} catch (RuntimeException e) {
+			this.readException = new IOException(e);
+		} finally {
+			try {
+				this.sourceStream.close();
+			} catch (IOException e) {
+				LOG.warning("Closing read-ahead source failed: " + e.getLocalizedMessage());
+			}
+			this.filledChunks.offer(END_CHUNK);
+		}
+	}
+
+
+	/**
+	 * Makes sure {@link #currentChunk} has data.
+	 * @return	<code>false</code> if there's no more data.
+	 * @throws IOException
+	 */
+	private boolean prepareChunk() throws IOException {
+		if (this.isClosed) {
+			throw new IOException("Stream closed");
+		}
+		if ((this.currentChunk != null) && (this.currentPos < this.currentChunk.length)) {
+			return true;
+		}
+		if (this.isEOF) {
+			return false;
+		}
+
+		if (this.currentChunk != null) {
+			this.freeChunks.offer(this.currentChunk);
+			this.currentChunk = null;
+		}
+
+		Chunk chunk;
+		try {
+			chunk = this.filledChunks.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for read-ahead data");
+		}
+
+		if (chunk == END_CHUNK) {
+			this.isEOF = true;
+			IOException exception = this.readException;
+			if (exception != null) {
+				throw exception;
+			}
+			return false;
+		}
+
+		this.currentChunk = chunk;
+		this.currentPos = 0;
+		return true;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#read()
+	 */
+	@Override
+	public int read() throws IOException {
+		return (read(this.singleByte, 0, 1) < 0) ? -1 : (this.singleByte[0] & 0xff);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!prepareChunk()) {
+			IOException exception = this.readException;
+			if (exception != null) {
+				throw exception;
+			}
+			return -1;
+		}
+
+		int count = Math.min(len, this.currentChunk.length - this.currentPos);
+		System.arraycopy(this.currentChunk.data, this.currentPos, b, off, count);
+		this.currentPos += count;
+		return count;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#available()
+	 */
+	@Override
+	public int available() throws IOException {
+		return (this.currentChunk != null) ? this.currentChunk.length - this.currentPos : 0;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.InputStream#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.isClosed) {
+			return;
+		}
+		this.isClosed = true;
+
+		// Wake up the reader thread if it's waiting for a free chunk, it closes the source stream on the way out.
+		this.readerThread.interrupt();
+		try {
+			this.readerThread.join(CLOSE_TIMEOUT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.readerThread.isAlive()) {
+			// It's a daemon thread, it closes the source stream whenever the read it's stuck in returns.
+			LOG.warning("The read-ahead thread did not stop.");
+		}
+		this.filledChunks.clear();
+		this.currentChunk = null;
+	}
+
+}
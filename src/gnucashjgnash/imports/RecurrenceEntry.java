@@ -44,6 +44,7 @@ public class RecurrenceEntry extends ParsedEntry {
 	 */
 	protected RecurrenceEntry(GnuCashToJGnashContentHandler contentHandler, ParsedEntry parentParsedEntry) {
 		super(contentHandler);
+		captureLocation(contentHandler);
 		this.parentSource = parentParsedEntry;
 	}
 
@@ -99,19 +100,19 @@ public class RecurrenceEntry extends ParsedEntry {
 		}
 
 		/* (non-Javadoc)
-		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
 		 */
 		@Override
-		protected StateHandler getStateHandlerForElement(String qName) {
-			switch (qName) {
-			case "gnc:recurrence" :
+		protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+			switch (element) {
+			case GNC_RECURRENCE :
 				RecurrenceEntry recurrenceEntry = new RecurrenceEntry(this.contentHandler, this.parentParsedEntry);
 				this.recurrenceEntries.add(recurrenceEntry);
 				return new RecurrenceStateHandler(recurrenceEntry, this.contentHandler, this, qName);
 				
 			}
 			
-			return super.getStateHandlerForElement(qName);
+			return super.getStateHandlerForElement(element, qName);
 		}
 
 	}
@@ -147,15 +148,15 @@ public class RecurrenceEntry extends ParsedEntry {
 		}
 
 		/* (non-Javadoc)
-		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
 		 */
 		@Override
-		protected StateHandler getStateHandlerForElement(String qName) {
-			switch (qName) {
-			case "recurrence:mult":
+		protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+			switch (element) {
+			case RECURRENCE_MULT:
 				return new IntEntry.IntEntryStateHandler(this.recurrenceEntry.mult, this.contentHandler, this, qName);
 
-			case "recurrence:period_type":
+			case RECURRENCE_PERIOD_TYPE:
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                     @Override
                     protected void setRecurrenceEntryField(RecurrenceEntry entry, String value,
@@ -164,10 +165,10 @@ public class RecurrenceEntry extends ParsedEntry {
                     }
                 }); 
 
-			case "recurrence:start":
+			case RECURRENCE_START:
 				return new GDateEntry.GDateStateHandler(this.recurrenceEntry.start, this.contentHandler, this, qName);
 				
-			case "recurrence:weekend_adj":
+			case RECURRENCE_WEEKEND_ADJ:
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                     @Override
                     protected void setRecurrenceEntryField(RecurrenceEntry entry, String value,
@@ -178,7 +179,7 @@ public class RecurrenceEntry extends ParsedEntry {
 
 			}
 			
-			return super.getStateHandlerForElement(qName);
+			return super.getStateHandlerForElement(element, qName);
 		}
 		
 	}
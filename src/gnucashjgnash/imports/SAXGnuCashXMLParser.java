@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * {@link GnuCashXMLParser} backed by the JAXP SAX parser.
+ * @author albert
+ *
+ */
+public class SAXGnuCashXMLParser implements GnuCashXMLParser {
+	private static SAXParserFactory parserFactory;
+
+	private final XMLReader xmlReader;
+
+	public SAXGnuCashXMLParser() throws ParserConfigurationException, SAXException {
+		this.xmlReader = getParserFactory().newSAXParser().getXMLReader();
+	}
+
+
+	private static synchronized SAXParserFactory getParserFactory() {
+		if (parserFactory == null) {
+			parserFactory = SAXParserFactory.newInstance();
+			parserFactory.setNamespaceAware(true);
+		}
+		return parserFactory;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see gnucashjgnash.imports.GnuCashXMLParser#parse(java.io.InputStream, gnucashjgnash.imports.GnuCashToJGnashContentHandler)
+	 */
+	@Override
+	public void parse(InputStream inputStream, GnuCashToJGnashContentHandler contentHandler) throws IOException, SAXException {
+		this.xmlReader.setContentHandler(contentHandler);
+		this.xmlReader.parse(new InputSource(inputStream));
+	}
+
+}
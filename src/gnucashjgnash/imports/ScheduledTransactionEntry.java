@@ -19,9 +19,7 @@ package gnucashjgnash.imports;
 import java.math.BigInteger;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import gnucashjgnash.GnuCashConvertUtil;
 import gnucashjgnash.NoticeTree.Source;
@@ -65,7 +63,7 @@ public class ScheduledTransactionEntry extends ParsedEntry {
 	List<RecurrenceEntry> recurrances = new ArrayList<>();
 	List<DeferredInstanceEntry> deferredInstances = new ArrayList<>();
 	
-	Map<String, SlotEntry> slots = new HashMap<>();
+	SlotMap slots = new SlotMap(this);
 
 
 	/**
@@ -73,6 +71,7 @@ public class ScheduledTransactionEntry extends ParsedEntry {
 	 */
 	protected ScheduledTransactionEntry(GnuCashToJGnashContentHandler contentHandler) {
 		super(contentHandler);
+		captureLocation(contentHandler);
 	}
 
 
@@ -102,7 +101,7 @@ public class ScheduledTransactionEntry extends ParsedEntry {
 	 */
 	@Override
 	public String getUniqueId() {
-		return GnuCashConvertUtil.getString("Message.ParsedEntry.ScheduledTransactionEntryId", this.id.id);
+		return GnuCashConvertUtil.getString("Message.ParsedEntry.ScheduledTransactionEntryId", this.id.getId());
 	}
 
 
@@ -195,15 +194,15 @@ public class ScheduledTransactionEntry extends ParsedEntry {
 		}
 
 		/* (non-Javadoc)
-		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
 		 */
 		@Override
-		protected StateHandler getStateHandlerForElement(String qName) {
-			switch (qName) {
-			case "sx:id":
+		protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+			switch (element) {
+			case SX_ID:
 				return new IdEntry.IdStateHandler(this.scheduledTransactionEntry.id, this.contentHandler, this, qName);
 				
-			case "sx:name":
+			case SX_NAME:
                 return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
                         @Override
                         protected void setScheduledTransactionEntryField(ScheduledTransactionEntry entry, String value,
@@ -212,58 +211,58 @@ public class ScheduledTransactionEntry extends ParsedEntry {
                         }
                     }); 
  
-			case "sx:enabled":
+			case SX_ENABLED:
 				return new YesNoEntry.YesNoStateHandler(this.scheduledTransactionEntry.enabled, this.contentHandler, this, qName);
                 
-			case "sx:autoCreate":
+			case SX_AUTO_CREATE:
 				return new YesNoEntry.YesNoStateHandler(this.scheduledTransactionEntry.autoCreate, this.contentHandler, this, qName);
                 
-			case "sx:autoCreateNotify":
+			case SX_AUTO_CREATE_NOTIFY:
 				return new YesNoEntry.YesNoStateHandler(this.scheduledTransactionEntry.autoCreateNotify, this.contentHandler, this, qName);
                 
-			case "sx:advanceCreateDays":
+			case SX_ADVANCE_CREATE_DAYS:
 				return new IntEntry.IntEntryStateHandler(this.scheduledTransactionEntry.advanceCreateDays, this.contentHandler, this, qName);
                 
-			case "sx:advanceRemindDays":
+			case SX_ADVANCE_REMIND_DAYS:
 				return new IntEntry.IntEntryStateHandler(this.scheduledTransactionEntry.advanceRemindDays, this.contentHandler, this, qName);
  
-			case "sx:instanceCount":
+			case SX_INSTANCE_COUNT:
 				return new IntEntry.IntEntryStateHandler(this.scheduledTransactionEntry.instanceCount, this.contentHandler, this, qName);
                 
-			case "sx:start":
+			case SX_START:
 				return new GDateEntry.GDateStateHandler(this.scheduledTransactionEntry.start, this.contentHandler, this, qName);
                 
-			case "sx:last":
+			case SX_LAST:
 				return new GDateEntry.GDateStateHandler(this.scheduledTransactionEntry.last, this.contentHandler, this, qName);
                 
-			case "sx:end":
+			case SX_END:
 				return new GDateEntry.GDateStateHandler(this.scheduledTransactionEntry.end, this.contentHandler, this, qName);
 				
-			case "sx:num-occur":
+			case SX_NUM_OCCUR:
 				return new IntEntry.IntEntryStateHandler(this.scheduledTransactionEntry.numOccur, this.contentHandler, this, qName);
 
-			case "sx:rem-occur":
+			case SX_REM_OCCUR:
 				return new IntEntry.IntEntryStateHandler(this.scheduledTransactionEntry.remOccur, this.contentHandler, this, qName);
 				
-			case "sx:templ-acct":
+			case SX_TEMPL_ACCT:
 				return new IdEntry.IdStateHandler(this.scheduledTransactionEntry.templateAccount, this.contentHandler, this, qName);
 				
-			case "sx:schedule":
+			case SX_SCHEDULE:
 				return new RecurrenceEntry.RecurrencesStateHandler(this.scheduledTransactionEntry.recurrances, this.scheduledTransactionEntry, 
 						this.contentHandler, this, qName);
 
-			case "sx:deferredInstance":
+			case SX_DEFERRED_INSTANCE:
 				DeferredInstanceEntry deferredInstanceEntry = new DeferredInstanceEntry(this.contentHandler, this.scheduledTransactionEntry);
 				this.scheduledTransactionEntry.deferredInstances.add(deferredInstanceEntry);
 				return new DeferredInstanceEntry.DeferredInstanceStateHandler(deferredInstanceEntry, this.contentHandler, this, qName);
 				
-			case "sx:slots":
+			case SX_SLOTS:
                 return new SlotEntry.SlotsStateHandler(this.scheduledTransactionEntry.slots, this.scheduledTransactionEntry, 
                 		this.contentHandler, this, qName);
 				
 			}
 
-			return super.getStateHandlerForElement(qName);
+			return super.getStateHandlerForElement(element, qName);
 		}
 		
 
@@ -305,8 +304,7 @@ public class ScheduledTransactionEntry extends ParsedEntry {
      */
     public static boolean processTemplateTransactions(GnuCashToJGnashContentHandler contentHandler, Engine engine) {
     	// Each transaction...
-    	for (Map.Entry<String, TransactionImportEntry> entry : contentHandler.templateTransactionImportEntries.entrySet()) {
-    		TransactionImportEntry transactionEntry = entry.getValue();
+    	for (TransactionImportEntry transactionEntry : contentHandler.templateTransactionImportEntries.values()) {
     		if (!processTemplateTransaction(transactionEntry, contentHandler, engine)) {
     			return false;
     		}
@@ -318,16 +316,16 @@ public class ScheduledTransactionEntry extends ParsedEntry {
     		GnuCashToJGnashContentHandler contentHandler, Engine engine) {
     	AccountImportEntry accountImportEntry = null;
     	for (SplitEntry splitEntry : transactionEntry.originalSplitsList) {
-    		AccountImportEntry splitAccountImportEntry = contentHandler.templateAccountImportEntries.get(splitEntry.account.id);
+    		AccountImportEntry splitAccountImportEntry = contentHandler.templateAccountImportEntries.get(splitEntry.account);
     		if (splitAccountImportEntry == null) {
     			contentHandler.recordWarning(transactionEntry, "Message.Warning.TemplateTransactionSplitAccountMissing", 
-    					splitEntry.id.id, splitEntry.account.id);
+    					splitEntry.id.getId(), splitEntry.account.getId());
     			return true;
     		}
     		else if (accountImportEntry != null) {
     			if (splitAccountImportEntry != accountImportEntry) {
     				contentHandler.recordWarning(transactionEntry, "Message.Warning.TemplateTransactionSplitAccountsDifferent", 
-        					transactionEntry.id.id);
+        					transactionEntry.id.getId());
     				return true;
     			}
     		}
@@ -363,8 +361,7 @@ public class ScheduledTransactionEntry extends ParsedEntry {
     public static TransactionImportEntry templateTransactionToNormal(TransactionImportEntry originalTransactionEntry,
     		GnuCashToJGnashContentHandler contentHandler) {
     	TransactionImportEntry normalTransactionEntry = new TransactionImportEntry(null);
-    	normalTransactionEntry.lineNumber = originalTransactionEntry.lineNumber;
-    	normalTransactionEntry.columnNumber = originalTransactionEntry.columnNumber;
+    	normalTransactionEntry.location = originalTransactionEntry.location;
     	normalTransactionEntry.isTemplateTransaction = true;
     	
     	normalTransactionEntry.currencyRef = originalTransactionEntry.currencyRef;
@@ -376,8 +373,7 @@ public class ScheduledTransactionEntry extends ParsedEntry {
     	
     	for (SplitEntry originalSplitEntry : originalTransactionEntry.originalSplitsList) {
     		SplitEntry normalSplitEntry = new SplitEntry(contentHandler, normalTransactionEntry);
-    		normalSplitEntry.columnNumber = originalSplitEntry.columnNumber;
-    		normalSplitEntry.lineNumber = originalSplitEntry.lineNumber;
+    		normalSplitEntry.location = originalSplitEntry.location;
     		normalSplitEntry.memo = originalSplitEntry.memo;
     		normalSplitEntry.reconciledState = originalSplitEntry.reconciledState;
     		normalSplitEntry.value = originalSplitEntry.value;
@@ -398,20 +394,20 @@ public class ScheduledTransactionEntry extends ParsedEntry {
     		GnuCashToJGnashContentHandler contentHandler) {
     	SlotEntry slotEntry = originalSplitEntry.slots.get("sched-xaction");
     	if (slotEntry == null) {
-    		contentHandler.recordWarning(originalSplitEntry, "Message.Warning.SchedXActionSlotMissing", originalSplitEntry.id.id);
+    		contentHandler.recordWarning(originalSplitEntry, "Message.Warning.SchedXActionSlotMissing", originalSplitEntry.id.getId());
     		return false;
     	}
     	if (slotEntry.frameSlotEntries == null) {
-    		contentHandler.recordWarning(originalSplitEntry, "Message.Warning.SchedXActionSlotNotFrame", originalSplitEntry.id.id);
+    		contentHandler.recordWarning(originalSplitEntry, "Message.Warning.SchedXActionSlotNotFrame", originalSplitEntry.id.getId());
     		return false;
     	}
     	SlotEntry accountSlotEntry = slotEntry.frameSlotEntries.get("account");
     	if (accountSlotEntry == null) {
-    		contentHandler.recordWarning(originalSplitEntry, "Message.Warning.SchedXActionSlotMissingAccount", originalSplitEntry.id.id);
+    		contentHandler.recordWarning(originalSplitEntry, "Message.Warning.SchedXActionSlotMissingAccount", originalSplitEntry.id.getId());
     		return false;
     	}
     	
-    	normalSplitEntry.account.id = accountSlotEntry.value;
+    	normalSplitEntry.account.setId(accountSlotEntry.value);
     	
     	SlotEntry creditFormulaSlotEntry = slotEntry.frameSlotEntries.get("credit-formula");
     	SlotEntry debitFormulaSlotEntry = slotEntry.frameSlotEntries.get("debit-formula");
@@ -419,11 +415,11 @@ public class ScheduledTransactionEntry extends ParsedEntry {
     	if ((creditFormulaSlotEntry != null) && !creditFormulaSlotEntry.value.isEmpty()) {
     		try {
     			normalSplitEntry.value.fromRealString(creditFormulaSlotEntry.value, BigInteger.valueOf(1000));
-    			normalSplitEntry.value.numerator = normalSplitEntry.value.numerator.negate(); 
+    			normalSplitEntry.value.negate();
     		}
     		catch (NumberFormatException e) {
         		contentHandler.recordWarning(originalSplitEntry, "Message.Warning.SchedXActionSlotCreditFormulaValueInvalid", 
-        				originalSplitEntry.id.id, e.getLocalizedMessage());
+        				originalSplitEntry.id.getId(), e.getLocalizedMessage());
     			return false;
     		}
     	}
@@ -433,7 +429,7 @@ public class ScheduledTransactionEntry extends ParsedEntry {
     		}
     		catch (NumberFormatException e) {
         		contentHandler.recordWarning(originalSplitEntry, "Message.Warning.SchedXActionSlotDebitFormulaValueInvalid", 
-        				originalSplitEntry.id.id, e.getLocalizedMessage());
+        				originalSplitEntry.id.getId(), e.getLocalizedMessage());
     			return false;
     		}
     	}
@@ -453,9 +449,9 @@ public class ScheduledTransactionEntry extends ParsedEntry {
      * @return	<code>false</code> if failed.
      */
     public boolean generateJGnashScheduledTransaction(GnuCashToJGnashContentHandler contentHandler, Engine engine) {
-    	AccountImportEntry templateAccount = contentHandler.templateAccountImportEntries.get(this.templateAccount.id);
+    	AccountImportEntry templateAccount = contentHandler.templateAccountImportEntries.get(this.templateAccount);
     	if (templateAccount == null) {
-    		contentHandler.recordWarning(this, "Message.Warning.TemplateAccountMissing", this.name, this.templateAccount.id);
+    		contentHandler.recordWarning(this, "Message.Warning.TemplateAccountMissing", this.name, this.templateAccount.getId());
     		return true;
     	}
     	
@@ -22,9 +22,6 @@ import gnucashjgnash.GnuCashConvertUtil;
 import gnucashjgnash.imports.GnuCashToJGnashContentHandler.SimpleDataStateHandler;
 import gnucashjgnash.imports.GnuCashToJGnashContentHandler.StateHandler;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Represents a parsed GnuCash KvpValue from <a href="https://github.com/Gnucash/gnucash/blob/master/libgnucash/doc/xml/gnucash-v2.rnc" target="_blank" rel="noopener noreferrer">gnucash-v2.rnc</a>
  * @author albert
@@ -37,7 +34,7 @@ public class SlotEntry extends ParsedEntry {
     TimeEntry timeEntryValue;
     GDateEntry gDateEntryValue;
     NumericEntry numericValue;
-    Map<String, SlotEntry> frameSlotEntries;
+    SlotMap frameSlotEntries;
 
 	protected SlotEntry(GnuCashToJGnashContentHandler contentHandler, ParsedEntry parentParsedEntry) {
 		super(contentHandler);
@@ -56,33 +53,44 @@ public class SlotEntry extends ParsedEntry {
 
 
 
-	public static String getStringSlotValue(final Map<String, SlotEntry> slotEntries, final String key, final String defValue) {
-        final SlotEntry slotEntry = slotEntries.get(key);
-        if (slotEntry == null) {
-            return defValue;
-        }
-        if (!"string".equals(slotEntry.valueType)) {
-            return defValue;
-        }
-        return slotEntry.value;
+	public static String getStringSlotValue(final SlotMap slotEntries, final String key, final String defValue) {
+        return slotEntries.getStringValue(key, defValue);
     }
 
 
     /**
      * {@link StateHandler} for parsing a group of slot entries, KvpSlot+ from <a href="https://github.com/Gnucash/gnucash/blob/master/libgnucash/doc/xml/gnucash-v2.rnc" target="_blank" rel="noopener noreferrer">gnucash-v2.rnc</a>
+     * The slots are added to a {@link SlotMap} in its compact form.
      * @author albert
      *
      */
     static class SlotsStateHandler extends GnuCashToJGnashContentHandler.AbstractStateHandler {
-        final Map<String, SlotEntry> slotEntries;
-        final ParsedEntry parentParsedEntry;
+        SlotMap slotEntries;
+        ParsedEntry parentParsedEntry;
         
-        SlotsStateHandler(Map<String, SlotEntry> slotEntries, ParsedEntry parentParsedEntry,
+        SlotsStateHandler(SlotMap slotEntries, ParsedEntry parentParsedEntry,
         		GnuCashToJGnashContentHandler contentHandler, GnuCashToJGnashContentHandler.StateHandler parentStateHandler, String elementName) {
             super(contentHandler, parentStateHandler, elementName);
             this.slotEntries = slotEntries;
             this.parentParsedEntry = parentParsedEntry;
         }
+
+        /**
+         * Retrieves a {@link SlotsStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @return	The state handler.
+         */
+        static SlotsStateHandler obtain(GnuCashToJGnashContentHandler.AbstractStateHandler parentStateHandler, GnuCashElement element,
+                SlotMap slotEntries, ParsedEntry parentParsedEntry, String elementName) {
+            SlotsStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, SlotsStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new SlotsStateHandler(slotEntries, parentParsedEntry, parentStateHandler.contentHandler, parentStateHandler, elementName));
+            }
+            stateHandler.resetState(elementName);
+            stateHandler.slotEntries = slotEntries;
+            stateHandler.parentParsedEntry = parentParsedEntry;
+            return stateHandler;
+        }
         
 
 		/* (non-Javadoc)
@@ -94,15 +102,15 @@ public class SlotEntry extends ParsedEntry {
 		}
 
 		/* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-            switch (qName) {
-            case "slot": 
-                return new SlotStateHandler(this.slotEntries, this.parentParsedEntry, this.contentHandler, this, qName); 
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            switch (element) {
+            case SLOT: 
+                return SlotStateHandler.obtain(this, element, this.slotEntries, this.parentParsedEntry, qName); 
             }
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
         
         
@@ -111,19 +119,55 @@ public class SlotEntry extends ParsedEntry {
 
     /**
      * {@link StateHandler} for parsing a KvpSlot from <a href="https://github.com/Gnucash/gnucash/blob/master/libgnucash/doc/xml/gnucash-v2.rnc" target="_blank" rel="noopener noreferrer">gnucash-v2.rnc</a>
+     * Only the key, the value type and the raw value are kept, the {@link SlotEntry} is built by the {@link SlotMap}
+     * if the slot is looked up.
      * @author albert
      *
      */
     static class SlotStateHandler extends GnuCashToJGnashContentHandler.AbstractStateHandler {
-        final Map<String, SlotEntry> slotEntries;
-        final SlotEntry slotEntry;
-
-        SlotStateHandler(Map<String, SlotEntry> slotEntries, ParsedEntry parentParsedEntry, 
+        SlotMap slotEntries;
+        ParsedEntry parentParsedEntry;
+        String key;
+        String valueType;
+        Object value;
+        // Only created if there's a warning to attach to it.
+        SlotEntry warningSlotEntry;
+
+        SlotStateHandler(SlotMap slotEntries, ParsedEntry parentParsedEntry, 
         		GnuCashToJGnashContentHandler contentHandler, GnuCashToJGnashContentHandler.StateHandler parentStateHandler,
                          String elementName) {
             super(contentHandler, parentStateHandler, elementName);
             this.slotEntries = slotEntries;
-            this.slotEntry = new SlotEntry(contentHandler, parentParsedEntry);
+            this.parentParsedEntry = parentParsedEntry;
+        }
+
+        /**
+         * Retrieves a {@link SlotStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @return	The state handler, ready for a new slot.
+         */
+        static SlotStateHandler obtain(GnuCashToJGnashContentHandler.AbstractStateHandler parentStateHandler, GnuCashElement element,
+                SlotMap slotEntries, ParsedEntry parentParsedEntry, String elementName) {
+            SlotStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, SlotStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new SlotStateHandler(slotEntries, parentParsedEntry, parentStateHandler.contentHandler, parentStateHandler, elementName));
+            }
+            stateHandler.resetState(elementName);
+            stateHandler.slotEntries = slotEntries;
+            stateHandler.parentParsedEntry = parentParsedEntry;
+            return stateHandler;
+        }
+
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#resetState(java.lang.String)
+         */
+        @Override
+        protected void resetState(String elementName) {
+            super.resetState(elementName);
+            this.key = null;
+            this.valueType = null;
+            this.value = null;
+            this.warningSlotEntry = null;
         }
 
 		/* (non-Javadoc)
@@ -131,78 +175,121 @@ public class SlotEntry extends ParsedEntry {
 		 */
 		@Override
 		public ParsedEntry getParsedEntry() {
-			return this.slotEntry;
+			// Only needed for warnings, so the slot entry is created here.
+			if (this.warningSlotEntry == null) {
+				this.warningSlotEntry = new SlotEntry(this.contentHandler, this.parentParsedEntry);
+			}
+			this.warningSlotEntry.key = this.key;
+			return this.warningSlotEntry;
 		}
 
         /* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-            switch (qName) {
-            case "slot:key" : 
-                return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
-                        @Override
-                        protected void setSlotEntryField(SlotEntry slotEntry, String value) {
-                            slotEntry.key = value;
-                        }
-                    });
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            switch (element) {
+            case SLOT_KEY : 
+                return SimpleDataStateHandler.obtain(this, element, qName, KEY_SETTER);
                 
-            case "slot:value" : 
-                return new SlotValueStateHandler(this.slotEntry, this.contentHandler, this, qName);
+            case SLOT_VALUE : 
+                return SlotValueStateHandler.obtain(this, element, qName);
             }
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
 
         @Override
         protected void endState() {
             super.endState();
 
-            if (this.slotEntry.key == null) {
+            if (this.key == null) {
                 recordWarning("Message.Parse.XMLSlotKeyMissing", this.elementName);
                 return;
             }
-            if (this.slotEntry.valueType == null) {
+            if (this.valueType == null) {
                 recordWarning("Message.Parse.XMLSlotValueTypeMissing",
-                        this.elementName, this.slotEntry.key, "slot:value");
+                        this.elementName, this.key, "slot:value");
                 return;
             }
 
-            if (this.slotEntries.put(this.slotEntry.key, this.slotEntry) != null) {
-                recordWarning("Message.Parse.XMLDuplicateSlotKey", this.elementName, this.slotEntry.key);
+            if (!this.slotEntries.add(this.key, this.valueType, this.value)) {
+                recordWarning("Message.Parse.XMLDuplicateSlotKey", this.elementName, this.key);
             }
         }
     }
 
     
-    static abstract class SimpleDataSetterImpl extends GnuCashToJGnashContentHandler.AbstractSimpleDataSetter {
-        @Override
-        public void setAttributes(Attributes atts, GnuCashToJGnashContentHandler.SimpleDataStateHandler stateHandler) {
-            SlotStateHandler parentStateHandler = (SlotStateHandler)stateHandler.parentStateHandler;
-            setSlotEntryAttributes(parentStateHandler.slotEntry, atts);
-        }
-
+    static final GnuCashToJGnashContentHandler.AbstractSimpleDataSetter KEY_SETTER = new GnuCashToJGnashContentHandler.AbstractSimpleDataSetter() {
         @Override
         public void setData(String characters, GnuCashToJGnashContentHandler.SimpleDataStateHandler stateHandler) {
-            SlotStateHandler parentStateHandler = (SlotStateHandler)stateHandler.parentStateHandler;
-            setSlotEntryField(parentStateHandler.slotEntry, characters);
+            // There are only a handful of different keys.
+            ((SlotStateHandler)stateHandler.parentStateHandler).key = characters.intern();
         }
-
-        protected void setSlotEntryAttributes(SlotEntry slotEntry, Attributes attr) {
-
+    };
+    
+    
+    /**
+     * @param valueType	The type attribute of a slot:value element.
+     * @return	The value type, interned.
+     */
+    static String internValueType(String valueType) {
+        if (valueType == null) {
+            return null;
         }
-        protected abstract void setSlotEntryField(SlotEntry slotEntry, String value);
+        switch (valueType) {
+        case "integer" :	return "integer";
+        case "double" :		return "double";
+        case "numeric" :	return "numeric";
+        case "string" :		return "string";
+        case "guid" :		return "guid";
+        case "timespec" :	return "timespec";
+        case "gdate" :		return "gdate";
+        case "binary" :		return "binary";
+        case "list" :		return "list";
+        case "frame" :		return "frame";
+        }
+        return valueType.intern();
     }
     
     
-    
+    /**
+     * {@link StateHandler} for the slot:value element of a slot, this sets the value type and the raw value
+     * of the parent {@link SlotStateHandler}.
+     * @author albert
+     *
+     */
     static class SlotValueStateHandler extends GnuCashToJGnashContentHandler.AbstractStateHandler {
-        final SlotEntry slotEntry;
+        final SlotStateHandler slotStateHandler;
+        // The text of the ts:date or gdate child element.
+        String childText;
 
-        SlotValueStateHandler(SlotEntry slotEntry, GnuCashToJGnashContentHandler contentHandler, StateHandler parentStateHandler,
+        SlotValueStateHandler(GnuCashToJGnashContentHandler contentHandler, SlotStateHandler parentStateHandler,
                 String elementName) {
             super(contentHandler, parentStateHandler, elementName);
-            this.slotEntry = slotEntry;
+            this.slotStateHandler = parentStateHandler;
+        }
+
+        /**
+         * Retrieves a {@link SlotValueStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @return	The state handler.
+         */
+        static SlotValueStateHandler obtain(SlotStateHandler parentStateHandler, GnuCashElement element, String elementName) {
+            SlotValueStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, SlotValueStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new SlotValueStateHandler(parentStateHandler.contentHandler, parentStateHandler, elementName));
+            }
+            stateHandler.resetState(elementName);
+            return stateHandler;
+        }
+
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#resetState(java.lang.String)
+         */
+        @Override
+        protected void resetState(String elementName) {
+            super.resetState(elementName);
+            this.childText = null;
         }
 
 
@@ -211,49 +298,57 @@ public class SlotEntry extends ParsedEntry {
 		 */
 		@Override
 		public ParsedEntry getParsedEntry() {
-			return this.slotEntry;
+			return this.slotStateHandler.getParsedEntry();
 		}
 
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#isTextNeeded()
+         */
+        @Override
+        public boolean isTextNeeded() {
+            // The simple value types are the text of the element, the others are child elements. A frame's
+            // text is only the whitespace between its slots.
+            return this.slotStateHandler.valueType != "frame";
+        }
+
 		/* (non-Javadoc)
          * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#handleStateAttributes(org.xml.sax.Attributes)
          */
         @Override
         public void handleStateAttributes(Attributes atts) {
             super.handleStateAttributes(atts);
-            this.slotEntry.valueType = atts.getValue("type");
+            String valueType = internValueType(atts.getValue("type"));
+            this.slotStateHandler.valueType = valueType;
+            if (valueType == "frame") {
+                this.slotStateHandler.value = new SlotMap(this.slotStateHandler.parentParsedEntry);
+            }
         }
 
         /* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-        	if (this.slotEntry.valueType != null) {
-	            switch (this.slotEntry.valueType) {
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            String valueType = this.slotStateHandler.valueType;
+        	if (valueType != null) {
+	            switch (valueType) {
 	                case "timespec" :
-	                    this.slotEntry.timeEntryValue = new TimeEntry(this.slotEntry);
-	                    return new TimeEntry.TimeStateHandler(this.slotEntry.timeEntryValue, this.contentHandler, this, qName);
-	                    
 	                case "gdate" :
-	                    this.slotEntry.gDateEntryValue = new GDateEntry(this.slotEntry);
-	                    return new GDateEntry.GDateStateHandler(this.slotEntry.gDateEntryValue, this.contentHandler, this, qName);
-	                    
-	                case "numeric":
-	                    this.slotEntry.numericValue = new NumericEntry(this.slotEntry);
-	                    return new NumericEntry.NumericStateHandler(this.slotEntry.numericValue, this.contentHandler, this, qName);
+	                	if ((element == GnuCashElement.TS_DATE) || (element == GnuCashElement.GDATE)) {
+	                		return SimpleDataStateHandler.obtain(this, element, qName, CHILD_TEXT_SETTER);
+	                	}
+	                	break;
 	                    
 	                    //case "list":
 	                case "frame":
-	                    if (this.slotEntry.frameSlotEntries == null) {
-	                        this.slotEntry.frameSlotEntries = new HashMap<>();
-	                    }
-	                    if ("slot".equals(qName)) {
-	                        return new SlotStateHandler(this.slotEntry.frameSlotEntries, this.slotEntry, this.contentHandler, this, qName);
+	                    if (element == GnuCashElement.SLOT) {
+	                        return SlotStateHandler.obtain(this, element, (SlotMap)this.slotStateHandler.value, 
+	                        		this.slotStateHandler.parentParsedEntry, qName);
 	                    }
 	                    break; 
 	            }
         	}
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
 
         /* (non-Javadoc)
@@ -262,22 +357,25 @@ public class SlotEntry extends ParsedEntry {
         @Override
         protected void endState() {
             super.endState();
-            if (this.slotEntry.valueType != null) {
-	            switch (this.slotEntry.valueType) {
+            String valueType = this.slotStateHandler.valueType;
+            if (valueType != null) {
+	            switch (valueType) {
 	                case "integer" :
-	                    this.slotEntry.value = this.characters;
-	                    break;
 	                case "double" :
-	                    this.slotEntry.value = this.characters;
-	                    break;
+	                case "numeric" :
 	                case "string" :
-	                    this.slotEntry.value = this.characters;
-	                    break;
 	                case "guid":
-	                    this.slotEntry.value = this.characters;
-	                    break;
 	                case "binary":
-	                    this.slotEntry.value = this.characters;
+	                    this.slotStateHandler.value = this.characters;
+	                    break;
+	                    
+	                case "timespec" :
+	                    this.slotStateHandler.value = this.childText;
+	                    break;
+	                    
+	                case "gdate" :
+	                	// The date may be the text of the element instead of a gdate child element.
+	                    this.slotStateHandler.value = (this.childText != null) ? this.childText : this.characters;
 	                    break;
 	            }
             }
@@ -285,4 +383,12 @@ public class SlotEntry extends ParsedEntry {
         
         
     }
+    
+    
+    static final GnuCashToJGnashContentHandler.AbstractSimpleDataSetter CHILD_TEXT_SETTER = new GnuCashToJGnashContentHandler.AbstractSimpleDataSetter() {
+        @Override
+        public void setData(String characters, GnuCashToJGnashContentHandler.SimpleDataStateHandler stateHandler) {
+            ((SlotValueStateHandler)stateHandler.parentStateHandler).childText = characters;
+        }
+    };
 }
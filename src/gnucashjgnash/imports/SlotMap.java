@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.util.Arrays;
+
+/**
+ * The slots of an entry, keyed by the slot keys. Only a few slots are ever looked at, so the slots are kept in a
+ * compact form, a flat array of the key, the value type and the raw value of each slot, and the {@link SlotEntry}
+ * for a slot is only built when the slot is looked up.
+ * @author albert
+ *
+ */
+public class SlotMap {
+	// Each slot takes up this many elements of slots, the key, the value type and the value.
+	private static final int SLOT_STRIDE = 3;
+
+	// The keys and value types are interned. The value is the raw text of the value, a SlotMap for a frame,
+	// or the SlotEntry once it has been built.
+	private Object [] slots;
+	private int count;
+
+	// The parent of the SlotEntrys that are built.
+	ParsedEntry parentEntry;
+
+
+	/**
+	 * @param parentEntry	The entry the slots belong to, may be <code>null</code>.
+	 */
+	public SlotMap(ParsedEntry parentEntry) {
+		this.parentEntry = parentEntry;
+	}
+
+
+	public int size() {
+		return this.count;
+	}
+
+	public boolean isEmpty() {
+		return this.count == 0;
+	}
+
+
+	private int indexOf(String key) {
+		int end = this.count * SLOT_STRIDE;
+		for (int i = 0; i < end; i += SLOT_STRIDE) {
+			if ((this.slots[i] == key) || key.equals(this.slots[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+
+	public boolean containsKey(String key) {
+		return indexOf(key) >= 0;
+	}
+
+
+	/**
+	 * Adds a slot in the compact form, replacing any slot with the same key.
+	 * @param key	The key, should be interned.
+	 * @param valueType	The value type, should be interned.
+	 * @param value	The raw value text, a {@link SlotMap} for a frame.
+	 * @return	<code>false</code> if a slot with the key was replaced.
+	 */
+	boolean add(String key, String valueType, Object value) {
+		int index = indexOf(key);
+		boolean isNew = (index < 0);
+		if (isNew) {
+			index = this.count * SLOT_STRIDE;
+			if (this.slots == null) {
+				this.slots = new Object [2 * SLOT_STRIDE];
+			}
+			else if (index == this.slots.length) {
+				this.slots = Arrays.copyOf(this.slots, this.slots.length * 2);
+			}
+			++this.count;
+		}
+		this.slots[index] = key;
+		this.slots[index + 1] = valueType;
+		this.slots[index + 2] = value;
+		return isNew;
+	}
+
+
+	/**
+	 * Adds an already built slot entry, replacing any slot with the same key.
+	 * @param slotEntry	The slot entry.
+	 */
+	public void put(SlotEntry slotEntry) {
+		add(slotEntry.key, slotEntry.valueType, slotEntry);
+	}
+
+
+	/**
+	 * Retrieves the value of a string slot, without building the slot entry.
+	 * @param key	The key.
+	 * @param defValue	Returned if there's no string slot with the key.
+	 * @return	The value.
+	 */
+	public String getStringValue(String key, String defValue) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return defValue;
+		}
+		Object value = this.slots[index + 2];
+		if (value instanceof SlotEntry) {
+			SlotEntry slotEntry = (SlotEntry)value;
+			return "string".equals(slotEntry.valueType) ? slotEntry.value : defValue;
+		}
+		return "string".equals(this.slots[index + 1]) ? (String)value : defValue;
+	}
+
+
+	/**
+	 * Retrieves a slot, building its {@link SlotEntry} the first time.
+	 * @param key	The key.
+	 * @return	The slot entry, <code>null</code> if there's no slot with the key.
+	 */
+	public SlotEntry get(String key) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		Object value = this.slots[index + 2];
+		if (value instanceof SlotEntry) {
+			return (SlotEntry)value;
+		}
+
+		SlotEntry slotEntry = new SlotEntry((this.parentEntry != null) ? this.parentEntry.contentHandler : null, this.parentEntry);
+		slotEntry.key = (String)this.slots[index];
+		slotEntry.valueType = (String)this.slots[index + 1];
+		decodeValue(slotEntry, value);
+		this.slots[index + 2] = slotEntry;
+		return slotEntry;
+	}
+
+
+	private static void decodeValue(SlotEntry slotEntry, Object value) {
+		switch (slotEntry.valueType) {
+		case "timespec" :
+			slotEntry.timeEntryValue = new TimeEntry(slotEntry);
+			if (value != null) {
+				slotEntry.timeEntryValue.parse((String)value);
+			}
+			break;
+
+		case "gdate" :
+			slotEntry.gDateEntryValue = new GDateEntry(slotEntry);
+			if (value != null) {
+				slotEntry.gDateEntryValue.parse((String)value);
+			}
+			break;
+
+		case "numeric" :
+			slotEntry.numericValue = new NumericEntry(slotEntry);
+			if (value != null) {
+				String text = (String)value;
+				try {
+					if (!slotEntry.numericValue.parse(text, 0, text.length())) {
+						slotEntry.numericValue.clear();
+					}
+				}
+				catch (NumberFormatException e) {
+					slotEntry.numericValue.clear();
+				}
+			}
+			break;
+
+		case "frame" :
+			slotEntry.frameSlotEntries = (value != null) ? (SlotMap)value : new SlotMap(null);
+			slotEntry.frameSlotEntries.parentEntry = slotEntry;
+			break;
+
+		default :
+			slotEntry.value = (String)value;
+			break;
+		}
+	}
+
+}
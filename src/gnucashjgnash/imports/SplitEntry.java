@@ -16,9 +16,7 @@
 */
 package gnucashjgnash.imports;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.xml.sax.Attributes;
 
@@ -40,19 +38,24 @@ public class SplitEntry extends ParsedEntry {
 	IdEntry id = new IdEntry(this);
     String memo;
     String action;
-    String reconciledState;
+    // The GnuCash reconcile flag, 'y', 'c', 'n', 'f' or 'v', see toReconciledState().
+    char reconciledState = RECONCILED_STATE_MISSING;
     TimeEntry reconcileDate = new TimeEntry(this);
     NumericEntry value = new NumericEntry(this);
     NumericEntry quantity = new NumericEntry(this);
     IdEntry account = new IdEntry(this);
     IdEntry lot = new IdEntry(this);
-    Map<String, SlotEntry> slots = new HashMap<>();
+    SlotMap slots = new SlotMap(this);
     
     Account jGnashAccount;
     ReconciledState jGnashReconciledState;
     
     SecurityNode jGnashSecurity;
     
+    static final char RECONCILED_STATE_MISSING = 0;
+    // Used for text that isn't a single character, it is not a GnuCash reconcile flag.
+    static final char RECONCILED_STATE_INVALID = '?';
+    
     /**
 	 * @param contentHandler
 	 */
@@ -69,7 +72,7 @@ public class SplitEntry extends ParsedEntry {
 	public String getIndentifyingText(GnuCashToJGnashContentHandler contentHandler) {
 		AccountImportEntry accountImportEntry = null;
 		if (this.account.isParsed()) {
-			accountImportEntry = contentHandler.accountImportEntries.get(this.account.id);
+			accountImportEntry = contentHandler.accountImportEntries.get(this.account);
 			if (accountImportEntry != null) {
 				return GnuCashConvertUtil.getString("Message.ParsedEntry.SplitEntryAccount", accountImportEntry.name);
 			}
@@ -78,7 +81,7 @@ public class SplitEntry extends ParsedEntry {
 			return GnuCashConvertUtil.getString("Message.ParsedEntry.SplitEntryMemo", this.memo);
 		}
 		
-		return GnuCashConvertUtil.getString("Message.ParsedEntry.SplitEntryId", this.id.id);
+		return GnuCashConvertUtil.getString("Message.ParsedEntry.SplitEntryId", this.id.getId());
 	}
 
 
@@ -88,54 +91,54 @@ public class SplitEntry extends ParsedEntry {
 	 */
 	@Override
 	public String getUniqueId() {
-		return GnuCashConvertUtil.getString("Message.ParsedEntry.SplitEntryId", this.id.id);
+		return GnuCashConvertUtil.getString("Message.ParsedEntry.SplitEntryId", this.id.getId());
 	}
 
 
 
 	public boolean validateForJGnash(GnuCashToJGnashContentHandler contentHandler) {
-        this.jGnashAccount = contentHandler.jGnashAccounts.get(this.account.id);
+        this.jGnashAccount = contentHandler.jGnashAccounts.get(this.account);
         if (this.jGnashAccount == null) {
-            this.jGnashSecurity = contentHandler.jGnashSecuritiesByStockAccountId.get(this.account.id);
+            this.jGnashSecurity = contentHandler.jGnashSecuritiesByStockAccountId.get(this.account);
             if (this.jGnashSecurity == null) {
-                contentHandler.recordWarning(this.parentSource, "Message.Warning.SplitAccountMissing", this.id.id, this.account.id);
+                contentHandler.recordWarning(this.parentSource, "Message.Warning.SplitAccountMissing", this.id.getId(), this.account.getId());
                 return false;
             }
             else {
-                AccountImportEntry accountEntry = contentHandler.accountImportEntries.get(this.account.id);
-                this.jGnashAccount = contentHandler.jGnashAccounts.get(accountEntry.parentId.id);
+                AccountImportEntry accountEntry = contentHandler.accountImportEntries.get(this.account);
+                this.jGnashAccount = contentHandler.jGnashAccounts.get(accountEntry.parentId);
                 if (this.jGnashAccount == null) {
-                    contentHandler.recordWarning(this.parentSource, "Message.Warning.SplitSecurityAccountParentMissing", this.id.id, this.account.id);
+                    contentHandler.recordWarning(this.parentSource, "Message.Warning.SplitSecurityAccountParentMissing", this.id.getId(), this.account.getId());
                     return false;
                 }
             }
         }
         else {
             if (this.jGnashAccount.memberOf(AccountGroup.INVEST)) {
-                this.jGnashSecurity = contentHandler.jGnashSecuritiesByStockAccountId.get(this.account.id);
+                this.jGnashSecurity = contentHandler.jGnashSecuritiesByStockAccountId.get(this.account);
                 if (this.jGnashSecurity == null) {
-                	contentHandler.recordWarning(this.parentSource, "Message.Warning.SplitSecurityAccountMissing", this.id.id, this.account.id);
+                	contentHandler.recordWarning(this.parentSource, "Message.Warning.SplitSecurityAccountMissing", this.id.getId(), this.account.getId());
                 	return false;
                 }
             }
         }
         
         switch (this.reconciledState) {
-        case "y":
+        case 'y':
             jGnashReconciledState = ReconciledState.RECONCILED;
             break;
             
-        case "c":
+        case 'c':
             jGnashReconciledState = ReconciledState.CLEARED;
             break;
             
-        case "n" :
+        case 'n' :
             jGnashReconciledState = ReconciledState.NOT_RECONCILED;
             break;
             
         default :
             contentHandler.recordWarning(this.parentSource, "Message.Warning.SplitReconciledStateNotSupported",
-                    this.id.id, this.reconciledState);
+                    this.id.getId(), String.valueOf(this.reconciledState));
             return false;
         }
         
@@ -153,21 +156,39 @@ public class SplitEntry extends ParsedEntry {
      *
      */
     static class SplitsStateHandler extends GnuCashToJGnashContentHandler.AbstractStateHandler {
-        final Map<String, SplitEntry> splitEntries;
-        final List<SplitEntry> splitEntriesList;
-        final String splitElementName;
-        final TransactionImportEntry parentTransactionImportEntry;
-        SplitsStateHandler(final Map<String, SplitEntry> splitEntries, final List<SplitEntry> splitEntriesList, final String splitElementName,
+        List<SplitEntry> splitEntriesList;
+        GnuCashElement splitElement;
+        TransactionImportEntry parentTransactionImportEntry;
+        SplitsStateHandler(final List<SplitEntry> splitEntriesList, final GnuCashElement splitElement,
         		TransactionImportEntry parentTransactionImportEntry,
                 GnuCashToJGnashContentHandler contentHandler, GnuCashToJGnashContentHandler.StateHandler parentStateHandler,
                 String elementName) {
             super(contentHandler, parentStateHandler, elementName);
-            this.splitEntries = splitEntries;
             this.splitEntriesList = splitEntriesList;
-            this.splitElementName = splitElementName;
+            this.splitElement = splitElement;
             this.parentTransactionImportEntry = parentTransactionImportEntry;
         }
 
+        /**
+         * Retrieves a {@link SplitsStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @return	The state handler.
+         */
+        static SplitsStateHandler obtain(GnuCashToJGnashContentHandler.AbstractStateHandler parentStateHandler, GnuCashElement element,
+                List<SplitEntry> splitEntriesList, GnuCashElement splitElement,
+                TransactionImportEntry parentTransactionImportEntry, String elementName) {
+            SplitsStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, SplitsStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new SplitsStateHandler(splitEntriesList, splitElement, parentTransactionImportEntry, 
+                                parentStateHandler.contentHandler, parentStateHandler, elementName));
+            }
+            stateHandler.resetState(elementName);
+            stateHandler.splitEntriesList = splitEntriesList;
+            stateHandler.splitElement = splitElement;
+            stateHandler.parentTransactionImportEntry = parentTransactionImportEntry;
+            return stateHandler;
+        }
+
 		/* (non-Javadoc)
 		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.StateHandler#getParsedEntry()
 		 */
@@ -177,16 +198,15 @@ public class SplitEntry extends ParsedEntry {
 		}
         
         /* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-            if (qName.equals(this.splitElementName)) {
-                return new SplitStateHandler(this.splitEntries, this.splitEntriesList, this.parentTransactionImportEntry, 
-                		this.contentHandler, this, qName); 
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            if (element == this.splitElement) {
+                return SplitStateHandler.obtain(this, element, this.splitEntriesList, this.parentTransactionImportEntry, qName); 
             }
             
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
         
         
@@ -199,20 +219,37 @@ public class SplitEntry extends ParsedEntry {
      *
      */
     static class SplitStateHandler extends GnuCashToJGnashContentHandler.AbstractStateHandler {
-        final Map<String, SplitEntry> splitEntries;
-        final List<SplitEntry> splitEntriesList;
-        final SplitEntry splitEntry;
+        List<SplitEntry> splitEntriesList;
+        SplitEntry splitEntry;
 
-        SplitStateHandler(final Map<String, SplitEntry> splitEntries, final List<SplitEntry> splitEntriesList, 
+        SplitStateHandler(final List<SplitEntry> splitEntriesList, 
         		TransactionImportEntry parentTransactionImportEntry,
                 GnuCashToJGnashContentHandler contentHandler, GnuCashToJGnashContentHandler.StateHandler parentStateHandler,
                 String elementName) {
             super(contentHandler, parentStateHandler, elementName);
-            this.splitEntries = splitEntries;
             this.splitEntriesList = splitEntriesList;
             this.splitEntry = new SplitEntry(contentHandler, parentTransactionImportEntry);
         }
 
+        /**
+         * Retrieves a {@link SplitStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @return	The state handler, ready for a new split.
+         */
+        static SplitStateHandler obtain(GnuCashToJGnashContentHandler.AbstractStateHandler parentStateHandler, GnuCashElement element,
+                List<SplitEntry> splitEntriesList, TransactionImportEntry parentTransactionImportEntry,
+                String elementName) {
+            SplitStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, SplitStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new SplitStateHandler(splitEntriesList, parentTransactionImportEntry, 
+                                parentStateHandler.contentHandler, parentStateHandler, elementName));
+            }
+            stateHandler.resetState(elementName);
+            stateHandler.splitEntriesList = splitEntriesList;
+            stateHandler.splitEntry = new SplitEntry(stateHandler.contentHandler, parentTransactionImportEntry);
+            return stateHandler;
+        }
+
 		/* (non-Javadoc)
 		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.StateHandler#getParsedEntry()
 		 */
@@ -222,57 +259,42 @@ public class SplitEntry extends ParsedEntry {
 		}
 
         /* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-            switch (qName) {
-            case "split:id" :
-                return new IdEntry.IdStateHandler(this.splitEntry.id, this.contentHandler, this, qName);
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            switch (element) {
+            case SPLIT_ID :
+                return IdEntry.IdStateHandler.obtain(this, element, this.splitEntry.id, qName);
                 
-            case "split:memo" : 
-                return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
-                        @Override
-                        protected void setSplitEntryField(SplitEntry splitEntry, String value) {
-                            splitEntry.memo = value;
-                        }
-                    });
+            case SPLIT_MEMO : 
+                return SimpleDataStateHandler.obtain(this, element, qName, MEMO_SETTER);
                 
-            case "split:action" : 
-                return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
-                        @Override
-                        protected void setSplitEntryField(SplitEntry splitEntry, String value) {
-                            splitEntry.action = value;
-                        }
-                    });
+            case SPLIT_ACTION : 
+                return SimpleDataStateHandler.obtain(this, element, qName, ACTION_SETTER);
                 
-            case "split:reconciled-state" : 
-                return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
-                        @Override
-                        protected void setSplitEntryField(SplitEntry splitEntry, String value) {
-                            splitEntry.reconciledState = value;
-                        }
-                    });
+            case SPLIT_RECONCILED_STATE : 
+                return SimpleDataStateHandler.obtain(this, element, qName, RECONCILED_STATE_SETTER);
                 
-            case "split:reconcile-date" :
-                return new TimeEntry.TimeStateHandler(this.splitEntry.reconcileDate, this.contentHandler, this, qName);
+            case SPLIT_RECONCILE_DATE :
+                return TimeEntry.TimeStateHandler.obtain(this, element, this.splitEntry.reconcileDate, qName);
                 
-            case "split:value" : 
-                return new NumericEntry.NumericStateHandler(this.splitEntry.value, this.contentHandler, this, qName);
+            case SPLIT_VALUE : 
+                return NumericEntry.NumericStateHandler.obtain(this, element, this.splitEntry.value, qName);
                 
-            case "split:quantity" : 
-                return new NumericEntry.NumericStateHandler(this.splitEntry.quantity, this.contentHandler, this, qName);
+            case SPLIT_QUANTITY : 
+                return NumericEntry.NumericStateHandler.obtain(this, element, this.splitEntry.quantity, qName);
                 
-            case "split:account" : 
-                return new IdEntry.IdStateHandler(this.splitEntry.account, this.contentHandler, this, qName);
+            case SPLIT_ACCOUNT : 
+                return IdEntry.IdStateHandler.obtain(this, element, this.splitEntry.account, qName);
                 
-            case "split:lot":
-            	return new IdEntry.IdStateHandler(this.splitEntry.lot, this.contentHandler, this, qName);
+            case SPLIT_LOT:
+            	return IdEntry.IdStateHandler.obtain(this, element, this.splitEntry.lot, qName);
                 
-            case "split:slots" : 
-                return new SlotEntry.SlotsStateHandler(this.splitEntry.slots, this.splitEntry, this.contentHandler, this, qName);
+            case SPLIT_SLOTS : 
+                return SlotEntry.SlotsStateHandler.obtain(this, element, this.splitEntry.slots, this.splitEntry, qName);
             }
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
 
         @Override
@@ -282,7 +304,7 @@ public class SplitEntry extends ParsedEntry {
             if (!this.splitEntry.id.validateGUIDParse(this, "split:id")) {
                 return;
             }
-            if (this.splitEntry.reconciledState == null) {
+            if (this.splitEntry.reconciledState == RECONCILED_STATE_MISSING) {
                 recordWarning("Message.Parse.XMLSplitReconciledStateMissing", this.elementName, "split:reconciled-state");
                 return;
             }
@@ -296,13 +318,37 @@ public class SplitEntry extends ParsedEntry {
                 return;
             }
             
-            if (this.splitEntries.put(this.splitEntry.id.id, this.splitEntry) != null) {
-                recordWarning("Message.Parse.XMLDuplicateSplitEntries", this.splitEntry.id.id);
+            if (containsSplitEntry(this.splitEntriesList, this.splitEntry.id)) {
+                recordWarning("Message.Parse.XMLDuplicateSplitEntries", this.splitEntry.id.getId());
             }
-            if (this.splitEntriesList != null) {
-                this.splitEntriesList.add(this.splitEntry);
+            this.splitEntriesList.add(this.splitEntry);
+        }
+    }
+
+    /**
+     * @param splitEntries	The splits of a transaction, there are only a handful so they're just searched.
+     * @param splitId	The id of the split to look for.
+     * @return	<code>true</code> if one of the splits has the id.
+     */
+    static boolean containsSplitEntry(List<SplitEntry> splitEntries, IdEntry splitId) {
+        for (SplitEntry splitEntry : splitEntries) {
+            if (splitEntry.id.isSameId(splitId)) {
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * @param text	The text of a GnuCash reconcile flag, may be <code>null</code>.
+     * @return	The reconcile flag, {@link #RECONCILED_STATE_MISSING} if text is <code>null</code>, 
+     * {@link #RECONCILED_STATE_INVALID} if text is not a single character.
+     */
+    static char toReconciledState(String text) {
+        if (text == null) {
+            return RECONCILED_STATE_MISSING;
+        }
+        return (text.length() == 1) ? text.charAt(0) : RECONCILED_STATE_INVALID;
     }
 
     static abstract class SimpleDataSetterImpl extends GnuCashToJGnashContentHandler.AbstractSimpleDataSetter {
@@ -323,5 +369,36 @@ public class SplitEntry extends ParsedEntry {
         }
         protected abstract void setSplitEntryField(SplitEntry splitEntry, String value);
     }
+    
+    static final SimpleDataSetterImpl MEMO_SETTER = new SimpleDataSetterImpl() {
+        @Override
+        public boolean isTextPooled() {
+            return true;
+        }
+
+        @Override
+        protected void setSplitEntryField(SplitEntry splitEntry, String value) {
+            splitEntry.memo = value;
+        }
+    };
+    
+    static final SimpleDataSetterImpl ACTION_SETTER = new SimpleDataSetterImpl() {
+        @Override
+        public boolean isTextPooled() {
+            return true;
+        }
+
+        @Override
+        protected void setSplitEntryField(SplitEntry splitEntry, String value) {
+            splitEntry.action = value;
+        }
+    };
+    
+    static final SimpleDataSetterImpl RECONCILED_STATE_SETTER = new SimpleDataSetterImpl() {
+        @Override
+        protected void setSplitEntryField(SplitEntry splitEntry, String value) {
+            splitEntry.reconciledState = toReconciledState(value);
+        }
+    };
      
 }
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.FactoryConfigurationError;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * {@link GnuCashXMLParser} backed by a StAX {@link XMLStreamReader}. The reader is pulled and the events are passed
+ * on to the {@link GnuCashToJGnashContentHandler} the same way the SAX parser would, except that the text of elements
+ * whose state handler is {@link GnuCashToJGnashContentHandler.StateHandler#isTextOnly()} is read in one piece.
+ * If such an element turns out to have child elements after all, the text read so far and the children are passed
+ * on like any other content.
+ * @author albert
+ *
+ */
+public class StAXGnuCashXMLParser implements GnuCashXMLParser {
+	private static XMLInputFactory inputFactory;
+
+	// Must be a power of 2.
+	static final int QNAME_CACHE_SIZE = 512;
+
+	private final XMLInputFactory factory;
+
+	// The reader's names come from its symbol table, so the element qNames built from them are cached by identity,
+	// that way the content handler sees the same String for a given element name like it does with SAX.
+	private final String [] cachedPrefixes = new String[QNAME_CACHE_SIZE];
+	private final String [] cachedLocalNames = new String[QNAME_CACHE_SIZE];
+	private final String [] cachedQNames = new String[QNAME_CACHE_SIZE];
+
+	// For the text of text only elements that comes in more than one piece.
+	private final StringBuilder textBuilder = new StringBuilder();
+
+	public StAXGnuCashXMLParser() throws ParserConfigurationException {
+		try {
+			this.factory = getInputFactory();
+		} catch (FactoryConfigurationError e) {
+			throw new ParserConfigurationException(e.getLocalizedMessage());
+		}
+	}
+
+
+	private static synchronized XMLInputFactory getInputFactory() {
+		if (inputFactory == null) {
+			inputFactory = XMLInputFactory.newInstance();
+			inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+			inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+			inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		}
+		return inputFactory;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see gnucashjgnash.imports.GnuCashXMLParser#parse(java.io.InputStream, gnucashjgnash.imports.GnuCashToJGnashContentHandler)
+	 */
+	@Override
+	public void parse(InputStream inputStream, GnuCashToJGnashContentHandler contentHandler) throws IOException, SAXException {
+		XMLStreamReader reader;
+		try {
+			reader = this.factory.createXMLStreamReader(inputStream);
+		} catch (XMLStreamException e) {
+			throw toSAXException(e);
+		}
+
+		try {
+			ReaderAttributes attributes = new ReaderAttributes(reader);
+			contentHandler.setDocumentLocator(new ReaderLocator(reader));
+			contentHandler.startDocument();
+
+			// An event the reader is still at that has yet to be passed on.
+			int pendingEvent = NO_EVENT;
+			while ((pendingEvent != NO_EVENT) || reader.hasNext()) {
+				int event = (pendingEvent != NO_EVENT) ? pendingEvent : reader.next();
+				pendingEvent = NO_EVENT;
+				switch (event) {
+				case XMLStreamConstants.START_ELEMENT :
+					pendingEvent = startElement(reader, contentHandler, attributes);
+					break;
+
+				case XMLStreamConstants.END_ELEMENT :
+					contentHandler.endElement(nonNull(reader.getNamespaceURI()), reader.getLocalName(),
+							getElementQName(reader.getPrefix(), reader.getLocalName()));
+					break;
+
+				case XMLStreamConstants.CHARACTERS :
+				case XMLStreamConstants.CDATA :
+				case XMLStreamConstants.SPACE :
+					contentHandler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+					break;
+
+				case XMLStreamConstants.PROCESSING_INSTRUCTION :
+					contentHandler.processingInstruction(reader.getPITarget(), reader.getPIData());
+					break;
+
+				default :
+					break;
+				}
+			}
+
+			contentHandler.endDocument();
+
+		} catch (XMLStreamException e) {
+			// Read errors from the input stream come wrapped.
+			if (e.getNestedException() instanceof IOException) {
+				throw (IOException)e.getNestedException();
+			}
+			throw toSAXException(e);
+		} finally {
+			try {
+				reader.close();
+			} catch (XMLStreamException e) {
+				// Nothing to do, the input stream is closed by the caller.
+			}
+		}
+	}
+
+
+	static final int NO_EVENT = -1;
+
+	/**
+	 * Passes the start element the reader is at on to the content handler. If the element's state handler is
+	 * {@link GnuCashToJGnashContentHandler.StateHandler#isTextOnly()} the text is read up to the end element and
+	 * passed on in one piece, along with the end element.
+	 * @return	The event the reader was left at if a text only element had something other than text in it, the
+	 * text up to there has been passed on as character data. {@link #NO_EVENT} otherwise.
+	 */
+	int startElement(XMLStreamReader reader, GnuCashToJGnashContentHandler contentHandler, Attributes attributes) throws XMLStreamException, SAXException {
+		String uri = nonNull(reader.getNamespaceURI());
+		String localName = reader.getLocalName();
+		String qName = getElementQName(reader.getPrefix(), localName);
+		contentHandler.startElement(uri, localName, qName, attributes);
+
+		GnuCashToJGnashContentHandler.StateHandler stateHandler = contentHandler.activeStateHandler;
+		if ((stateHandler == null) || !stateHandler.isTextOnly()) {
+			return NO_EVENT;
+		}
+
+		// The text normally comes as a single event, it's only copied if there's more than one.
+		String text = "";
+		this.textBuilder.setLength(0);
+		while (true) {
+			int event = reader.next();
+			switch (event) {
+			case XMLStreamConstants.CHARACTERS :
+			case XMLStreamConstants.CDATA :
+			case XMLStreamConstants.SPACE :
+				if (text.isEmpty() && (this.textBuilder.length() == 0)) {
+					text = reader.getText();
+				}
+				else {
+					if (!text.isEmpty()) {
+						this.textBuilder.append(text);
+						text = "";
+					}
+					this.textBuilder.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				}
+				break;
+
+			case XMLStreamConstants.COMMENT :
+				break;
+
+			case XMLStreamConstants.END_ELEMENT :
+				stateHandler.elementText((this.textBuilder.length() > 0) ? this.textBuilder.toString() : text);
+				contentHandler.endElement(uri, localName, qName);
+				return NO_EVENT;
+
+			default :
+				// Not just text after all, pass on what's been read the way the SAX parser would have and let the 
+				// caller handle the event like any other.
+				if (this.textBuilder.length() > 0) {
+					text = this.textBuilder.toString();
+				}
+				if (!text.isEmpty()) {
+					contentHandler.characters(text.toCharArray(), 0, text.length());
+				}
+				return event;
+			}
+		}
+	}
+
+
+	String getElementQName(String prefix, String localName) {
+		if ((prefix == null) || prefix.isEmpty()) {
+			return localName;
+		}
+
+		int index = (System.identityHashCode(prefix) * 31 + System.identityHashCode(localName)) & (QNAME_CACHE_SIZE - 1);
+		if ((this.cachedPrefixes[index] == prefix) && (this.cachedLocalNames[index] == localName)) {
+			return this.cachedQNames[index];
+		}
+
+		String qName = getQName(prefix, localName);
+		this.cachedPrefixes[index] = prefix;
+		this.cachedLocalNames[index] = localName;
+		this.cachedQNames[index] = qName;
+		return qName;
+	}
+
+	static String nonNull(String text) {
+		return (text != null) ? text : "";
+	}
+
+	static String getQName(String prefix, String localName) {
+		if ((prefix == null) || prefix.isEmpty()) {
+			return localName;
+		}
+		return prefix + ':' + localName;
+	}
+
+	static SAXException toSAXException(XMLStreamException e) {
+		Location location = e.getLocation();
+		if (location != null) {
+			return new SAXParseException(e.getLocalizedMessage(), location.getPublicId(), location.getSystemId(),
+					location.getLineNumber(), location.getColumnNumber(), e);
+		}
+		return new SAXException(e.getLocalizedMessage(), e);
+	}
+
+
+	/**
+	 * Presents the attributes of the current start element of an {@link XMLStreamReader} as SAX {@link Attributes}.
+	 */
+	static class ReaderAttributes implements Attributes {
+		final XMLStreamReader reader;
+
+		ReaderAttributes(XMLStreamReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public int getLength() {
+			return this.reader.getAttributeCount();
+		}
+
+		@Override
+		public String getURI(int index) {
+			return nonNull(this.reader.getAttributeNamespace(index));
+		}
+
+		@Override
+		public String getLocalName(int index) {
+			return this.reader.getAttributeLocalName(index);
+		}
+
+		@Override
+		public String getQName(int index) {
+			return StAXGnuCashXMLParser.getQName(this.reader.getAttributePrefix(index), this.reader.getAttributeLocalName(index));
+		}
+
+		@Override
+		public String getType(int index) {
+			return this.reader.getAttributeType(index);
+		}
+
+		@Override
+		public String getValue(int index) {
+			return this.reader.getAttributeValue(index);
+		}
+
+		@Override
+		public int getIndex(String uri, String localName) {
+			int count = this.reader.getAttributeCount();
+			for (int i = 0; i < count; ++i) {
+				if (localName.equals(this.reader.getAttributeLocalName(i)) && uri.equals(getURI(i))) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public int getIndex(String qName) {
+			int count = this.reader.getAttributeCount();
+			for (int i = 0; i < count; ++i) {
+				String localName = this.reader.getAttributeLocalName(i);
+				if (qName.endsWith(localName) && qName.equals(getQName(i))) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public String getType(String uri, String localName) {
+			int index = getIndex(uri, localName);
+			return (index >= 0) ? getType(index) : null;
+		}
+
+		@Override
+		public String getType(String qName) {
+			int index = getIndex(qName);
+			return (index >= 0) ? getType(index) : null;
+		}
+
+		@Override
+		public String getValue(String uri, String localName) {
+			int index = getIndex(uri, localName);
+			return (index >= 0) ? getValue(index) : null;
+		}
+
+		@Override
+		public String getValue(String qName) {
+			int index = getIndex(qName);
+			return (index >= 0) ? getValue(index) : null;
+		}
+	}
+
+
+	/**
+	 * SAX {@link Locator} for the current position of an {@link XMLStreamReader}.
+	 */
+	static class ReaderLocator implements Locator {
+		final XMLStreamReader reader;
+
+		ReaderLocator(XMLStreamReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public String getPublicId() {
+			return this.reader.getLocation().getPublicId();
+		}
+
+		@Override
+		public String getSystemId() {
+			return this.reader.getLocation().getSystemId();
+		}
+
+		@Override
+		public int getLineNumber() {
+			return this.reader.getLocation().getLineNumber();
+		}
+
+		@Override
+		public int getColumnNumber() {
+			return this.reader.getLocation().getColumnNumber();
+		}
+	}
+
+}
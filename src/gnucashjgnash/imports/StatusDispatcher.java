@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import gnucashjgnash.GnuCashConvertUtil;
+
+/**
+ * {@link GnuCashImport.StatusCallback} that coalesces status updates, passing on at most a given number of updates per
+ * second to another {@link GnuCashImport.StatusCallback}. Updates in between only record the latest progress and message.
+ * Once a phase (a run of updates with the same total) has been going for a while the throughput and estimated time
+ * remaining are added to the message.
+ * <p>
+ * This may be called from multiple threads, the target callback is called from whichever thread's update is due.
+ * @author albert
+ *
+ */
+public class StatusDispatcher implements GnuCashImport.StatusCallback {
+	public static final int DEFAULT_MAX_UPDATES_PER_SECOND = 10;
+
+	// Don't bother with an estimate until we've seen at least this much of a phase.
+	static final long MIN_ESTIMATE_NANOS = 1000000000L;
+	static final long NANOS_PER_SECOND = 1000000000L;
+
+	private final GnuCashImport.StatusCallback targetCallback;
+	private final long minUpdateIntervalNanos;
+
+	private long nextUpdateNanos;
+	private boolean isPending;
+
+	private long progress;
+	private long total;
+	private String statusMsg;
+	private boolean isByteProgress;
+
+	private long phaseTotal = Long.MIN_VALUE;
+	private long phaseStartNanos;
+	private long phaseStartProgress;
+
+
+	/**
+	 * Constructor.
+	 * @param targetCallback	The callback the updates are passed on to.
+	 * @param maxUpdatesPerSecond	The maximum number of updates per second passed on to targetCallback.
+	 */
+	public StatusDispatcher(GnuCashImport.StatusCallback targetCallback, int maxUpdatesPerSecond) {
+		this.targetCallback = targetCallback;
+		this.minUpdateIntervalNanos = NANOS_PER_SECOND / Math.max(1, maxUpdatesPerSecond);
+		this.nextUpdateNanos = System.nanoTime();
+	}
+
+	public StatusDispatcher(GnuCashImport.StatusCallback targetCallback) {
+		this(targetCallback, DEFAULT_MAX_UPDATES_PER_SECOND);
+	}
+
+
+	/**
+	 * Wraps a status callback in a {@link StatusDispatcher} if it isn't already one.
+	 * @param statusCallback	The callback, may be <code>null</code>.
+	 * @return	The dispatcher, <code>null</code> if statusCallback is <code>null</code>.
+	 */
+	public static StatusDispatcher wrap(GnuCashImport.StatusCallback statusCallback) {
+		if ((statusCallback == null) || (statusCallback instanceof StatusDispatcher)) {
+			return (StatusDispatcher)statusCallback;
+		}
+		return new StatusDispatcher(statusCallback);
+	}
+
+
+	/**
+	 * @return	<code>true</code> if the next update will be passed on to the target callback, this can be used
+	 * to avoid building status messages that would just be discarded.
+	 */
+	public synchronized boolean isUpdateDue() {
+		return System.nanoTime() - this.nextUpdateNanos >= 0;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see gnucashjgnash.imports.GnuCashImport.StatusCallback#updateStatus(long, long, java.lang.String)
+	 */
+	@Override
+	public void updateStatus(long progress, long total, String statusMsg) {
+		update(progress, total, statusMsg, false);
+	}
+
+
+	/**
+	 * Updates the progress in bytes, the throughput is then reported in bytes per second. The status message is
+	 * left alone.
+	 * @param bytes	The number of bytes processed.
+	 * @param totalBytes	The total number of bytes.
+	 */
+	public void updateByteProgress(long bytes, long totalBytes) {
+		update(bytes, totalBytes, null, true);
+	}
+
+
+	private void update(long progress, long total, String statusMsg, boolean isByteProgress) {
+		String msg;
+		synchronized (this) {
+			long nowNanos = System.nanoTime();
+			if (total != this.phaseTotal) {
+				this.phaseTotal = total;
+				this.phaseStartNanos = nowNanos;
+				this.phaseStartProgress = progress;
+			}
+
+			this.progress = progress;
+			this.total = total;
+			this.isByteProgress = isByteProgress;
+			if (statusMsg != null) {
+				this.statusMsg = statusMsg;
+			}
+			this.isPending = true;
+
+			if (nowNanos - this.nextUpdateNanos < 0) {
+				return;
+			}
+
+			this.nextUpdateNanos = nowNanos + this.minUpdateIntervalNanos;
+			this.isPending = false;
+			progress = this.progress;
+			total = this.total;
+			msg = buildStatusMsg(nowNanos);
+		}
+
+		this.targetCallback.updateStatus(progress, total, msg);
+	}
+
+
+	/**
+	 * Passes on the latest update if it has not been passed on yet.
+	 */
+	public void flush() {
+		long progress;
+		long total;
+		String msg;
+		synchronized (this) {
+			if (!this.isPending) {
+				return;
+			}
+			long nowNanos = System.nanoTime();
+			this.nextUpdateNanos = nowNanos + this.minUpdateIntervalNanos;
+			this.isPending = false;
+			progress = this.progress;
+			total = this.total;
+			msg = buildStatusMsg(nowNanos);
+		}
+
+		this.targetCallback.updateStatus(progress, total, msg);
+	}
+
+
+	private String buildStatusMsg(long nowNanos) {
+		long elapsedNanos = nowNanos - this.phaseStartNanos;
+		long phaseProgress = this.progress - this.phaseStartProgress;
+		if ((elapsedNanos < MIN_ESTIMATE_NANOS) || (phaseProgress <= 0) || (this.total <= 0) || (this.progress > this.total)) {
+			return this.statusMsg;
+		}
+
+		double ratePerSecond = phaseProgress * (double)NANOS_PER_SECOND / elapsedNanos;
+		long remainingSeconds = (long)Math.ceil((this.total - this.progress) / ratePerSecond);
+
+		String rateText;
+		if (this.isByteProgress) {
+			rateText = GnuCashConvertUtil.getString("Message.Status.RateBytes", ratePerSecond / (1024 * 1024));
+		}
+		else {
+			rateText = GnuCashConvertUtil.getString("Message.Status.RateItems", Math.round(ratePerSecond));
+		}
+		String remainingText = String.format("%d:%02d", remainingSeconds / 60, remainingSeconds % 60);
+
+		String estimateText = GnuCashConvertUtil.getString("Message.Status.ProgressEstimate", rateText, remainingText);
+		return (this.statusMsg != null) ? this.statusMsg + " " + estimateText : estimateText;
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.util.Arrays;
+
+/**
+ * Removes duplicates of the short strings that repeat throughout a file, such as transaction descriptions,
+ * split memos and actions, and commodity references. The pool is a fixed size table indexed by the hash of
+ * the text, a string replaces whatever was in its slot, so the pool never grows and text that stops repeating
+ * is eventually evicted. A pool hit on text that has not been turned into a {@link String} yet avoids creating
+ * the String altogether.
+ * <p>
+ * This is not thread safe, each parse should use its own pool.
+ * @author albert
+ *
+ */
+public class StringPool {
+	// Must be a power of 2.
+	static final int DEFAULT_TABLE_SIZE = 4096;
+
+	// Longer text rarely repeats, so it isn't worth comparing.
+	static final int MAX_POOLED_LENGTH = 128;
+
+	private final String [] strings;
+	private final int [] hashes;
+	private final int mask;
+
+
+	public StringPool() {
+		this(DEFAULT_TABLE_SIZE);
+	}
+
+	/**
+	 * @param tableSize	The number of strings the pool can hold, must be a power of 2.
+	 */
+	public StringPool(int tableSize) {
+		if ((tableSize <= 0) || ((tableSize & (tableSize - 1)) != 0)) {
+			throw new IllegalArgumentException("tableSize must be a power of 2");
+		}
+		this.strings = new String[tableSize];
+		this.hashes = new int[tableSize];
+		this.mask = tableSize - 1;
+	}
+
+
+	/**
+	 * Retrieves the pooled string for part of a character sequence, creating the string only if it's not in the pool.
+	 * @param text	The text.
+	 * @param start	The index of the first character.
+	 * @param end	The index after the last character.
+	 * @return	The string.
+	 */
+	public String get(CharSequence text, int start, int end) {
+		int length = end - start;
+		if (length == 0) {
+			return "";
+		}
+		if (length > MAX_POOLED_LENGTH) {
+			return text.subSequence(start, end).toString();
+		}
+
+		int hash = 0;
+		for (int i = start; i < end; ++i) {
+			hash = 31 * hash + text.charAt(i);
+		}
+
+		int index = slotIndex(hash);
+		String string = this.strings[index];
+		if ((string != null) && (this.hashes[index] == hash) && contentEquals(string, text, start, end)) {
+			return string;
+		}
+
+		string = text.subSequence(start, end).toString();
+		this.strings[index] = string;
+		this.hashes[index] = hash;
+		return string;
+	}
+
+
+	/**
+	 * Retrieves the pooled equivalent of a string, adding the string to the pool if there isn't one.
+	 * @param string	The string, may be <code>null</code>.
+	 * @return	The pooled string.
+	 */
+	public String get(String string) {
+		if ((string == null) || (string.length() > MAX_POOLED_LENGTH)) {
+			return string;
+		}
+
+		// String caches its hash.
+		int hash = string.hashCode();
+		int index = slotIndex(hash);
+		String pooledString = this.strings[index];
+		if ((pooledString != null) && (this.hashes[index] == hash) && pooledString.equals(string)) {
+			return pooledString;
+		}
+
+		this.strings[index] = string;
+		this.hashes[index] = hash;
+		return string;
+	}
+
+
+	/**
+	 * Empties the pool, the strings already handed out are unaffected.
+	 */
+	public void clear() {
+		Arrays.fill(this.strings, null);
+	}
+
+
+	private int slotIndex(int hash) {
+		// Fold in the high bits, the hashes of short strings differ mostly in the low bits.
+		return (hash ^ (hash >>> 16)) & this.mask;
+	}
+
+	private static boolean contentEquals(String string, CharSequence text, int start, int end) {
+		if (string.length() != end - start) {
+			return false;
+		}
+		for (int i = start; i < end; ++i) {
+			if (string.charAt(i - start) != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -17,7 +17,10 @@
 package gnucashjgnash.imports;
 
 import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
 import java.time.OffsetTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import gnucashjgnash.imports.GnuCashToJGnashContentHandler.SimpleDataStateHandler;
@@ -30,13 +33,20 @@ import gnucashjgnash.imports.GnuCashToJGnashContentHandler.StateHandler;
  *
  */
 public class TimeEntry extends ParsedEntry {
-	LocalDate localDate = LocalDate.now();
-    OffsetTime offsetTime = OffsetTime.now();
-    int zoneOffset;
+	// The date and time as written, in the time zone offset they were written in. Only valid if isParsed is true.
+	long epochDay;
+	int secondOfDay;
+	int offsetSeconds;
     boolean isParsed;
     String parseError = null;
+    
+    // Created from epochDay when first needed.
+    LocalDate localDate;
 
     static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss ZZ");
+    
+    // The layout DATE_TIME_FORMATTER produces, such as "2017-03-14 10:59:00 -0500".
+    static final String DATE_TIME_LAYOUT = "0000-00-00 00:00:00 +0000";
 
     /**
 	 * @param contentHandler
@@ -56,13 +66,32 @@ public class TimeEntry extends ParsedEntry {
 
 
     public static class TimeStateHandler extends GnuCashToJGnashContentHandler.AbstractStateHandler {
-        final TimeEntry timeEntry;
+        TimeEntry timeEntry;
 
         TimeStateHandler(final TimeEntry timeEntry, GnuCashToJGnashContentHandler contentHandler, GnuCashToJGnashContentHandler.StateHandler parentStateHandler,
                      String elementName) {
             super(contentHandler, parentStateHandler, elementName);
             this.timeEntry = timeEntry;
-            this.timeEntry.updateLocatorInfo(contentHandler);
+        }
+
+        /**
+         * Retrieves a {@link TimeStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @param parentStateHandler
+         * @param element
+         * @param timeEntry
+         * @param elementName
+         * @return	The state handler.
+         */
+        static TimeStateHandler obtain(GnuCashToJGnashContentHandler.AbstractStateHandler parentStateHandler, GnuCashElement element, 
+                TimeEntry timeEntry, String elementName) {
+            TimeStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, TimeStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new TimeStateHandler(timeEntry, parentStateHandler.contentHandler, parentStateHandler, elementName));
+            }
+            stateHandler.resetState(elementName);
+            stateHandler.timeEntry = timeEntry;
+            return stateHandler;
         }
 
 		/* (non-Javadoc)
@@ -74,30 +103,17 @@ public class TimeEntry extends ParsedEntry {
 		}
 
         /* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-            switch (qName) {
-            case "ts:date":
-                return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
-                    @Override
-                    protected void setTimeEntryField(TimeEntry timeEntry, String value) {
-                        try {
-                            timeEntry.parseError = null;
-                            timeEntry.localDate = LocalDate.parse(value, DATE_TIME_FORMATTER);
-                            timeEntry.offsetTime = OffsetTime.parse(value, DATE_TIME_FORMATTER);
-                            timeEntry.isParsed = true;
-                        }
-                        catch (DateTimeParseException e) {
-                            timeEntry.parseError = e.getLocalizedMessage();
-                        }
-                    }
-                });
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            switch (element) {
+            case TS_DATE:
+                return SimpleDataStateHandler.obtain(this, element, qName, DATE_SETTER);
  
             }
 
-            return super.getStateHandlerForElement(qName);
+            return super.getStateHandlerForElement(element, qName);
         }
     }
 
@@ -110,6 +126,172 @@ public class TimeEntry extends ParsedEntry {
 
         protected abstract void setTimeEntryField(TimeEntry timeEntry, String value);
     }
+    
+    static final SimpleDataSetterImpl DATE_SETTER = new SimpleDataSetterImpl() {
+        @Override
+        protected void setTimeEntryField(TimeEntry timeEntry, String value) {
+            timeEntry.parse(value);
+        }
+    };
+    
+    
+    /**
+     * Parses a timestamp in the {@link #DATE_TIME_FORMATTER} format. Timestamps laid out exactly like 
+     * {@link #DATE_TIME_LAYOUT} are parsed directly, anything else goes through the formatter. Sets
+     * {@link #parseError} if the timestamp is not valid.
+     * @param text	The timestamp.
+     */
+    public void parse(CharSequence text) {
+        this.parseError = null;
+        if (parseLayout(text)) {
+            return;
+        }
+        
+        try {
+            OffsetDateTime dateTime = OffsetDateTime.parse(text, DATE_TIME_FORMATTER);
+            setDateTime(dateTime.toLocalDate(), dateTime.toLocalTime(), dateTime.getOffset());
+        }
+        catch (DateTimeParseException e) {
+            this.parseError = e.getLocalizedMessage();
+        }
+    }
+    
+    
+    // Returns false if the text doesn't match DATE_TIME_LAYOUT or any of the fields are out of range.
+    boolean parseLayout(CharSequence text) {
+        int length = DATE_TIME_LAYOUT.length();
+        if (text.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            char layoutChar = DATE_TIME_LAYOUT.charAt(i);
+            char textChar = text.charAt(i);
+            if (layoutChar == '0') {
+                if ((textChar < '0') || (textChar > '9')) {
+                    return false;
+                }
+            }
+            else if (layoutChar == '+') {
+                if ((textChar != '+') && (textChar != '-')) {
+                    return false;
+                }
+            }
+            else if (textChar != layoutChar) {
+                return false;
+            }
+        }
+        
+        int year = getDigits(text, 0, 4);
+        int month = getDigits(text, 5, 2);
+        int day = getDigits(text, 8, 2);
+        int hour = getDigits(text, 11, 2);
+        int minute = getDigits(text, 14, 2);
+        int second = getDigits(text, 17, 2);
+        int offsetHours = getDigits(text, 21, 2);
+        int offsetMinutes = getDigits(text, 23, 2);
+        
+        // The formatter quietly adjusts days past the end of the month, leave those to it.
+        if ((year < 1) || (month < 1) || (month > 12) || (day < 1) || (day > getMonthLength(year, month))) {
+            return false;
+        }
+        if ((hour > 23) || (minute > 59) || (second > 59) || (offsetHours > 18) || (offsetMinutes > 59)) {
+            return false;
+        }
+        
+        int offsetSeconds = offsetHours * 3600 + offsetMinutes * 60;
+        if (offsetSeconds > 18 * 3600) {
+            return false;
+        }
+        
+        this.epochDay = toEpochDay(year, month, day);
+        this.secondOfDay = hour * 3600 + minute * 60 + second;
+        this.offsetSeconds = (text.charAt(20) == '-') ? -offsetSeconds : offsetSeconds;
+        this.localDate = null;
+        this.isParsed = true;
+        return true;
+    }
+    
+    static int getDigits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; ++i) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value;
+    }
+    
+    static int getMonthLength(int year, int month) {
+        switch (month) {
+        case 2 :
+            boolean isLeapYear = ((year % 4) == 0) && (((year % 100) != 0) || ((year % 400) == 0));
+            return isLeapYear ? 29 : 28;
+        case 4 :
+        case 6 :
+        case 9 :
+        case 11 :
+            return 30;
+        default :
+            return 31;
+        }
+    }
+    
+    // The same as LocalDate.of(year, month, day).toEpochDay() for years 1 through 9999.
+    static long toEpochDay(int year, int month, int day) {
+        // Count from March 1, 0000 so the leap day is at the end of the year.
+        if (month <= 2) {
+            --year;
+        }
+        int era = year / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+    
+    
+    public void setDateTime(LocalDate date, LocalTime time, ZoneOffset offset) {
+        this.epochDay = date.toEpochDay();
+        this.secondOfDay = time.toSecondOfDay();
+        this.offsetSeconds = offset.getTotalSeconds();
+        this.localDate = date;
+        this.isParsed = true;
+        this.parseError = null;
+    }
+    
+    
+    /**
+     * @return	The date, today's date if the time has not been parsed.
+     */
+    public LocalDate getLocalDate() {
+        if (!this.isParsed) {
+            return LocalDate.now();
+        }
+        if (this.localDate == null) {
+            this.localDate = LocalDate.ofEpochDay(this.epochDay);
+        }
+        return this.localDate;
+    }
+    
+    
+    /**
+     * @return	The number of seconds since 1970-01-01T00:00:00Z, {@link Long#MIN_VALUE} if the time has not been parsed.
+     */
+    public long getEpochSecond() {
+        if (!this.isParsed) {
+            return Long.MIN_VALUE;
+        }
+        return this.epochDay * 86400L + this.secondOfDay - this.offsetSeconds;
+    }
+    
+    
+    /**
+     * @return	The time of day with its offset, the current time if the time has not been parsed.
+     */
+    public OffsetTime getOffsetTime() {
+        if (!this.isParsed) {
+            return OffsetTime.now();
+        }
+        return OffsetTime.of(LocalTime.ofSecondOfDay(this.secondOfDay), ZoneOffset.ofTotalSeconds(this.offsetSeconds));
+    }
 
 
     boolean validateParse(GnuCashToJGnashContentHandler.StateHandler stateHandler, String qName) {
@@ -126,6 +308,6 @@ public class TimeEntry extends ParsedEntry {
     
     
     public String toDateString() {
-        return this.localDate.format(DateTimeFormatter.ISO_LOCAL_DATE);
+        return getLocalDate().format(DateTimeFormatter.ISO_LOCAL_DATE);
     }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+import gnucashjgnash.NoticeTree;
+
+/**
+ * The content handler used by the worker threads of a {@link ParallelTransactionParser} to parse a chunk of
+ * transactions. The parsing state is the worker's own, but the parsed entries refer to the main content handler,
+ * and anything that would touch the main content handler's registries or warnings is deferred until
+ * {@link #mergeIntoMainContentHandler()} is called from the main parse.
+ * @author albert
+ *
+ */
+public class TransactionChunkContentHandler extends GnuCashToJGnashContentHandler {
+	final GnuCashToJGnashContentHandler mainContentHandler;
+	final int lineOffset;
+	final List<Runnable> deferredActions = new ArrayList<>();
+
+	/**
+	 * Constructor.
+	 * @param mainContentHandler	The main content handler.
+	 * @param lineOffset	Added to the line numbers of the chunk's document to get the line numbers in the file.
+	 */
+	TransactionChunkContentHandler(GnuCashToJGnashContentHandler mainContentHandler, int lineOffset) {
+		super(mainContentHandler.engine, null);
+		this.mainContentHandler = mainContentHandler;
+		this.lineOffset = lineOffset;
+		this.importFilter = mainContentHandler.importFilter;
+	}
+
+
+	/**
+	 * Hands everything that was deferred while parsing the chunk to the main content handler, in the order it
+	 * happened. Must be called from the thread driving the main content handler.
+	 */
+	void mergeIntoMainContentHandler() {
+		for (Runnable action : this.deferredActions) {
+			action.run();
+		}
+		this.deferredActions.clear();
+
+		this.mainContentHandler.ignoredElementCounts.addCounts(this.ignoredElementCounts);
+		this.mainContentHandler.filteredTransactionEntryCount += this.filteredTransactionEntryCount;
+		this.filteredTransactionEntryCount = 0;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler#getEntryContentHandler()
+	 */
+	@Override
+	GnuCashToJGnashContentHandler getEntryContentHandler() {
+		return this.mainContentHandler;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler#setDocumentLocator(org.xml.sax.Locator)
+	 */
+	@Override
+	public void setDocumentLocator(Locator locator) {
+		if (locator == null) {
+			super.setDocumentLocator(null);
+			return;
+		}
+
+		super.setDocumentLocator(new Locator() {
+			@Override
+			public String getPublicId() {
+				return locator.getPublicId();
+			}
+
+			@Override
+			public String getSystemId() {
+				return locator.getSystemId();
+			}
+
+			@Override
+			public int getLineNumber() {
+				int lineNumber = locator.getLineNumber();
+				return (lineNumber >= 0) ? lineNumber + TransactionChunkContentHandler.this.lineOffset : lineNumber;
+			}
+
+			@Override
+			public int getColumnNumber() {
+				return locator.getColumnNumber();
+			}
+		});
+	}
+
+
+	/* (non-Javadoc)
+	 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler#endDocument()
+	 */
+	@Override
+	public void endDocument() throws SAXException {
+		// The ignored elements are reported by the main content handler once the counts have been merged.
+		this.documentLocator = null;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler#recordWarning(gnucashjgnash.NoticeTree.Source, java.lang.String, java.lang.Object[])
+	 */
+	@Override
+	void recordWarning(NoticeTree.Source source, String key, Object... arguments) {
+		if ((source instanceof ParsedEntry) && !((ParsedEntry)source).isLocationCaptured()) {
+			((ParsedEntry)source).captureLocation(this);
+		}
+		// The account a transaction is placed under in the warnings depends on the splits parsed when the warning is recorded.
+		for (NoticeTree.Source parentSource = source; parentSource instanceof ParsedEntry; parentSource = ((ParsedEntry)parentSource).parentSource) {
+			if (parentSource instanceof TransactionImportEntry) {
+				((TransactionImportEntry)parentSource).captureParentAccountId();
+				break;
+			}
+		}
+		this.deferredActions.add(() -> this.mainContentHandler.recordWarning(source, key, arguments));
+	}
+
+
+	/* (non-Javadoc)
+	 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler#recordError(java.lang.String, java.lang.Object[])
+	 */
+	@Override
+	void recordError(String key, Object... arguments) {
+		this.deferredActions.add(() -> this.mainContentHandler.recordError(key, arguments));
+	}
+
+
+	/* (non-Javadoc)
+	 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler#addTransactionEntry(gnucashjgnash.imports.TransactionImportEntry)
+	 */
+	@Override
+	boolean addTransactionEntry(TransactionImportEntry entry) {
+		this.deferredActions.add(() -> this.mainContentHandler.addTransactionEntry(entry));
+		return true;
+	}
+
+}
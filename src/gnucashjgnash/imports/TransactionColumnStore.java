@@ -0,0 +1,400 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.util.Arrays;
+
+/**
+ * Holds the parsed transactions until they're converted, see {@link GnuCashImport#setColumnarTransactionStore(boolean)}.
+ * Instead of a {@link TransactionImportEntry} with its {@link SplitEntry}s and all their {@link IdEntry}s,
+ * {@link NumericEntry}s and {@link TimeEntry}s, each transaction and each split is a row in a set of arrays, one
+ * array per field. The ids are GUIDs held as pairs of longs, the accounts are indices into a table of the accounts,
+ * the values and quantities are numerator/denominator pairs, and the text fields refer to the strings from the
+ * parse's {@link StringPool}.
+ * <p>
+ * {@link #get(int)} builds a {@link TransactionImportEntry} for a row when the transaction is converted, the entry
+ * is only what the conversion needs, the slots and the split reconcile dates aren't kept.
+ * A transaction that can't be held exactly in the columns, one with warnings, ids that aren't GUIDs, lots or
+ * values too large for a long, is kept as is instead.
+ * <p>
+ * This is not thread safe.
+ * @author albert
+ *
+ */
+public class TransactionColumnStore {
+	static final int INITIAL_CAPACITY = 1024;
+
+	static final byte FLAG_REMOVED = 0x01;
+	static final byte FLAG_DATE_ENTERED = 0x02;
+
+	final GnuCashToJGnashContentHandler contentHandler;
+
+	// The transaction columns.
+	private int transactionCount;
+	private int removedCount;
+	private long [] idHighs;
+	private long [] idLows;
+	private long [] locations;
+	private int [] postedDays;
+	private int [] postedSeconds;
+	private int [] postedOffsets;
+	private int [] enteredDays;
+	private int [] enteredSeconds;
+	private int [] enteredOffsets;
+	private byte [] flags;
+	private String [] descriptions;
+	private String [] nums;
+	private String [] currencySpaces;
+	private String [] currencyIds;
+	// The splits of transaction i are splitStarts[i] up to splitStarts[i + 1].
+	private int [] splitStarts;
+	// The transactions that couldn't be put into the columns, null for the rest.
+	private TransactionImportEntry [] retainedEntries;
+
+	private final GuidMap<Integer> transactionIndices = new GuidMap<>();
+
+	// The split columns.
+	private int splitCount;
+	private long [] splitIdHighs;
+	private long [] splitIdLows;
+	private int [] splitAccounts;
+	private long [] valueNumerators;
+	private long [] valueDenominators;
+	private long [] quantityNumerators;
+	private long [] quantityDenominators;
+	private byte [] reconciledStates;
+	private String [] memos;
+	private String [] actions;
+
+	// The accounts the splits refer to.
+	private int accountCount;
+	private long [] accountIdHighs = new long[64];
+	private long [] accountIdLows = new long[64];
+	private final GuidMap<Integer> accountIndices = new GuidMap<>();
+
+
+	/**
+	 * @param contentHandler	The content handler the entries built by {@link #get(int)} belong to.
+	 */
+	TransactionColumnStore(GnuCashToJGnashContentHandler contentHandler) {
+		this.contentHandler = contentHandler;
+		allocateTransactionColumns(INITIAL_CAPACITY);
+		allocateSplitColumns(INITIAL_CAPACITY * 2);
+	}
+
+
+	private void allocateTransactionColumns(int capacity) {
+		this.idHighs = new long[capacity];
+		this.idLows = new long[capacity];
+		this.locations = new long[capacity];
+		this.postedDays = new int[capacity];
+		this.postedSeconds = new int[capacity];
+		this.postedOffsets = new int[capacity];
+		this.enteredDays = new int[capacity];
+		this.enteredSeconds = new int[capacity];
+		this.enteredOffsets = new int[capacity];
+		this.flags = new byte[capacity];
+		this.descriptions = new String[capacity];
+		this.nums = new String[capacity];
+		this.currencySpaces = new String[capacity];
+		this.currencyIds = new String[capacity];
+		this.splitStarts = new int[capacity + 1];
+		this.retainedEntries = new TransactionImportEntry[capacity];
+	}
+
+	private void growTransactionColumns(int capacity) {
+		this.idHighs = Arrays.copyOf(this.idHighs, capacity);
+		this.idLows = Arrays.copyOf(this.idLows, capacity);
+		this.locations = Arrays.copyOf(this.locations, capacity);
+		this.postedDays = Arrays.copyOf(this.postedDays, capacity);
+		this.postedSeconds = Arrays.copyOf(this.postedSeconds, capacity);
+		this.postedOffsets = Arrays.copyOf(this.postedOffsets, capacity);
+		this.enteredDays = Arrays.copyOf(this.enteredDays, capacity);
+		this.enteredSeconds = Arrays.copyOf(this.enteredSeconds, capacity);
+		this.enteredOffsets = Arrays.copyOf(this.enteredOffsets, capacity);
+		this.flags = Arrays.copyOf(this.flags, capacity);
+		this.descriptions = Arrays.copyOf(this.descriptions, capacity);
+		this.nums = Arrays.copyOf(this.nums, capacity);
+		this.currencySpaces = Arrays.copyOf(this.currencySpaces, capacity);
+		this.currencyIds = Arrays.copyOf(this.currencyIds, capacity);
+		this.splitStarts = Arrays.copyOf(this.splitStarts, capacity + 1);
+		this.retainedEntries = Arrays.copyOf(this.retainedEntries, capacity);
+	}
+
+	private void allocateSplitColumns(int capacity) {
+		this.splitIdHighs = new long[capacity];
+		this.splitIdLows = new long[capacity];
+		this.splitAccounts = new int[capacity];
+		this.valueNumerators = new long[capacity];
+		this.valueDenominators = new long[capacity];
+		this.quantityNumerators = new long[capacity];
+		this.quantityDenominators = new long[capacity];
+		this.reconciledStates = new byte[capacity];
+		this.memos = new String[capacity];
+		this.actions = new String[capacity];
+	}
+
+	private void growSplitColumns(int capacity) {
+		this.splitIdHighs = Arrays.copyOf(this.splitIdHighs, capacity);
+		this.splitIdLows = Arrays.copyOf(this.splitIdLows, capacity);
+		this.splitAccounts = Arrays.copyOf(this.splitAccounts, capacity);
+		this.valueNumerators = Arrays.copyOf(this.valueNumerators, capacity);
+		this.valueDenominators = Arrays.copyOf(this.valueDenominators, capacity);
+		this.quantityNumerators = Arrays.copyOf(this.quantityNumerators, capacity);
+		this.quantityDenominators = Arrays.copyOf(this.quantityDenominators, capacity);
+		this.reconciledStates = Arrays.copyOf(this.reconciledStates, capacity);
+		this.memos = Arrays.copyOf(this.memos, capacity);
+		this.actions = Arrays.copyOf(this.actions, capacity);
+	}
+
+
+	/**
+	 * @return	The number of transactions in the store, not counting those that have been removed.
+	 */
+	public int size() {
+		return this.transactionCount - this.removedCount;
+	}
+
+
+	/**
+	 * @param transactionId	The id of a transaction.
+	 * @return	The index of the transaction with the id, -1 if there is none.
+	 */
+	public int indexOf(IdEntry transactionId) {
+		Integer index = this.transactionIndices.get(transactionId);
+		return ((index != null) && ((this.flags[index] & FLAG_REMOVED) == 0)) ? index : -1;
+	}
+
+
+	/**
+	 * Removes a transaction, the indices of the other transactions don't change.
+	 * @param index	The index of the transaction.
+	 */
+	public void remove(int index) {
+		if ((this.flags[index] & FLAG_REMOVED) == 0) {
+			this.flags[index] |= FLAG_REMOVED;
+			this.retainedEntries[index] = null;
+			++this.removedCount;
+		}
+	}
+
+
+	/**
+	 * Adds a transaction, the transaction should not be changed afterwards.
+	 * @param entry	The transaction.
+	 * @return	The index of the transaction.
+	 */
+	public int add(TransactionImportEntry entry) {
+		if (this.transactionCount == this.idHighs.length) {
+			growTransactionColumns(this.transactionCount * 2);
+		}
+
+		int index = this.transactionCount++;
+		this.transactionIndices.put(entry.id, index);
+
+		// The date is needed for the ordering either way.
+		this.postedDays[index] = (int)entry.datePosted.epochDay;
+
+		int splitStart = this.splitCount;
+		this.splitStarts[index] = splitStart;
+		if (!isEncodable(entry)) {
+			this.retainedEntries[index] = entry;
+			this.splitStarts[index + 1] = splitStart;
+			return index;
+		}
+
+		this.idHighs[index] = entry.id.guidHigh;
+		this.idLows[index] = entry.id.guidLow;
+		this.locations[index] = entry.location;
+		this.postedSeconds[index] = entry.datePosted.secondOfDay;
+		this.postedOffsets[index] = entry.datePosted.offsetSeconds;
+		if (entry.dateEntered.isParsed()) {
+			this.flags[index] |= FLAG_DATE_ENTERED;
+			this.enteredDays[index] = (int)entry.dateEntered.epochDay;
+			this.enteredSeconds[index] = entry.dateEntered.secondOfDay;
+			this.enteredOffsets[index] = entry.dateEntered.offsetSeconds;
+		}
+		this.descriptions[index] = entry.description;
+		this.nums[index] = entry.num;
+		this.currencySpaces[index] = entry.currencyRef.space;
+		this.currencyIds[index] = entry.currencyRef.id;
+
+		int splitEnd = splitStart + entry.originalSplitsList.size();
+		if (splitEnd > this.splitIdHighs.length) {
+			growSplitColumns(Math.max(splitEnd, this.splitIdHighs.length * 2));
+		}
+		int splitIndex = splitStart;
+		for (SplitEntry splitEntry : entry.originalSplitsList) {
+			this.splitIdHighs[splitIndex] = splitEntry.id.guidHigh;
+			this.splitIdLows[splitIndex] = splitEntry.id.guidLow;
+			this.splitAccounts[splitIndex] = getAccountIndex(splitEntry.account);
+			this.valueNumerators[splitIndex] = splitEntry.value.numerator;
+			this.valueDenominators[splitIndex] = splitEntry.value.denominator;
+			this.quantityNumerators[splitIndex] = splitEntry.quantity.numerator;
+			this.quantityDenominators[splitIndex] = splitEntry.quantity.denominator;
+			this.reconciledStates[splitIndex] = (byte)splitEntry.reconciledState;
+			this.memos[splitIndex] = splitEntry.memo;
+			this.actions[splitIndex] = splitEntry.action;
+			++splitIndex;
+		}
+		this.splitCount = splitEnd;
+		this.splitStarts[index + 1] = splitEnd;
+
+		return index;
+	}
+
+
+	private int getAccountIndex(IdEntry accountId) {
+		Integer index = this.accountIndices.get(accountId);
+		if (index == null) {
+			if (this.accountCount == this.accountIdHighs.length) {
+				this.accountIdHighs = Arrays.copyOf(this.accountIdHighs, this.accountCount * 2);
+				this.accountIdLows = Arrays.copyOf(this.accountIdLows, this.accountCount * 2);
+			}
+			index = this.accountCount++;
+			this.accountIdHighs[index] = accountId.guidHigh;
+			this.accountIdLows[index] = accountId.guidLow;
+			this.accountIndices.put(accountId, index);
+		}
+		return index;
+	}
+
+
+	/**
+	 * Determines if a transaction can be held in the columns without losing anything the conversion or the
+	 * warnings use.
+	 */
+	static boolean isEncodable(TransactionImportEntry entry) {
+		if (entry.hasWarnings || entry.isTemplateTransaction || !isEncodableId(entry.id)) {
+			return false;
+		}
+		if (!isEncodableTime(entry.datePosted) || ((entry.dateEntered.parseError != null)
+				|| (entry.dateEntered.isParsed() && !isEncodableTime(entry.dateEntered)))) {
+			return false;
+		}
+		if ((entry.title != null) || entry.isParentAccountIdCaptured) {
+			return false;
+		}
+
+		for (SplitEntry splitEntry : entry.originalSplitsList) {
+			if (!isEncodableId(splitEntry.id) || !isEncodableId(splitEntry.account)) {
+				return false;
+			}
+			if ((splitEntry.lot.type != null) || splitEntry.lot.hasId()) {
+				return false;
+			}
+			if (!isEncodableNumeric(splitEntry.value) || !isEncodableNumeric(splitEntry.quantity)) {
+				return false;
+			}
+			if ((splitEntry.reconciledState >= 0x80) || (splitEntry.parentSource != entry) || (splitEntry.jGnashAccount != null)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean isEncodableId(IdEntry id) {
+		return id.isGUID && "guid".equals(id.type);
+	}
+
+	static boolean isEncodableTime(TimeEntry time) {
+		return time.isParsed() && (time.parseError == null)
+				&& (time.epochDay >= Integer.MIN_VALUE) && (time.epochDay <= Integer.MAX_VALUE);
+	}
+
+	static boolean isEncodableNumeric(NumericEntry numeric) {
+		return numeric.isParsed() && (numeric.bigNumerator == null) && (numeric.bigDenominator == null);
+	}
+
+
+	/**
+	 * Retrieves a transaction. Unless the transaction was kept as is, a new {@link TransactionImportEntry} is built
+	 * from the columns every time this is called.
+	 * @param index	The index of the transaction.
+	 * @return	The transaction.
+	 */
+	public TransactionImportEntry get(int index) {
+		TransactionImportEntry entry = this.retainedEntries[index];
+		if (entry != null) {
+			return entry;
+		}
+
+		entry = new TransactionImportEntry(this.contentHandler);
+		entry.location = this.locations[index];
+		setGUID(entry.id, this.idHighs[index], this.idLows[index]);
+		setTime(entry.datePosted, this.postedDays[index], this.postedSeconds[index], this.postedOffsets[index]);
+		if ((this.flags[index] & FLAG_DATE_ENTERED) != 0) {
+			setTime(entry.dateEntered, this.enteredDays[index], this.enteredSeconds[index], this.enteredOffsets[index]);
+		}
+		entry.description = this.descriptions[index];
+		entry.num = this.nums[index];
+		entry.currencyRef.space = this.currencySpaces[index];
+		entry.currencyRef.id = this.currencyIds[index];
+
+		int splitEnd = this.splitStarts[index + 1];
+		for (int splitIndex = this.splitStarts[index]; splitIndex < splitEnd; ++splitIndex) {
+			SplitEntry splitEntry = new SplitEntry(this.contentHandler, entry);
+			setGUID(splitEntry.id, this.splitIdHighs[splitIndex], this.splitIdLows[splitIndex]);
+			int accountIndex = this.splitAccounts[splitIndex];
+			setGUID(splitEntry.account, this.accountIdHighs[accountIndex], this.accountIdLows[accountIndex]);
+			splitEntry.value.setValue(this.valueNumerators[splitIndex], this.valueDenominators[splitIndex]);
+			splitEntry.quantity.setValue(this.quantityNumerators[splitIndex], this.quantityDenominators[splitIndex]);
+			splitEntry.reconciledState = (char)this.reconciledStates[splitIndex];
+			splitEntry.memo = this.memos[splitIndex];
+			splitEntry.action = this.actions[splitIndex];
+			entry.originalSplitsList.add(splitEntry);
+		}
+
+		return entry;
+	}
+
+	private static void setGUID(IdEntry id, long guidHigh, long guidLow) {
+		id.setGUID(guidHigh, guidLow);
+		id.type = "guid";
+	}
+
+	private static void setTime(TimeEntry time, int epochDay, int secondOfDay, int offsetSeconds) {
+		time.epochDay = epochDay;
+		time.secondOfDay = secondOfDay;
+		time.offsetSeconds = offsetSeconds;
+		time.isParsed = true;
+	}
+
+
+	/**
+	 * @return	The indices of the transactions that haven't been removed, ordered by the date posted, transactions
+	 * posted on the same date are in the order they were added.
+	 */
+	public int [] getIndicesByDate() {
+		// The date in the upper 32 bits and the index in the lower, sorting the keys sorts by date then index.
+		long [] keys = new long[size()];
+		int count = 0;
+		for (int index = 0; index < this.transactionCount; ++index) {
+			if ((this.flags[index] & FLAG_REMOVED) == 0) {
+				keys[count++] = ((long)this.postedDays[index] << 32) | index;
+			}
+		}
+		Arrays.sort(keys);
+
+		int [] indices = new int[count];
+		for (int i = 0; i < count; ++i) {
+			indices[i] = (int)keys[i];
+		}
+		return indices;
+	}
+
+}
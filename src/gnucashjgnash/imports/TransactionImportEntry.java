@@ -18,16 +18,18 @@ package gnucashjgnash.imports;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 
 import gnucashjgnash.GnuCashConvertUtil;
 import gnucashjgnash.NoticeTree.Source;
 import gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractSimpleDataSetter;
+import gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler;
 import gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractVersionStateHandler;
+import gnucashjgnash.imports.GnuCashToJGnashContentHandler.FilteredStateHandler;
 import gnucashjgnash.imports.GnuCashToJGnashContentHandler.SimpleDataStateHandler;
 import gnucashjgnash.imports.GnuCashToJGnashContentHandler.StateHandler;
+import gnucashjgnash.imports.GnuCashToJGnashContentHandler.TransactionMode;
 import jgnash.engine.Account;
 import jgnash.engine.AccountType;
 import jgnash.engine.Engine;
@@ -44,23 +46,40 @@ import jgnash.engine.TransactionTag;
  *
  */
 public class TransactionImportEntry extends ParsedEntry {
+	
+	/**
+	 * The order the transactions posted on the same date are added to jGnash in, by the date entered and then by id,
+	 * so the order doesn't depend on the order of the file.
+	 */
+	static final Comparator<TransactionImportEntry> SAME_DATE_ORDER = (a, b) -> {
+		int result = Long.compare(a.dateEntered.getEpochSecond(), b.dateEntered.getEpochSecond());
+		return (result != 0) ? result : a.id.compareId(b.id);
+	};
 
 	IdEntry id = new IdEntry(this);
     CommodityEntry.CurrencyRef currencyRef = new CommodityEntry.CurrencyRef();
     String num;
     TimeEntry datePosted = new TimeEntry(this);
     TimeEntry dateEntered = new TimeEntry(this);
-    Map<String, SlotEntry> slots = new HashMap<>();
-    Map<String, SplitEntry> splits = new HashMap<>();
+    SlotMap slots = new SlotMap(this);
     List<SplitEntry> originalSplitsList = new ArrayList<>();
     
     boolean isTemplateTransaction = false;
+    
+    // Set when a warning is recorded while the transaction is parsed by a TransactionChunkContentHandler, see getParentAccountId().
+    IdEntry parentAccountId;
+    boolean isParentAccountIdCaptured;
+    
+    // Set when a warning is recorded for the transaction or anything in it, a TransactionColumnStore then keeps the
+    // entry itself so all the transaction's warnings stay under the one entry.
+    boolean hasWarnings;
 
     /**
 	 * @param contentHandler
 	 */
 	protected TransactionImportEntry(GnuCashToJGnashContentHandler contentHandler) {
 		super(contentHandler);
+		captureLocation(contentHandler);
 	}
 	
 	
@@ -100,27 +119,52 @@ public class TransactionImportEntry extends ParsedEntry {
 	 */
 	@Override
 	public String getUniqueId() {
-		return GnuCashConvertUtil.getString("Message.ParsedEntry.TransactionImportEntryId", this.id.id);
+		return GnuCashConvertUtil.getString("Message.ParsedEntry.TransactionImportEntryId", this.id.getId());
 	}
 	
 	
 	/**
 	 * @return	The id of an account referenced by the transaction, <code>null</code> if none found.
 	 */
-	public String getAccountId() {
+	public IdEntry getAccountId() {
 		for (SplitEntry splitEntry : this.originalSplitsList) {
 			if (splitEntry.account.isParsed()) {
-				return splitEntry.account.id;
+				return splitEntry.account;
 			}
 		}
 		
 		return null;
 	}
+	
+	
+	/**
+	 * Fixes the account returned by {@link #getParentAccountId()} to the account returned by {@link #getAccountId()}
+	 * at this point, if it hasn't already been fixed.
+	 */
+	void captureParentAccountId() {
+		if (!this.isParentAccountIdCaptured) {
+			this.parentAccountId = getAccountId();
+			this.isParentAccountIdCaptured = true;
+		}
+	}
+	
+	/**
+	 * The warnings tree places the transaction under the account when the first warning for the transaction is added,
+	 * which may be before all the splits have been parsed. When the transaction's warnings are added after the parsing 
+	 * is done the account from when the first warning was recorded is captured with {@link #captureParentAccountId()}.
+	 * @return	The id of the account the transaction's warnings are placed under, <code>null</code> if none.
+	 */
+	IdEntry getParentAccountId() {
+		return this.isParentAccountIdCaptured ? this.parentAccountId : getAccountId();
+	}
 
 
 
 	public static class TransactionStateHandler extends AbstractVersionStateHandler {
-        final TransactionImportEntry transactionEntry;
+        TransactionImportEntry transactionEntry;
+        // Set once the import filter has left out the transaction, the rest of it is then skipped.
+        boolean isFilteredOut;
+        FilteredStateHandler filteredStateHandler;
 
         /**
          * @param contentHandler
@@ -132,6 +176,33 @@ public class TransactionImportEntry extends ParsedEntry {
             super(contentHandler, parentStateHandler, elementName);
             this.transactionEntry = new TransactionImportEntry(contentHandler);
         }
+        
+        /**
+         * Retrieves a {@link TransactionStateHandler} for a child element, reusing the one last used for the element if possible.
+         * @param parentStateHandler
+         * @param element
+         * @param elementName
+         * @return	The state handler, ready for a new transaction.
+         */
+        static TransactionStateHandler obtain(AbstractStateHandler parentStateHandler, GnuCashElement element, String elementName) {
+            TransactionStateHandler stateHandler = parentStateHandler.getReusableStateHandler(element, TransactionStateHandler.class);
+            if (stateHandler == null) {
+                return parentStateHandler.setReusableStateHandler(element, 
+                        new TransactionStateHandler(parentStateHandler.contentHandler, parentStateHandler, elementName));
+            }
+            stateHandler.resetState(elementName);
+            return stateHandler;
+        }
+
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractVersionStateHandler#resetState(java.lang.String)
+         */
+        @Override
+        protected void resetState(String elementName) {
+            super.resetState(elementName);
+            this.transactionEntry = new TransactionImportEntry(this.contentHandler);
+            this.isFilteredOut = false;
+        }
 
 
 		/* (non-Javadoc)
@@ -155,47 +226,62 @@ public class TransactionImportEntry extends ParsedEntry {
         }
 
         /* (non-Javadoc)
-         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(java.lang.String)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#getStateHandlerForElement(gnucashjgnash.imports.GnuCashElement, java.lang.String)
          */
         @Override
-        protected StateHandler getStateHandlerForElement(String qName) {
-            switch (qName) {
-            case "trn:id" :
-                return new IdEntry.IdStateHandler(this.transactionEntry.id, this.contentHandler, this, qName);
+        protected StateHandler getStateHandlerForElement(GnuCashElement element, String qName) {
+            if (this.isFilteredOut) {
+                // One handler will do for all the skipped children, they're only active one at a time.
+                if (this.filteredStateHandler == null) {
+                    this.filteredStateHandler = new FilteredStateHandler(this.contentHandler, this, qName);
+                }
+                else {
+                    this.filteredStateHandler.resetState(qName);
+                }
+                return this.filteredStateHandler;
+            }
+            
+            switch (element) {
+            case TRN_ID :
+                return IdEntry.IdStateHandler.obtain(this, element, this.transactionEntry.id, qName);
                 
-            case "trn:currency" :
-                return new CommodityEntry.CurrencyRefStateHandler(this.transactionEntry.currencyRef, this.contentHandler, this, qName);
+            case TRN_CURRENCY :
+                return CommodityEntry.CurrencyRefStateHandler.obtain(this, element, this.transactionEntry.currencyRef, qName);
                 
-            case "trn:num" :
-                return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
-                        @Override
-                        protected void setTransactionEntryField(TransactionImportEntry priceEntry, String value) {
-                            priceEntry.num = value;
-                        }
-                    }); 
+            case TRN_NUM :
+                return SimpleDataStateHandler.obtain(this, element, qName, NUM_SETTER);
                 
-            case "trn:date-posted" :
-                return new TimeEntry.TimeStateHandler(this.transactionEntry.datePosted, this.contentHandler, this, qName);
+            case TRN_DATE_POSTED :
+                return TimeEntry.TimeStateHandler.obtain(this, element, this.transactionEntry.datePosted, qName);
                 
-            case "trn:date-entered" :
-                return new TimeEntry.TimeStateHandler(this.transactionEntry.dateEntered, this.contentHandler, this, qName);
+            case TRN_DATE_ENTERED :
+                return TimeEntry.TimeStateHandler.obtain(this, element, this.transactionEntry.dateEntered, qName);
                 
-            case "trn:description" :
-                return new SimpleDataStateHandler(this.contentHandler, this, qName, new SimpleDataSetterImpl() {
-                        @Override
-                        protected void setTransactionEntryField(TransactionImportEntry priceEntry, String value) {
-                            priceEntry.description = value;
-                        }
-                    }); 
+            case TRN_DESCRIPTION :
+                return SimpleDataStateHandler.obtain(this, element, qName, DESCRIPTION_SETTER);
                 
-            case "trn:slots":
-                return new SlotEntry.SlotsStateHandler(this.transactionEntry.slots, this.transactionEntry, this.contentHandler, this, qName);
+            case TRN_SLOTS:
+                return SlotEntry.SlotsStateHandler.obtain(this, element, this.transactionEntry.slots, this.transactionEntry, qName);
                 
-            case "trn:splits":
-                return new SplitEntry.SplitsStateHandler(this.transactionEntry.splits, this.transactionEntry.originalSplitsList, "trn:split", 
-                		this.transactionEntry, this.contentHandler, this, qName);
+            case TRN_SPLITS:
+                return SplitEntry.SplitsStateHandler.obtain(this, element, this.transactionEntry.originalSplitsList, 
+                		GnuCashElement.TRN_SPLIT, this.transactionEntry, qName);
+            }
+            return super.getStateHandlerForElement(element, qName);
+        }
+
+        /* (non-Javadoc)
+         * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#stateHandlerReactivated()
+         */
+        @Override
+        public void stateHandlerReactivated() {
+            super.stateHandlerReactivated();
+            
+            // Checked after each child so the transaction is dropped as soon as its id or date posted is known.
+            if (!this.isFilteredOut && (this.contentHandler.importFilter != null) 
+             && (this.contentHandler.transactionMode == TransactionMode.NORMAL)) {
+                this.isFilteredOut = !this.contentHandler.isTransactionEntryIncluded(this.transactionEntry, false);
             }
-            return super.getStateHandlerForElement(qName);
         }
 
         /* (non-Javadoc)
@@ -207,6 +293,11 @@ public class TransactionImportEntry extends ParsedEntry {
             
             final TransactionImportEntry entry = this.transactionEntry;
             
+            if (this.isFilteredOut) {
+                ++this.contentHandler.filteredTransactionEntryCount;
+                return;
+            }
+            
             if (!entry.id.validateGUIDParse(this, "trn:id")) {
                 return;
             }
@@ -235,6 +326,30 @@ public class TransactionImportEntry extends ParsedEntry {
 
         protected abstract void setTransactionEntryField(TransactionImportEntry priceEntry, String value);
     }
+    
+    static final SimpleDataSetterImpl NUM_SETTER = new SimpleDataSetterImpl() {
+        @Override
+        public boolean isTextPooled() {
+            return true;
+        }
+
+        @Override
+        protected void setTransactionEntryField(TransactionImportEntry priceEntry, String value) {
+            priceEntry.num = value;
+        }
+    };
+    
+    static final SimpleDataSetterImpl DESCRIPTION_SETTER = new SimpleDataSetterImpl() {
+        @Override
+        public boolean isTextPooled() {
+            return true;
+        }
+
+        @Override
+        protected void setTransactionEntryField(TransactionImportEntry priceEntry, String value) {
+            priceEntry.description = value;
+        }
+    };
 
     
     /**
@@ -249,11 +364,26 @@ public class TransactionImportEntry extends ParsedEntry {
     		return false;
     	}
     	
+    	return addJGnashTransactions(contentHandler, engine, jGnashTransactions);
+    }
+    
+    
+    /**
+     * Adds the jGnash transactions generated for this transaction to the jGnash engine.
+     * @param contentHandler
+     * @param engine
+     * @param jGnashTransactions	The transactions from {@link #generateJGnashTransaction(GnuCashToJGnashContentHandler, List)}.
+     * @return	<code>false</code> if the engine did not accept one of the transactions.
+     */
+    boolean addJGnashTransactions(GnuCashToJGnashContentHandler contentHandler, Engine engine, List<Transaction> jGnashTransactions) {
+    	boolean result = true;
     	for (Transaction jGnashTransaction : jGnashTransactions) {
-    		engine.addTransaction(jGnashTransaction);
+    		if (!engine.addTransaction(jGnashTransaction)) {
+    			contentHandler.recordWarning(this, "Message.Warning.JGnashTransactionNotAdded");
+    			result = false;
+    		}
     	}
-    	
-    	return true;
+    	return result;
     }
     
 
@@ -304,7 +434,7 @@ public class TransactionImportEntry extends ParsedEntry {
         else if (splitsList.size() == 1) {
             SplitEntry splitEntry = splitsList.get(0);
             Transaction transaction = TransactionFactory.generateSingleEntryTransaction(splitEntry.jGnashAccount,
-                    splitEntry.value.toBigDecimal(), this.datePosted.localDate, null, this.description, this.num);
+                    splitEntry.value.toBigDecimal(), this.datePosted.getLocalDate(), null, this.description, this.num);
             jGnashTransactions.add(transaction);
             return true;
         }
@@ -319,7 +449,7 @@ public class TransactionImportEntry extends ParsedEntry {
             transaction.setNumber(this.num);
         }
         
-        transaction.setDate(this.datePosted.localDate);
+        transaction.setDate(this.datePosted.getLocalDate());
 
         if (!generateJGnashSplitTransactionEntries(splitsList, contentHandler, transaction)) {
             return false;
@@ -355,11 +485,11 @@ public class TransactionImportEntry extends ParsedEntry {
             value = value.negate();
             quantity = quantity.negate();
             transaction = TransactionFactory.generateMergeXTransaction(account, securityNode,
-                    value, quantity, this.datePosted.localDate, memo);
+                    value, quantity, this.datePosted.getLocalDate(), memo);
         }
         else {
             transaction = TransactionFactory.generateSplitXTransaction(account, securityNode,
-                    value, quantity, this.datePosted.localDate, this.description);
+                    value, quantity, this.datePosted.getLocalDate(), this.description);
         }
         
         jGnashTransactions.add(transaction);
@@ -429,7 +559,7 @@ public class TransactionImportEntry extends ParsedEntry {
                 
                 if (jGnashAccount == null) {
                     recordSkippingTransaction(splitsList, "Message.Warning.InvestmentTransactionAccountMissing",
-                            splitEntry.account.id);
+                            splitEntry.account.getId());
                     return false;
                 }
             }
@@ -460,7 +590,7 @@ public class TransactionImportEntry extends ParsedEntry {
                     quantity = quantity.abs();
                     price = price.abs();
                     transaction = TransactionFactory.generateSellXTransaction(account, investmentAccount, securityNode, price, quantity, exchangeRate, 
-                            this.datePosted.localDate, this.description, fees, gains);
+                            this.datePosted.getLocalDate(), this.description, fees, gains);
                 }
                 else {
                     // If one account is an income account, then it's most likely a reinvested dividend.
@@ -470,7 +600,7 @@ public class TransactionImportEntry extends ParsedEntry {
                     if (account.getAccountType() == AccountType.INCOME) {
                         BigDecimal amount = securitySplitEntry.value.toBigDecimal();
                         transaction = TransactionFactory.generateDividendXTransaction(account, investmentAccount, investmentAccount, 
-                                securityNode, amount, amount.negate(), BigDecimal.ZERO, this.datePosted.localDate, this.description);
+                                securityNode, amount, amount.negate(), BigDecimal.ZERO, this.datePosted.getLocalDate(), this.description);
                         jGnashTransactions.add(transaction);
                         
                         // The dividend is now in the investment account, we're buying from there...
@@ -478,7 +608,7 @@ public class TransactionImportEntry extends ParsedEntry {
                     }
                     
                     transaction = TransactionFactory.generateBuyXTransaction(account, investmentAccount, securityNode, price, quantity, exchangeRate, 
-                            this.datePosted.localDate, this.description, fees);
+                            this.datePosted.getLocalDate(), this.description, fees);
                 }
                 jGnashTransactions.add(transaction);
                 return true;
@@ -488,7 +618,7 @@ public class TransactionImportEntry extends ParsedEntry {
             // Some special case transactions I had, probably hacks, or results of importing Quicken into GnuCash.
             SplitEntry splitEntryA = investmentSplitEntries.get(0);
             SplitEntry splitEntryB = investmentSplitEntries.get(1);
-            if (splitEntryA.account.id.equals(splitEntryB.account.id)) {
+            if (splitEntryA.account.isSameId(splitEntryB.account)) {
                 BigDecimal valueA = splitEntryA.value.toBigDecimal();
                 BigDecimal quantityA = splitEntryA.quantity.toBigDecimal();
                 BigDecimal valueB = splitEntryB.value.toBigDecimal();
@@ -497,10 +627,10 @@ public class TransactionImportEntry extends ParsedEntry {
                  && !quantityA.equals(BigDecimal.ZERO) && !quantityB.equals(BigDecimal.ZERO)) {
                     if (!quantityA.equals(quantityB)) {
                         // Most likely a stock split. Since we don't have a value, we'll just use 1.
-                        Account account = contentHandler.jGnashAccounts.get(splitEntryA.account.id);
+                        Account account = contentHandler.jGnashAccounts.get(splitEntryA.account);
                         BigDecimal quantity = quantityA.add(quantityB);
                         transaction = TransactionFactory.generateSplitXTransaction(account, splitEntryA.jGnashSecurity,
-                                BigDecimal.ONE, quantity, this.datePosted.localDate, this.description);
+                                BigDecimal.ONE, quantity, this.datePosted.getLocalDate(), this.description);
                         jGnashTransactions.add(transaction);
                         return true;
                     }
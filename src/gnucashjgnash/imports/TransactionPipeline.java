@@ -0,0 +1,301 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Runs the streamed transactions through three stages at once: the parsing thread hands each transaction to
+ * {@link #submit(TransactionImportEntry)}, converter threads turn them into jGnash transactions, and a single writer
+ * thread adds them to the jGnash engine in the order they were submitted.
+ * <p>
+ * The transactions in between the stages are held in a bounded queue, once it's full {@link #submit(TransactionImportEntry)}
+ * waits for the writer to catch up. If a converter or the writer fails the pipeline stops, the remaining transactions
+ * are rejected and the failure is returned by {@link #getFailure()} once {@link #finish()} is called.
+ * {@link #close()} cancels the pipeline.
+ * @author albert
+ *
+ */
+public class TransactionPipeline implements Closeable {
+	private static final Logger LOG = Logger.getLogger(TransactionPipeline.class.getName());
+
+	static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	// How long submit() waits on a full queue before checking whether the pipeline has stopped.
+	private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+	// Marks the end of the transactions for the writer.
+	private static final Future<ParallelTransactionConverter.ConvertedTransaction> END_OF_TRANSACTIONS = CompletableFuture.completedFuture(null);
+
+	private final GnuCashToJGnashContentHandler contentHandler;
+	private final ExecutorService converterService;
+	private final BlockingQueue<Future<ParallelTransactionConverter.ConvertedTransaction>> writeQueue;
+	private final Thread writerThread;
+	private volatile Throwable failure;
+	private volatile boolean isCancelled;
+
+	// Only touched by the submitting thread.
+	private long submittedCount;
+	private long submitWaitNanos;
+
+	private final AtomicLong convertedCount = new AtomicLong();
+	private final AtomicLong convertNanos = new AtomicLong();
+
+	// Only touched by the writer thread until it has been joined.
+	private long writtenCount;
+	private long addedCount;
+	private long writeNanos;
+	private long writeWaitNanos;
+
+
+	/**
+	 * Constructor, the threads are started right away.
+	 * @param contentHandler	The content handler with the accounts and securities set up.
+	 * @param converterThreadCount	The number of converter threads.
+	 * @param queueCapacity	The number of transactions that may be between the submitting thread and the writer.
+	 */
+	public TransactionPipeline(GnuCashToJGnashContentHandler contentHandler, int converterThreadCount, int queueCapacity) {
+		this.contentHandler = contentHandler;
+		this.writeQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+		this.converterService = Executors.newFixedThreadPool(Math.max(1, converterThreadCount), (runnable) -> {
+			Thread thread = new Thread(runnable, "GnuCash Transaction Converter");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		this.writerThread = new Thread(this::runWriter, "GnuCash Transaction Writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	public TransactionPipeline(GnuCashToJGnashContentHandler contentHandler, int converterThreadCount) {
+		this(contentHandler, converterThreadCount, DEFAULT_QUEUE_CAPACITY);
+	}
+
+
+	/**
+	 * @return	What stopped the pipeline, <code>null</code> if it hasn't failed.
+	 */
+	public Throwable getFailure() {
+		return this.failure;
+	}
+
+	public long getSubmittedCount() {
+		return this.submittedCount;
+	}
+
+	public long getConvertedCount() {
+		return this.convertedCount.get();
+	}
+
+	/**
+	 * @return	The number of transactions written, only up to date once {@link #finish()} has returned.
+	 */
+	public long getWrittenCount() {
+		return this.writtenCount;
+	}
+
+	/**
+	 * @return	The number of transactions jGnash accepted, only up to date once {@link #finish()} has returned.
+	 */
+	public long getAddedCount() {
+		return this.addedCount;
+	}
+
+
+	/**
+	 * Hands a transaction to the pipeline, waiting if the pipeline is full. Must always be called from the same thread.
+	 * @param transactionEntry	The transaction.
+	 * @return	<code>false</code> if the pipeline has stopped, the transaction is dropped.
+	 */
+	public boolean submit(TransactionImportEntry transactionEntry) {
+		if (isStopped()) {
+			return false;
+		}
+
+		ConversionTask task = new ConversionTask(this, transactionEntry);
+		try {
+			this.converterService.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			return false;
+		}
+
+		long startNanos = System.nanoTime();
+		try {
+			while (!this.writeQueue.offer(task, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (isStopped()) {
+					return false;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(e);
+			return false;
+		}
+		this.submitWaitNanos += System.nanoTime() - startNanos;
+
+		++this.submittedCount;
+		return true;
+	}
+
+
+	/**
+	 * Waits for the submitted transactions to be written and shuts down the threads.
+	 * @return	<code>false</code> if the pipeline failed, see {@link #getFailure()}.
+	 */
+	public boolean finish() {
+		try {
+			while (!this.writeQueue.offer(END_OF_TRANSACTIONS, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (isStopped()) {
+					break;
+				}
+			}
+			this.writerThread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(e);
+			close();
+		}
+		this.converterService.shutdown();
+
+		logStatistics();
+		return this.failure == null;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		if (!this.writerThread.isAlive() && this.converterService.isShutdown()) {
+			return;
+		}
+
+		this.isCancelled = true;
+		this.converterService.shutdownNow();
+		this.writerThread.interrupt();
+		try {
+			this.writerThread.join(TimeUnit.MINUTES.toMillis(1));
+			if (!this.converterService.awaitTermination(1, TimeUnit.MINUTES)) {
+				LOG.warning("The transaction converter threads did not stop.");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.writerThread.isAlive()) {
+			LOG.warning("The transaction writer thread did not stop.");
+		}
+	}
+
+
+	/**
+	 * Logs the throughput of each stage.
+	 */
+	public void logStatistics() {
+		LOG.info("Transaction pipeline: submitted " + this.submittedCount + ", waiting " + (this.submitWaitNanos / 1_000_000L) + "ms on the queue; "
+				+ "converted " + this.convertedCount.get() + " in " + (this.convertNanos.get() / 1_000_000L) + "ms of converter time; "
+				+ "wrote " + this.writtenCount + " in " + (this.writeNanos / 1_000_000L) + "ms, waiting " + (this.writeWaitNanos / 1_000_000L) + "ms on the converters.");
+	}
+
+
+	private boolean isStopped() {
+		return (this.failure != null) || this.isCancelled;
+	}
+
+	private void fail(Throwable throwable) {
+		if (this.failure == null) {
+			this.failure = throwable;
+		}
+		// The writer is the only one taking from the queue, emptying it frees up submit().
+		this.converterService.shutdownNow();
+		this.writeQueue.clear();
+	}
+
+
+	ParallelTransactionConverter.ConvertedTransaction convert(TransactionImportEntry transactionEntry) {
+		long startNanos = System.nanoTime();
+		ParallelTransactionConverter.ConvertedTransaction convertedTransaction = this.contentHandler.convertTransactionEntry(transactionEntry);
+		this.convertNanos.addAndGet(System.nanoTime() - startNanos);
+		this.convertedCount.incrementAndGet();
+		return convertedTransaction;
+	}
+
+
+	private void runWriter() {
+		try {
+			while (true) {
+				long startNanos = System.nanoTime();
+				Future<ParallelTransactionConverter.ConvertedTransaction> future = this.writeQueue.take();
+				if (future == END_OF_TRANSACTIONS) {
+					break;
+				}
+
+				ConversionTask task = (ConversionTask)future;
+				ParallelTransactionConverter.ConvertedTransaction convertedTransaction = task.get();
+				long writeStartNanos = System.nanoTime();
+				this.writeWaitNanos += writeStartNanos - startNanos;
+
+				if (this.contentHandler.writeTransactionEntry(task.transactionEntry, convertedTransaction)) {
+					++this.addedCount;
+				}
+				this.writeNanos += System.nanoTime() - writeStartNanos;
+				++this.writtenCount;
+			}
+		}
+		catch (InterruptedException e) {
+			// Cancelled.
+			if (!this.isCancelled) {
+				fail(e);
+			}
+		}
+		catch (ExecutionException e) {
+			fail(e.getCause());
+		}
+		catch (RuntimeException | Error e) {
+			fail(e);
+		}
+	}
+
+
+
+	static final class ConversionTask extends FutureTask<ParallelTransactionConverter.ConvertedTransaction> {
+		final TransactionImportEntry transactionEntry;
+
+		ConversionTask(TransactionPipeline pipeline, TransactionImportEntry transactionEntry) {
+			super(() -> pipeline.convert(transactionEntry));
+			this.transactionEntry = transactionEntry;
+		}
+	}
+
+}
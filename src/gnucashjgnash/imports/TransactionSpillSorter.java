@@ -0,0 +1,571 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+/**
+ * Sorts the parsed transactions by date posted without holding them all in memory, see
+ * {@link GnuCashImport#setTransactionSpillMemoryBudget(long)}. The transactions are written in a compact binary form
+ * to a buffer, once the buffer reaches the memory budget it is sorted and written to a temporary file as a run.
+ * {@link #openMerge()} then merges the runs, reading each transaction back as it's needed.
+ * <p>
+ * Transactions posted on the same date come out in the order they were added, and of transactions with the same
+ * id only the last one added comes out, as with the in-memory ordering. The ids of all the transactions are kept
+ * in memory for this. Transactions that have warnings are kept as they are, the warning tree refers to them anyway.
+ * Like {@link TransactionColumnStore}, the slots and split reconcile dates aren't kept.
+ * <p>
+ * This is not thread safe.
+ * @author albert
+ *
+ */
+public class TransactionSpillSorter implements Closeable {
+	private static final Logger LOG = Logger.getLogger(TransactionSpillSorter.class.getName());
+
+	static final long MIN_MEMORY_BUDGET = 1 << 20;
+
+	// The records are buffered in a byte array, which has to stay well clear of the 2GB array limit as it grows.
+	static final long MAX_MEMORY_BUDGET = Integer.MAX_VALUE / 2;
+	static final int RUN_BUFFER_SIZE = 1 << 16;
+
+	// Each buffered record also has a key and an offset.
+	static final int BUFFER_INDEX_BYTES = 12;
+
+	static final byte ID_NONE = 0;
+	static final byte ID_GUID = 1;
+	static final byte ID_TEXT = 2;
+
+	static final byte NUMERIC_NONE = 0;
+	static final byte NUMERIC_LONG = 1;
+	static final byte NUMERIC_BIG = 2;
+
+	final GnuCashToJGnashContentHandler contentHandler;
+	final long memoryBudget;
+	final File tempDirectory;
+
+	// The position of each id is the index into lastSequences of the sequence number of the last transaction added with the id.
+	private final GuidMap<Boolean> transactionIds = new GuidMap<>();
+	private int [] lastSequences = new int[1024];
+	private int sequenceCount;
+
+	private final RecordBuffer buffer = new RecordBuffer();
+	private final DataOutputStream bufferOutput = new DataOutputStream(this.buffer);
+	// The date posted in the upper 32 bits and the index of the record in the lower, so sorting sorts by date then order added.
+	private long [] bufferKeys = new long[1024];
+	private int [] bufferOffsets = new int[1024];
+	private int bufferRecordCount;
+
+	private final List<RetainedEntry> retainedEntries = new ArrayList<>();
+
+	private final List<File> runFiles = new ArrayList<>();
+
+
+	/**
+	 * @param contentHandler	The content handler the entries read back belong to.
+	 * @param memoryBudget	The number of bytes of transactions to buffer before writing them to a run, clamped to
+	 * between {@link #MIN_MEMORY_BUDGET} and {@link #MAX_MEMORY_BUDGET}.
+	 * @param tempDirectory	The directory for the run files, <code>null</code> for the default temporary file directory.
+	 */
+	TransactionSpillSorter(GnuCashToJGnashContentHandler contentHandler, long memoryBudget, File tempDirectory) {
+		this.contentHandler = contentHandler;
+		this.memoryBudget = Math.min(Math.max(memoryBudget, MIN_MEMORY_BUDGET), MAX_MEMORY_BUDGET);
+		this.tempDirectory = tempDirectory;
+	}
+
+
+	static class RecordBuffer extends ByteArrayOutputStream {
+		byte [] getBuffer() {
+			return this.buf;
+		}
+	}
+
+	static class RetainedEntry {
+		final long key;
+		final int idIndex;
+		final int sequence;
+		final TransactionImportEntry entry;
+
+		RetainedEntry(long key, int idIndex, int sequence, TransactionImportEntry entry) {
+			this.key = key;
+			this.idIndex = idIndex;
+			this.sequence = sequence;
+			this.entry = entry;
+		}
+	}
+
+
+	/**
+	 * @param transactionId	The id of a transaction.
+	 * @return	<code>true</code> if a transaction with the id has been added.
+	 */
+	public boolean containsId(IdEntry transactionId) {
+		return this.transactionIds.indexOf(transactionId) >= 0;
+	}
+
+	/**
+	 * @return	The number of runs written to temporary files so far.
+	 */
+	public int getRunCount() {
+		return this.runFiles.size();
+	}
+
+
+	/**
+	 * Adds a transaction, replacing any transaction added earlier with the same id. The transaction should not be
+	 * changed afterwards.
+	 * @param entry	The transaction.
+	 * @throws IOException	if writing a run failed.
+	 */
+	public void add(TransactionImportEntry entry) throws IOException {
+		int idIndex = this.transactionIds.indexOf(entry.id);
+		if (idIndex < 0) {
+			idIndex = this.transactionIds.size();
+			this.transactionIds.put(entry.id, Boolean.TRUE);
+			if (idIndex == this.lastSequences.length) {
+				this.lastSequences = Arrays.copyOf(this.lastSequences, idIndex * 2);
+			}
+		}
+		int sequence = this.sequenceCount++;
+		this.lastSequences[idIndex] = sequence;
+
+		int epochDay = (int)entry.datePosted.getLocalDate().toEpochDay();
+		if (entry.hasWarnings || entry.isParentAccountIdCaptured) {
+			this.retainedEntries.add(new RetainedEntry(((long)epochDay << 32) | sequence, idIndex, sequence, entry));
+			return;
+		}
+
+		if (this.bufferRecordCount == this.bufferKeys.length) {
+			this.bufferKeys = Arrays.copyOf(this.bufferKeys, this.bufferRecordCount * 2);
+			this.bufferOffsets = Arrays.copyOf(this.bufferOffsets, this.bufferRecordCount * 2);
+		}
+		this.bufferKeys[this.bufferRecordCount] = ((long)epochDay << 32) | this.bufferRecordCount;
+		this.bufferOffsets[this.bufferRecordCount] = this.buffer.size();
+		++this.bufferRecordCount;
+		writeRecord(this.bufferOutput, entry, epochDay, sequence, idIndex);
+
+		if (this.buffer.size() + (long)this.bufferRecordCount * BUFFER_INDEX_BYTES >= this.memoryBudget) {
+			writeRun();
+		}
+	}
+
+
+	// Sorts the keys of the buffered records, the index of each record is then in the lower 32 bits of its key.
+	private long [] sortBufferKeys() {
+		long [] keys = Arrays.copyOf(this.bufferKeys, this.bufferRecordCount);
+		Arrays.sort(keys);
+		return keys;
+	}
+
+	private int getBufferRecordEnd(int recordIndex) {
+		return (recordIndex + 1 < this.bufferRecordCount) ? this.bufferOffsets[recordIndex + 1] : this.buffer.size();
+	}
+
+
+	private void writeRun() throws IOException {
+		File runFile = File.createTempFile("gnucashjgnash", ".run", this.tempDirectory);
+		runFile.deleteOnExit();
+		this.runFiles.add(runFile);
+
+		byte [] bufferBytes = this.buffer.getBuffer();
+		try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(runFile), RUN_BUFFER_SIZE)) {
+			for (long key : sortBufferKeys()) {
+				int recordIndex = (int)key;
+				int offset = this.bufferOffsets[recordIndex];
+				outputStream.write(bufferBytes, offset, getBufferRecordEnd(recordIndex) - offset);
+			}
+		}
+
+		LOG.info("Wrote " + this.bufferRecordCount + " transactions to the run file '" + runFile + "'.");
+		this.buffer.reset();
+		this.bufferRecordCount = 0;
+	}
+
+
+	/**
+	 * Starts reading back the transactions in date order, no more transactions should be added.
+	 * @return	The merge.
+	 * @throws IOException	if a run file couldn't be opened.
+	 */
+	public Merge openMerge() throws IOException {
+		Merge merge = new Merge();
+		try {
+			for (File runFile : this.runFiles) {
+				merge.addRun(new FileRun(runFile));
+			}
+			merge.addRun(new BufferRun());
+			merge.addRun(new RetainedRun());
+		}
+		catch (IOException e) {
+			merge.close();
+			throw e;
+		}
+		return merge;
+	}
+
+
+	/**
+	 * Deletes the run files.
+	 */
+	@Override
+	public void close() {
+		for (File runFile : this.runFiles) {
+			if (!runFile.delete()) {
+				LOG.warning("The run file '" + runFile + "' could not be deleted.");
+			}
+		}
+		this.runFiles.clear();
+	}
+
+
+	/**
+	 * A k-way merge of the sorted runs.
+	 */
+	public class Merge implements Closeable {
+		private final PriorityQueue<Run> runs = new PriorityQueue<>(
+				(run1, run2) -> Long.compare(run1.key, run2.key));
+		private final List<Run> openRuns = new ArrayList<>();
+
+		void addRun(Run run) throws IOException {
+			this.openRuns.add(run);
+			if (run.next()) {
+				this.runs.add(run);
+			}
+		}
+
+		/**
+		 * @return	The next transaction by date posted, <code>null</code> once all have been read.
+		 * @throws IOException	if reading a run file failed.
+		 */
+		public TransactionImportEntry next() throws IOException {
+			Run run;
+			while ((run = this.runs.poll()) != null) {
+				TransactionImportEntry entry = run.entry;
+				boolean isLatest = (lastSequences[run.idIndex] == run.sequence);
+				if (run.next()) {
+					this.runs.add(run);
+				}
+				if (isLatest) {
+					return entry;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			IOException exception = null;
+			for (Run run : this.openRuns) {
+				try {
+					run.close();
+				}
+				catch (IOException e) {
+					exception = e;
+				}
+			}
+			this.openRuns.clear();
+			this.runs.clear();
+			if (exception != null) {
+				throw exception;
+			}
+		}
+	}
+
+
+	/**
+	 * A sorted sequence of transactions, {@link #next()} loads the next one.
+	 */
+	abstract static class Run implements Closeable {
+		long key;
+		int idIndex;
+		int sequence;
+		TransactionImportEntry entry;
+
+		/**
+		 * @return	<code>false</code> if there are no more transactions.
+		 */
+		abstract boolean next() throws IOException;
+
+		@Override
+		public void close() throws IOException {
+		}
+	}
+
+	class FileRun extends Run {
+		final DataInputStream inputStream;
+
+		FileRun(File runFile) throws IOException {
+			this.inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), RUN_BUFFER_SIZE));
+		}
+
+		@Override
+		boolean next() throws IOException {
+			int epochDay;
+			try {
+				epochDay = this.inputStream.readInt();
+			}
+			catch (EOFException e) {
+				this.entry = null;
+				return false;
+			}
+			readRecord(this.inputStream, epochDay, this);
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.inputStream.close();
+		}
+	}
+
+	class BufferRun extends Run {
+		final long [] keys = sortBufferKeys();
+		int keyIndex;
+
+		@Override
+		boolean next() throws IOException {
+			if (this.keyIndex >= this.keys.length) {
+				this.entry = null;
+				return false;
+			}
+			int recordIndex = (int)this.keys[this.keyIndex++];
+			int offset = bufferOffsets[recordIndex];
+			try (DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(buffer.getBuffer(), offset,
+					getBufferRecordEnd(recordIndex) - offset))) {
+				readRecord(inputStream, inputStream.readInt(), this);
+			}
+			return true;
+		}
+	}
+
+	class RetainedRun extends Run {
+		final RetainedEntry [] retained = retainedEntries.toArray(new RetainedEntry[retainedEntries.size()]);
+		int retainedIndex;
+
+		RetainedRun() {
+			// Already in sequence order, the stable sort keeps it within a date.
+			Arrays.sort(this.retained, (entry1, entry2) -> Long.compare(entry1.key, entry2.key));
+		}
+
+		@Override
+		boolean next() {
+			if (this.retainedIndex >= this.retained.length) {
+				this.entry = null;
+				return false;
+			}
+			RetainedEntry retainedEntry = this.retained[this.retainedIndex++];
+			this.key = retainedEntry.key;
+			this.idIndex = retainedEntry.idIndex;
+			this.sequence = retainedEntry.sequence;
+			this.entry = retainedEntry.entry;
+			return true;
+		}
+	}
+
+
+	//
+	// The record layout, the date posted and sequence number come first so the keys can be rebuilt:
+	// int epochDay, int sequence, int idIndex, long location, id, datePosted, dateEntered, description, num,
+	// currency space, currency id, int splitCount, then for each split: id, account, lot, value, quantity,
+	// char reconciledState, memo, action.
+	//
+	static void writeRecord(DataOutput output, TransactionImportEntry entry, int epochDay, int sequence, int idIndex) throws IOException {
+		output.writeInt(epochDay);
+		output.writeInt(sequence);
+		output.writeInt(idIndex);
+		output.writeLong(entry.location);
+		writeId(output, entry.id);
+		writeTime(output, entry.datePosted);
+		writeTime(output, entry.dateEntered);
+		writeString(output, entry.description);
+		writeString(output, entry.num);
+		writeString(output, entry.currencyRef.space);
+		writeString(output, entry.currencyRef.id);
+
+		output.writeInt(entry.originalSplitsList.size());
+		for (SplitEntry splitEntry : entry.originalSplitsList) {
+			writeId(output, splitEntry.id);
+			writeId(output, splitEntry.account);
+			writeId(output, splitEntry.lot);
+			writeNumeric(output, splitEntry.value);
+			writeNumeric(output, splitEntry.quantity);
+			output.writeChar(splitEntry.reconciledState);
+			writeString(output, splitEntry.memo);
+			writeString(output, splitEntry.action);
+		}
+	}
+
+	// The epochDay has already been read.
+	void readRecord(DataInput input, int epochDay, Run run) throws IOException {
+		run.sequence = input.readInt();
+		run.idIndex = input.readInt();
+		run.key = ((long)epochDay << 32) | run.sequence;
+
+		TransactionImportEntry entry = new TransactionImportEntry(this.contentHandler);
+		entry.location = input.readLong();
+		readId(input, entry.id);
+		readTime(input, entry.datePosted);
+		readTime(input, entry.dateEntered);
+		entry.description = readString(input);
+		entry.num = readString(input);
+		entry.currencyRef.space = readString(input);
+		entry.currencyRef.id = readString(input);
+
+		int splitCount = input.readInt();
+		for (int i = 0; i < splitCount; ++i) {
+			SplitEntry splitEntry = new SplitEntry(this.contentHandler, entry);
+			readId(input, splitEntry.id);
+			readId(input, splitEntry.account);
+			readId(input, splitEntry.lot);
+			readNumeric(input, splitEntry.value);
+			readNumeric(input, splitEntry.quantity);
+			splitEntry.reconciledState = input.readChar();
+			splitEntry.memo = readString(input);
+			splitEntry.action = readString(input);
+			entry.originalSplitsList.add(splitEntry);
+		}
+		run.entry = entry;
+	}
+
+
+	static void writeString(DataOutput output, String value) throws IOException {
+		if (value == null) {
+			output.writeInt(-1);
+		}
+		else {
+			// writeUTF() is limited to 64K.
+			byte [] bytes = value.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	static String readString(DataInput input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte [] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	static void writeId(DataOutput output, IdEntry id) throws IOException {
+		writeString(output, id.type);
+		if (id.isGUID) {
+			output.writeByte(ID_GUID);
+			output.writeLong(id.guidHigh);
+			output.writeLong(id.guidLow);
+		}
+		else if (id.text != null) {
+			output.writeByte(ID_TEXT);
+			writeString(output, id.text);
+		}
+		else {
+			output.writeByte(ID_NONE);
+		}
+	}
+
+	static void readId(DataInput input, IdEntry id) throws IOException {
+		String type = readString(input);
+		id.type = "guid".equals(type) ? "guid" : type;
+		switch (input.readByte()) {
+		case ID_GUID :
+			long guidHigh = input.readLong();
+			id.setGUID(guidHigh, input.readLong());
+			break;
+
+		case ID_TEXT :
+			id.setId(readString(input));
+			break;
+		}
+	}
+
+
+	static void writeTime(DataOutput output, TimeEntry time) throws IOException {
+		output.writeBoolean(time.isParsed);
+		if (time.isParsed) {
+			output.writeLong(time.epochDay);
+			output.writeInt(time.secondOfDay);
+			output.writeInt(time.offsetSeconds);
+		}
+		writeString(output, time.parseError);
+	}
+
+	static void readTime(DataInput input, TimeEntry time) throws IOException {
+		if (input.readBoolean()) {
+			time.epochDay = input.readLong();
+			time.secondOfDay = input.readInt();
+			time.offsetSeconds = input.readInt();
+			time.isParsed = true;
+		}
+		time.parseError = readString(input);
+	}
+
+
+	static void writeNumeric(DataOutput output, NumericEntry numeric) throws IOException {
+		if (!numeric.isParsed()) {
+			output.writeByte(NUMERIC_NONE);
+		}
+		else if (numeric.bigNumerator != null) {
+			output.writeByte(NUMERIC_BIG);
+			writeString(output, numeric.bigNumerator.toString());
+			writeString(output, numeric.bigDenominator.toString());
+		}
+		else {
+			output.writeByte(NUMERIC_LONG);
+			output.writeLong(numeric.numerator);
+			output.writeLong(numeric.denominator);
+		}
+	}
+
+	static void readNumeric(DataInput input, NumericEntry numeric) throws IOException {
+		switch (input.readByte()) {
+		case NUMERIC_LONG :
+			long numerator = input.readLong();
+			numeric.setValue(numerator, input.readLong());
+			break;
+
+		case NUMERIC_BIG :
+			BigInteger bigNumerator = new BigInteger(readString(input));
+			numeric.setValue(bigNumerator, new BigInteger(readString(input)));
+			break;
+		}
+	}
+
+}
@@ -0,0 +1,1265 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * {@link GnuCashXMLParser} that tokenizes the UTF-8 bytes of the XML itself instead of going through JAXP. Only what
+ * GnuCash writes is supported: UTF-8 or ASCII, XML 1.0, no DTD, so no entities other than the five predefined ones
+ * and character references. Anything else shows up before the document element, if it's found there the whole
+ * stream is handed to a {@link SAXGnuCashXMLParser}. After that point anything that isn't supported isn't well
+ * formed XML and is reported as a {@link SAXParseException}.
+ * <p>
+ * The events, element names and locator positions are the same as those of the SAX parser, except that character
+ * data is passed on in one piece, and character data the active state handler doesn't need (see
+ * {@link GnuCashToJGnashContentHandler.StateHandler#isTextNeeded()}) is skipped, only the part from the first
+ * reference on is decoded to check the references.
+ * @author albert
+ *
+ */
+public class UTF8GnuCashXMLParser implements GnuCashXMLParser {
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	// Must be a power of 2.
+	static final int NAME_TABLE_SIZE = 256;
+
+	static final String XML_NAMESPACE_URI = "http://www.w3.org/XML/1998/namespace";
+
+	private static final Pattern VERSION_PATTERN = Pattern.compile("version\\s*=\\s*[\"']([^\"']*)[\"']");
+	private static final Pattern ENCODING_PATTERN = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']*)[\"']");
+
+	// The bytes that can't be part of a name, or at least not of a name in a well formed document.
+	private static final boolean [] IS_NAME_END = new boolean [256];
+	static {
+		for (int i = 0; i <= ' '; ++i) {
+			IS_NAME_END[i] = true;
+		}
+		IS_NAME_END['>'] = true;
+		IS_NAME_END['/'] = true;
+		IS_NAME_END['='] = true;
+		IS_NAME_END['?'] = true;
+	}
+
+	// How decode() treats the bytes.
+	private static final int DECODE_RAW = 0;
+	private static final int DECODE_TEXT = 1;
+	private static final int DECODE_ATTRIBUTE = 2;
+
+	private InputStream inputStream;
+	private GnuCashToJGnashContentHandler contentHandler;
+	private SAXGnuCashXMLParser fallbackParser;
+
+	private byte [] buffer = new byte [BUFFER_SIZE];
+	private int bufferLength;
+	private int pos;
+	// The start of the token being read, the bytes from here on are kept when the buffer is refilled.
+	private int tokenStart;
+
+	private int lineNumber;
+	private int lineStart;
+	// The number of characters of the current line that were dropped from the buffer.
+	private int lineColumnOffset;
+	// Where the locator's column is measured to, the end of the current event.
+	private int eventEnd;
+	// The offset from tokenStart of the first '&' in the character data read by scanText(), -1 if none.
+	private int textReferenceOffset;
+
+	private char [] chars = new char [1024];
+
+	private Name [] names = new Name [NAME_TABLE_SIZE];
+	private int nameCount;
+
+	private Name [] openElements = new Name [32];
+	private int [] openElementNamespaceCounts = new int [32];
+	private int depth;
+	private Name [] skippedElements = new Name [16];
+	private boolean hasRootElement;
+	private boolean isXMLDeclarationAllowed;
+
+	private String [] namespacePrefixes = new String [16];
+	private String [] namespaceURIs = new String [16];
+	private int namespaceCount;
+	// Changed whenever the namespaces in scope change, the element names cache their URI for a generation.
+	private int namespaceGeneration;
+
+	private final TokenAttributes attributes = new TokenAttributes();
+	private final TokenLocator locator = new TokenLocator();
+
+
+	/**
+	 * @param encoding	The encoding name from an XML declaration.
+	 * @return	<code>true</code> if the encoding is UTF-8 or ASCII.
+	 */
+	static boolean isSupportedEncoding(String encoding) {
+		return encoding.equalsIgnoreCase("UTF-8") || encoding.equalsIgnoreCase("UTF8")
+				|| encoding.equalsIgnoreCase("US-ASCII") || encoding.equalsIgnoreCase("ASCII");
+	}
+
+
+	/* (non-Javadoc)
+	 * @see gnucashjgnash.imports.GnuCashXMLParser#parse(java.io.InputStream, gnucashjgnash.imports.GnuCashToJGnashContentHandler)
+	 */
+	@Override
+	public void parse(InputStream inputStream, GnuCashToJGnashContentHandler contentHandler) throws IOException, SAXException {
+		this.inputStream = inputStream;
+		this.contentHandler = contentHandler;
+		this.bufferLength = 0;
+		this.pos = 0;
+		this.tokenStart = 0;
+		this.lineNumber = 1;
+		this.lineStart = 0;
+		this.lineColumnOffset = 0;
+		this.eventEnd = 0;
+		this.depth = 0;
+		this.hasRootElement = false;
+		this.namespaceCount = 0;
+		++this.namespaceGeneration;
+
+		try {
+			if (!isPrologSupported()) {
+				if (this.fallbackParser == null) {
+					try {
+						this.fallbackParser = new SAXGnuCashXMLParser();
+					} catch (ParserConfigurationException e) {
+						throw new SAXException(e.getLocalizedMessage(), e);
+					}
+				}
+				this.fallbackParser.parse(new SequenceInputStream(new ByteArrayInputStream(this.buffer, 0, this.bufferLength), inputStream),
+						contentHandler);
+				return;
+			}
+
+			// Past any byte order mark.
+			this.lineStart = this.pos;
+
+			contentHandler.setDocumentLocator(this.locator);
+			contentHandler.startDocument();
+			parseDocument();
+			contentHandler.endDocument();
+
+		} finally {
+			this.inputStream = null;
+			this.contentHandler = null;
+			Arrays.fill(this.openElements, null);
+			if (this.buffer.length > BUFFER_SIZE) {
+				this.buffer = new byte [BUFFER_SIZE];
+			}
+		}
+	}
+
+
+	/**
+	 * Looks at everything before the document element for anything we don't support. Nothing is dropped from the
+	 * buffer while doing so.
+	 * @return	<code>true</code> if the document can be parsed, <code>false</code> if it has to be handed to the
+	 * fallback parser.
+	 */
+	private boolean isPrologSupported() throws IOException {
+		int first = byteAt(0);
+		int second = byteAt(1);
+		if ((first == 0xef) && (second == 0xbb) && (byteAt(2) == 0xbf)) {
+			this.pos = 3;
+		}
+		else if ((first == 0xfe) || (first == 0xff) || (first == 0) || (second == 0)) {
+			// UTF-16 or UTF-32.
+			return false;
+		}
+		int index = this.pos;
+		if (startsWith(index, "<?xml") && isWhitespace(byteAt(index + 5))) {
+			int end = indexOf(index, "?>");
+			if (end < 0) {
+				return false;
+			}
+			String declaration = new String(this.buffer, index, end - index, StandardCharsets.ISO_8859_1);
+			Matcher matcher = VERSION_PATTERN.matcher(declaration);
+			if (!matcher.find() || !matcher.group(1).equals("1.0")) {
+				return false;
+			}
+			matcher = ENCODING_PATTERN.matcher(declaration);
+			if (matcher.find() && !isSupportedEncoding(matcher.group(1))) {
+				return false;
+			}
+			index = end + 2;
+		}
+
+		while (true) {
+			while (isWhitespace(byteAt(index))) {
+				++index;
+			}
+			if (startsWith(index, "<!--")) {
+				index = indexOf(index + 4, "-->");
+				if (index < 0) {
+					return true;
+				}
+				index += 3;
+			}
+			else if (startsWith(index, "<?")) {
+				index = indexOf(index + 2, "?>");
+				if (index < 0) {
+					return true;
+				}
+				index += 2;
+			}
+			else {
+				return !startsWith(index, "<!DOCTYPE");
+			}
+		}
+	}
+
+	private int byteAt(int index) throws IOException {
+		while (index >= this.bufferLength) {
+			if (!fillBuffer()) {
+				return -1;
+			}
+		}
+		return this.buffer[index] & 0xff;
+	}
+
+	private boolean startsWith(int index, String text) throws IOException {
+		for (int i = 0; i < text.length(); ++i) {
+			if (byteAt(index + i) != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int indexOf(int index, String text) throws IOException {
+		while (byteAt(index) >= 0) {
+			if (startsWith(index, text)) {
+				return index;
+			}
+			++index;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Reads more of the input stream into the buffer, dropping the bytes before {@link #tokenStart} first.
+	 * @return	<code>false</code> if the end of the input stream has been reached.
+	 */
+	private boolean fillBuffer() throws IOException {
+		int dropCount = this.tokenStart;
+		if (dropCount > 0) {
+			if (this.lineStart < dropCount) {
+				this.lineColumnOffset += countChars(this.lineStart, dropCount);
+				this.lineStart = dropCount;
+			}
+			System.arraycopy(this.buffer, dropCount, this.buffer, 0, this.bufferLength - dropCount);
+			this.bufferLength -= dropCount;
+			this.pos -= dropCount;
+			this.tokenStart = 0;
+			this.lineStart -= dropCount;
+			this.eventEnd = Math.max(this.eventEnd - dropCount, 0);
+		}
+		if (this.bufferLength > this.buffer.length - this.buffer.length / 4) {
+			// A token that takes up most of the buffer.
+			this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+		}
+
+		int count;
+		do {
+			count = this.inputStream.read(this.buffer, this.bufferLength, this.buffer.length - this.bufferLength);
+		} while (count == 0);
+		if (count < 0) {
+			return false;
+		}
+		this.bufferLength += count;
+		return true;
+	}
+
+
+	/**
+	 * @return	The next byte, -1 if at the end of the input.
+	 */
+	private int next() throws IOException {
+		if ((this.pos >= this.bufferLength) && !fillBuffer()) {
+			return -1;
+		}
+		int value = this.buffer[this.pos++];
+		if ((value == '\n') || (value == '\r')) {
+			lineBreak(this.pos);
+		}
+		return value & 0xff;
+	}
+
+	/**
+	 * Called after a '\n' or '\r' has been read. A "\r\n" is only one line break.
+	 * @param lineStart	The index after the '\n' or '\r'.
+	 */
+	private void lineBreak(int lineStart) {
+		if ((lineStart < 2) || (this.buffer[lineStart - 1] != '\n') || (this.buffer[lineStart - 2] != '\r')) {
+			++this.lineNumber;
+		}
+		this.lineStart = lineStart;
+		this.lineColumnOffset = 0;
+	}
+
+	/**
+	 * @return	The number of UTF-16 characters the UTF-8 bytes from start up to end decode to.
+	 */
+	private int countChars(int start, int end) {
+		int count = 0;
+		for (int i = start; i < end; ++i) {
+			int value = this.buffer[i];
+			if ((value & 0xc0) != 0x80) {
+				++count;
+				if ((value & 0xf8) == 0xf0) {
+					// A surrogate pair.
+					++count;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static boolean isWhitespace(int value) {
+		return (value == ' ') || (value == '\n') || (value == '\t') || (value == '\r');
+	}
+
+	private static boolean isNameStart(int value) {
+		return ((value >= 'a') && (value <= 'z')) || ((value >= 'A') && (value <= 'Z')) || (value == '_') || (value == ':')
+				|| (value >= 0x80);
+	}
+
+
+
+	private SAXParseException error(String message) {
+		this.eventEnd = this.pos;
+		return new SAXParseException(message, null, null, this.locator.getLineNumber(), this.locator.getColumnNumber());
+	}
+
+	private SAXParseException unexpectedEnd() {
+		return error("XML document structures must start and end within the same entity.");
+	}
+
+
+	private void parseDocument() throws IOException, SAXException {
+		this.isXMLDeclarationAllowed = true;
+		while (true) {
+			this.tokenStart = this.pos;
+			boolean isMarkup = scanText();
+			if (this.pos > this.tokenStart) {
+				this.isXMLDeclarationAllowed = false;
+				handleText();
+			}
+			if (!isMarkup) {
+				break;
+			}
+
+			this.tokenStart = this.pos;
+			++this.pos;
+			switch (next()) {
+			case '/' :
+				parseEndTag();
+				break;
+
+			case '?' :
+				parseProcessingInstruction();
+				break;
+
+			case '!' :
+				parseMarkupDeclaration();
+				break;
+
+			case -1 :
+				throw unexpectedEnd();
+
+			default :
+				--this.pos;
+				parseStartTag();
+				break;
+			}
+			this.isXMLDeclarationAllowed = false;
+		}
+
+		if (this.depth > 0) {
+			throw unexpectedEnd();
+		}
+		if (!this.hasRootElement) {
+			throw error("Premature end of file.");
+		}
+	}
+
+
+	/**
+	 * Reads the character data up to the next '&lt;', leaving {@link #pos} at the '&lt;'. The offset of the first
+	 * reference from {@link #tokenStart} is left in {@link #textReferenceOffset}.
+	 * @return	<code>false</code> if the end of the input was reached instead.
+	 */
+	private boolean scanText() throws IOException {
+		boolean isTextKept = (this.depth == 0) || isTextNeeded();
+		int referenceOffset = -1;
+		int pos = this.pos;
+		while (true) {
+			final byte [] buffer = this.buffer;
+			final int length = this.bufferLength;
+			while (pos < length) {
+				int value = buffer[pos];
+				if (value == '<') {
+					this.pos = pos;
+					this.textReferenceOffset = referenceOffset;
+					return true;
+				}
+				++pos;
+				if (value <= '&') {
+					if ((value == '\n') || (value == '\r')) {
+						lineBreak(pos);
+					}
+					else if ((value == '&') && (referenceOffset < 0)) {
+						referenceOffset = pos - 1 - this.tokenStart;
+					}
+				}
+			}
+
+			this.pos = pos;
+			if (!isTextKept && (referenceOffset < 0) && (pos - 1 > this.tokenStart)) {
+				// Keep the last byte for lineBreak().
+				this.tokenStart = pos - 1;
+			}
+			if (!fillBuffer()) {
+				this.textReferenceOffset = referenceOffset;
+				return false;
+			}
+			pos = this.pos;
+		}
+	}
+
+	private boolean isTextNeeded() {
+		GnuCashToJGnashContentHandler.StateHandler stateHandler = this.contentHandler.activeStateHandler;
+		return (stateHandler != null) && stateHandler.isTextNeeded();
+	}
+
+	/**
+	 * Handles the character data read by {@link #scanText()}, from {@link #tokenStart} up to {@link #pos}.
+	 */
+	private void handleText() throws IOException, SAXException {
+		if (this.depth == 0) {
+			for (int i = this.tokenStart; i < this.pos; ++i) {
+				if (!isWhitespace(this.buffer[i])) {
+					throw error(this.hasRootElement ? "Content is not allowed in trailing section." : "Content is not allowed in prolog.");
+				}
+			}
+		}
+		else if (isTextNeeded()) {
+			// Like the SAX parser the position is after the '<', or after the "</".
+			if ((this.pos + 1 >= this.bufferLength) && !fillBuffer()) {
+				this.eventEnd = this.pos;
+			}
+			else {
+				this.eventEnd = this.pos + ((this.buffer[this.pos + 1] == '/') ? 2 : 1);
+			}
+			int length = decode(this.tokenStart, this.pos, DECODE_TEXT);
+			this.contentHandler.characters(this.chars, 0, length);
+		}
+		else if (this.textReferenceOffset >= 0) {
+			// Only decoded to check the references.
+			decode(this.tokenStart + this.textReferenceOffset, this.pos, DECODE_TEXT);
+		}
+	}
+
+
+	/**
+	 * Decodes the UTF-8 bytes from start up to end into {@link #chars}.
+	 * @param mode	{@link #DECODE_RAW} for only normalizing the line breaks, {@link #DECODE_TEXT} for also replacing the
+	 * references, {@link #DECODE_ATTRIBUTE} for also normalizing the whitespace.
+	 * @return	The number of characters.
+	 */
+	private int decode(int start, int end, int mode) throws SAXException {
+		if (this.chars.length < end - start) {
+			this.chars = new char [Math.max(end - start, this.chars.length * 2)];
+		}
+		final char [] chars = this.chars;
+		final byte [] buffer = this.buffer;
+		int length = 0;
+		int index = start;
+		while (index < end) {
+			int value = buffer[index++];
+			if (value > '&') {
+				chars[length++] = (char)value;
+			}
+			else if (value >= 0) {
+				if (value == '&') {
+					if (mode != DECODE_RAW) {
+						int referenceEnd = index;
+						while ((referenceEnd < end) && (buffer[referenceEnd] != ';')) {
+							++referenceEnd;
+						}
+						if (referenceEnd >= end) {
+							throw error("The entity name must immediately be followed by the ';' delimiter.");
+						}
+						length += Character.toChars(getReferencedCodePoint(index, referenceEnd), chars, length);
+						index = referenceEnd + 1;
+						continue;
+					}
+				}
+				else if (value == '\r') {
+					if ((index < end) && (buffer[index] == '\n')) {
+						++index;
+					}
+					value = (mode == DECODE_ATTRIBUTE) ? ' ' : '\n';
+				}
+				else if ((mode == DECODE_ATTRIBUTE) && ((value == '\n') || (value == '\t'))) {
+					value = ' ';
+				}
+				chars[length++] = (char)value;
+			}
+			else if (((value & 0xe0) == 0xc0) && (index < end) && ((buffer[index] & 0xc0) == 0x80)) {
+				chars[length++] = (char)(((value & 0x1f) << 6) | (buffer[index++] & 0x3f));
+			}
+			else if (((value & 0xf0) == 0xe0) && (index + 1 < end) && ((buffer[index] & 0xc0) == 0x80)
+					&& ((buffer[index + 1] & 0xc0) == 0x80)) {
+				chars[length++] = (char)(((value & 0x0f) << 12) | ((buffer[index] & 0x3f) << 6) | (buffer[index + 1] & 0x3f));
+				index += 2;
+			}
+			else if (((value & 0xf8) == 0xf0) && (index + 2 < end) && ((buffer[index] & 0xc0) == 0x80)
+					&& ((buffer[index + 1] & 0xc0) == 0x80) && ((buffer[index + 2] & 0xc0) == 0x80)) {
+				int codePoint = ((value & 0x07) << 18) | ((buffer[index] & 0x3f) << 12) | ((buffer[index + 1] & 0x3f) << 6)
+						| (buffer[index + 2] & 0x3f);
+				length += Character.toChars(codePoint, chars, length);
+				index += 3;
+			}
+			else {
+				throw error("Invalid UTF-8 byte sequence.");
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @return	The character of the entity or character reference from start up to end, the bytes between the '&amp;'
+	 * and the ';'.
+	 */
+	private int getReferencedCodePoint(int start, int end) throws SAXException {
+		String name = new String(this.buffer, start, end - start, StandardCharsets.UTF_8);
+		switch (name) {
+		case "lt" :
+			return '<';
+		case "gt" :
+			return '>';
+		case "amp" :
+			return '&';
+		case "quot" :
+			return '"';
+		case "apos" :
+			return '\'';
+		default :
+			break;
+		}
+
+		if (name.startsWith("#")) {
+			try {
+				int codePoint = (name.startsWith("#x")) ? Integer.parseInt(name.substring(2), 16) : Integer.parseInt(name.substring(1));
+				if (isXMLChar(codePoint)) {
+					return codePoint;
+				}
+			} catch (NumberFormatException e) {
+				// Reported below.
+			}
+			throw error("The character reference \"&" + name + ";\" is not a valid XML character.");
+		}
+
+		throw error("The entity \"" + name + "\" was referenced, but not declared.");
+	}
+
+	/**
+	 * @return	<code>true</code> if the code point is a Char from the XML 1.0 specification, which leaves out most of
+	 * the control characters, the surrogates, 0xFFFE and 0xFFFF.
+	 */
+	static boolean isXMLChar(int codePoint) {
+		if (codePoint < 0x20) {
+			return (codePoint == 0x9) || (codePoint == 0xA) || (codePoint == 0xD);
+		}
+		return (codePoint <= 0xD7FF) 
+				|| ((codePoint >= 0xE000) && (codePoint <= 0xFFFD)) 
+				|| ((codePoint >= 0x10000) && (codePoint <= 0x10FFFF));
+	}
+
+	private String decodeString(int start, int end, int mode) throws SAXException {
+		return new String(this.chars, 0, decode(start, end, mode));
+	}
+
+
+	/**
+	 * Reads a name.
+	 * @param first	The first byte of the name, already read.
+	 * @return	The name.
+	 */
+	private Name readName(int first) throws IOException, SAXException {
+		if (!isNameStart(first)) {
+			throw (first < 0) ? unexpectedEnd() : error("The markup in the document must be well-formed.");
+		}
+
+		int start = this.pos - 1;
+		int hash = first;
+		while (true) {
+			final byte [] buffer = this.buffer;
+			final int length = this.bufferLength;
+			int pos = this.pos;
+			while (pos < length) {
+				int value = buffer[pos] & 0xff;
+				if (IS_NAME_END[value]) {
+					this.pos = pos;
+					return lookupName(start, pos, hash);
+				}
+				hash = 31 * hash + value;
+				++pos;
+			}
+
+			this.pos = pos;
+			int startOffset = start - this.tokenStart;
+			boolean isMore = fillBuffer();
+			start = this.tokenStart + startOffset;
+			if (!isMore) {
+				return lookupName(start, this.pos, hash);
+			}
+		}
+	}
+
+	/**
+	 * Reads more of the input stream into the buffer until there are at least count bytes after {@link #pos}.
+	 * @return	<code>false</code> if the end of the input stream was reached first.
+	 */
+	private boolean ensureAvailable(int count) throws IOException {
+		while (this.bufferLength - this.pos < count) {
+			if (!fillBuffer()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Name lookupName(int start, int end, int hash) {
+		int index = hash & (this.names.length - 1);
+		for (Name name = this.names[index]; name != null; name = name.next) {
+			if ((name.hash == hash) && name.matches(this.buffer, start, end)) {
+				return name;
+			}
+		}
+
+		Name name = new Name(Arrays.copyOfRange(this.buffer, start, end), hash);
+		name.next = this.names[index];
+		this.names[index] = name;
+
+		if (++this.nameCount > this.names.length) {
+			Name [] names = new Name [this.names.length * 2];
+			for (Name oldName : this.names) {
+				while (oldName != null) {
+					Name nextName = oldName.next;
+					int newIndex = oldName.hash & (names.length - 1);
+					oldName.next = names[newIndex];
+					names[newIndex] = oldName;
+					oldName = nextName;
+				}
+			}
+			this.names = names;
+		}
+		return name;
+	}
+
+
+	private void parseStartTag() throws IOException, SAXException {
+		if ((this.depth == 0) && this.hasRootElement) {
+			throw error("The markup in the document following the root element must be well-formed.");
+		}
+
+		Name name = readName(next());
+		TokenAttributes attributes = this.attributes;
+		attributes.count = 0;
+		int elementNamespaceCount = this.namespaceCount;
+		boolean isEmpty = false;
+
+		int value;
+		while (true) {
+			boolean isSeparated = false;
+			while (isWhitespace(value = next())) {
+				isSeparated = true;
+			}
+			if (value == '>') {
+				break;
+			}
+			if (value == '/') {
+				if (next() != '>') {
+					throw error("Element type \"" + name.qName + "\" must be followed by either attribute specifications, \">\" or \"/>\".");
+				}
+				isEmpty = true;
+				break;
+			}
+			if (value < 0) {
+				throw unexpectedEnd();
+			}
+			if (!isSeparated) {
+				throw error("Element type \"" + name.qName + "\" must be followed by either attribute specifications, \">\" or \"/>\".");
+			}
+
+			Name attributeName = readName(value);
+			while (isWhitespace(value = next())) {
+			}
+			if (value != '=') {
+				throw error("Attribute name \"" + attributeName.qName + "\" associated with an element type \"" + name.qName
+						+ "\" must be followed by the ' = ' character.");
+			}
+			int quote;
+			while (isWhitespace(quote = next())) {
+			}
+			if ((quote != '"') && (quote != '\'')) {
+				throw error("Open quote is expected for attribute \"" + attributeName.qName + "\" associated with an element type \""
+						+ name.qName + "\".");
+			}
+
+			int valueStart = this.pos - this.tokenStart;
+			boolean isPlain = true;
+			while ((value = next()) != quote) {
+				if (value < 0) {
+					throw unexpectedEnd();
+				}
+				if (value == '<') {
+					throw error("The value of attribute \"" + attributeName.qName + "\" associated with an element type \""
+							+ name.qName + "\" must not contain the '<' character.");
+				}
+				if ((value < ' ') || (value >= 0x7f) || (value == '&')) {
+					isPlain = false;
+				}
+			}
+			int valueEnd = this.pos - 1 - this.tokenStart;
+
+			if (attributeName.namespacePrefix != null) {
+				String uri = decodeString(this.tokenStart + valueStart, this.tokenStart + valueEnd, DECODE_ATTRIBUTE);
+				declareNamespace(attributeName.namespacePrefix, uri);
+			}
+			else {
+				String decodedValue = isPlain ? null
+						: decodeString(this.tokenStart + valueStart, this.tokenStart + valueEnd, DECODE_ATTRIBUTE);
+				if (!attributes.add(attributeName, "", valueStart, valueEnd, decodedValue)) {
+					throw error("Attribute \"" + attributeName.qName + "\" was already specified for element \"" + name.qName + "\".");
+				}
+			}
+		}
+
+		// Only now, a prefix may be declared by an xmlns attribute after the attribute using it.
+		for (int i = 0; i < attributes.count; ++i) {
+			Name attributeName = attributes.names[i];
+			if (!attributeName.prefix.isEmpty()) {
+				String uri = getNamespaceURI(attributeName.prefix);
+				if (uri == null) {
+					throw error("The prefix \"" + attributeName.prefix + "\" for attribute \"" + attributeName.qName
+							+ "\" associated with an element type \"" + name.qName + "\" is not bound.");
+				}
+				attributes.uris[i] = uri;
+			}
+		}
+
+		if (this.depth == this.openElements.length) {
+			this.openElements = Arrays.copyOf(this.openElements, this.depth * 2);
+			this.openElementNamespaceCounts = Arrays.copyOf(this.openElementNamespaceCounts, this.depth * 2);
+		}
+		this.openElements[this.depth] = name;
+		this.openElementNamespaceCounts[this.depth] = elementNamespaceCount;
+		++this.depth;
+		this.hasRootElement = true;
+
+		this.eventEnd = this.pos;
+		this.contentHandler.startElement(getElementURI(name), name.localName, name.qName, attributes);
+		attributes.count = 0;
+
+		if (isEmpty) {
+			endElement(name);
+		}
+		else if (this.contentHandler.activeStateHandler.isContentSkipped()) {
+			skipContent();
+		}
+	}
+
+
+	/**
+	 * Skips the content of the element just started without passing any of it on, leaving {@link #pos} at the '&lt;'
+	 * of the element's end tag. The markup is only looked at as far as is needed to find the end tag.
+	 */
+	private void skipContent() throws IOException, SAXException {
+		// The skipped elements still have to be properly nested, their names are kept to check the end tags.
+		int skippedDepth = 0;
+		while (true) {
+			this.tokenStart = this.pos;
+			if (!scanText()) {
+				throw unexpectedEnd();
+			}
+
+			this.tokenStart = this.pos;
+			++this.pos;
+			int value = next();
+			if (value == '/') {
+				if (skippedDepth == 0) {
+					this.pos = this.tokenStart;
+					return;
+				}
+				Name name = readName(next());
+				Name openName = this.skippedElements[--skippedDepth];
+				this.skippedElements[skippedDepth] = null;
+				if (openName != name) {
+					throw error("The element type \"" + openName.qName + "\" must be terminated by the matching end-tag \"</" + openName.qName + ">\".");
+				}
+				while (isWhitespace(value = next())) {
+				}
+				if (value != '>') {
+					throw (value < 0) ? unexpectedEnd() : error("The end-tag for element type \"" + name.qName + "\" must end with a '>' delimiter.");
+				}
+			}
+			else if (value == '?') {
+				int previous = -1;
+				while (((value = next()) != '>') || (previous != '?')) {
+					if (value < 0) {
+						throw unexpectedEnd();
+					}
+					previous = value;
+				}
+			}
+			else if (value == '!') {
+				value = next();
+				if ((value == '-') && (next() == '-')) {
+					skipPast('-', '-', '>');
+				}
+				else if (value == '[') {
+					skipPast(']', ']', '>');
+				}
+				else {
+					throw error("The markup in the document must be well-formed.");
+				}
+			}
+			else if (value < 0) {
+				throw unexpectedEnd();
+			}
+			else {
+				// A start tag, the attribute values may contain '>' or '/'.
+				Name name = readName(value);
+				int previous = 0;
+				int quote = 0;
+				while (true) {
+					value = next();
+					if (value < 0) {
+						throw unexpectedEnd();
+					}
+					if (quote != 0) {
+						if (value == quote) {
+							quote = 0;
+						}
+					}
+					else if (value == '>') {
+						break;
+					}
+					else if ((value == '"') || (value == '\'')) {
+						quote = value;
+					}
+					previous = value;
+				}
+				if (previous != '/') {
+					if (skippedDepth == this.skippedElements.length) {
+						this.skippedElements = Arrays.copyOf(this.skippedElements, skippedDepth * 2);
+					}
+					this.skippedElements[skippedDepth++] = name;
+				}
+			}
+		}
+	}
+
+	private void declareNamespace(String prefix, String uri) throws SAXException {
+		if (this.namespaceCount == this.namespacePrefixes.length) {
+			this.namespacePrefixes = Arrays.copyOf(this.namespacePrefixes, this.namespaceCount * 2);
+			this.namespaceURIs = Arrays.copyOf(this.namespaceURIs, this.namespaceCount * 2);
+		}
+		this.namespacePrefixes[this.namespaceCount] = prefix;
+		this.namespaceURIs[this.namespaceCount] = uri;
+		++this.namespaceCount;
+		++this.namespaceGeneration;
+		this.contentHandler.startPrefixMapping(prefix, uri);
+	}
+
+	/**
+	 * @return	The URI of the namespace for a prefix, <code>null</code> if the prefix is not bound.
+	 */
+	private String getNamespaceURI(String prefix) {
+		for (int i = this.namespaceCount - 1; i >= 0; --i) {
+			if (this.namespacePrefixes[i].equals(prefix)) {
+				return this.namespaceURIs[i];
+			}
+		}
+		if (prefix.isEmpty()) {
+			return "";
+		}
+		if (prefix.equals("xml")) {
+			return XML_NAMESPACE_URI;
+		}
+		return null;
+	}
+
+	private String getElementURI(Name name) throws SAXException {
+		if (name.uriGeneration != this.namespaceGeneration) {
+			String uri = getNamespaceURI(name.prefix);
+			if (uri == null) {
+				throw error("The prefix \"" + name.prefix + "\" for element \"" + name.qName + "\" is not bound.");
+			}
+			name.uri = uri;
+			name.uriGeneration = this.namespaceGeneration;
+		}
+		return name.uri;
+	}
+
+
+	private void parseEndTag() throws IOException, SAXException {
+		// Almost always the name is that of the open element, which saves looking it up.
+		Name name = (this.depth > 0) ? this.openElements[this.depth - 1] : null;
+		if ((name != null) && ensureAvailable(name.bytes.length + 1) && IS_NAME_END[this.buffer[this.pos + name.bytes.length] & 0xff]
+				&& name.matches(this.buffer, this.pos, this.pos + name.bytes.length)) {
+			this.pos += name.bytes.length;
+		}
+		else {
+			name = readName(next());
+		}
+
+		int value;
+		while (isWhitespace(value = next())) {
+		}
+		if (value != '>') {
+			throw (value < 0) ? unexpectedEnd() : error("The end-tag for element type \"" + name.qName + "\" must end with a '>' delimiter.");
+		}
+		if (this.depth == 0) {
+			throw error("The markup in the document following the root element must be well-formed.");
+		}
+		Name openName = this.openElements[this.depth - 1];
+		if (openName != name) {
+			throw error("The element type \"" + openName.qName + "\" must be terminated by the matching end-tag \"</" + openName.qName + ">\".");
+		}
+
+		this.eventEnd = this.pos;
+		endElement(name);
+	}
+
+	private void endElement(Name name) throws SAXException {
+		this.contentHandler.endElement(getElementURI(name), name.localName, name.qName);
+
+		--this.depth;
+		this.openElements[this.depth] = null;
+		int elementNamespaceCount = this.openElementNamespaceCounts[this.depth];
+		if (elementNamespaceCount < this.namespaceCount) {
+			for (int i = elementNamespaceCount; i < this.namespaceCount; ++i) {
+				this.contentHandler.endPrefixMapping(this.namespacePrefixes[i]);
+			}
+			this.namespaceCount = elementNamespaceCount;
+			++this.namespaceGeneration;
+		}
+	}
+
+
+	private void parseProcessingInstruction() throws IOException, SAXException {
+		Name target = readName(next());
+		int dataStart;
+		int dataEnd;
+		int value = next();
+		if (value == '?') {
+			if (next() != '>') {
+				throw error("The processing instruction must end with '?>'.");
+			}
+			dataStart = dataEnd = 0;
+		}
+		else if (isWhitespace(value)) {
+			while (isWhitespace(value = next())) {
+			}
+			dataStart = this.pos - 1 - this.tokenStart;
+			int previous = value;
+			while (((value = next()) != '>') || (previous != '?')) {
+				if (value < 0) {
+					throw unexpectedEnd();
+				}
+				previous = value;
+			}
+			dataEnd = this.pos - 2 - this.tokenStart;
+		}
+		else {
+			throw (value < 0) ? unexpectedEnd() : error("White space is required between the processing instruction target and data.");
+		}
+
+		if (target.qName.equalsIgnoreCase("xml")) {
+			if (!this.isXMLDeclarationAllowed || !target.qName.equals("xml")) {
+				throw error("The processing instruction target matching \"[xX][mM][lL]\" is not allowed.");
+			}
+			// The XML declaration, already checked by isPrologSupported().
+			return;
+		}
+
+		String data = decodeString(this.tokenStart + dataStart, this.tokenStart + dataEnd, DECODE_RAW);
+		this.eventEnd = this.pos;
+		this.contentHandler.processingInstruction(target.qName, data);
+	}
+
+
+	/**
+	 * Handles comments and CDATA sections, the "&lt;!" has been read.
+	 */
+	private void parseMarkupDeclaration() throws IOException, SAXException {
+		int value = next();
+		if (value == '-') {
+			if (next() != '-') {
+				throw error("The markup in the document must be well-formed.");
+			}
+			skipPast('-', '-', '>');
+		}
+		else if ((value == '[') && (this.depth > 0)) {
+			for (int i = 0; i < "CDATA[".length(); ++i) {
+				if (next() != "CDATA[".charAt(i)) {
+					throw error("The markup in the document must be well-formed.");
+				}
+			}
+			int textStart = this.pos - this.tokenStart;
+			skipPast(']', ']', '>');
+			if (isTextNeeded()) {
+				this.eventEnd = this.pos;
+				int length = decode(this.tokenStart + textStart, this.pos - 3, DECODE_RAW);
+				this.contentHandler.characters(this.chars, 0, length);
+			}
+		}
+		else {
+			throw (value < 0) ? unexpectedEnd() : error("The markup in the document must be well-formed.");
+		}
+	}
+
+	private void skipPast(int first, int second, int third) throws IOException, SAXException {
+		int beforePrevious = -1;
+		int previous = -1;
+		int value;
+		while ((value = next()) >= 0) {
+			if ((value == third) && (previous == second) && (beforePrevious == first)) {
+				return;
+			}
+			beforePrevious = previous;
+			previous = value;
+		}
+		throw unexpectedEnd();
+	}
+
+
+	/**
+	 * An element or attribute name. There's only one of these for any given name, so they're compared by identity.
+	 */
+	static final class Name {
+		final byte [] bytes;
+		final int hash;
+		final String qName;
+		final String prefix;
+		final String localName;
+		// The prefix declared if this is an xmlns attribute, "" for the default namespace.
+		final String namespacePrefix;
+		String uri;
+		int uriGeneration;
+		Name next;
+
+		Name(byte [] bytes, int hash) {
+			this.bytes = bytes;
+			this.hash = hash;
+			this.qName = new String(bytes, StandardCharsets.UTF_8).intern();
+
+			int colon = this.qName.indexOf(':');
+			if (colon >= 0) {
+				this.prefix = this.qName.substring(0, colon).intern();
+				this.localName = this.qName.substring(colon + 1).intern();
+			}
+			else {
+				this.prefix = "";
+				this.localName = this.qName;
+			}
+
+			if (this.qName.equals("xmlns")) {
+				this.namespacePrefix = "";
+			}
+			else if (this.prefix.equals("xmlns")) {
+				this.namespacePrefix = this.localName;
+			}
+			else {
+				this.namespacePrefix = null;
+			}
+		}
+
+		boolean matches(byte [] buffer, int start, int end) {
+			if (end - start != this.bytes.length) {
+				return false;
+			}
+			for (int i = 0; i < this.bytes.length; ++i) {
+				if (this.bytes[i] != buffer[start + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+
+	/**
+	 * The attributes of the current start element. The values are left in the buffer and only decoded when asked
+	 * for, unless they have to be decoded to be checked.
+	 */
+	class TokenAttributes implements Attributes {
+		Name [] names = new Name [8];
+		String [] uris = new String [8];
+		// Relative to tokenStart.
+		int [] valueStarts = new int [8];
+		int [] valueEnds = new int [8];
+		String [] values = new String [8];
+		int count;
+
+		boolean add(Name name, String uri, int valueStart, int valueEnd, String value) {
+			for (int i = 0; i < this.count; ++i) {
+				if (this.names[i] == name) {
+					return false;
+				}
+			}
+			if (this.count == this.names.length) {
+				this.names = Arrays.copyOf(this.names, this.count * 2);
+				this.uris = Arrays.copyOf(this.uris, this.count * 2);
+				this.valueStarts = Arrays.copyOf(this.valueStarts, this.count * 2);
+				this.valueEnds = Arrays.copyOf(this.valueEnds, this.count * 2);
+				this.values = Arrays.copyOf(this.values, this.count * 2);
+			}
+			this.names[this.count] = name;
+			this.uris[this.count] = uri;
+			this.valueStarts[this.count] = valueStart;
+			this.valueEnds[this.count] = valueEnd;
+			this.values[this.count] = value;
+			++this.count;
+			return true;
+		}
+
+		@Override
+		public int getLength() {
+			return this.count;
+		}
+
+		@Override
+		public String getURI(int index) {
+			return (index < this.count) ? this.uris[index] : null;
+		}
+
+		@Override
+		public String getLocalName(int index) {
+			return (index < this.count) ? this.names[index].localName : null;
+		}
+
+		@Override
+		public String getQName(int index) {
+			return (index < this.count) ? this.names[index].qName : null;
+		}
+
+		@Override
+		public String getType(int index) {
+			return (index < this.count) ? "CDATA" : null;
+		}
+
+		@Override
+		public String getValue(int index) {
+			if ((index < 0) || (index >= this.count)) {
+				return null;
+			}
+			if (this.values[index] == null) {
+				int start = UTF8GnuCashXMLParser.this.tokenStart + this.valueStarts[index];
+				int end = UTF8GnuCashXMLParser.this.tokenStart + this.valueEnds[index];
+				this.values[index] = new String(UTF8GnuCashXMLParser.this.buffer, start, end - start, StandardCharsets.ISO_8859_1);
+			}
+			return this.values[index];
+		}
+
+		@Override
+		public int getIndex(String uri, String localName) {
+			for (int i = 0; i < this.count; ++i) {
+				if (this.names[i].localName.equals(localName) && this.uris[i].equals(uri)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public int getIndex(String qName) {
+			for (int i = 0; i < this.count; ++i) {
+				if (this.names[i].qName.equals(qName)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public String getType(String uri, String localName) {
+			return (getIndex(uri, localName) >= 0) ? "CDATA" : null;
+		}
+
+		@Override
+		public String getType(String qName) {
+			return (getIndex(qName) >= 0) ? "CDATA" : null;
+		}
+
+		@Override
+		public String getValue(String uri, String localName) {
+			return getValue(getIndex(uri, localName));
+		}
+
+		@Override
+		public String getValue(String qName) {
+			return getValue(getIndex(qName));
+		}
+	}
+
+
+	/**
+	 * The position at the end of the current event, the column counts characters, not bytes.
+	 */
+	class TokenLocator implements Locator {
+		@Override
+		public String getPublicId() {
+			return null;
+		}
+
+		@Override
+		public String getSystemId() {
+			return null;
+		}
+
+		@Override
+		public int getLineNumber() {
+			return UTF8GnuCashXMLParser.this.lineNumber;
+		}
+
+		@Override
+		public int getColumnNumber() {
+			UTF8GnuCashXMLParser parser = UTF8GnuCashXMLParser.this;
+			return parser.lineColumnOffset + countChars(parser.lineStart, Math.max(parser.eventEnd, parser.lineStart)) + 1;
+		}
+	}
+
+}
@@ -65,7 +65,6 @@ public class YesNoEntry extends ParsedEntry {
 				String elementName) {
 			super(contentHandler, parentStateHandler, elementName);
 			this.yesNoEntry = yesNoEntry;
-			this.yesNoEntry.updateLocatorInfo(contentHandler);
 		}
 
 
@@ -77,6 +76,14 @@ public class YesNoEntry extends ParsedEntry {
 			return this.yesNoEntry;
 		}
 
+		/* (non-Javadoc)
+		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#isTextOnly()
+		 */
+		@Override
+		public boolean isTextOnly() {
+			return true;
+		}
+
 		/* (non-Javadoc)
 		 * @see gnucashjgnash.imports.GnuCashToJGnashContentHandler.AbstractStateHandler#endState()
 		 */
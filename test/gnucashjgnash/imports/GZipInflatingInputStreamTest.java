@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link GZipInflatingInputStream} with gzip files of several members, as GnuCash can write when appending.
+ * @author albert
+ *
+ */
+public class GZipInflatingInputStreamTest {
+
+	static byte [] member(ByteArrayOutputStream compressed, ByteArrayOutputStream uncompressed, byte [] data) throws IOException {
+		uncompressed.write(data);
+		try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed) {
+			@Override
+			public void close() throws IOException {
+				// Finish the member but leave the underlying stream open for the next one.
+				finish();
+			}
+		}) {
+			gzipStream.write(data);
+		}
+		return data;
+	}
+
+	static byte [] randomText(Random random, int size) {
+		byte [] data = new byte[size];
+		for (int i = 0; i < size; ++i) {
+			data[i] = (byte)('a' + random.nextInt(8));
+		}
+		return data;
+	}
+
+	static byte [] readAll(InputStream inputStream, int readSize) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		byte [] buffer = new byte[readSize];
+		int count;
+		while ((count = inputStream.read(buffer, 0, buffer.length)) >= 0) {
+			outputStream.write(buffer, 0, count);
+		}
+		return outputStream.toByteArray();
+	}
+
+
+	@Test
+	public void testMultipleMembers() throws Exception {
+		Random random = new Random(99);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+		member(compressed, uncompressed, randomText(random, 100000));
+		member(compressed, uncompressed, new byte[0]);
+		member(compressed, uncompressed, randomText(random, 7));
+		member(compressed, uncompressed, randomText(random, 50000));
+
+		// Small buffers so the headers and trailers are split across reads.
+		for (int bufferSize : new int [] { 16, 1 << 16 }) {
+			try (InputStream inputStream = new GZipInflatingInputStream(new ByteArrayInputStream(compressed.toByteArray()), bufferSize)) {
+				assertArrayEquals(uncompressed.toByteArray(), readAll(inputStream, 1000));
+			}
+		}
+
+		try (InputStream inputStream = new GZipInflatingInputStream(new ByteArrayInputStream(compressed.toByteArray()), 64)) {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			int value;
+			while ((value = inputStream.read()) >= 0) {
+				outputStream.write(value);
+			}
+			assertArrayEquals(uncompressed.toByteArray(), outputStream.toByteArray());
+		}
+	}
+
+	@Test
+	public void testCorruptTrailer() throws Exception {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		member(compressed, new ByteArrayOutputStream(), randomText(new Random(5), 1000));
+		member(compressed, new ByteArrayOutputStream(), randomText(new Random(6), 1000));
+		byte [] data = compressed.toByteArray();
+		// The CRC of the last member is the 8th to 5th last bytes.
+		data[data.length - 8] ^= 1;
+
+		try (InputStream inputStream = new GZipInflatingInputStream(new ByteArrayInputStream(data), 128)) {
+			readAll(inputStream, 100);
+			fail("The corrupt CRC was not reported.");
+		} catch (ZipException e) {
+		}
+	}
+
+	@Test
+	public void testNotGZip() throws Exception {
+		try (InputStream inputStream = new GZipInflatingInputStream(new ByteArrayInputStream("<?xml".getBytes("US-ASCII")), 128)) {
+			fail("The missing GZIP header was not reported.");
+		} catch (ZipException e) {
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link GuidMap}, both the GUID table as it grows and the text keys of ids that aren't GUIDs.
+ * @author albert
+ *
+ */
+public class GuidMapTest {
+
+	static IdEntry id(String text) {
+		IdEntry id = new IdEntry(null);
+		id.setId(text);
+		return id;
+	}
+
+	static String guid(Random random) {
+		return String.format("%016x%016x", random.nextLong(), random.nextLong());
+	}
+
+
+	@Test
+	public void testGrowth() {
+		GuidMap<Integer> map = new GuidMap<>();
+		Random random = new Random(1234);
+		List<String> guids = new ArrayList<>();
+		// Well past the initial table size, so the table is grown several times.
+		int count = GuidMap.INITIAL_TABLE_SIZE * 40;
+		for (int i = 0; i < count; ++i) {
+			String guid = guid(random);
+			guids.add(guid);
+			IdEntry id = id(guid);
+			assertTrue(id.isGUID);
+			assertNull(map.put(id, i));
+		}
+		assertEquals(count, map.size());
+
+		for (int i = 0; i < count; ++i) {
+			// A new IdEntry each time, the map mustn't depend on the instance.
+			IdEntry id = id(guids.get(i));
+			assertEquals(Integer.valueOf(i), map.get(id));
+			assertEquals(i, map.indexOf(id));
+		}
+
+		int i = 0;
+		for (Integer value : map.values()) {
+			assertEquals(Integer.valueOf(i++), value);
+		}
+
+		IdEntry missingId = id(guid(random));
+		assertNull(map.get(missingId));
+		assertEquals(-1, map.indexOf(missingId));
+		assertFalse(map.containsKey(missingId));
+	}
+
+	@Test
+	public void testReplace() {
+		GuidMap<String> map = new GuidMap<>();
+		map.put(id("0b0c995e96e6bc4d62b47204007ee4fa"), "first");
+		map.put(id("not a guid"), "text");
+		assertEquals("first", map.put(id("0b0c995e96e6bc4d62b47204007ee4fa"), "second"));
+		assertEquals("text", map.put(id("not a guid"), "text again"));
+
+		// Replacing keeps the original position.
+		assertEquals(2, map.size());
+		assertEquals(0, map.indexOf(id("0b0c995e96e6bc4d62b47204007ee4fa")));
+		assertEquals(1, map.indexOf(id("not a guid")));
+		assertEquals("second", map.get(id("0b0c995e96e6bc4d62b47204007ee4fa")));
+		assertEquals("text again", map.get(id("not a guid")));
+	}
+
+	@Test
+	public void testTextKeys() {
+		GuidMap<String> map = new GuidMap<>();
+		// Upper case hex and 32 characters that aren't all hex digits aren't GUIDs, they're kept by their text.
+		String upperCaseId = "0B0C995E96E6BC4D62B47204007EE4FA";
+		String nonHexId = "0b0c995e96e6bc4d62b47204007ee4fz";
+		String lowerCaseId = "0b0c995e96e6bc4d62b47204007ee4fa";
+		assertFalse(id(upperCaseId).isGUID);
+		assertFalse(id(nonHexId).isGUID);
+		assertFalse(id("").isGUID);
+
+		map.put(id(upperCaseId), "upper");
+		map.put(id(nonHexId), "non-hex");
+		map.put(id(""), "empty");
+		map.put(id("USD"), "short");
+		map.put(id(lowerCaseId), "guid");
+
+		assertEquals(5, map.size());
+		assertEquals("upper", map.get(id(upperCaseId)));
+		assertEquals("non-hex", map.get(id(nonHexId)));
+		assertEquals("empty", map.get(id("")));
+		assertEquals("short", map.get(id("USD")));
+		assertEquals("guid", map.get(id(lowerCaseId)));
+		assertNull(map.get(id("usd")));
+
+		List<String> values = new ArrayList<>(map.values());
+		assertEquals("upper", values.get(0));
+		assertEquals("guid", values.get(4));
+	}
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import gnucashjgnash.NoticeTree;
+
+/**
+ * Parses the same small book with each {@link GnuCashXMLParser.Backend} and checks they all end up with the
+ * same parsed entries and warnings.
+ * @author albert
+ *
+ */
+public class ParserBackendTest {
+	static final String CHECKING_ID = "0b0c995e96e6bc4d62b47204007ee4fa";
+	static final String GROCERIES_ID = "581d8e830112ff0f0948eccaf8877acf";
+
+	// Entity and character references, CDATA, comments, multi-byte characters, an element the state handlers skip,
+	// an unknown element and a text only element with a child element.
+	static final String BOOK = "<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n"
+			+ "<gnc-v2 xmlns:gnc=\"http://www.gnucash.org/XML/gnc\" xmlns:act=\"http://www.gnucash.org/XML/act\"\n"
+			+ "     xmlns:book=\"http://www.gnucash.org/XML/book\" xmlns:cd=\"http://www.gnucash.org/XML/cd\"\n"
+			+ "     xmlns:cmdty=\"http://www.gnucash.org/XML/cmdty\" xmlns:price=\"http://www.gnucash.org/XML/price\"\n"
+			+ "     xmlns:slot=\"http://www.gnucash.org/XML/slot\" xmlns:split=\"http://www.gnucash.org/XML/split\"\n"
+			+ "     xmlns:trn=\"http://www.gnucash.org/XML/trn\" xmlns:ts=\"http://www.gnucash.org/XML/ts\"\n"
+			+ "     xmlns:bgt=\"http://www.gnucash.org/XML/bgt\">\n"
+			+ "<gnc:count-data cd:type=\"book\">1</gnc:count-data>\n"
+			+ "<gnc:book version=\"2.0.0\">\n"
+			+ "<book:id type=\"guid\">d6a2a1e0c5f84c6d9f7d4a1b2c3d4e5f</book:id>\n"
+			+ "<gnc:count-data cd:type=\"account\">3</gnc:count-data>\n"
+			+ "<gnc:count-data cd:type=\"transaction\">3</gnc:count-data>\n"
+			+ "<gnc:account version=\"2.0.0\">\n"
+			+ "  <act:name>Root Account</act:name>\n"
+			+ "  <act:id type=\"guid\">b105d83e85e951862f0981aebc1b00d9</act:id>\n"
+			+ "  <act:type>ROOT</act:type>\n"
+			+ "</gnc:account>\n"
+			+ "<gnc:account version=\"2.0.0\">\n"
+			+ "  <act:name>Checking &amp; <![CDATA[<Savings>]]></act:name>\n"
+			+ "  <act:id type=\"guid\">" + CHECKING_ID + "</act:id>\n"
+			+ "  <act:type>BANK</act:type>\n"
+			+ "  <act:commodity>\n    <cmdty:space>ISO4217</cmdty:space>\n    <cmdty:id>USD</cmdty:id>\n  </act:commodity>\n"
+			+ "  <act:description>Caf\u00e9 &#x20AC; <!-- not text -->account</act:description>\n"
+			+ "  <act:parent type=\"guid\">b105d83e85e951862f0981aebc1b00d9</act:parent>\n"
+			+ "</gnc:account>\n"
+			+ "<gnc:account version=\"2.0.0\">\n"
+			+ "  <act:name>Groceries<b>ignored</b></act:name>\n"
+			+ "  <act:id type=\"guid\">" + GROCERIES_ID + "</act:id>\n"
+			+ "  <act:type>EXPENSE</act:type>\n"
+			+ "  <act:commodity>\n    <cmdty:space>ISO4217</cmdty:space>\n    <cmdty:id>USD</cmdty:id>\n  </act:commodity>\n"
+			+ "  <act:parent type=\"guid\">b105d83e85e951862f0981aebc1b00d9</act:parent>\n"
+			+ "  <act:unknown><act:nested a=\"1 > 0\">text</act:nested></act:unknown>\n"
+			+ "</gnc:account>\n"
+			+ transaction("6f1c2d3e4f5061728394a5b6c7d8e9f0", "2016-03-04", "Trader Joe&apos;s", "food", 1234)
+			+ transaction("7a1c2d3e4f5061728394a5b6c7d8e9f0", "2016-03-04", "\u65e5\u672c \u00fcber", null, 99)
+			+ transaction("8b1c2d3e4f5061728394a5b6c7d8e9f0", "2015-12-31", "Year &lt;end&gt;", "a&#10;b", 500000)
+			+ "<gnc:budget version=\"2.0.0\">\n"
+			+ "  <bgt:id type=\"guid\">e1f2a3b4c5d6e7f8a9b0c1d2e3f4a5b6</bgt:id>\n"
+			+ "  <bgt:slots><slot><slot:key>x</slot:key><slot:value type=\"string\">y/&gt;</slot:value></slot></bgt:slots>\n"
+			+ "</gnc:budget>\n"
+			+ "</gnc:book>\n"
+			+ "</gnc-v2>\n";
+
+	static String transaction(String id, String date, String description, String memo, int amount) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("<gnc:transaction version=\"2.0.0\">\n  <trn:id type=\"guid\">").append(id).append("</trn:id>\n")
+				.append("  <trn:currency>\n    <cmdty:space>ISO4217</cmdty:space>\n    <cmdty:id>USD</cmdty:id>\n  </trn:currency>\n")
+				.append("  <trn:date-posted>\n    <ts:date>").append(date).append(" 00:00:00 +0000</ts:date>\n  </trn:date-posted>\n")
+				.append("  <trn:description>").append(description).append("</trn:description>\n")
+				.append("  <trn:splits>\n");
+		split(builder, CHECKING_ID, -amount, memo);
+		split(builder, GROCERIES_ID, amount, null);
+		builder.append("  </trn:splits>\n</gnc:transaction>\n");
+		return builder.toString();
+	}
+
+	static void split(StringBuilder builder, String accountId, int amount, String memo) {
+		builder.append("    <trn:split>\n      <split:id type=\"guid\">").append(String.format("%032x", builder.length())).append("</split:id>\n");
+		if (memo != null) {
+			builder.append("      <split:memo>").append(memo).append("</split:memo>\n");
+		}
+		builder.append("      <split:reconciled-state>n</split:reconciled-state>\n")
+				.append("      <split:value>").append(amount).append("/100</split:value>\n")
+				.append("      <split:quantity>").append(amount).append("/100</split:quantity>\n")
+				.append("      <split:account type=\"guid\">").append(accountId).append("</split:account>\n")
+				.append("    </trn:split>\n");
+	}
+
+
+	static String parse(GnuCashXMLParser.Backend backend) throws Exception {
+		GnuCashToJGnashContentHandler contentHandler = new GnuCashToJGnashContentHandler(null, null);
+		try (InputStream inputStream = new ByteArrayInputStream(BOOK.getBytes(StandardCharsets.UTF_8))) {
+			backend.createParser().parse(inputStream, contentHandler);
+		}
+		return describe(contentHandler);
+	}
+
+	static String describe(GnuCashToJGnashContentHandler contentHandler) {
+		StringBuilder builder = new StringBuilder();
+		for (AccountImportEntry account : contentHandler.accountImportEntries.values()) {
+			builder.append("account ").append(account.id).append(" '").append(account.name).append("' ").append(account.type)
+					.append(" '").append(account.description).append("' parent ").append(account.parentId).append('\n');
+		}
+		for (TransactionImportEntry transaction : contentHandler.transactionEntries.values()) {
+			builder.append("transaction ").append(transaction.id).append(' ').append(transaction.datePosted.toDateString())
+					.append(" '").append(transaction.description).append("'\n");
+			for (SplitEntry split : transaction.originalSplitsList) {
+				builder.append("  split ").append(split.account).append(' ').append(split.value.toBigDecimal())
+						.append(' ').append(split.quantity.toBigDecimal()).append(' ').append(split.reconciledState)
+						.append(" '").append(split.memo).append("'\n");
+			}
+		}
+		describeNotices(builder, contentHandler.warningNoticeTree.getRootSourceEntry(), "");
+		return builder.toString();
+	}
+
+	// The notice tree doesn't keep its entries in any particular order, so they're sorted.
+	static void describeNotices(StringBuilder builder, NoticeTree.SourceEntry sourceEntry, String indent) {
+		List<String> childTexts = new ArrayList<>();
+		for (NoticeTree.SourceEntry childEntry : sourceEntry.getChildren()) {
+			StringBuilder childBuilder = new StringBuilder();
+			childBuilder.append(indent).append("notice ").append(childEntry.getSource().getSourceTitle()).append('\n');
+			describeNotices(childBuilder, childEntry, indent + "  ");
+			childTexts.add(childBuilder.toString());
+		}
+		Collections.sort(childTexts);
+		for (String childText : childTexts) {
+			builder.append(childText);
+		}
+	}
+
+
+	@Test
+	public void testSAXParse() throws Exception {
+		String result = parse(GnuCashXMLParser.Backend.SAX);
+		assertTrue(result, result.contains("'Checking & <Savings>' BANK 'Caf\u00e9 \u20ac account'"));
+		assertTrue(result, result.contains("'Groceries' EXPENSE"));
+		assertTrue(result, result.contains("2016-03-04 '\u65e5\u672c \u00fcber'"));
+		assertTrue(result, result.contains("2015-12-31 'Year <end>'"));
+		assertTrue(result, result.contains(CHECKING_ID + " -5000 -5000 n 'a\nb'"));
+	}
+
+	@Test
+	public void testStAXMatchesSAX() throws Exception {
+		assertEquals(parse(GnuCashXMLParser.Backend.SAX), parse(GnuCashXMLParser.Backend.STAX));
+	}
+
+	@Test
+	public void testUTF8MatchesSAX() throws Exception {
+		assertEquals(parse(GnuCashXMLParser.Backend.SAX), parse(GnuCashXMLParser.Backend.UTF8));
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Albert Santos.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package gnucashjgnash.imports;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Parses enough transactions into a {@link TransactionSpillSorter} with the smallest memory budget that they're
+ * written to several runs, then checks the merge gives them back in date order with the duplicates replaced.
+ * @author albert
+ *
+ */
+public class TransactionSpillSorterTest {
+	static final int TRANSACTION_COUNT = 12000;
+	static final int DUPLICATE_INTERVAL = 97;
+
+	File tempDirectory;
+
+
+	static class ExpectedEntry {
+		final String id;
+		String date;
+		String description;
+		int sequence;
+
+		ExpectedEntry(String id) {
+			this.id = id;
+		}
+	}
+
+
+	@Before
+	public void setUp() throws Exception {
+		this.tempDirectory = Files.createTempDirectory("spillsortertest").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		File [] files = this.tempDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		this.tempDirectory.delete();
+	}
+
+
+	@Test
+	public void testMerge() throws Exception {
+		Random random = new Random(4321);
+		Map<String, ExpectedEntry> expectedEntries = new LinkedHashMap<>();
+		List<String> ids = new ArrayList<>();
+
+		String header = ParserBackendTest.BOOK.substring(0, ParserBackendTest.BOOK.indexOf("<gnc:transaction"));
+		StringBuilder book = new StringBuilder(header);
+		for (int i = 0; i < TRANSACTION_COUNT; ++i) {
+			String id;
+			String description;
+			if ((i % DUPLICATE_INTERVAL) == DUPLICATE_INTERVAL - 1) {
+				// A duplicate of an earlier transaction, which replaces it, possibly on a different date.
+				id = ids.get(random.nextInt(ids.size()));
+				description = "Replaced " + i;
+			}
+			else {
+				id = String.format("%016x%016x", random.nextLong(), i);
+				ids.add(id);
+				description = "Transaction " + i;
+			}
+			String date = String.format("2016-%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28));
+
+			ExpectedEntry expectedEntry = expectedEntries.get(id);
+			if (expectedEntry == null) {
+				expectedEntry = new ExpectedEntry(id);
+				expectedEntries.put(id, expectedEntry);
+			}
+			expectedEntry.date = date;
+			expectedEntry.description = description;
+			expectedEntry.sequence = i;
+
+			book.append(ParserBackendTest.transaction(id, date, description, "Memo " + i, 100 + i));
+		}
+		book.append("</gnc:book>\n</gnc-v2>\n");
+
+		GnuCashToJGnashContentHandler contentHandler = new GnuCashToJGnashContentHandler(null, null);
+		contentHandler.transactionSpillSorter = new TransactionSpillSorter(contentHandler, TransactionSpillSorter.MIN_MEMORY_BUDGET,
+				this.tempDirectory);
+		try (InputStream inputStream = new ByteArrayInputStream(book.toString().getBytes(StandardCharsets.UTF_8))) {
+			GnuCashXMLParser.Backend.SAX.createParser().parse(inputStream, contentHandler);
+		}
+
+		TransactionSpillSorter sorter = contentHandler.transactionSpillSorter;
+		assertTrue("Runs: " + sorter.getRunCount(), sorter.getRunCount() >= 2);
+		assertEquals(expectedEntries.size(), contentHandler.totalTransactionEntryCount);
+
+		// Sorted by date then by the order they were last added in.
+		List<ExpectedEntry> expectedOrder = new ArrayList<>(expectedEntries.values());
+		Collections.sort(expectedOrder, (a, b) -> {
+			int result = a.date.compareTo(b.date);
+			return (result != 0) ? result : Integer.compare(a.sequence, b.sequence);
+		});
+
+		List<String> expected = new ArrayList<>();
+		for (ExpectedEntry expectedEntry : expectedOrder) {
+			expected.add(expectedEntry.id + " " + expectedEntry.date + " " + expectedEntry.description + " Memo " + expectedEntry.sequence);
+		}
+
+		List<String> merged = new ArrayList<>();
+		try (TransactionSpillSorter.Merge merge = sorter.openMerge()) {
+			TransactionImportEntry entry;
+			while ((entry = merge.next()) != null) {
+				SplitEntry split = entry.originalSplitsList.get(0);
+				merged.add(entry.id.getId() + " " + entry.datePosted.toDateString() + " " + entry.description + " " + split.memo);
+			}
+		} finally {
+			sorter.close();
+		}
+
+		assertEquals(expected, merged);
+
+		File [] runFiles = this.tempDirectory.listFiles((dir, name) -> name.endsWith(".run"));
+		assertEquals(0, runFiles.length);
+	}
+
+}